@@ -0,0 +1,68 @@
+/*
+ * @File BinaryTransport.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.BinaryProtocol;
+import ch.heigvd.robotpi.servertest.ProtocolCommands;
+
+import java.io.*;
+
+/**
+ * The binary framing negotiated with the robots that support it. Every command is a frame of a few bytes carrying its
+ * opcode and a sequence number, and the answer of the robot carries the same number. No string is created to send a
+ * command or to read its answer.
+ */
+class BinaryTransport implements StreamTransport {
+   private final DataOutputStream out;
+   private final DataInputStream in;
+   private final BinaryProtocol.Frame frame = new BinaryProtocol.Frame();
+   // written by the sending threads, which send one command at a time
+   private int nextSequence = 0;
+   // read by the reading thread only
+   private int expectedSequence = 0;
+
+   /**
+    * Instantiates a new binary transport over the streams of the connection. Nothing must be left unread in the
+    * streams used before the switch to the binary framing.
+    *
+    * @param out the stream to the robot
+    * @param in  the stream from the robot
+    */
+   BinaryTransport(OutputStream out, InputStream in) {
+      this.out = new DataOutputStream(new BufferedOutputStream(out));
+      this.in = new DataInputStream(new BufferedInputStream(in));
+   }
+
+   @Override
+   public boolean usesBinaryFraming() {
+      return true;
+   }
+
+   @Override
+   public void send(ProtocolCommands command, int[] arguments) throws IOException {
+      BinaryProtocol.writeFrame(out, command.getCode(), nextSequence, BinaryProtocol.encodeArguments(arguments));
+      nextSequence = (nextSequence + 1) & 0xFFFF;
+      out.flush();
+   }
+
+   @Override
+   public ProtocolCommands receive() throws IOException {
+      if (BinaryProtocol.readFrame(in, frame) == null) {
+         throw new EOFException();
+      }
+      if (frame.getSequence() != expectedSequence) {
+         throw new IOException("Answer out of sequence : " + frame.getSequence() + " instead of " + expectedSequence);
+      }
+      expectedSequence = (expectedSequence + 1) & 0xFFFF;
+      return ProtocolCommands.getCommandFromConfirmationCode(frame.getOpcode());
+   }
+
+   @Override
+   public void close() throws IOException {
+      out.close();
+      in.close();
+   }
+}
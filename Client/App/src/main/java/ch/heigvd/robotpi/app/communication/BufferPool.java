@@ -0,0 +1,96 @@
+/*
+ * @File BufferPool.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of direct buffers of the same size. Direct buffers are read and written by the channels without being copied,
+ * but they are slow to allocate and their memory is only freed by the garbage collector, so the connections take
+ * their buffers from the pool and give them back when they are closed.
+ */
+final class BufferPool {
+   /**
+    * The size of the buffers of the shared pool, which holds a whole TLS record
+    */
+   static final int BUFFER_SIZE = 32 * 1024;
+   // enough for the three buffers of a few dozens of connections
+   private static final int MAX_POOLED = 128;
+   private static final BufferPool SHARED = new BufferPool(BUFFER_SIZE, MAX_POOLED);
+   private final int bufferSize;
+   private final int maxPooled;
+   private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+   private final AtomicInteger pooled = new AtomicInteger();
+
+   /**
+    * Instantiates a new empty pool.
+    *
+    * @param bufferSize the size of the buffers, in bytes
+    * @param maxPooled  the largest number of buffers kept by the pool, the others are left to the garbage collector
+    */
+   BufferPool(int bufferSize, int maxPooled) {
+      this.bufferSize = bufferSize;
+      this.maxPooled = maxPooled;
+   }
+
+   /**
+    * Returns the pool shared by the connections of this process.
+    *
+    * @return the shared pool
+    */
+   static BufferPool shared() {
+      return SHARED;
+   }
+
+   /**
+    * Takes a buffer from the pool, or allocates one if the pool is empty. A buffer larger than the buffers of the pool
+    * is allocated for this call only.
+    *
+    * @param minSize the smallest size of the buffer
+    *
+    * @return an empty buffer, ready to be written
+    */
+   ByteBuffer acquire(int minSize) {
+      if (minSize > bufferSize) {
+         return ByteBuffer.allocateDirect(minSize);
+      }
+      ByteBuffer buffer = buffers.poll();
+      if (buffer == null) {
+         return ByteBuffer.allocateDirect(bufferSize);
+      }
+      pooled.decrementAndGet();
+      return buffer;
+   }
+
+   /**
+    * Gives a buffer back to the pool. It must not be used anymore by the caller.
+    *
+    * @param buffer the buffer
+    */
+   void release(ByteBuffer buffer) {
+      if (buffer.capacity() != bufferSize || !buffer.isDirect()) {
+         return;
+      }
+      if (pooled.incrementAndGet() > maxPooled) {
+         pooled.decrementAndGet();
+         return;
+      }
+      buffer.clear();
+      buffers.add(buffer);
+   }
+
+   /**
+    * Gets the number of buffers waiting in the pool.
+    *
+    * @return the number of free buffers
+    */
+   int getPooled() {
+      return pooled.get();
+   }
+}
@@ -5,28 +5,70 @@
  */
 package ch.heigvd.robotpi.app.communication;
 
+import ch.heigvd.robotpi.servertest.BinaryProtocol;
+import ch.heigvd.robotpi.servertest.PictureOptions;
+import ch.heigvd.robotpi.servertest.PictureProtocol;
 import ch.heigvd.robotpi.servertest.ProtocolCommands;
-import lombok.Getter;
 
-import javax.imageio.ImageIO;
-import javax.jmdns.JmDNS;
-import javax.jmdns.ServiceEvent;
-import javax.jmdns.ServiceListener;
 import javax.net.ssl.*;
-import java.awt.image.BufferedImage;
 import java.io.*;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.KeyStore;
-import java.util.HashSet;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * The type Client.
  */
 public class Client {
+   private static final Logger LOG = Logger.getLogger(Client.class.getName());
    private static final String[] PROTOCOLS = new String[]{"TLSv1.3"};
    private static final String[] CIPHER_SUITES = new String[]{"TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384"};
+   // Number of TLS sessions kept for resumption, and how long they stay valid (in seconds)
+   private static final int SESSION_CACHE_SIZE = 16;
+   private static final int SESSION_TIMEOUT = 3600;
+   // the bursts waiting for the one being taken
+   private static final int MAX_QUEUED_BURSTS = 4;
+   // the end of the requests of a burst, for its reading thread
+   private static final long END_OF_BURST = Long.MIN_VALUE;
+   // the attempts to resume a picture in a row that receive none of it, before giving up
+   private static final int MAX_RESUME_ATTEMPTS = 3;
+   // how often a burst waiting for a free request checks that its pictures are still received
+   private static final long WINDOW_POLL_MS = 100;
+   private static volatile SSLContext sharedContext = null;
+   /**
+    * The system property choosing the framing of the commands : "binary" (the default) asks the robot for the binary
+    * framing and falls back to the text protocol if it does not support it, "text" always uses the text protocol.
+    */
+   public static final String PROTOCOL_PROPERTY = "robotpi.protocol";
+   /**
+    * The system property choosing how the control connection is driven : "socket" (the default) reads the answers of
+    * each robot with a blocked thread, "nio" reads them with the selector loop shared by every client of the process.
+    */
+   public static final String TRANSPORT_PROPERTY = "robotpi.transport";
    /**
     * The Port uses for the communication.
     */
@@ -35,15 +77,57 @@ public class Client {
     * The Portpicture uses to transfer picture
     */
    public final int PORTPICTURE = 2026;
-   private SSLSocket clientSocket = null;
+   // the socket or the selector connection of the control port
+   private Closeable connection = null;
    private String ipAddress;
-   private PrintWriter out;
-   private BufferedReader in;
-   private boolean isConnected;
-   private boolean isMoving = false;
+   private CommandTransport transport;
+   private final Executor readerExecutor;
+   private final Object writeLock = new Object();
+   private Queue<PendingCommand> pending = new ConcurrentLinkedQueue<>();
+   private volatile boolean isConnected;
+   private volatile boolean isMoving = false;
+   // the time of the last answer of the robot, from System.nanoTime
+   private volatile long lastAnswerTime;
+   private final ClientMetrics metrics = new ClientMetrics();
+   private final CommandCoalescer coalescer = new CommandCoalescer(this::sendAsync);
+   // incremented by every connection and disconnection, so that the loss of a connection that was replaced or closed
+   // on purpose is not taken for a lost link
+   private final AtomicInteger connectionGeneration = new AtomicInteger();
+   private volatile ReconnectPolicy reconnectPolicy = null;
+   private volatile Consumer<ConnectionEvent> connectionListener = null;
+   private volatile boolean reconnecting = false;
+   // the last movement confirmed by the robot, or null if it is stopped
+   private volatile PendingCommand lastMotion = null;
+   private PictureChannel pictureChannel = null;
+   // held while the picture session is used, by a single picture or by a whole burst
+   private final Semaphore pictureLock = new Semaphore(1);
+   private final ExecutorService burstExecutor = newPictureExecutor("robotpi-burst", MAX_QUEUED_BURSTS);
+   private final ExecutorService burstReader = newPictureExecutor("robotpi-burst-reader", 1);
+   private boolean pictureSessionSupported = true;
+   private PictureStream<?> stream = null;
+
+   /**
+    * Instantiates a new client. The answers of the robot are read by a thread of its own.
+    */
+   public Client() {
+      this(null);
+   }
+
+   /**
+    * Instantiates a new client whose answers are read by a task of the given executor, which lets many clients share
+    * the same threads. The task runs for as long as the connection is open, so the executor must not limit the number
+    * of tasks running at the same time. The executor is not used when the connection is driven by the selector loop,
+    * see TRANSPORT_PROPERTY.
+    *
+    * @param readerExecutor the executor running the reading of the answers, or null to use a thread of its own
+    */
+   public Client(Executor readerExecutor) {
+      this.readerExecutor = readerExecutor;
+   }
 
    /**
-    * Connects the client to the server of the pi robot
+    * Connects the client to the server of the pi robot. Once connected, the answers of the robot are read by a
+    * dedicated thread, which allows several commands to be sent without waiting for the previous answers.
     *
     * @param ip l'adresse ip du robot pi
     *
@@ -52,125 +136,836 @@ public class Client {
     * @throws IncorrectDeviceException ip address does not match a pi robot
     */
    public void connect(String ip) throws CantConnectException, IOException, IncorrectDeviceException {
+      boolean reconnection = connection != null;
+      int generation = connectionGeneration.incrementAndGet();
       try {
+         if (connection != null) {
+            closeConnection();
+         }
+         closePictureChannel();
+         stopStream();
          this.ipAddress = ip;
-         this.clientSocket = createSocket(ip, PORT);
-         out = new PrintWriter(clientSocket.getOutputStream(), true);
-         in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+         this.pictureSessionSupported = true;
+         Queue<PendingCommand> connectionPending = new ConcurrentLinkedQueue<>();
+         CommandTransport connectionTransport;
+         if ("nio".equals(System.getProperty(TRANSPORT_PROPERTY))) {
+            connectionTransport = openSelectorTransport(ip);
+         } else {
+            connectionTransport = openSocketTransport(ip);
+         }
+         synchronized (writeLock) {
+            transport = connectionTransport;
+            pending = connectionPending;
+            lastAnswerTime = System.nanoTime();
+            isConnected = true;
+         }
+         // the robot is stopped by a new connection
+         coalescer.reset();
+         if (connectionTransport instanceof SelectorTransport) {
+            ((SelectorTransport) connectionTransport).listen(new SelectorTransport.AnswerListener() {
+               @Override
+               public void answered(ProtocolCommands confirmed) {
+                  answerReceived(confirmed, connectionPending);
+               }
+
+               @Override
+               public void ended() {
+                  connectionEnded(connectionTransport, connectionPending, generation);
+               }
+            });
+         } else {
+            SSLSocket socket = (SSLSocket) connection;
+            StreamTransport streamTransport = (StreamTransport) connectionTransport;
+            Runnable reading = () -> readAnswers(socket, streamTransport, connectionPending, generation);
+            if (readerExecutor != null) {
+               readerExecutor.execute(reading);
+            } else {
+               Thread readerThread = new Thread(reading, "robotpi-reader-" + ip);
+               readerThread.setDaemon(true);
+               readerThread.start();
+            }
+         }
+         metrics.connected(reconnection);
+      } catch (Exception e) {
+         LOG.log(Level.WARNING, "Could not connect to " + ip, e);
+         throw new CantConnectException();
+      }
+   }
 
-         printSocketInfo(clientSocket);
-         clientSocket.startHandshake();
+   /**
+    * Opens the control connection on a socket, whose answers are read by a thread blocked on it, and identifies the
+    * robot.
+    *
+    * @param ip the ip address of the robot
+    *
+    * @return the transport of the commands
+    *
+    * @throws Exception the connection failed, or the device is not a robot
+    */
+   private StreamTransport openSocketTransport(String ip) throws Exception {
+      SSLSocket clientSocket = createSocket(ip, PORT);
+      this.connection = clientSocket;
+      PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true);
+      BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+
+      long handshakeStart = System.nanoTime();
+      clientSocket.startHandshake();
+      metrics.handshakeDone(System.nanoTime() - handshakeStart);
+      printSocketInfo(clientSocket);
+
+      out.print(ProtocolCommands.conn.getMessage());
+      out.print("\n");
+      out.flush();
 
+      String message = in.readLine();
+      checkDevice(message, clientSocket);
 
-         isConnected = true;
+      return negotiateTransport(clientSocket, out, in);
+   }
 
-         out.print(ProtocolCommands.conn.getMessage());
-         out.print("\n");
-         out.flush();
+   /**
+    * Opens the control connection on the selector loop shared by the clients of the process, and identifies the
+    * robot. The framing of the commands is negotiated as on a socket.
+    *
+    * @param ip the ip address of the robot
+    *
+    * @return the transport of the commands
+    *
+    * @throws Exception the connection failed, or the device is not a robot
+    */
+   private CommandTransport openSelectorTransport(String ip) throws Exception {
+      SelectorTransport selectorTransport = SelectorTransport.open(ip, PORT);
+      this.connection = selectorTransport;
+      metrics.handshakeDone(selectorTransport.getHandshakeTime());
 
-         String message = in.readLine();
+      checkDevice(selectorTransport.exchange(ProtocolCommands.conn.getMessage()), selectorTransport);
 
+      if (!"text".equals(System.getProperty(PROTOCOL_PROPERTY)) &&
+          selectorTransport.exchange(BinaryProtocol.CAPS + " " + BinaryProtocol.BINARY)
+                           .equals(BinaryProtocol.CAPS_OK + " " + BinaryProtocol.BINARY)) {
+         selectorTransport.useBinaryFraming();
+      }
+      return selectorTransport;
+   }
 
-         if (message.equals("CONN_ERR")) {
-            clientSocket.close();
-            throw new CantConnectException();
-         } else if (!message.equals(ProtocolCommands.conn.getMessageConfirmation())) {
-            clientSocket.close();
-            throw new IncorrectDeviceException();
-         }
-      } catch (Exception e) {
-         System.err.println(e.toString());
+   /**
+    * Checks the answer of the device to the connection
+    *
+    * @param message          the answer
+    * @param deviceConnection the connection, closed if the answer is not the one of a robot
+    *
+    * @throws IOException              the connection could not be closed
+    * @throws CantConnectException     the robot refused the connection
+    * @throws IncorrectDeviceException the device is not a robot
+    */
+   private void checkDevice(String message, Closeable deviceConnection)
+           throws IOException, CantConnectException, IncorrectDeviceException {
+      if (message.equals("CONN_ERR")) {
+         deviceConnection.close();
          throw new CantConnectException();
+      } else if (!message.equals(ProtocolCommands.conn.getMessageConfirmation())) {
+         deviceConnection.close();
+         throw new IncorrectDeviceException();
+      }
+   }
+
+   /**
+    * Chooses the framing of the commands with the robot, right after the connection. The binary framing is used if
+    * the robot accepts it, otherwise the connection stays in text mode.
+    *
+    * @param socket the socket of the connection
+    * @param out    the writer used for the connection
+    * @param in     the reader used for the connection
+    *
+    * @return the transport of the commands
+    *
+    * @throws IOException the io exception
+    */
+   private static StreamTransport negotiateTransport(SSLSocket socket, PrintWriter out, BufferedReader in)
+           throws IOException {
+      if ("text".equals(System.getProperty(PROTOCOL_PROPERTY))) {
+         return new TextTransport(out, in);
       }
+      out.print(BinaryProtocol.CAPS + " " + BinaryProtocol.BINARY + "\n");
+      out.flush();
+      String answer = in.readLine();
+      if (answer == null) {
+         throw new EOFException();
+      }
+      if (answer.equals(BinaryProtocol.CAPS_OK + " " + BinaryProtocol.BINARY)) {
+         // the robot sends nothing more until it receives a frame, so the reader holds nothing
+         return new BinaryTransport(socket.getOutputStream(), socket.getInputStream());
+      }
+      // the robots that do not know the capabilities answer CMD_ERR
+      return new TextTransport(out, in);
    }
 
    /**
-    * Sends a request to the server to fetch a picture taken by the pi robot
+    * Tells whether the commands are sent with the binary framing on the current connection.
+    *
+    * @return true if the binary framing is used, false for the text protocol
+    */
+   public boolean usesBinaryFraming() {
+      CommandTransport connectionTransport = transport;
+      return connectionTransport != null && connectionTransport.usesBinaryFraming();
+   }
+
+   /**
+    * Sends a command to the robot without waiting for its answer. The commands are sent in order, and the answers of
+    * the robot are matched in the same order by the reading thread, so several commands can be in flight at the same
+    * time.
+    *
+    * @param command   the command to send
+    * @param arguments the arguments of the command, as many as it takes
+    *
+    * @return a future completed when the robot confirms the command. It is completed exceptionally with a
+    *       CantConnectException if the client is not connected, a RobotException if the robot gave a wrong answer, or
+    *       an IOException if the connection was lost before the answer.
+    */
+   public CompletableFuture<Void> sendAsync(ProtocolCommands command, int... arguments) {
+      if (!command.acceptsArguments(arguments.length)) {
+         throw new IllegalArgumentException(command.getMessage() + " takes " + command.getArgumentCount() +
+                                            " arguments");
+      }
+      CompletableFuture<Void> future = new CompletableFuture<>();
+      synchronized (writeLock) {
+         if (!isConnected) {
+            future.completeExceptionally(new CantConnectException());
+            return future;
+         }
+         pending.add(new PendingCommand(command, arguments, future));
+         metrics.commandSent(command);
+         try {
+            transport.send(command, arguments);
+         } catch (IOException e) {
+            // The reading thread fails the pending commands once the socket is closed
+            closeSocket();
+         }
+      }
+      return future;
+   }
+
+   /**
+    * Asks for a movement of the robot without waiting for its answer. Unlike sendAsync, the movement goes through the
+    * coalescing stage of the client : it is dropped if the robot is already doing it, and merged with the next ones if
+    * they come within the coalescing window. Stopping the robot is always sent at once.
+    *
+    * @param command   the movement command, stop to stop the robot
+    * @param arguments the arguments of the command, as many as it takes
+    *
+    * @return a future completed when the robot confirms the movement, or the one sent in its place, see sendAsync
+    */
+   public CompletableFuture<Void> moveAsync(ProtocolCommands command, int... arguments) {
+      if (!isMotion(command)) {
+         throw new IllegalArgumentException(command.getMessage() + " is not a movement");
+      }
+      if (!command.acceptsArguments(arguments.length)) {
+         throw new IllegalArgumentException(command.getMessage() + " takes " + command.getArgumentCount() +
+                                            " arguments");
+      }
+      return coalescer.submit(command, arguments);
+   }
+
+   /**
+    * Sets the coalescing window of the movements. The movements asked within this time after the last one sent are
+    * held, and only the last of them is sent when the window ends. By default the window is 0 and only the duplicate
+    * movements are dropped.
+    *
+    * @param window the coalescing window, in milliseconds
+    */
+   public void setCoalescingWindow(long window) {
+      coalescer.setWindow(window);
+   }
+
+   /**
+    * Gets the number of movements that were not sent because the robot was already doing them.
+    *
+    * @return the number of duplicate movements dropped
+    */
+   public long getDroppedMovements() {
+      return coalescer.getDropped();
+   }
+
+   /**
+    * Gets the number of movements that were not sent because a later one replaced them within the coalescing window.
+    *
+    * @return the number of movements merged
+    */
+   public long getMergedMovements() {
+      return coalescer.getMerged();
+   }
+
+   /**
+    * Sends a request to the server to fetch a picture taken by the pi robot, and saves it. The bytes sent by the robot
+    * are written to the file as they are, without being decoded and encoded again.
     *
     * @param imagename the path of the image
     *
+    * @return the picture, as sent by the robot
+    *
+    * @throws CantConnectException the cant connect exception
+    * @throws RobotException       the robot exception
+    * @throws PictureTransferError the picture transfer error
+    * @throws IOException          the io exception
+    */
+   public byte[] takePicture(String imagename)
+           throws CantConnectException, RobotException, PictureTransferError, IOException {
+      byte[] picture = takePicture();
+      try (FileChannel file = FileChannel.open(Path.of(imagename), StandardOpenOption.CREATE,
+                                               StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+         ByteBuffer buffer = ByteBuffer.wrap(picture);
+         while (buffer.hasRemaining()) {
+            file.write(buffer);
+         }
+      }
+      return picture;
+   }
+
+   /**
+    * Sends a request to the server to fetch a picture taken by the pi robot. The picture is requested on the picture
+    * session of this client, which is opened on the first call and kept until the client disconnects. If the robot
+    * does not support picture sessions, a new connection is opened for each picture.
+    * <p>
+    * When the session is checked, the picture is checked against its CRC32C, and if its transfer is interrupted, a new
+    * session is opened to receive the rest of it, from the last byte received.
+    *
+    * @return the picture, as sent by the robot
+    *
     * @throws CantConnectException the cant connect exception
     * @throws RobotException       the robot exception
     * @throws PictureTransferError the picture transfer error
     * @throws IOException          the io exception
     */
-   public void takePicture(String imagename)
+   public byte[] takePicture() throws CantConnectException, RobotException, PictureTransferError, IOException {
+      return takePicture(PictureOptions.NONE);
+   }
+
+   /**
+    * Takes a picture with options, such as a thumbnail for a preview : the robot crops the picture, scales it down and
+    * encodes it with the quality asked for, so that fewer bytes are transferred and decoded. The robots that do not
+    * know the options, or do not support picture sessions, send the picture as the camera took it.
+    *
+    * @param options the options of the picture
+    *
+    * @return the picture, as sent by the robot
+    *
+    * @throws CantConnectException the cant connect exception
+    * @throws RobotException       the robot exception, also thrown if the crop is outside of the picture
+    * @throws PictureTransferError the picture transfer error
+    * @throws IOException          the io exception
+    */
+   public byte[] takePicture(PictureOptions options)
            throws CantConnectException, RobotException, PictureTransferError, IOException {
       if (!isConnected) {
          throw new CantConnectException();
       }
 
+      pictureLock.acquireUninterruptibly();
+      try {
+         long start = System.nanoTime();
+         PictureChannel channel = getPictureChannel();
+         byte[] picture;
+         if (channel == null) {
+            picture = takeSinglePicture();
+         } else {
+            try {
+               picture = channel.fetch(options);
+            } catch (PictureChannel.InterruptedTransferException e) {
+               closePictureChannel();
+               picture = resumePicture(e);
+            } catch (IOException e) {
+               closePictureChannel();
+               throw new PictureTransferError();
+            }
+            if (picture == null) {
+               throw new RobotException();
+            }
+         }
+         metrics.pictureReceived(picture.length, System.nanoTime() - start);
+         return picture;
+      } finally {
+         pictureLock.release();
+      }
+   }
+
+   /**
+    * Receives the rest of a picture whose transfer was interrupted, on a new picture session each time it is
+    * interrupted again. Called with pictureLock held, by the thread holding it or the reading thread of its burst.
+    *
+    * @param interrupted the interruption of the transfer
+    *
+    * @return the picture
+    *
+    * @throws CantConnectException the picture session could not be opened again
+    * @throws PictureTransferError the transfer could not be resumed, or was interrupted too many times in a row without
+    *                              receiving any of the picture
+    */
+   private byte[] resumePicture(PictureChannel.InterruptedTransferException interrupted)
+           throws CantConnectException, PictureTransferError {
+      int attempts = 0;
+      while (true) {
+         LOG.log(Level.INFO, "Resuming the picture : {0}", interrupted.getMessage());
+         PictureChannel channel = getPictureChannel();
+         if (channel == null || !channel.isChecked()) {
+            throw new PictureTransferError();
+         }
+         try {
+            byte[] picture = channel.resume(interrupted);
+            if (picture == null) {
+               // the robot does not keep the picture anymore
+               throw new PictureTransferError();
+            }
+            return picture;
+         } catch (PictureChannel.InterruptedTransferException e) {
+            closePictureChannel();
+            attempts = e.getReceived() > interrupted.getReceived() ? 0 : attempts + 1;
+            if (attempts == MAX_RESUME_ATTEMPTS) {
+               throw new PictureTransferError();
+            }
+            interrupted = e;
+         } catch (IOException e) {
+            closePictureChannel();
+            throw new PictureTransferError();
+         }
+      }
+   }
+
+   /**
+    * Takes a burst of pictures at a fixed interval, without blocking. The pictures are requested on the picture session
+    * of this client without waiting for the previous ones, up to PictureBurst.MAX_IN_FLIGHT at a time, and received by
+    * another thread, so the transfer of a picture overlaps with the capture of the next ones. The captures are
+    * scheduled from the start of the burst, so a slow picture does not shift the next ones.
+    * <p>
+    * The bursts are taken one at a time, on a thread of the client. Up to 4 bursts can wait for the one being taken,
+    * the pictures of the next ones fail with a RejectedExecutionException.
+    *
+    * @param count    the number of pictures
+    * @param interval the time between two captures, in milliseconds, 0 to take them as fast as possible
+    *
+    * @return the burst, whose futures are completed as the pictures are received
+    */
+   public PictureBurst takeBurst(int count, long interval) {
+      PictureBurst burst = new PictureBurst(count, interval);
+      if (!isConnected) {
+         burst.failRemaining(new CantConnectException());
+         return burst;
+      }
+      try {
+         burstExecutor.execute(() -> runBurst(burst));
+      } catch (RejectedExecutionException e) {
+         burst.failRemaining(e);
+      }
+      return burst;
+   }
+
+   /**
+    * Takes the pictures of a burst, from the thread of the bursts
+    *
+    * @param burst the burst
+    */
+   private void runBurst(PictureBurst burst) {
+      pictureLock.acquireUninterruptibly();
+      try {
+         PictureChannel channel = getPictureChannel();
+         if (channel == null) {
+            runSequentialBurst(burst);
+         } else {
+            runPipelinedBurst(burst, channel);
+         }
+      } catch (CantConnectException e) {
+         burst.failRemaining(e);
+      } finally {
+         pictureLock.release();
+         burst.failRemaining(new CancellationException("Burst cancelled"));
+      }
+   }
+
+   /**
+    * Requests the pictures of a burst on the picture session, while another thread receives them. When the transfer of
+    * a picture is cut, the picture is resumed and the rest of the burst is requested again on a new session.
+    *
+    * @param burst   the burst
+    * @param channel the picture session
+    *
+    * @throws CantConnectException the picture session could not be opened again
+    */
+   private void runPipelinedBurst(PictureBurst burst, PictureChannel channel) throws CantConnectException {
+      long start = System.nanoTime();
+      int next = requestBurst(burst, channel, start, 0);
+      while (next >= 0 && next < burst.getCount() && !burst.isCancelled()) {
+         // the reading thread resumed a picture on a new session, the pictures requested after it were lost
+         channel = getPictureChannel();
+         if (channel == null) {
+            burst.failRemaining(new PictureTransferError());
+            return;
+         }
+         next = requestBurst(burst, channel, start, next);
+      }
+   }
+
+   /**
+    * Requests pictures of a burst on a picture session, until the end of the burst or until the session fails
+    *
+    * @param burst   the burst
+    * @param channel the picture session
+    * @param start   the time the burst started, from System.nanoTime()
+    * @param first   the index of the first picture to request
+    *
+    * @return the index of the next picture to request on a new session, or -1 if the burst is over
+    */
+   private int requestBurst(PictureBurst burst, PictureChannel channel, long start, int first) {
+      // the time each request was sent, in order
+      BlockingQueue<Long> requests = new LinkedBlockingQueue<>();
+      Semaphore window = new Semaphore(PictureBurst.MAX_IN_FLIGHT);
+      Future<Integer> reading = burstReader.submit(() -> receiveBurst(burst, channel, first, requests, window));
+      try {
+         for (int i = first; i < burst.getCount() && !burst.isCancelled(); i++) {
+            waitUntil(start + TimeUnit.MILLISECONDS.toNanos(i * burst.getInterval()));
+            if (!acquireRequest(burst, window, reading)) {
+               break;
+            }
+            requests.add(System.nanoTime());
+            channel.request();
+         }
+      } catch (IOException e) {
+         // the reading thread fails or resumes the pictures once the channel is closed
+         closePictureChannel(channel);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      } finally {
+         requests.add(END_OF_BURST);
+      }
+      try {
+         return reading.get();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+         burst.failRemaining(e.getCause());
+      }
+      return -1;
+   }
+
+   /**
+    * Waits until a request of a burst can be sent. The reading thread stops releasing the requests when the picture
+    * session fails, so the wait ends as well when it is done.
+    *
+    * @param burst   the burst
+    * @param window  the permits of the requests not answered yet
+    * @param reading the reading thread of the burst
+    *
+    * @return true if the request can be sent, false if the burst is cancelled or its pictures are not received anymore
+    *
+    * @throws InterruptedException the interrupted exception
+    */
+   private static boolean acquireRequest(PictureBurst burst, Semaphore window, Future<?> reading)
+           throws InterruptedException {
+      while (!window.tryAcquire(WINDOW_POLL_MS, TimeUnit.MILLISECONDS)) {
+         if (reading.isDone() || burst.isCancelled()) {
+            return false;
+         }
+      }
+      if (reading.isDone()) {
+         window.release();
+         return false;
+      }
+      return true;
+   }
+
+   /**
+    * Receives the pictures of a burst, in the order they were requested. A picture whose transfer is cut is resumed
+    * like a single picture, on a new session, and the pictures requested after it are not received.
+    *
+    * @param burst    the burst
+    * @param channel  the picture session
+    * @param first    the index of the first picture requested on the session
+    * @param requests the time each request was sent, then END_OF_BURST
+    * @param window   the permits of the requests not answered yet
+    *
+    * @return the index of the next picture to request on a new session, or -1 if the burst is over
+    */
+   private int receiveBurst(PictureBurst burst, PictureChannel channel, int first, BlockingQueue<Long> requests,
+                            Semaphore window) {
+      int index = first;
+      try {
+         long sentAt;
+         while ((sentAt = requests.take()) != END_OF_BURST) {
+            byte[] picture;
+            try {
+               picture = channel.receive();
+            } catch (PictureChannel.InterruptedTransferException e) {
+               closePictureChannel(channel);
+               burstPictureReceived(burst, index, resumePicture(e), sentAt);
+               return index + 1;
+            }
+            window.release();
+            burstPictureReceived(burst, index, picture, sentAt);
+            index++;
+         }
+      } catch (CantConnectException | PictureTransferError e) {
+         burst.failRemaining(e);
+      } catch (IOException e) {
+         closePictureChannel(channel);
+         burst.failRemaining(new PictureTransferError());
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      return -1;
+   }
+
+   private void burstPictureReceived(PictureBurst burst, int index, byte[] picture, long sentAt) {
+      if (picture == null) {
+         burst.fail(index, new RobotException());
+      } else {
+         metrics.pictureReceived(picture.length, System.nanoTime() - sentAt);
+         burst.complete(index, picture);
+      }
+   }
+
+   /**
+    * Takes the pictures of a burst one after the other, each on a connection of its own, for the robots that do not
+    * support picture sessions
+    *
+    * @param burst the burst
+    */
+   private void runSequentialBurst(PictureBurst burst) {
+      long start = System.nanoTime();
+      for (int i = 0; i < burst.getCount() && !burst.isCancelled(); i++) {
+         try {
+            waitUntil(start + TimeUnit.MILLISECONDS.toNanos(i * burst.getInterval()));
+            long sentAt = System.nanoTime();
+            byte[] picture = takeSinglePicture();
+            metrics.pictureReceived(picture.length, System.nanoTime() - sentAt);
+            burst.complete(i, picture);
+         } catch (RobotException e) {
+            burst.fail(i, e);
+         } catch (CantConnectException | PictureTransferError | IOException e) {
+            burst.failRemaining(e);
+            return;
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+         }
+      }
+   }
+
+   private static void waitUntil(long deadline) throws InterruptedException {
+      long delay = deadline - System.nanoTime();
+      if (delay > 0) {
+         TimeUnit.NANOSECONDS.sleep(delay);
+      }
+   }
+
+   /**
+    * Creates an executor of the pictures, with a single thread that ends when it has been idle for a while.
+    *
+    * @param name     the name of the thread
+    * @param capacity the number of tasks that can wait for the thread
+    *
+    * @return the executor
+    */
+   private static ExecutorService newPictureExecutor(String name, int capacity) {
+      ThreadPoolExecutor executor =
+              new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(capacity), task -> {
+                 Thread thread = new Thread(task, name);
+                 thread.setDaemon(true);
+                 return thread;
+              });
+      executor.allowCoreThreadTimeOut(true);
+      return executor;
+   }
+
+   /**
+    * Starts a live video stream from the camera of the robot. The stream is received on a picture session of its own,
+    * so pictures can still be taken while it runs. Only one stream can run at a time, starting a new one stops the
+    * previous one.
+    *
+    * @param fps     the number of frames per second wanted
+    * @param decoder the function used to decode the jpeg frames
+    * @param <T>     the type of the decoded frames
+    *
+    * @return the stream, which must be closed to stop it
+    *
+    * @throws CantConnectException the cant connect exception
+    * @throws RobotException       the robot does not support streaming
+    */
+   public synchronized <T> PictureStream<T> startStream(int fps, Function<byte[], T> decoder)
+           throws CantConnectException, RobotException {
+      if (!isConnected) {
+         throw new CantConnectException();
+      }
+      stopStream();
+      PictureChannel channel;
+      try {
+         channel = PictureChannel.open(ipAddress, PORTPICTURE);
+      } catch (Exception e) {
+         LOG.log(Level.WARNING, "Could not open the stream session", e);
+         throw new CantConnectException();
+      }
+      if (channel == null) {
+         throw new RobotException();
+      }
+      try {
+         if (!channel.startStream(fps)) {
+            channel.close();
+            throw new RobotException();
+         }
+      } catch (IOException e) {
+         channel.close();
+         throw new CantConnectException();
+      }
+      PictureStream<T> pictureStream = new PictureStream<>(channel, decoder);
+      stream = pictureStream;
+      return pictureStream;
+   }
+
+   /**
+    * Stops the video stream, if one is running
+    */
+   public synchronized void stopStream() {
+      if (stream != null) {
+         stream.close();
+         stream = null;
+      }
+   }
+
+   /**
+    * Stops a video stream, if it is still the one running. It waits for the thread receiving the frames, up to a
+    * second, so it must not be called from the thread of the ui.
+    *
+    * @param stopped the stream to stop
+    */
+   public synchronized void stopStream(PictureStream<?> stopped) {
+      if (stream == stopped) {
+         stopStream();
+      }
+   }
+
+   /**
+    * Fetches a picture on a connection of its own, for the robots that do not support picture sessions.
+    *
+    * @return the picture
+    *
+    * @throws CantConnectException the cant connect exception
+    * @throws RobotException       the robot exception
+    * @throws PictureTransferError the picture transfer error
+    * @throws IOException          the io exception
+    */
+   private byte[] takeSinglePicture()
+           throws CantConnectException, RobotException, PictureTransferError, IOException {
       PrintWriter outPic = null;
-      BufferedReader inPic = null;
+      InputStream inPic = null;
       SSLSocket socketPicture = null;
       try {
          socketPicture = createSocket(ipAddress, PORTPICTURE);
 
          outPic = new PrintWriter(socketPicture.getOutputStream(), true);
-         inPic = new BufferedReader(new InputStreamReader(socketPicture.getInputStream()));
+         // not buffered, so that the answer is read without the beginning of the picture
+         inPic = socketPicture.getInputStream();
 
-         printSocketInfo(socketPicture);
+         long handshakeStart = System.nanoTime();
          socketPicture.startHandshake();
+         metrics.handshakeDone(System.nanoTime() - handshakeStart);
+         printSocketInfo(socketPicture);
 
       } catch (Exception e) {
-         System.err.println(e.toString());
+         LOG.log(Level.WARNING, "Could not open the picture connection", e);
          throw new CantConnectException();
       }
 
-         outPic.print("PICTURE\n");
+      try (SSLSocket socket = socketPicture) {
+         outPic.print(PictureProtocol.PICTURE + "\n");
          outPic.flush();
-         String message = inPic.readLine();
+         String message = PictureProtocol.readLine(inPic);
 
-         if (!message.equals("PICTURE_OK")) {
+         if (!PictureProtocol.PICTURE_OK.equals(message)) {
             throw new RobotException();
          }
 
-         InputStream is = socketPicture.getInputStream();
-
-
-         BufferedImage bi;
+         // the picture is sent after the answer, until the end of the connection
          try {
-            bi = ImageIO.read(is);
+            byte[] picture = inPic.readAllBytes();
+            if (picture.length == 0) {
+               throw new PictureTransferError();
+            }
+            return picture;
          } catch (IOException e) {
             throw new PictureTransferError();
          }
+      }
+   }
+
+   /**
+    * Returns the picture session of this client, opening it if needed.
+    *
+    * @return the picture channel, or null if the robot does not support picture sessions
+    *
+    * @throws CantConnectException if the picture port could not be reached
+    */
+   private synchronized PictureChannel getPictureChannel() throws CantConnectException {
+      if (pictureChannel == null && pictureSessionSupported) {
+         try {
+            pictureChannel = PictureChannel.open(ipAddress, PORTPICTURE);
+         } catch (Exception e) {
+            LOG.log(Level.WARNING, "Could not open the picture session", e);
+            throw new CantConnectException();
+         }
+         pictureSessionSupported = pictureChannel != null;
+      }
+      return pictureChannel;
+   }
 
-         socketPicture.close();
+   /**
+    * Closes the picture session of this client, if there is one
+    */
+   private synchronized void closePictureChannel() {
+      if (pictureChannel != null) {
+         pictureChannel.close();
+         pictureChannel = null;
+      }
+   }
 
-         ImageIO.write(bi, "jpg", new File(imagename));
+   /**
+    * Closes a picture session, which is forgotten if it is still the one of this client. The session that replaced it
+    * is kept.
+    *
+    * @param channel the picture session
+    */
+   private synchronized void closePictureChannel(PictureChannel channel) {
+      channel.close();
+      if (pictureChannel == channel) {
+         pictureChannel = null;
+      }
+   }
 
+   /**
+    * Starts reporting the robots found on the network. The discovery runs in the background and does not block : the
+    * robots already known are reported right away, and the others as soon as they are resolved.
+    *
+    * @param onRobotFound the function called with the ip address of each robot found, from a thread of the discovery
+    *
+    * @return the subscription, to cancel once the caller does not need new robots anymore
+    */
+   public ServiceDiscovery.Subscription discoverRobots(Consumer<String> onRobotFound) {
+      return ServiceDiscovery.getShared().subscribe(onRobotFound);
    }
 
    /**
-    * Launch service discovery.
+    * Launch service discovery, and wait a bit for the robots to answer.
     *
     * @return the set of ip addresses discovered that have the correct type
     *
     * @throws InterruptedException the interrupted exception
     */
    public Set<String> launchServiceDiscovery() throws InterruptedException {
+      Set<String> addresses = ConcurrentHashMap.newKeySet();
+      ServiceDiscovery.Subscription subscription = discoverRobots(addresses::add);
       try {
-         // Create a JmDNS instance
-         JmDNS jmdns = JmDNS.create(InetAddress.getLocalHost());
-
-         SampleListener sampleListener = new SampleListener();
-         // Add a service listener
-         jmdns.addServiceListener("_robopi._tcp.local.", sampleListener);
-
          // Wait a bit
          Thread.sleep(3000);
-
-         jmdns.removeServiceListener("_robopi._tcp.local.", sampleListener);
-         jmdns.close();
-
-         return sampleListener.getAddresses();
-
-      } catch (UnknownHostException e) {
-         System.out.println(e.getMessage());
-      } catch (IOException e) {
-         System.out.println(e.getMessage());
+      } finally {
+         subscription.cancel();
       }
-      return null;
+      return addresses;
    }
 
    /**
@@ -188,18 +983,22 @@ public class Client {
     * @throws IOException the io exception
     */
    public void disconnect() throws IOException {
+      // the end of the connection is expected from now on
+      connectionGeneration.incrementAndGet();
       int count = 1;
-      String message;
+      boolean confirmed = false;
       do {
-         out.print(ProtocolCommands.disconnect.getMessage());
-         out.print("\n");
-         out.flush();
-         message = in.readLine();
-      } while (!message.equals(ProtocolCommands.disconnect.getMessageConfirmation()) && count++ != 5);
-      in.close();
-      out.close();
-      clientSocket.close();
-      if (message.equals(ProtocolCommands.disconnect.getMessageConfirmation())) {
+         try {
+            sendCommand(ProtocolCommands.disconnect);
+            confirmed = true;
+         } catch (RobotException e) {
+            // the robot did not understand, try again
+         } catch (CantConnectException e) {
+            break;
+         }
+      } while (!confirmed && count++ != 5);
+      closeConnection();
+      if (confirmed) {
          isConnected = false;
       }
 
@@ -208,43 +1007,60 @@ public class Client {
    /**
     * Ping the server and expects an answer.
     *
-    * @throws IOException             the io exception
-    * @throws LostConnectionException the connexion is lost
+    * @throws LostConnectionException the connexion is lost, also thrown if the link failed. The connection is closed.
     */
-   public void ping() throws IOException, LostConnectionException {
-      out.print(ProtocolCommands.ping.getMessage());
-      out.print("\n");
-      out.flush();
-      if (!in.readLine().equals(ProtocolCommands.ping.getMessage())) {
-         isConnected = false;
-         in.close();
-         out.close();
-         clientSocket.close();
+   public void ping() throws LostConnectionException {
+      try {
+         sendCommand(ProtocolCommands.ping);
+      } catch (RobotException | CantConnectException | IOException e) {
+         closeConnection();
          throw new LostConnectionException();
       }
    }
 
    /**
-    * Go forward.
+    * Sets the speed of each wheel, for a proportional control of the robot.
+    *
+    * @param left  the speed of the left wheel, from -100 (full speed backwards) to 100 (full speed forwards)
+    * @param right the speed of the right wheel, from -100 (full speed backwards) to 100 (full speed forwards)
     *
     * @throws RobotException       the robot exception
     * @throws IOException          the io exception
     * @throws CantConnectException the cant connect exception
     */
-   public void goForward() throws RobotException, IOException, CantConnectException {
-      if (!isConnected) {
-         throw new CantConnectException();
-      }
-      out.print(ProtocolCommands.forward.getMessage());
-      out.print("\n");
-      out.flush();
-      if (!in.readLine().equals(ProtocolCommands.forward.getMessageConfirmation())) {
-         throw new RobotException();
+   public void drive(int left, int right) throws RobotException, IOException, CantConnectException {
+      move(ProtocolCommands.drive, checkSpeed(left), checkSpeed(right));
+   }
+
+   /**
+    * Sets the speed of each wheel without waiting for the answer of the robot.
+    *
+    * @param left  the speed of the left wheel, from -100 (full speed backwards) to 100 (full speed forwards)
+    * @param right the speed of the right wheel, from -100 (full speed backwards) to 100 (full speed forwards)
+    *
+    * @return a future completed when the robot confirms the speeds, see sendAsync
+    */
+   public CompletableFuture<Void> driveAsync(int left, int right) {
+      return moveAsync(ProtocolCommands.drive, checkSpeed(left), checkSpeed(right));
+   }
+
+   private static int checkSpeed(int speed) {
+      if (Math.abs(speed) > ProtocolCommands.MAX_SPEED) {
+         throw new IllegalArgumentException("Speed out of range : " + speed);
       }
-      isMoving = true;
+      return speed;
    }
 
-   //TODO catch les ioException et throw les bonnes exc
+   /**
+    * Go forward.
+    *
+    * @throws RobotException       the robot exception
+    * @throws IOException          the io exception
+    * @throws CantConnectException the cant connect exception
+    */
+   public void goForward() throws RobotException, IOException, CantConnectException {
+      move(ProtocolCommands.forward);
+   }
 
    /**
     * Go backward.
@@ -254,20 +1070,9 @@ public class Client {
     * @throws CantConnectException the cant connect exception
     */
    public void goBackward() throws IOException, RobotException, CantConnectException {
-      if (!isConnected) {
-         throw new CantConnectException();
-      }
-      out.print(ProtocolCommands.backward.getMessage());
-      out.print("\n");
-      out.flush();
-      if (!in.readLine().equals(ProtocolCommands.backward.getMessageConfirmation())) {
-         throw new RobotException();
-      }
-      isMoving = true;
+      move(ProtocolCommands.backward);
    }
 
-   //lancer des exception dans le cas ou serveur ne reagit pas comme prevu
-
    /**
     * Go left.
     *
@@ -276,16 +1081,7 @@ public class Client {
     * @throws CantConnectException the cant connect exception
     */
    public void goLeft() throws IOException, RobotException, CantConnectException {
-      if (!isConnected) {
-         throw new CantConnectException();
-      }
-      out.print(ProtocolCommands.rotateLeft.getMessage());
-      out.print("\n");
-      out.flush();
-      if (!in.readLine().equals(ProtocolCommands.rotateLeft.getMessageConfirmation())) {
-         throw new RobotException();
-      }
-      isMoving = true;
+      move(ProtocolCommands.rotateLeft);
    }
 
    /**
@@ -296,16 +1092,7 @@ public class Client {
     * @throws CantConnectException the cant connect exception
     */
    public void goRight() throws IOException, RobotException, CantConnectException {
-      if (!isConnected) {
-         throw new CantConnectException();
-      }
-      out.print(ProtocolCommands.rotateRight.getMessage());
-      out.print("\n");
-      out.flush();
-      if (!in.readLine().equals(ProtocolCommands.rotateRight.getMessageConfirmation())) {
-         throw new RobotException();
-      }
-      isMoving = true;
+      move(ProtocolCommands.rotateRight);
    }
 
    /**
@@ -316,16 +1103,7 @@ public class Client {
     * @throws CantConnectException the cant connect exception
     */
    public void stop() throws IOException, RobotException, CantConnectException {
-      if (!isConnected) {
-         throw new CantConnectException();
-      }
-      out.print(ProtocolCommands.stop.getMessage());
-      out.print("\n");
-      out.flush();
-      if (!in.readLine().equals(ProtocolCommands.stop.getMessageConfirmation())) {
-         throw new RobotException();
-      }
-      isMoving = false;
+      move(ProtocolCommands.stop);
    }
 
    /**
@@ -335,18 +1113,8 @@ public class Client {
     * @throws RobotException       the robot exception
     * @throws CantConnectException the cant connect exception
     */
-   //TODO : a voir avec le protocole pour ces méthodes et la classe interne d'erreur
    public void goFrontLeft() throws IOException, RobotException, CantConnectException {
-      if (!isConnected) {
-         throw new CantConnectException();
-      }
-      out.print(ProtocolCommands.frontleft.getMessage());
-      out.print("\n");
-      out.flush();
-      if (!in.readLine().equals(ProtocolCommands.frontleft.getMessageConfirmation())) {
-         throw new RobotException();
-      }
-      isMoving = true;
+      move(ProtocolCommands.frontleft);
    }
 
    /**
@@ -357,16 +1125,7 @@ public class Client {
     * @throws CantConnectException the cant connect exception
     */
    public void goFrontRight() throws RobotException, IOException, CantConnectException {
-      if (!isConnected) {
-         throw new CantConnectException();
-      }
-      out.print(ProtocolCommands.frontRight.getMessage());
-      out.print("\n");
-      out.flush();
-      if (!in.readLine().equals(ProtocolCommands.frontRight.getMessageConfirmation())) {
-         throw new RobotException();
-      }
-      isMoving = true;
+      move(ProtocolCommands.frontRight);
    }
 
    /**
@@ -377,16 +1136,7 @@ public class Client {
     * @throws CantConnectException the cant connect exception
     */
    public void goBackwardsRight() throws IOException, RobotException, CantConnectException {
-      if (!isConnected) {
-         throw new CantConnectException();
-      }
-      out.print(ProtocolCommands.backwardsRight.getMessage());
-      out.print("\n");
-      out.flush();
-      if (!in.readLine().equals(ProtocolCommands.backwardsRight.getMessageConfirmation())) {
-         throw new RobotException();
-      }
-      isMoving = true;
+      move(ProtocolCommands.backwardsRight);
    }
 
    /**
@@ -397,16 +1147,287 @@ public class Client {
     * @throws CantConnectException the cant connect exception
     */
    public void goBackwardsLeft() throws IOException, RobotException, CantConnectException {
-      if (!isConnected) {
-         throw new CantConnectException();
+      move(ProtocolCommands.backwardsLeft);
+   }
+
+   /**
+    * Sends a command and waits for the robot to confirm it.
+    *
+    * @param command   the command
+    * @param arguments the arguments of the command
+    *
+    * @throws IOException          the connection was lost before the answer
+    * @throws RobotException       the robot gave a wrong answer
+    * @throws CantConnectException the client is not connected
+    */
+   private void sendCommand(ProtocolCommands command, int... arguments)
+           throws IOException, RobotException, CantConnectException {
+      await(sendAsync(command, arguments));
+   }
+
+   /**
+    * Asks for a movement through the coalescing stage and waits for the robot to confirm it, or the movement sent in
+    * its place.
+    *
+    * @param command   the movement command
+    * @param arguments the arguments of the command
+    *
+    * @throws IOException          the connection was lost before the answer
+    * @throws RobotException       the robot gave a wrong answer
+    * @throws CantConnectException the client is not connected
+    */
+   private void move(ProtocolCommands command, int... arguments)
+           throws IOException, RobotException, CantConnectException {
+      await(moveAsync(command, arguments));
+   }
+
+   /**
+    * Waits for the answer of the robot to a command.
+    *
+    * @param answer the future of the answer
+    *
+    * @throws IOException          the connection was lost before the answer
+    * @throws RobotException       the robot gave a wrong answer
+    * @throws CantConnectException the client is not connected
+    */
+   private void await(CompletableFuture<Void> answer) throws IOException, RobotException, CantConnectException {
+      try {
+         answer.get();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException();
+      } catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+         if (cause instanceof RobotException) {
+            throw (RobotException) cause;
+         } else if (cause instanceof CantConnectException) {
+            throw (CantConnectException) cause;
+         } else if (cause instanceof IOException) {
+            throw (IOException) cause;
+         }
+         throw new IOException(cause);
       }
-      out.print(ProtocolCommands.backwardsLeft.getMessage());
-      out.print("\n");
-      out.flush();
-      if (!in.readLine().equals(ProtocolCommands.backwardsLeft.getMessageConfirmation())) {
-         throw new RobotException();
+   }
+
+   /**
+    * Reads the answers of the robot and completes the pending commands with them, until the connection is closed.
+    *
+    * @param socket              the socket of the connection
+    * @param connectionTransport the transport of the connection
+    * @param connectionPending   the commands waiting for an answer on this connection
+    * @param generation          the generation of the connection
+    */
+   private void readAnswers(SSLSocket socket, StreamTransport connectionTransport,
+                            Queue<PendingCommand> connectionPending, int generation) {
+      try {
+         while (true) {
+            answerReceived(connectionTransport.receive(), connectionPending);
+         }
+      } catch (IOException e) {
+         // the connection is lost or was closed
+      }
+      try {
+         socket.close();
+      } catch (IOException e) {
+      }
+      connectionEnded(connectionTransport, connectionPending, generation);
+   }
+
+   /**
+    * Completes the oldest pending command with the answer of the robot
+    *
+    * @param confirmed         the command confirmed by the answer, or null if it does not confirm any command
+    * @param connectionPending the commands waiting for an answer on the connection
+    */
+   private void answerReceived(ProtocolCommands confirmed, Queue<PendingCommand> connectionPending) {
+      PendingCommand command = connectionPending.poll();
+      lastAnswerTime = System.nanoTime();
+      if (command == null) {
+         LOG.log(Level.WARNING, "Unexpected answer from the robot : {0}", confirmed);
+      } else if (confirmed == command.command) {
+         if (command.isMotion()) {
+            isMoving = !command.stopsRobot();
+            lastMotion = isMoving ? command : null;
+         }
+         metrics.commandConfirmed(command.command, lastAnswerTime - command.sentAt);
+         command.future.complete(null);
+      } else {
+         metrics.commandFailed(command.command);
+         command.future.completeExceptionally(new RobotException());
+      }
+   }
+
+   /**
+    * Fails the commands still waiting for an answer once the connection is closed, and reconnects if it was lost
+    *
+    * @param connectionTransport the transport of the connection
+    * @param connectionPending   the commands waiting for an answer on the connection
+    * @param generation          the generation of the connection
+    */
+   private void connectionEnded(CommandTransport connectionTransport, Queue<PendingCommand> connectionPending,
+                                int generation) {
+      synchronized (writeLock) {
+         if (connectionPending == pending) {
+            isConnected = false;
+         }
+         PendingCommand command;
+         while ((command = connectionPending.poll()) != null) {
+            metrics.commandFailed(command.command);
+            command.future.completeExceptionally(new IOException("Connection lost"));
+         }
+      }
+      try {
+         connectionTransport.close();
+      } catch (IOException e) {
+      }
+      if (generation == connectionGeneration.get()) {
+         connectionLost(generation);
+      }
+   }
+
+   /**
+    * Reacts to the loss of a connection that was not closed on purpose : notifies the listener and starts to
+    * reconnect if a reconnect policy is set.
+    *
+    * @param generation the generation of the lost connection
+    */
+   private void connectionLost(int generation) {
+      LOG.log(Level.WARNING, "Connection to {0} lost", ipAddress);
+      ReconnectPolicy policy = reconnectPolicy;
+      String ip = ipAddress;
+      reconnecting = policy != null;
+      notifyConnectionListener(ConnectionEvent.LOST);
+      if (policy != null) {
+         Thread reconnectThread = new Thread(() -> reconnect(policy, ip, generation), "robotpi-reconnect-" + ip);
+         reconnectThread.setDaemon(true);
+         reconnectThread.start();
+      }
+   }
+
+   /**
+    * Tries to connect again to the robot, following the policy, until it works, the policy gives up, or the client is
+    * connected or disconnected by someone else. The TLS session of the lost connection is resumed when the robot still
+    * knows it, so the handshake is shorter than the first one. Once reconnected, the robot is stopped or sent its last
+    * movement again.
+    *
+    * @param policy     the reconnect policy
+    * @param ip         the ip address of the robot
+    * @param generation the generation of the lost connection
+    */
+   private void reconnect(ReconnectPolicy policy, String ip, int generation) {
+      PendingCommand motion = lastMotion;
+      long start = System.nanoTime();
+      for (int attempt = 0; policy.allows(attempt); attempt++) {
+         try {
+            Thread.sleep(policy.delay(attempt));
+         } catch (InterruptedException e) {
+            break;
+         }
+         if (connectionGeneration.get() != generation) {
+            // connected or disconnected in the meantime
+            reconnecting = false;
+            return;
+         }
+         try {
+            connect(ip);
+         } catch (CommException | IOException e) {
+            generation = connectionGeneration.get();
+            continue;
+         }
+         metrics.reconnected(System.nanoTime() - start);
+         reconnecting = false;
+         if (policy.isRestoringMotion() && motion != null) {
+            moveAsync(motion.command, motion.arguments);
+         } else {
+            moveAsync(ProtocolCommands.stop);
+         }
+         LOG.log(Level.INFO, "Reconnected to {0} after {1} attempts", new Object[]{ip, attempt + 1});
+         notifyConnectionListener(ConnectionEvent.RESTORED);
+         return;
+      }
+      reconnecting = false;
+      metrics.reconnectFailed();
+      notifyConnectionListener(ConnectionEvent.GAVE_UP);
+   }
+
+   private void notifyConnectionListener(ConnectionEvent event) {
+      Consumer<ConnectionEvent> listener = connectionListener;
+      if (listener != null) {
+         listener.accept(event);
+      }
+   }
+
+   /**
+    * Sets the policy used to reconnect to the robot when the connection is lost. By default the client does not
+    * reconnect.
+    *
+    * @param reconnectPolicy the policy, or null to never reconnect
+    */
+   public void setReconnectPolicy(ReconnectPolicy reconnectPolicy) {
+      this.reconnectPolicy = reconnectPolicy;
+   }
+
+   /**
+    * Sets the listener notified when the connection is lost, restored, or when the client gives up reconnecting. It
+    * is called by the threads of the client, and is not notified when the connection is closed on purpose.
+    *
+    * @param connectionListener the listener, or null to remove it
+    */
+   public void setConnectionListener(Consumer<ConnectionEvent> connectionListener) {
+      this.connectionListener = connectionListener;
+   }
+
+   /**
+    * Tells whether the client is trying to reconnect to the robot.
+    *
+    * @return true while reconnecting
+    */
+   public boolean isReconnecting() {
+      return reconnecting;
+   }
+
+   /**
+    * Closes the connection to the robot and everything that depends on it, without telling the robot
+    */
+   void closeConnection() {
+      synchronized (writeLock) {
+         isConnected = false;
+         if (connection != null) {
+            closeSocket();
+         }
+      }
+      closePictureChannel();
+      stopStream();
+   }
+
+   /**
+    * Closes the socket of the connection. The reading thread, or the selector loop, then ends the connection by itself
+    * and releases the transport.
+    */
+   private void closeSocket() {
+      try {
+         connection.close();
+      } catch (IOException e) {
       }
-      isMoving = true;
+   }
+
+   /**
+    * Returns the measures of the activity of this client, kept for its whole life, across the connections.
+    *
+    * @return the metrics
+    */
+   public ClientMetrics getMetrics() {
+      return metrics;
+   }
+
+   /**
+    * Returns the time the robot last answered a command, or the time of the connection if it did not answer any yet.
+    * Every answer shows that the connection is alive, not only the answers to the pings.
+    *
+    * @return the time of the last answer, as given by System.nanoTime
+    */
+   long getLastAnswerTime() {
+      return lastAnswerTime;
    }
 
    /**
@@ -418,6 +1439,41 @@ public class Client {
       return isMoving;
    }
 
+   /**
+    * Tells whether a command changes the movement of the robot
+    *
+    * @param command the command
+    *
+    * @return true for the movements and stop
+    */
+   private static boolean isMotion(ProtocolCommands command) {
+      return command != ProtocolCommands.conn && command != ProtocolCommands.disconnect &&
+             command != ProtocolCommands.ping && command != ProtocolCommands.mission;
+   }
+
+   /**
+    * Returns the SSL context shared by every socket opened by the clients of this process. The context is built once,
+    * on first use, so the trust store is only parsed once. Since all sockets come from the same context they also
+    * share its session cache, which allows TLS sessions to be resumed instead of doing a full handshake each time.
+    *
+    * @return the shared SSLContext
+    *
+    * @throws Exception if the context could not be created
+    */
+   static SSLContext getSSLContext() throws Exception {
+      SSLContext context = sharedContext;
+      if (context == null) {
+         synchronized (Client.class) {
+            context = sharedContext;
+            if (context == null) {
+               context = initTLS();
+               sharedContext = context;
+            }
+         }
+      }
+      return context;
+   }
+
    /**
     * Create SSL context
     * @return SSLContext
@@ -446,6 +1502,11 @@ public class Client {
       SSLContext sslContext = SSLContext.getInstance("TLS");
       sslContext.init(null, new TrustManager[]{x509TrustManager}, null);
 
+      // keep the sessions of both ports so that they can be resumed
+      SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+      sessionContext.setSessionCacheSize(SESSION_CACHE_SIZE);
+      sessionContext.setSessionTimeout(SESSION_TIMEOUT);
+
       return sslContext;
    }
 
@@ -456,27 +1517,70 @@ public class Client {
     * @return SSLSocket
     * @throws IOException
     */
-   private static SSLSocket createSocket(String host, int port) throws Exception {
-      SSLContext sslContext = initTLS();
-      SSLSocketFactory socketFactory = sslContext.getSocketFactory();
+   static SSLSocket createSocket(String host, int port) throws Exception {
+      SSLSocketFactory socketFactory = getSSLContext().getSocketFactory();
       SSLSocket socket = (SSLSocket) socketFactory.createSocket(host, port);
+      // commands are small lines, they must not wait for the delayed acks of the previous ones
+      socket.setTcpNoDelay(true);
       socket.setEnabledProtocols(PROTOCOLS);
       socket.setEnabledCipherSuites(socket.getSupportedCipherSuites());
 
       return socket;
    }
 
+   /**
+    * Create the SSL engine of a connection driven by a selector, with the same settings as the sockets
+    * @param host IP
+    * @param port port
+    * @return SSLEngine in client mode
+    * @throws Exception
+    */
+   static SSLEngine createEngine(String host, int port) throws Exception {
+      SSLEngine engine = getSSLContext().createSSLEngine(host, port);
+      engine.setUseClientMode(true);
+      engine.setEnabledProtocols(PROTOCOLS);
+      engine.setEnabledCipherSuites(engine.getSupportedCipherSuites());
+
+      return engine;
+   }
+
+   /**
+    * Logs the details of a socket whose handshake is done, at the FINE level
+    *
+    * @param s the socket
+    */
    private static void printSocketInfo(SSLSocket s) {
-      System.out.println("Socket class: " + s.getClass());
-      System.out.println("   Remote address = " + s.getInetAddress().toString());
-      System.out.println("   Remote port = " + s.getPort());
-      System.out.println("   Local socket address = " + s.getLocalSocketAddress().toString());
-      System.out.println("   Local address = " + s.getLocalAddress().toString());
-      System.out.println("   Local port = " + s.getLocalPort());
-      System.out.println("   Need client authentication = " + s.getNeedClientAuth());
+      if (!LOG.isLoggable(Level.FINE)) {
+         return;
+      }
       SSLSession ss = s.getSession();
-      System.out.println("   Cipher suite = " + ss.getCipherSuite());
-      System.out.println("   Protocol = " + ss.getProtocol());
+      LOG.fine("Socket class: " + s.getClass() + "\n" +
+               "   Remote address = " + s.getInetAddress().toString() + "\n" +
+               "   Remote port = " + s.getPort() + "\n" +
+               "   Local socket address = " + s.getLocalSocketAddress().toString() + "\n" +
+               "   Local address = " + s.getLocalAddress().toString() + "\n" +
+               "   Local port = " + s.getLocalPort() + "\n" +
+               "   Need client authentication = " + s.getNeedClientAuth() + "\n" +
+               "   Cipher suite = " + ss.getCipherSuite() + "\n" +
+               "   Protocol = " + ss.getProtocol());
+   }
+
+   /**
+    * The events of the connection reported to the connection listener
+    */
+   public enum ConnectionEvent {
+      /**
+       * The connection was lost
+       */
+      LOST,
+      /**
+       * The connection was restored after being lost
+       */
+      RESTORED,
+      /**
+       * The client gave up reconnecting
+       */
+      GAVE_UP
    }
 
    /**
@@ -520,28 +1624,28 @@ public class Client {
    }
 
 
-   private class SampleListener implements ServiceListener {
-
-      private final String NAME = "_robopi._tcp.local.";
-      @Getter private Set<String> addresses = new HashSet<>();
-
-      @Override
-      public void serviceAdded(ServiceEvent event) {
-         System.out.println("Service added: " + event.getInfo());
+   /**
+    * A command sent to the robot, waiting for its answer
+    */
+   private static class PendingCommand {
+      private final ProtocolCommands command;
+      private final int[] arguments;
+      private final CompletableFuture<Void> future;
+      private final long sentAt = System.nanoTime();
+
+      private PendingCommand(ProtocolCommands command, int[] arguments, CompletableFuture<Void> future) {
+         this.command = command;
+         this.arguments = arguments;
+         this.future = future;
       }
 
-      @Override
-      public void serviceRemoved(ServiceEvent event) {
-         System.out.println("Service removed: " + event.getInfo());
+      private boolean stopsRobot() {
+         return command == ProtocolCommands.stop ||
+                (command == ProtocolCommands.drive && arguments[0] == 0 && arguments[1] == 0);
       }
 
-      @Override
-      public void serviceResolved(ServiceEvent event) {
-         System.out.println("Service resolved: " + event.getInfo());
-         if (event.getType().equals(NAME)) {
-            InetAddress addr = event.getInfo().getInet4Addresses()[0];
-            addresses.add(addr.getHostAddress());
-         }
+      private boolean isMotion() {
+         return Client.isMotion(command);
       }
    }
 }
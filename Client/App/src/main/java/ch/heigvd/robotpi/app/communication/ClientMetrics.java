@@ -0,0 +1,381 @@
+/*
+ * @File ClientMetrics.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.ProtocolCommands;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The measures of the activity of a client : the commands sent, confirmed and failed, their round trip time, the time
+ * of the TLS handshakes, the size and transfer time of the pictures, the number of connections and the time taken by
+ * the automatic reconnections. Recording a measure only updates counters, it never allocates nor takes a lock, so it
+ * can be done on every command.
+ * <p>
+ * The measures are read by pulling a snapshot, a map from the name of each measure to its value, which the exporters
+ * read at their own pace : {@link #registerMBean(String)} publishes it through JMX and {@link MetricsFileDumper} writes
+ * it to a file.
+ */
+public class ClientMetrics implements ClientMetricsMXBean {
+   private static final ProtocolCommands[] COMMANDS = ProtocolCommands.values();
+   private final LongAdder[] sent = adders(COMMANDS.length);
+   private final LongAdder[] confirmed = adders(COMMANDS.length);
+   private final LongAdder[] failed = adders(COMMANDS.length);
+   private final Histogram[] latency = new Histogram[COMMANDS.length];
+   private final Histogram handshakeTime = new Histogram();
+   private final Histogram pictureSize = new Histogram();
+   private final Histogram pictureTime = new Histogram();
+   private final LongAdder connections = new LongAdder();
+   private final LongAdder reconnections = new LongAdder();
+   private final Histogram reconnectTime = new Histogram();
+   private final LongAdder reconnectFailures = new LongAdder();
+
+   /**
+    * Instantiates new metrics, all at zero
+    */
+   public ClientMetrics() {
+      for (int i = 0; i < latency.length; i++) {
+         latency[i] = new Histogram();
+      }
+   }
+
+   private static LongAdder[] adders(int count) {
+      LongAdder[] adders = new LongAdder[count];
+      for (int i = 0; i < count; i++) {
+         adders[i] = new LongAdder();
+      }
+      return adders;
+   }
+
+   /**
+    * Records a command sent to the robot
+    *
+    * @param command the command
+    */
+   void commandSent(ProtocolCommands command) {
+      sent[command.ordinal()].increment();
+   }
+
+   /**
+    * Records a command confirmed by the robot
+    *
+    * @param command the command
+    * @param nanos   the time between the sending of the command and its confirmation, in nanoseconds
+    */
+   void commandConfirmed(ProtocolCommands command, long nanos) {
+      confirmed[command.ordinal()].increment();
+      latency[command.ordinal()].record(nanos);
+   }
+
+   /**
+    * Records a command that the robot refused, or that was not answered before the connection was lost
+    *
+    * @param command the command
+    */
+   void commandFailed(ProtocolCommands command) {
+      failed[command.ordinal()].increment();
+   }
+
+   /**
+    * Records a TLS handshake
+    *
+    * @param nanos the time of the handshake, in nanoseconds
+    */
+   void handshakeDone(long nanos) {
+      handshakeTime.record(nanos);
+   }
+
+   /**
+    * Records a picture received from the robot
+    *
+    * @param bytes the size of the picture
+    * @param nanos the time between the request and the end of the transfer, in nanoseconds
+    */
+   void pictureReceived(long bytes, long nanos) {
+      pictureSize.record(bytes);
+      pictureTime.record(nanos);
+   }
+
+   /**
+    * Records a connection to a robot
+    *
+    * @param reconnection true if the client was connected before
+    */
+   void connected(boolean reconnection) {
+      connections.increment();
+      if (reconnection) {
+         reconnections.increment();
+      }
+   }
+
+   /**
+    * Records an automatic reconnection
+    *
+    * @param nanos the time between the loss of the connection and its restoration, in nanoseconds
+    */
+   void reconnected(long nanos) {
+      reconnectTime.record(nanos);
+   }
+
+   /**
+    * Records an automatic reconnection that gave up
+    */
+   void reconnectFailed() {
+      reconnectFailures.increment();
+   }
+
+   /**
+    * Gets the number of times a command was sent.
+    *
+    * @param command the command
+    *
+    * @return the number of times it was sent
+    */
+   public long getSent(ProtocolCommands command) {
+      return sent[command.ordinal()].sum();
+   }
+
+   /**
+    * Gets the number of times a command was confirmed by the robot.
+    *
+    * @param command the command
+    *
+    * @return the number of times it was confirmed
+    */
+   public long getConfirmed(ProtocolCommands command) {
+      return confirmed[command.ordinal()].sum();
+   }
+
+   /**
+    * Gets the number of times a command failed.
+    *
+    * @param command the command
+    *
+    * @return the number of times it failed
+    */
+   public long getFailed(ProtocolCommands command) {
+      return failed[command.ordinal()].sum();
+   }
+
+   /**
+    * Gets the histogram of the round trip time of a command, in nanoseconds.
+    *
+    * @param command the command
+    *
+    * @return the histogram
+    */
+   public Histogram getLatency(ProtocolCommands command) {
+      return latency[command.ordinal()];
+   }
+
+   /**
+    * Gets the histogram of the time of the TLS handshakes, in nanoseconds.
+    *
+    * @return the histogram
+    */
+   public Histogram getHandshakeTime() {
+      return handshakeTime;
+   }
+
+   /**
+    * Gets the histogram of the size of the pictures, in bytes.
+    *
+    * @return the histogram
+    */
+   public Histogram getPictureSize() {
+      return pictureSize;
+   }
+
+   /**
+    * Gets the histogram of the transfer time of the pictures, in nanoseconds.
+    *
+    * @return the histogram
+    */
+   public Histogram getPictureTime() {
+      return pictureTime;
+   }
+
+   /**
+    * Gets the number of connections to a robot.
+    *
+    * @return the number of connections
+    */
+   public long getConnections() {
+      return connections.sum();
+   }
+
+   /**
+    * Gets the number of connections made by a client that was already connected before.
+    *
+    * @return the number of reconnections
+    */
+   public long getReconnections() {
+      return reconnections.sum();
+   }
+
+   /**
+    * Gets the histogram of the time taken by the automatic reconnections, in nanoseconds.
+    *
+    * @return the histogram
+    */
+   public Histogram getReconnectTime() {
+      return reconnectTime;
+   }
+
+   /**
+    * Gets the number of automatic reconnections that gave up.
+    *
+    * @return the number of failed reconnections
+    */
+   public long getReconnectFailures() {
+      return reconnectFailures.sum();
+   }
+
+   /**
+    * Takes a snapshot of all the measures. The commands that were never sent are left out. The values are read one
+    * after the other while the client runs, so they may be slightly inconsistent with each other.
+    *
+    * @return the value of each measure, by name
+    */
+   @Override
+   public Map<String, Long> getSnapshot() {
+      Map<String, Long> snapshot = new TreeMap<>();
+      for (ProtocolCommands command : COMMANDS) {
+         long sentCount = getSent(command);
+         if (sentCount == 0) {
+            continue;
+         }
+         String prefix = "command." + command.getMessage() + ".";
+         snapshot.put(prefix + "sent", sentCount);
+         snapshot.put(prefix + "confirmed", getConfirmed(command));
+         snapshot.put(prefix + "failed", getFailed(command));
+         getLatency(command).addTo(snapshot, prefix + "latency_ns");
+      }
+      handshakeTime.addTo(snapshot, "handshake_ns");
+      pictureSize.addTo(snapshot, "picture.bytes");
+      pictureTime.addTo(snapshot, "picture.transfer_ns");
+      snapshot.put("connections", getConnections());
+      snapshot.put("reconnections", getReconnections());
+      reconnectTime.addTo(snapshot, "reconnect_ns");
+      snapshot.put("reconnect.failures", getReconnectFailures());
+      return snapshot;
+   }
+
+   /**
+    * Publishes the snapshot of these measures through JMX, under the name
+    * "ch.heigvd.robotpi:type=Client,name=&lt;name&gt;".
+    *
+    * @param name the name of the client
+    *
+    * @throws JMException the registration failed, for example because the name is already used
+    */
+   public void registerMBean(String name) throws JMException {
+      ManagementFactory.getPlatformMBeanServer()
+                       .registerMBean(this, new ObjectName("ch.heigvd.robotpi:type=Client,name=" + name));
+   }
+
+   /**
+    * A histogram whose buckets are the powers of two : a value v is counted in the bucket of index
+    * 64 - numberOfLeadingZeros(v), so the bucket i holds the values from 2^(i-1) to 2^i - 1. The precision is a factor
+    * of two, which is enough to see the order of magnitude of a latency or a size, and recording a value is only a few
+    * additions.
+    */
+   public static class Histogram {
+      private static final int BUCKETS = 65;
+      private final LongAdder[] buckets = adders(BUCKETS);
+      private final LongAdder count = new LongAdder();
+      private final LongAdder sum = new LongAdder();
+      private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+      /**
+       * Records a value
+       *
+       * @param value the value, negative values are counted as 0
+       */
+      public void record(long value) {
+         value = Math.max(0, value);
+         buckets[64 - Long.numberOfLeadingZeros(value)].increment();
+         count.increment();
+         sum.add(value);
+         max.accumulate(value);
+      }
+
+      /**
+       * Gets the number of values recorded.
+       *
+       * @return the count
+       */
+      public long getCount() {
+         return count.sum();
+      }
+
+      /**
+       * Gets the sum of the values recorded.
+       *
+       * @return the sum
+       */
+      public long getSum() {
+         return sum.sum();
+      }
+
+      /**
+       * Gets the largest value recorded.
+       *
+       * @return the largest value, 0 if none was recorded
+       */
+      public long getMax() {
+         return max.get();
+      }
+
+      /**
+       * Gets the mean of the values recorded.
+       *
+       * @return the mean, 0 if none was recorded
+       */
+      public long getMean() {
+         long total = getCount();
+         return total == 0 ? 0 : getSum() / total;
+      }
+
+      /**
+       * Estimates a percentile of the values recorded, as the upper bound of the bucket holding it.
+       *
+       * @param percentile the percentile, between 0 and 100
+       *
+       * @return the estimate, never more than the largest value
+       */
+      public long getPercentile(double percentile) {
+         long total = getCount();
+         if (total == 0) {
+            return 0;
+         }
+         long rank = (long) Math.ceil(total * percentile / 100);
+         long seen = 0;
+         for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i].sum();
+            if (seen >= rank) {
+               long upper = i == 0 ? 0 : i == 64 ? Long.MAX_VALUE : (1L << i) - 1;
+               return Math.min(upper, getMax());
+            }
+         }
+         return getMax();
+      }
+
+      private void addTo(Map<String, Long> snapshot, String prefix) {
+         snapshot.put(prefix + ".count", getCount());
+         snapshot.put(prefix + ".mean", getMean());
+         snapshot.put(prefix + ".p50", getPercentile(50));
+         snapshot.put(prefix + ".p99", getPercentile(99));
+         snapshot.put(prefix + ".max", getMax());
+      }
+   }
+}
@@ -0,0 +1,20 @@
+/*
+ * @File ClientMetricsMXBean.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import java.util.Map;
+
+/**
+ * The measures of a client, as published through JMX
+ */
+public interface ClientMetricsMXBean {
+   /**
+    * Takes a snapshot of all the measures.
+    *
+    * @return the value of each measure, by name
+    */
+   Map<String, Long> getSnapshot();
+}
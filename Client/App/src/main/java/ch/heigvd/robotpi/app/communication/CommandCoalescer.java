@@ -0,0 +1,208 @@
+/*
+ * @File CommandCoalescer.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.ProtocolCommands;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * The stage through which a client sends the movements of the robot, whoever asks for them. A movement equal to the
+ * last one sent is dropped, since the robot is already doing it. Within the coalescing window following a movement,
+ * the next movements are held and only the last of them is sent when the window ends, so that quick changes of
+ * direction do not flood the link. Stopping the robot is never held nor dropped : it is sent at once, and replaces the
+ * movement held if there is one.
+ * <p>
+ * The future of a movement that was dropped or replaced completes with the one of the command sent in its place.
+ */
+class CommandCoalescer {
+   private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(task -> {
+      Thread thread = new Thread(task, "robotpi-coalescer");
+      thread.setDaemon(true);
+      return thread;
+   });
+   private final BiFunction<ProtocolCommands, int[], CompletableFuture<Void>> sender;
+   private final AtomicLong dropped = new AtomicLong();
+   private final AtomicLong merged = new AtomicLong();
+   private volatile long window = 0;
+   // guarded by this
+   private Motion last = null;
+   private Motion held = null;
+   private long lastSentAt = 0;
+   private ScheduledFuture<?> flush = null;
+
+   /**
+    * Instantiates a new coalescer.
+    *
+    * @param sender sends a command to the robot and returns the future of its answer
+    */
+   CommandCoalescer(BiFunction<ProtocolCommands, int[], CompletableFuture<Void>> sender) {
+      this.sender = sender;
+   }
+
+   /**
+    * Sets the coalescing window. The default window is 0, in which case the movements are never held and only the
+    * duplicates are dropped.
+    *
+    * @param window the time during which the movements following a sent one are merged, in milliseconds
+    */
+   void setWindow(long window) {
+      if (window < 0) {
+         throw new IllegalArgumentException("The window cannot be negative");
+      }
+      this.window = window;
+   }
+
+   /**
+    * Asks for a movement of the robot.
+    *
+    * @param command   the movement command
+    * @param arguments the arguments of the command
+    *
+    * @return a future completed when the robot confirms the movement, or the one sent in its place
+    */
+   synchronized CompletableFuture<Void> submit(ProtocolCommands command, int... arguments) {
+      Motion motion = new Motion(command, arguments);
+      if (motion.stopsRobot()) {
+         if (held != null) {
+            cancelFlush();
+            held.follow(motion.future);
+            held = null;
+            merged.incrementAndGet();
+         }
+         send(motion);
+      } else if (held != null) {
+         if (!held.sameAs(motion)) {
+            held.follow(motion.future);
+            held = motion;
+            merged.incrementAndGet();
+         } else {
+            dropped.incrementAndGet();
+            motion.follow(held.future);
+         }
+      } else if (last != null && last.sameAs(motion) && !last.future.isCompletedExceptionally()) {
+         dropped.incrementAndGet();
+         motion.follow(last.future);
+      } else {
+         long wait = lastSentAt + TimeUnit.MILLISECONDS.toNanos(window) - System.nanoTime();
+         if (last != null && wait > 0) {
+            held = motion;
+            flush = TIMER.schedule(this::flush, wait, TimeUnit.NANOSECONDS);
+         } else {
+            send(motion);
+         }
+      }
+      return motion.future;
+   }
+
+   /**
+    * Forgets the last movement sent, as after a new connection, and fails the movement held if there is one
+    */
+   synchronized void reset() {
+      if (held != null) {
+         cancelFlush();
+         held.future.completeExceptionally(new IOException("Connection replaced before the movement was sent"));
+         held = null;
+      }
+      last = null;
+   }
+
+   /**
+    * Gets the number of movements dropped because the robot was already doing them.
+    *
+    * @return the number of duplicates dropped
+    */
+   long getDropped() {
+      return dropped.get();
+   }
+
+   /**
+    * Gets the number of movements replaced by a later one within the coalescing window.
+    *
+    * @return the number of movements merged
+    */
+   long getMerged() {
+      return merged.get();
+   }
+
+   /**
+    * Sends the movement held, at the end of the coalescing window
+    */
+   private synchronized void flush() {
+      flush = null;
+      Motion motion = held;
+      held = null;
+      if (motion == null) {
+         return;
+      }
+      if (last != null && last.sameAs(motion) && !last.future.isCompletedExceptionally()) {
+         // the direction changed and came back within the window
+         dropped.incrementAndGet();
+         motion.follow(last.future);
+      } else {
+         send(motion);
+      }
+   }
+
+   private void send(Motion motion) {
+      motion.follow(sender.apply(motion.command, motion.arguments));
+      last = motion;
+      lastSentAt = System.nanoTime();
+   }
+
+   private void cancelFlush() {
+      if (flush != null) {
+         flush.cancel(false);
+         flush = null;
+      }
+   }
+
+   /**
+    * A movement asked to the coalescer
+    */
+   private static class Motion {
+      private final ProtocolCommands command;
+      private final int[] arguments;
+      private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+      private Motion(ProtocolCommands command, int[] arguments) {
+         this.command = command;
+         this.arguments = arguments;
+      }
+
+      private boolean stopsRobot() {
+         return command == ProtocolCommands.stop ||
+                (command == ProtocolCommands.drive && arguments[0] == 0 && arguments[1] == 0);
+      }
+
+      private boolean sameAs(Motion other) {
+         return command == other.command && Arrays.equals(arguments, other.arguments);
+      }
+
+      /**
+       * Completes the future of this movement as the given one completes
+       *
+       * @param other the future of the command sent in place of this movement
+       */
+      private void follow(CompletableFuture<Void> other) {
+         other.whenComplete((result, error) -> {
+            if (error != null) {
+               future.completeExceptionally(error);
+            } else {
+               future.complete(null);
+            }
+         });
+      }
+   }
+}
@@ -0,0 +1,161 @@
+/*
+ * @File CommandQueue.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.ProtocolCommands;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Sends the movements wanted by the user to the robot. The ui pushes a movement each time a key or a button changes
+ * and never waits : a dedicated thread takes the movements from the queue and sends them one at a time, waiting for
+ * the answer of the robot before sending the next one. The movements pushed in the meantime are collapsed, only the
+ * last one is sent, and it is not sent at all if the robot is already doing it.
+ */
+public class CommandQueue implements Closeable {
+   private static final Set<ProtocolCommands> MOVEMENTS =
+           EnumSet.of(ProtocolCommands.forward, ProtocolCommands.backward, ProtocolCommands.rotateLeft,
+                      ProtocolCommands.rotateRight, ProtocolCommands.frontleft, ProtocolCommands.frontRight,
+                      ProtocolCommands.backwardsLeft, ProtocolCommands.backwardsRight, ProtocolCommands.stop);
+   private final Client client;
+   private final BlockingQueue<ProtocolCommands> movements = new LinkedBlockingQueue<>();
+   private final Thread sender;
+   private final AtomicLong pushed = new AtomicLong();
+   private final AtomicLong sent = new AtomicLong();
+   private volatile boolean running = true;
+   private volatile boolean resetRequested = false;
+   private volatile Consumer<Exception> errorListener = null;
+   // the last movement confirmed by the robot, only used by the sending thread
+   private ProtocolCommands lastSent = ProtocolCommands.stop;
+
+   /**
+    * Instantiates a new command queue and starts its sending thread.
+    *
+    * @param client the client connected to the robot
+    */
+   public CommandQueue(Client client) {
+      this.client = client;
+      this.sender = new Thread(this::sendMovements, "robotpi-commands");
+      sender.setDaemon(true);
+      sender.start();
+   }
+
+   /**
+    * Sets the listener notified when a movement could not be sent. It is called by the sending thread with a
+    * RobotException if the robot gave a wrong answer, or another exception if the connection is lost.
+    *
+    * @param errorListener the listener, or null to remove it
+    */
+   public void setErrorListener(Consumer<Exception> errorListener) {
+      this.errorListener = errorListener;
+   }
+
+   /**
+    * Asks for a movement of the robot. This method never blocks.
+    *
+    * @param movement the movement command, stop to stop the robot
+    */
+   public void push(ProtocolCommands movement) {
+      if (!MOVEMENTS.contains(movement)) {
+         throw new IllegalArgumentException(movement.getMessage() + " is not a movement");
+      }
+      pushed.incrementAndGet();
+      movements.add(movement);
+   }
+
+   /**
+    * Drops the movements not sent yet and considers the robot stopped, as it is after a new connection
+    */
+   public void reset() {
+      movements.clear();
+      resetRequested = true;
+   }
+
+   /**
+    * Gets the number of movements pushed by the ui.
+    *
+    * @return the number of movements pushed
+    */
+   public long getPushedMovements() {
+      return pushed.get();
+   }
+
+   /**
+    * Gets the number of movements sent to the robot.
+    *
+    * @return the number of movements sent
+    */
+   public long getSentMovements() {
+      return sent.get();
+   }
+
+   /**
+    * Stops the sending thread. The movements not sent yet are dropped.
+    */
+   @Override
+   public void close() {
+      running = false;
+      sender.interrupt();
+   }
+
+   /**
+    * The loop of the sending thread
+    */
+   private void sendMovements() {
+      List<ProtocolCommands> waiting = new ArrayList<>();
+      while (running) {
+         ProtocolCommands movement;
+         try {
+            movement = movements.take();
+         } catch (InterruptedException e) {
+            break;
+         }
+         // only the last of the movements pushed while the previous one was sent matters
+         waiting.clear();
+         movements.drainTo(waiting);
+         if (!waiting.isEmpty()) {
+            movement = waiting.get(waiting.size() - 1);
+         }
+         if (resetRequested) {
+            resetRequested = false;
+            lastSent = ProtocolCommands.stop;
+         }
+         if (movement != lastSent) {
+            send(movement);
+         }
+      }
+   }
+
+   /**
+    * Sends a movement and waits for the answer of the robot
+    *
+    * @param movement the movement
+    */
+   private void send(ProtocolCommands movement) {
+      sent.incrementAndGet();
+      try {
+         client.moveAsync(movement).get();
+         lastSent = movement;
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+         Consumer<Exception> listener = errorListener;
+         if (listener != null) {
+            Throwable cause = e.getCause();
+            listener.accept(cause instanceof Exception ? (Exception) cause : e);
+         }
+      }
+   }
+}
@@ -0,0 +1,35 @@
+/*
+ * @File CommandTransport.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.ProtocolCommands;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The way the commands and their answers are written on the control connection, once it is established. The commands
+ * are sent by the threads of the client one at a time. The answers are pulled by the reading thread of the client from
+ * a {@link StreamTransport}, or pushed to the client by the selector loop for the {@link SelectorTransport}.
+ */
+interface CommandTransport extends Closeable {
+   /**
+    * Sends a command to the robot and flushes it
+    *
+    * @param command   the command
+    * @param arguments the arguments of the command, as many as it takes
+    *
+    * @throws IOException the command could not be sent
+    */
+   void send(ProtocolCommands command, int[] arguments) throws IOException;
+
+   /**
+    * Tells whether the commands are written with the binary framing.
+    *
+    * @return true for the binary framing, false for the text protocol
+    */
+   boolean usesBinaryFraming();
+}
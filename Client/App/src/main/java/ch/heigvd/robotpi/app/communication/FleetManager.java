@@ -0,0 +1,293 @@
+/*
+ * @File FleetManager.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.ProtocolCommands;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Keeps connections open to several robots at the same time. Every robot has its own Client, but the answers of all
+ * of them are read by the threads of one shared pool, and a single scheduler pings each robot at a fixed interval. A
+ * robot that does not answer its ping in time is disconnected and reported to the listener. Reading the answers takes
+ * one thread of the pool per robot, none when the connections are driven by the selector loop, see
+ * Client.TRANSPORT_PROPERTY.
+ * <p>
+ * Commands can be broadcast to the whole fleet. They are written to every robot at the same time, by the threads of
+ * another pool, so a robot whose link is stalled does not delay the others, and the whole broadcast is bounded by the
+ * answer timeout.
+ */
+public class FleetManager implements Closeable {
+   /**
+    * The default time between two pings of a robot, in milliseconds
+    */
+   public static final long DEFAULT_PING_INTERVAL = 10000;
+   /**
+    * The default time a robot has to answer a ping or a broadcast command, in milliseconds
+    */
+   public static final long DEFAULT_ANSWER_TIMEOUT = 1000;
+   private final Map<String, Robot> robots = new ConcurrentHashMap<>();
+   private final ExecutorService ioPool;
+   // runs the reading of the answers, one task per robot for as long as it is connected
+   private final ExecutorService readers;
+   private final ScheduledExecutorService scheduler;
+   private final long pingInterval;
+   private final long answerTimeout;
+   private volatile Consumer<String> connectionLostListener = null;
+
+   /**
+    * Instantiates a new fleet manager with the default ping interval and answer timeout
+    */
+   public FleetManager() {
+      this(DEFAULT_PING_INTERVAL, DEFAULT_ANSWER_TIMEOUT);
+   }
+
+   /**
+    * Instantiates a new fleet manager.
+    *
+    * @param pingInterval  the time between two pings of a robot, in milliseconds
+    * @param answerTimeout the time a robot has to answer a ping or a broadcast command, in milliseconds
+    */
+   public FleetManager(long pingInterval, long answerTimeout) {
+      if (pingInterval <= 0 || answerTimeout <= 0) {
+         throw new IllegalArgumentException("The ping interval and the answer timeout must be positive");
+      }
+      this.pingInterval = pingInterval;
+      this.answerTimeout = answerTimeout;
+      this.ioPool = Executors.newCachedThreadPool(daemonThreads("robotpi-fleet-io-"));
+      this.readers = Executors.newCachedThreadPool(daemonThreads("robotpi-fleet-reader-"));
+      this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("robotpi-fleet-ping-"));
+   }
+
+   /**
+    * Creates a factory of daemon threads, so that the pools do not keep the application alive
+    *
+    * @param prefix the prefix of the names of the threads
+    *
+    * @return the thread factory
+    */
+   private static ThreadFactory daemonThreads(String prefix) {
+      AtomicInteger count = new AtomicInteger();
+      return task -> {
+         Thread thread = new Thread(task, prefix + count.incrementAndGet());
+         thread.setDaemon(true);
+         return thread;
+      };
+   }
+
+   /**
+    * Sets the listener notified with the address of a robot when its connection is lost.
+    *
+    * @param connectionLostListener the listener, or null to remove it
+    */
+   public void setConnectionLostListener(Consumer<String> connectionLostListener) {
+      this.connectionLostListener = connectionLostListener;
+   }
+
+   /**
+    * Connects to a robot and adds it to the fleet. Nothing is done if the robot is already part of the fleet.
+    *
+    * @param ip the ip address of the robot
+    *
+    * @throws Client.CantConnectException     the connection did not work
+    * @throws Client.IncorrectDeviceException the address does not match a robot
+    * @throws IOException                     the io exception
+    */
+   public void connect(String ip) throws Client.CantConnectException, Client.IncorrectDeviceException, IOException {
+      if (robots.containsKey(ip)) {
+         return;
+      }
+      Client client = new Client(readers);
+      client.connect(ip);
+      Robot robot = new Robot(ip, client);
+      if (robots.putIfAbsent(ip, robot) != null) {
+         // connected twice at the same time, keep the first connection
+         client.closeConnection();
+         return;
+      }
+      robot.pingTask = scheduler.scheduleWithFixedDelay(() -> ping(robot), pingInterval, pingInterval,
+                                                        TimeUnit.MILLISECONDS);
+   }
+
+   /**
+    * Connects to all the given robots in parallel, for example to all the robots found by the service discovery.
+    *
+    * @param ips the ip addresses of the robots
+    *
+    * @return the addresses of the robots that could not be connected
+    */
+   public Set<String> connectAll(Collection<String> ips) {
+      Map<String, CompletableFuture<Void>> connections = new HashMap<>();
+      for (String ip : ips) {
+         connections.put(ip, CompletableFuture.runAsync(() -> {
+            try {
+               connect(ip);
+            } catch (Exception e) {
+               throw new CompletionException(e);
+            }
+         }, ioPool));
+      }
+      Set<String> failed = new HashSet<>();
+      for (Map.Entry<String, CompletableFuture<Void>> connection : connections.entrySet()) {
+         try {
+            connection.getValue().join();
+         } catch (CompletionException e) {
+            failed.add(connection.getKey());
+         }
+      }
+      return failed;
+   }
+
+   /**
+    * Sends a command to every robot of the fleet and waits for their answers, for at most the answer timeout from the
+    * start of the broadcast, however long the writes take.
+    *
+    * @param command the command to send
+    *
+    * @return the addresses of the robots that did not confirm the command in time
+    */
+   public Set<String> broadcast(ProtocolCommands command) {
+      Map<String, CompletableFuture<Void>> answers = new HashMap<>();
+      // a write blocks on the socket of its robot, so each one is made by a thread of its own
+      for (Robot robot : robots.values()) {
+         answers.put(robot.ip, CompletableFuture.supplyAsync(() -> robot.client.sendAsync(command), ioPool)
+                                                .thenCompose(answer -> answer));
+      }
+      try {
+         CompletableFuture.allOf(answers.values().toArray(new CompletableFuture[0]))
+                          .get(answerTimeout, TimeUnit.MILLISECONDS);
+      } catch (ExecutionException | TimeoutException e) {
+         // the robots that did not confirm are found below
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      Set<String> unconfirmed = new HashSet<>();
+      for (Map.Entry<String, CompletableFuture<Void>> answer : answers.entrySet()) {
+         if (!answer.getValue().isDone() || answer.getValue().isCompletedExceptionally()) {
+            unconfirmed.add(answer.getKey());
+         }
+      }
+      return unconfirmed;
+   }
+
+   /**
+    * Stops every robot of the fleet.
+    *
+    * @return the addresses of the robots that did not confirm the stop in time
+    */
+   public Set<String> stopAll() {
+      return broadcast(ProtocolCommands.stop);
+   }
+
+   /**
+    * Disconnects a robot and removes it from the fleet
+    *
+    * @param ip the ip address of the robot
+    */
+   public void disconnect(String ip) {
+      Robot robot = robots.remove(ip);
+      if (robot != null) {
+         robot.cancelPings();
+         try {
+            robot.client.disconnect();
+         } catch (IOException e) {
+            // the connection is closed anyway
+         }
+      }
+   }
+
+   /**
+    * Returns the addresses of the robots of the fleet
+    *
+    * @return the addresses
+    */
+   public Set<String> getRobots() {
+      return Collections.unmodifiableSet(new HashSet<>(robots.keySet()));
+   }
+
+   /**
+    * Returns the client connected to a robot of the fleet, to send it commands of its own.
+    *
+    * @param ip the ip address of the robot
+    *
+    * @return the client, or null if the robot is not part of the fleet
+    */
+   public Client getClient(String ip) {
+      Robot robot = robots.get(ip);
+      return robot == null ? null : robot.client;
+   }
+
+   /**
+    * Disconnects every robot and stops the threads of the fleet
+    */
+   @Override
+   public void close() {
+      for (String ip : getRobots()) {
+         disconnect(ip);
+      }
+      scheduler.shutdownNow();
+      ioPool.shutdownNow();
+      readers.shutdownNow();
+   }
+
+   /**
+    * Pings a robot without blocking the scheduler. The robot is removed from the fleet if it does not answer in time.
+    *
+    * @param robot the robot
+    */
+   private void ping(Robot robot) {
+      robot.client.sendAsync(ProtocolCommands.ping)
+                  .orTimeout(answerTimeout, TimeUnit.MILLISECONDS)
+                  .whenCompleteAsync((ignored, e) -> {
+                     if (e != null) {
+                        lost(robot);
+                     }
+                  }, ioPool);
+   }
+
+   /**
+    * Removes a robot whose connection was lost from the fleet and notifies the listener
+    *
+    * @param robot the robot
+    */
+   private void lost(Robot robot) {
+      if (!robots.remove(robot.ip, robot)) {
+         return;
+      }
+      robot.cancelPings();
+      robot.client.closeConnection();
+      Consumer<String> listener = connectionLostListener;
+      if (listener != null) {
+         listener.accept(robot.ip);
+      }
+   }
+
+   /**
+    * A robot of the fleet
+    */
+   private static class Robot {
+      private final String ip;
+      private final Client client;
+      private volatile ScheduledFuture<?> pingTask;
+
+      private Robot(String ip, Client client) {
+         this.ip = ip;
+         this.client = client;
+      }
+
+      private void cancelPings() {
+         ScheduledFuture<?> task = pingTask;
+         if (task != null) {
+            task.cancel(false);
+         }
+      }
+   }
+}
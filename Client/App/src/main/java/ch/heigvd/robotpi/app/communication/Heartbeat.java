@@ -0,0 +1,221 @@
+/*
+ * @File Heartbeat.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.ProtocolCommands;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Checks that the connection to the robot is alive and measures its quality. A ping is only sent when the robot did
+ * not answer anything for the current interval, since the answers to the other commands show as well that the
+ * connection is alive. The round trip time of every ping is measured, and its moving average and jitter are kept the
+ * same way as TCP does for its retransmission timer.
+ * <p>
+ * The interval adapts to the link : it doubles after every ping whose round trip time is close to the average, up to
+ * the maximum interval, and falls back to the minimum one as soon as a round trip time is unusual. A robot that does
+ * not answer a ping within the timeout is considered lost : the connection is closed and the listener is notified.
+ */
+public class Heartbeat implements Closeable {
+   /**
+    * The default shortest time between two pings, in milliseconds
+    */
+   public static final long DEFAULT_MIN_INTERVAL = 500;
+   /**
+    * The default longest time between two pings, in milliseconds
+    */
+   public static final long DEFAULT_MAX_INTERVAL = 5000;
+   /**
+    * The default time the robot has to answer a ping, in milliseconds
+    */
+   public static final long DEFAULT_TIMEOUT = 2000;
+   private final Client client;
+   private final ScheduledExecutorService scheduler;
+   private final long minInterval;
+   private final long maxInterval;
+   private final long timeout;
+   // only used by the thread of the scheduler
+   private double averageRtt;
+   private double jitter;
+   private long interval;
+   private long pings;
+   private volatile LinkQuality quality = LinkQuality.UNKNOWN;
+   private volatile Consumer<LinkQuality> qualityListener = null;
+   private volatile Runnable connectionLostListener = null;
+
+   /**
+    * Instantiates a new heartbeat with the default intervals and timeout
+    *
+    * @param client the client connected to the robot
+    */
+   public Heartbeat(Client client) {
+      this(client, DEFAULT_MIN_INTERVAL, DEFAULT_MAX_INTERVAL, DEFAULT_TIMEOUT);
+   }
+
+   /**
+    * Instantiates a new heartbeat. It runs for as long as it is not closed, and only pings the robot while the client
+    * is connected.
+    *
+    * @param client      the client connected to the robot
+    * @param minInterval the shortest time between two pings, in milliseconds
+    * @param maxInterval the longest time between two pings, in milliseconds
+    * @param timeout     the time the robot has to answer a ping, in milliseconds
+    */
+   public Heartbeat(Client client, long minInterval, long maxInterval, long timeout) {
+      if (minInterval <= 0 || maxInterval < minInterval || timeout <= 0) {
+         throw new IllegalArgumentException("The intervals and the timeout must be positive");
+      }
+      this.client = client;
+      this.minInterval = minInterval;
+      this.maxInterval = maxInterval;
+      this.timeout = timeout;
+      this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+         Thread thread = new Thread(task, "robotpi-heartbeat");
+         thread.setDaemon(true);
+         return thread;
+      });
+      this.interval = minInterval;
+      scheduleCheck(minInterval);
+   }
+
+   /**
+    * Sets the listener notified with the new quality of the link after each ping answered. It is called by the
+    * thread of the heartbeat.
+    *
+    * @param qualityListener the listener, or null to remove it
+    */
+   public void setQualityListener(Consumer<LinkQuality> qualityListener) {
+      this.qualityListener = qualityListener;
+   }
+
+   /**
+    * Sets the listener notified when the connection is lost. It is called by the thread of the heartbeat, also when
+    * the connection is closed while a ping waits for its answer.
+    *
+    * @param connectionLostListener the listener, or null to remove it
+    */
+   public void setConnectionLostListener(Runnable connectionLostListener) {
+      this.connectionLostListener = connectionLostListener;
+   }
+
+   /**
+    * Returns the latest measure of the quality of the link
+    *
+    * @return the quality of the link
+    */
+   public LinkQuality getLinkQuality() {
+      return quality;
+   }
+
+   /**
+    * Stops the heartbeat
+    */
+   @Override
+   public void close() {
+      scheduler.shutdownNow();
+   }
+
+   /**
+    * Schedules the next check of the connection, unless the heartbeat was closed
+    *
+    * @param delay the time before the check, in milliseconds
+    */
+   private void scheduleCheck(long delay) {
+      try {
+         scheduler.schedule(this::check, delay, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+         // closed
+      }
+   }
+
+   /**
+    * Pings the robot if it did not answer anything during the interval, otherwise waits until it is the case
+    */
+   private void check() {
+      if (!client.isConnected()) {
+         reset();
+         scheduleCheck(minInterval);
+         return;
+      }
+      long silence = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - client.getLastAnswerTime());
+      if (silence < interval) {
+         scheduleCheck(interval - silence);
+         return;
+      }
+      long start = System.nanoTime();
+      client.sendAsync(ProtocolCommands.ping)
+            .orTimeout(timeout, TimeUnit.MILLISECONDS)
+            .whenCompleteAsync((ignored, e) -> {
+               if (e == null) {
+                  measured((System.nanoTime() - start) / 1e6);
+                  scheduleCheck(interval);
+               } else if (e instanceof Client.CantConnectException) {
+                  // disconnected in the meantime
+                  scheduleCheck(minInterval);
+               } else {
+                  lost(e);
+               }
+            }, scheduler);
+   }
+
+   /**
+    * Adds the round trip time of a ping to the averages and adapts the interval
+    *
+    * @param rtt the round trip time, in milliseconds
+    */
+   private void measured(double rtt) {
+      if (pings == 0) {
+         averageRtt = rtt;
+         jitter = rtt / 2;
+      } else {
+         double deviation = Math.abs(rtt - averageRtt);
+         // an unusual round trip time may announce a failing link, it is checked again soon
+         interval = deviation > 2 * jitter ? minInterval : Math.min(maxInterval, interval * 2);
+         jitter += (deviation - jitter) / 4;
+         averageRtt += (rtt - averageRtt) / 8;
+      }
+      pings++;
+      quality = new LinkQuality(averageRtt, jitter, rtt, interval, pings);
+      Consumer<LinkQuality> listener = qualityListener;
+      if (listener != null) {
+         listener.accept(quality);
+      }
+   }
+
+   /**
+    * Closes the connection to a robot that did not answer its ping, and notifies the listener
+    *
+    * @param e the reason of the failure of the ping
+    */
+   private void lost(Throwable e) {
+      if (e instanceof TimeoutException) {
+         client.closeConnection();
+      }
+      reset();
+      Runnable listener = connectionLostListener;
+      if (listener != null) {
+         listener.run();
+      }
+      scheduleCheck(minInterval);
+   }
+
+   /**
+    * Forgets the measures, for the next connection
+    */
+   private void reset() {
+      averageRtt = 0;
+      jitter = 0;
+      pings = 0;
+      interval = minInterval;
+      quality = LinkQuality.UNKNOWN;
+   }
+}
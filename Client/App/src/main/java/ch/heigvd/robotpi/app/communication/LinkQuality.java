@@ -0,0 +1,72 @@
+/*
+ * @File LinkQuality.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import lombok.Getter;
+
+/**
+ * The quality of the link with the robot, as measured by the heartbeat. The times are in milliseconds.
+ */
+public class LinkQuality {
+   /**
+    * The link quality before any measure
+    */
+   public static final LinkQuality UNKNOWN = new LinkQuality(-1, 0, -1, 0, 0);
+   /**
+    * The moving average of the round trip time of the pings, or -1 if no ping was answered yet
+    */
+   @Getter private final double averageRtt;
+   /**
+    * The moving average of the deviation of the round trip time from its average
+    */
+   @Getter private final double jitter;
+   /**
+    * The round trip time of the last ping, or -1 if no ping was answered yet
+    */
+   @Getter private final double lastRtt;
+   /**
+    * The time the heartbeat currently waits without an answer of the robot before sending a ping
+    */
+   @Getter private final long interval;
+   /**
+    * The number of pings answered since the connection
+    */
+   @Getter private final long pings;
+
+   /**
+    * Instantiates a new link quality.
+    *
+    * @param averageRtt the average round trip time
+    * @param jitter     the jitter
+    * @param lastRtt    the last round trip time
+    * @param interval   the interval of the heartbeat
+    * @param pings      the number of pings answered
+    */
+   LinkQuality(double averageRtt, double jitter, double lastRtt, long interval, long pings) {
+      this.averageRtt = averageRtt;
+      this.jitter = jitter;
+      this.lastRtt = lastRtt;
+      this.interval = interval;
+      this.pings = pings;
+   }
+
+   /**
+    * Tells whether the link was measured
+    *
+    * @return true if at least one ping was answered
+    */
+   public boolean isMeasured() {
+      return pings > 0;
+   }
+
+   @Override
+   public String toString() {
+      if (!isMeasured()) {
+         return "Not measured";
+      }
+      return String.format("RTT %.1f ms, jitter %.1f ms", averageRtt, jitter);
+   }
+}
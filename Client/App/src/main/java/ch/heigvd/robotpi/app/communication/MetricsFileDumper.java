@@ -0,0 +1,89 @@
+/*
+ * @File MetricsFileDumper.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes the snapshot of the measures of a client to a file at a fixed interval, one "name=value" line per measure.
+ * The file is written next to the target then moved over it, so a reader never sees it half written.
+ */
+public class MetricsFileDumper implements Closeable {
+   private static final Logger LOG = Logger.getLogger(MetricsFileDumper.class.getName());
+   private final ClientMetricsMXBean metrics;
+   private final Path file;
+   private final ScheduledExecutorService scheduler;
+
+   /**
+    * Instantiates a new dumper and starts writing the measures.
+    *
+    * @param metrics the measures to write
+    * @param file    the file written
+    * @param period  the time between two writes, in milliseconds
+    */
+   public MetricsFileDumper(ClientMetricsMXBean metrics, Path file, long period) {
+      this.metrics = metrics;
+      this.file = file;
+      this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+         Thread thread = new Thread(task, "robotpi-metrics");
+         thread.setDaemon(true);
+         return thread;
+      });
+      scheduler.scheduleAtFixedRate(this::dump, period, period, TimeUnit.MILLISECONDS);
+   }
+
+   /**
+    * Writes the current measures to the file
+    *
+    * @throws IOException the io exception
+    */
+   public void write() throws IOException {
+      Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+      try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+         writer.write("# " + Instant.now() + "\n");
+         for (Map.Entry<String, Long> measure : metrics.getSnapshot().entrySet()) {
+            writer.write(measure.getKey() + "=" + measure.getValue() + "\n");
+         }
+      }
+      Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+   }
+
+   /**
+    * Stops writing the measures, after a last write
+    */
+   @Override
+   public void close() {
+      scheduler.shutdown();
+      try {
+         // lets a write in progress end, the periodic writes are cancelled
+         scheduler.awaitTermination(1, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      dump();
+   }
+
+   private void dump() {
+      try {
+         write();
+      } catch (IOException e) {
+         LOG.log(Level.WARNING, "Could not write the metrics to " + file, e);
+      }
+   }
+}
@@ -0,0 +1,184 @@
+/*
+ * @File Mission.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.MissionProtocol;
+import ch.heigvd.robotpi.servertest.ProtocolCommands;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A timed sequence of movements, picture captures and waits that the robot runs by itself, see {@link MissionRunner}.
+ * The steps are added in order, each of them at the time reached by the waits before it.
+ * <p>
+ * A mission can also be written as text, one step per line : the message of a movement command with its arguments
+ * ("FWD", "DRIVE 50 -20"), "CAPTURE" to take a picture, or "WAIT" followed by a time in milliseconds. The empty lines
+ * and the lines starting with '#' are ignored.
+ */
+public class Mission {
+   /**
+    * The text of a step that takes a picture
+    */
+   public static final String CAPTURE = "CAPTURE";
+   /**
+    * The text of a wait, followed by its time in milliseconds
+    */
+   public static final String WAIT = "WAIT";
+   private final List<MissionProtocol.Step> steps = new ArrayList<>();
+   // the time reached by the waits, in milliseconds
+   private long duration = 0;
+
+   /**
+    * Adds a movement of the robot
+    *
+    * @param movement the movement command, stop to stop the robot
+    *
+    * @return this mission
+    */
+   public Mission move(ProtocolCommands movement) {
+      return add(movement);
+   }
+
+   /**
+    * Adds a change of the speeds of the wheels
+    *
+    * @param left  the speed of the left wheel, from -100 to 100
+    * @param right the speed of the right wheel, from -100 to 100
+    *
+    * @return this mission
+    */
+   public Mission drive(int left, int right) {
+      return add(ProtocolCommands.drive, left, right);
+   }
+
+   /**
+    * Adds a picture capture
+    *
+    * @return this mission
+    */
+   public Mission capture() {
+      steps.add(new MissionProtocol.Step(MissionProtocol.CAPTURE, duration, 0, 0));
+      return this;
+   }
+
+   /**
+    * Adds a wait before the next step
+    *
+    * @param millis the time to wait, in milliseconds
+    *
+    * @return this mission
+    */
+   public Mission waitFor(long millis) {
+      if (millis < 0) {
+         throw new IllegalArgumentException("A wait cannot be negative");
+      }
+      duration += millis;
+      return this;
+   }
+
+   private Mission add(ProtocolCommands command, int... arguments) {
+      int left = arguments.length > 0 ? arguments[0] : 0;
+      int right = arguments.length > 1 ? arguments[1] : 0;
+      // the same checks as the robot
+      if (!command.acceptsArguments(arguments.length) ||
+          MissionProtocol.decode(new int[]{command.getCode(), 0, left, right}) == null) {
+         throw new IllegalArgumentException(command.getMessage() + " cannot be a step of a mission");
+      }
+      steps.add(new MissionProtocol.Step(command.getCode(), duration, left, right));
+      return this;
+   }
+
+   /**
+    * Gets the steps of the mission, in the order of their time.
+    *
+    * @return the steps
+    */
+   public List<MissionProtocol.Step> getSteps() {
+      return Collections.unmodifiableList(steps);
+   }
+
+   /**
+    * Gets the time of the end of the mission, after its last wait.
+    *
+    * @return the duration, in milliseconds
+    */
+   public long getDuration() {
+      return duration;
+   }
+
+   /**
+    * Encodes the mission as the arguments of the MISSION command
+    *
+    * @return the arguments
+    */
+   int[] encode() {
+      return MissionProtocol.encode(steps);
+   }
+
+   /**
+    * Reads a mission written as text.
+    *
+    * @param lines the lines of the mission
+    *
+    * @return the mission
+    *
+    * @throws IllegalArgumentException a line is not a valid step
+    */
+   public static Mission parse(List<String> lines) {
+      Mission mission = new Mission();
+      for (int i = 0; i < lines.size(); i++) {
+         String line = lines.get(i).trim();
+         if (line.isEmpty() || line.startsWith("#")) {
+            continue;
+         }
+         String[] words = line.split("\\s+");
+         try {
+            if (words[0].equals(CAPTURE) && words.length == 1) {
+               mission.capture();
+            } else if (words[0].equals(WAIT) && words.length == 2) {
+               mission.waitFor(Long.parseLong(words[1]));
+            } else {
+               ProtocolCommands command = ProtocolCommands.getCommandFromMessage(words[0]);
+               if (command == null) {
+                  throw new IllegalArgumentException("unknown step " + words[0]);
+               }
+               int[] arguments = new int[words.length - 1];
+               for (int j = 0; j < arguments.length; j++) {
+                  arguments[j] = Integer.parseInt(words[j + 1]);
+               }
+               mission.add(command, arguments);
+            }
+         } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Line " + (i + 1) + " : " + e.getMessage(), e);
+         }
+      }
+      return mission;
+   }
+
+   /**
+    * Reads a mission from a text file.
+    *
+    * @param file the file
+    *
+    * @return the mission
+    *
+    * @throws IOException              the file could not be read
+    * @throws IllegalArgumentException a line is not a valid step
+    */
+   public static Mission load(Path file) throws IOException {
+      return parse(Files.readAllLines(file));
+   }
+
+   @Override
+   public String toString() {
+      return "Mission of " + steps.size() + " steps, " + duration + " ms";
+   }
+}
@@ -0,0 +1,217 @@
+/*
+ * @File MissionRunner.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.MissionProtocol;
+import ch.heigvd.robotpi.servertest.ProtocolCommands;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs missions on the robot. A mission is uploaded in a single MISSION command, and the robot runs its movements on
+ * its own clock, so they do not wait for the round trips of the link. The mission is only uploaded to the robots that
+ * negotiated the binary framing : the robots that only speak the text protocol read commands of a few bytes and may
+ * not survive the long line of a mission. For them, and for the robots that answer that they do not know the MISSION
+ * command, the runner sends each movement itself at the time of its step.
+ * <p>
+ * In both cases the steps are scheduled from the start of the mission on the monotonic clock, not one after the other,
+ * so that the delays do not add up. The pictures are always fetched by the runner at the time of their capture, since
+ * they come through the picture port, and handed to the picture listener.
+ */
+public class MissionRunner implements Closeable {
+   private final Client client;
+   private final ScheduledExecutorService scheduler;
+   private final ExecutorService captures;
+   private volatile Consumer<byte[]> pictureListener = null;
+   private volatile boolean remote = false;
+   // the steps of the running mission not executed yet and its future, guarded by this
+   private final List<Future<?>> scheduled = new ArrayList<>();
+   private CompletableFuture<Void> running = null;
+
+   /**
+    * Instantiates a new mission runner.
+    *
+    * @param client the client connected to the robot
+    */
+   public MissionRunner(Client client) {
+      this.client = client;
+      this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+         Thread thread = new Thread(task, "robotpi-mission");
+         thread.setDaemon(true);
+         return thread;
+      });
+      // a capture takes longer than a movement, it must not delay the next steps
+      this.captures = Executors.newSingleThreadExecutor(task -> {
+         Thread thread = new Thread(task, "robotpi-mission-pictures");
+         thread.setDaemon(true);
+         return thread;
+      });
+   }
+
+   /**
+    * Sets the listener given the pictures taken by the missions. It is called by the thread fetching the pictures.
+    *
+    * @param pictureListener the listener, or null to remove it
+    */
+   public void setPictureListener(Consumer<byte[]> pictureListener) {
+      this.pictureListener = pictureListener;
+   }
+
+   /**
+    * Runs a mission, replacing the one running.
+    *
+    * @param mission the mission
+    *
+    * @return a future completed at the end of the mission. It is completed exceptionally with the error of the
+    *       command or the capture that failed, or with a CancellationException if the mission was aborted.
+    */
+   public synchronized CompletableFuture<Void> run(Mission mission) {
+      cancel();
+      CompletableFuture<Void> done = new CompletableFuture<>();
+      running = done;
+      if (!client.usesBinaryFraming()) {
+         start(mission, done, false);
+         return done;
+      }
+      client.sendAsync(ProtocolCommands.mission, mission.encode()).whenComplete((result, error) -> {
+         Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+         if (cause == null || cause instanceof Client.RobotException) {
+            start(mission, done, cause == null);
+         } else {
+            done.completeExceptionally(cause);
+         }
+      });
+      return done;
+   }
+
+   /**
+    * Aborts the mission running and stops the robot
+    */
+   public void abort() {
+      synchronized (this) {
+         cancel();
+      }
+      // the robot aborts its own mission when it is stopped
+      client.moveAsync(ProtocolCommands.stop);
+   }
+
+   /**
+    * Tells whether the last mission started is run by the robot itself.
+    *
+    * @return true if the robot runs it, false if the runner sends its movements
+    */
+   public boolean isRemote() {
+      return remote;
+   }
+
+   /**
+    * Aborts the mission running and stops the threads of the runner
+    */
+   @Override
+   public void close() {
+      synchronized (this) {
+         cancel();
+      }
+      scheduler.shutdownNow();
+      captures.shutdownNow();
+   }
+
+   /**
+    * Schedules the steps of a mission once the robot answered to its upload
+    *
+    * @param mission the mission
+    * @param done    the future of the mission
+    * @param remote  true if the robot runs the mission, false if the runner must send the movements
+    */
+   private synchronized void start(Mission mission, CompletableFuture<Void> done, boolean remote) {
+      if (running != done) {
+         // replaced or aborted before the robot answered
+         return;
+      }
+      this.remote = remote;
+      // the steps at the same time are run by the same task, in the order of the mission
+      TreeMap<Long, List<Runnable>> actions = new TreeMap<>();
+      for (MissionProtocol.Step step : mission.getSteps()) {
+         if (step.isCapture()) {
+            add(actions, step.getAt(), () -> captures.execute(() -> capture(done)));
+         } else if (!remote && step.getCommand() != null) {
+            add(actions, step.getAt(), () -> client.moveAsync(step.getCommand(), step.getCommandArguments())
+                                                   .whenComplete((result, error) -> {
+                                                      if (error != null) {
+                                                         done.completeExceptionally(error);
+                                                      }
+                                                   }));
+         }
+      }
+      add(actions, mission.getDuration(), () -> done.complete(null));
+      long start = System.nanoTime();
+      actions.forEach((at, tasks) -> {
+         long delay = start + TimeUnit.MILLISECONDS.toNanos(at) - System.nanoTime();
+         scheduled.add(scheduler.schedule(() -> tasks.forEach(Runnable::run), delay, TimeUnit.NANOSECONDS));
+      });
+      done.whenComplete((result, error) -> {
+         synchronized (this) {
+            if (running == done) {
+               cancel();
+            }
+         }
+      });
+   }
+
+   /**
+    * Adds an action to run at a time of the mission, after the actions already at that time
+    *
+    * @param actions the actions of the mission, by time
+    * @param at      the time of the action, in milliseconds from the start of the mission
+    * @param action  the action
+    */
+   private static void add(TreeMap<Long, List<Runnable>> actions, long at, Runnable action) {
+      actions.computeIfAbsent(at, time -> new ArrayList<>()).add(action);
+   }
+
+   /**
+    * Takes a picture for a capture step
+    *
+    * @param done the future of the mission
+    */
+   private void capture(CompletableFuture<Void> done) {
+      try {
+         byte[] picture = client.takePicture();
+         Consumer<byte[]> listener = pictureListener;
+         if (listener != null) {
+            listener.accept(picture);
+         }
+      } catch (Exception e) {
+         done.completeExceptionally(e);
+      }
+   }
+
+   /**
+    * Cancels the steps not executed yet of the mission running, and fails its future
+    */
+   private void cancel() {
+      for (Future<?> step : scheduled) {
+         step.cancel(false);
+      }
+      scheduled.clear();
+      if (running != null) {
+         running.completeExceptionally(new CancellationException("Mission aborted"));
+         running = null;
+      }
+   }
+}
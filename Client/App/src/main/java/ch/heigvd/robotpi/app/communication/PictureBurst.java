@@ -0,0 +1,127 @@
+/*
+ * @File PictureBurst.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * A burst of pictures taken at a fixed interval, see {@link Client#takeBurst(int, long)}. Each picture has its own
+ * future, completed as soon as the picture is received, so the caller can decode or save a picture while the next ones
+ * are still being taken. The futures are given in the order of the captures.
+ */
+public class PictureBurst {
+   /**
+    * The largest number of pictures requested and not received yet. It bounds the pictures waiting in the buffers of
+    * the connection when the client reads them slower than the robot takes them.
+    */
+   public static final int MAX_IN_FLIGHT = 4;
+   private final int count;
+   private final long interval;
+   private final List<CompletableFuture<byte[]>> pictures;
+   private volatile boolean cancelled = false;
+
+   /**
+    * Instantiates a new burst, none of its pictures taken yet.
+    *
+    * @param count    the number of pictures
+    * @param interval the time between two captures, in milliseconds
+    */
+   PictureBurst(int count, long interval) {
+      if (count < 1 || interval < 0) {
+         throw new IllegalArgumentException("A burst takes at least one picture, at a positive interval");
+      }
+      this.count = count;
+      this.interval = interval;
+      List<CompletableFuture<byte[]>> futures = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+         futures.add(new CompletableFuture<>());
+      }
+      this.pictures = Collections.unmodifiableList(futures);
+   }
+
+   /**
+    * Gets the futures of the pictures, in the order of the captures. A future is completed exceptionally with a
+    * RobotException if the robot could not take the picture, a PictureTransferError or a CantConnectException if the
+    * connection failed, or a CancellationException if the burst was cancelled before the picture was requested.
+    *
+    * @return the futures of the pictures
+    */
+   public Stream<CompletableFuture<byte[]>> stream() {
+      return pictures.stream();
+   }
+
+   /**
+    * Gets the future of a picture.
+    *
+    * @param index the index of the picture, from 0
+    *
+    * @return the future of the picture
+    */
+   public CompletableFuture<byte[]> get(int index) {
+      return pictures.get(index);
+   }
+
+   /**
+    * Gets a future completed once every picture is received or failed.
+    *
+    * @return the future of the whole burst
+    */
+   public CompletableFuture<Void> whenDone() {
+      return CompletableFuture.allOf(pictures.toArray(new CompletableFuture[0]));
+   }
+
+   /**
+    * Stops the burst. The pictures already requested are still received, the others are cancelled.
+    */
+   public void cancel() {
+      cancelled = true;
+   }
+
+   /**
+    * Gets the number of pictures of the burst.
+    *
+    * @return the number of pictures
+    */
+   public int getCount() {
+      return count;
+   }
+
+   /**
+    * Gets the time between two captures.
+    *
+    * @return the interval, in milliseconds
+    */
+   public long getInterval() {
+      return interval;
+   }
+
+   boolean isCancelled() {
+      return cancelled;
+   }
+
+   void complete(int index, byte[] picture) {
+      pictures.get(index).complete(picture);
+   }
+
+   void fail(int index, Throwable error) {
+      pictures.get(index).completeExceptionally(error);
+   }
+
+   /**
+    * Fails the pictures not received yet
+    *
+    * @param error the error
+    */
+   void failRemaining(Throwable error) {
+      for (CompletableFuture<byte[]> picture : pictures) {
+         picture.completeExceptionally(error);
+      }
+   }
+}
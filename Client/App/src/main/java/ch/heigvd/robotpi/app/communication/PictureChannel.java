@@ -0,0 +1,315 @@
+/*
+ * @File PictureChannel.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.PictureHeader;
+import ch.heigvd.robotpi.servertest.PictureOptions;
+import ch.heigvd.robotpi.servertest.PictureProtocol;
+
+import javax.net.ssl.SSLSocket;
+import java.io.*;
+
+/**
+ * A long-lived connection to the picture port of the robot. The TLS handshake is only done when the channel is opened,
+ * after which any number of pictures can be requested back to back, or pipelined. The pictures are received as
+ * length-prefixed frames, see {@link PictureProtocol}, or with a header and in chunks when the robot supports checked
+ * sessions : the pictures are then checked against their CRC32C, and a transfer that is interrupted can be resumed on a
+ * new channel with {@link #resume(InterruptedTransferException)}.
+ */
+public class PictureChannel implements Closeable {
+   private final SSLSocket socket;
+   private final DataInputStream in;
+   private final DataOutputStream out;
+   private boolean checked = false;
+   // whether the robot answered CMD_ERR to a picture request with options
+   private boolean optionsRefused = false;
+
+   private PictureChannel(SSLSocket socket) throws IOException {
+      this.socket = socket;
+      this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+   }
+
+   /**
+    * Opens a picture session on the given robot, checked if the robot supports it.
+    *
+    * @param host the ip address of the robot
+    * @param port the picture port of the robot
+    *
+    * @return the opened channel, or null if the robot does not support picture sessions
+    *
+    * @throws Exception if the connection could not be established
+    */
+   public static PictureChannel open(String host, int port) throws Exception {
+      SSLSocket socket = Client.createSocket(host, port);
+      socket.startHandshake();
+
+      PictureChannel channel = new PictureChannel(socket);
+      PictureProtocol.writeLine(channel.out, PictureProtocol.SESSION);
+      // the robots that do not know checked sessions answer CMD_ERR and keep the session open
+      PictureProtocol.writeLine(channel.out, PictureProtocol.CHECKED);
+      channel.out.flush();
+      if (!PictureProtocol.SESSION_OK.equals(PictureProtocol.readLine(channel.in))) {
+         socket.close();
+         return null;
+      }
+      channel.checked = PictureProtocol.CHECKED_OK.equals(PictureProtocol.readLine(channel.in));
+      return channel;
+   }
+
+   /**
+    * Tells whether the pictures are received with a header and in chunks, so that they are checked and their transfer
+    * can be resumed.
+    *
+    * @return true if the session is checked
+    */
+   boolean isChecked() {
+      return checked;
+   }
+
+   /**
+    * Requests a picture and waits for it.
+    *
+    * @return the bytes of the picture, as sent by the robot, or null if the robot could not take the picture
+    *
+    * @throws IOException if the transfer failed, the channel should then be closed
+    */
+   public synchronized byte[] fetch() throws IOException {
+      request();
+      return receive();
+   }
+
+   /**
+    * Requests a picture with options and waits for it. If the robot does not know the options, the picture is requested
+    * again without them, and sent as the camera took it.
+    *
+    * @param options the options of the picture
+    *
+    * @return the bytes of the picture, as sent by the robot, or null if the robot could not take the picture
+    *
+    * @throws IOException if the transfer failed, the channel should then be closed. An
+    *                     InterruptedTransferException if the transfer of the picture can be resumed.
+    */
+   public synchronized byte[] fetch(PictureOptions options) throws IOException {
+      if (!options.isNone() && !optionsRefused) {
+         synchronized (out) {
+            PictureProtocol.writeLine(out, PictureProtocol.pictureRequest(options));
+            out.flush();
+         }
+         String message = PictureProtocol.readLine(in);
+         if (!"CMD_ERR".equals(message)) {
+            return receivePicture(message);
+         }
+         optionsRefused = true;
+      }
+      return fetch();
+   }
+
+   /**
+    * Requests a picture without waiting for it. Several pictures can be requested before the first one is received :
+    * the robot answers them in order, and each answer must be read with {@link #receive()}.
+    *
+    * @throws IOException if the request could not be sent, the channel should then be closed
+    */
+   void request() throws IOException {
+      synchronized (out) {
+         PictureProtocol.writeLine(out, PictureProtocol.PICTURE);
+         out.flush();
+      }
+   }
+
+   /**
+    * Receives the answer to the oldest picture request not answered yet. Must only be called by one thread at a time.
+    *
+    * @return the bytes of the picture, as sent by the robot, or null if the robot could not take the picture
+    *
+    * @throws IOException if the transfer failed, the channel should then be closed. An
+    *                     InterruptedTransferException if the transfer of the picture can be resumed.
+    */
+   byte[] receive() throws IOException {
+      return receivePicture(PictureProtocol.readLine(in));
+   }
+
+   private byte[] receivePicture(String message) throws IOException {
+      if (message == null) {
+         throw new EOFException();
+      }
+      if (!message.equals(PictureProtocol.PICTURE_OK)) {
+         return null;
+      }
+      if (!checked) {
+         return PictureProtocol.readFrame(in);
+      }
+      PictureHeader header = PictureHeader.read(in);
+      return readChunks(header, new byte[header.getSize()], 0);
+   }
+
+   /**
+    * Asks for the rest of a picture whose transfer was interrupted, on another channel, and waits for it.
+    *
+    * @param interrupted the interruption of the transfer
+    *
+    * @return the bytes of the picture, or null if the robot does not keep the picture anymore
+    *
+    * @throws IOException if the transfer failed, the channel should then be closed. An
+    *                     InterruptedTransferException if it was interrupted again.
+    */
+   synchronized byte[] resume(InterruptedTransferException interrupted) throws IOException {
+      if (!checked) {
+         throw new IOException("The session is not checked");
+      }
+      PictureHeader expected = interrupted.getHeader();
+      PictureProtocol.writeLine(out, PictureProtocol.RESUME + " " + expected.getSequence() + " " +
+                                     interrupted.getReceived());
+      out.flush();
+      String message = PictureProtocol.readLine(in);
+      if (message == null) {
+         throw new EOFException();
+      }
+      if (!message.equals(PictureProtocol.PICTURE_OK)) {
+         return null;
+      }
+      PictureHeader header = PictureHeader.read(in);
+      if (!header.describesSamePicture(expected)) {
+         throw new IOException("The robot resumed another picture");
+      }
+      return readChunks(header, interrupted.picture, interrupted.getReceived());
+   }
+
+   /**
+    * Reads the chunks of a picture until it is complete, then checks it.
+    *
+    * @param header   the header of the picture
+    * @param picture  the picture, filled as the chunks are received
+    * @param received the number of bytes of the picture already received
+    *
+    * @return the picture
+    *
+    * @throws IOException the chunks or the picture are not valid, or an InterruptedTransferException if the transfer
+    *                     was interrupted
+    */
+   private byte[] readChunks(PictureHeader header, byte[] picture, int received) throws IOException {
+      while (received < picture.length) {
+         int offset;
+         int length;
+         try {
+            offset = in.readInt();
+            length = in.readInt();
+         } catch (IOException e) {
+            throw new InterruptedTransferException(header, picture, received, e);
+         }
+         if (offset != received || length <= 0 || length > picture.length - offset) {
+            throw new IOException("Unexpected chunk of " + length + " bytes at " + offset);
+         }
+         int end = offset + length;
+         while (received < end) {
+            int read;
+            try {
+               read = in.read(picture, received, end - received);
+            } catch (IOException e) {
+               throw new InterruptedTransferException(header, picture, received, e);
+            }
+            if (read < 0) {
+               throw new InterruptedTransferException(header, picture, received, new EOFException());
+            }
+            received += read;
+         }
+      }
+      if (PictureHeader.checksum(picture, 0, picture.length) != header.getChecksum()) {
+         throw new IOException("The checksum of picture " + header.getSequence() + " does not match");
+      }
+      return picture;
+   }
+
+   /**
+    * Asks the robot to start streaming frames on this channel. Once the stream is started, the frames must be read
+    * with {@link #readStreamFrame()} and no picture can be requested anymore on this channel.
+    *
+    * @param fps the number of frames per second wanted
+    *
+    * @return true if the stream was started, false if the robot refused it
+    *
+    * @throws IOException the io exception
+    */
+   synchronized boolean startStream(int fps) throws IOException {
+      PictureProtocol.writeLine(out, PictureProtocol.STREAM + " " + fps);
+      out.flush();
+      return PictureProtocol.STREAM_OK.equals(PictureProtocol.readLine(in));
+   }
+
+   /**
+    * Reads the next frame of the stream. Must only be called by the thread receiving the stream.
+    *
+    * @return the bytes of the frame, or null if the stream has ended
+    *
+    * @throws IOException the io exception
+    */
+   byte[] readStreamFrame() throws IOException {
+      byte[] frame = PictureProtocol.readFrame(in);
+      return frame.length == 0 ? null : frame;
+   }
+
+   /**
+    * Asks the robot to stop the stream. The frames already sent can still be read until the end of the stream.
+    *
+    * @throws IOException the io exception
+    */
+   void stopStream() throws IOException {
+      synchronized (out) {
+         PictureProtocol.writeLine(out, PictureProtocol.STREAM_STOP);
+         out.flush();
+      }
+   }
+
+   /**
+    * Ends the session and closes the connection
+    */
+   @Override
+   public void close() {
+      try {
+         synchronized (out) {
+            PictureProtocol.writeLine(out, PictureProtocol.END);
+            out.flush();
+         }
+      } catch (IOException e) {
+         // the connection is closed anyway
+      }
+      try {
+         socket.close();
+      } catch (IOException e) {
+      }
+   }
+
+   /**
+    * Tells that the transfer of a picture was interrupted, and keeps what was received of it so that the transfer can
+    * be resumed.
+    */
+   static class InterruptedTransferException extends IOException {
+      private final PictureHeader header;
+      private final byte[] picture;
+      private final int received;
+
+      private InterruptedTransferException(PictureHeader header, byte[] picture, int received, IOException cause) {
+         super("Transfer of picture " + header.getSequence() + " interrupted after " + received + " bytes", cause);
+         this.header = header;
+         this.picture = picture;
+         this.received = received;
+      }
+
+      PictureHeader getHeader() {
+         return header;
+      }
+
+      /**
+       * Gets the number of bytes of the picture received before the interruption.
+       *
+       * @return the number of bytes
+       */
+      int getReceived() {
+         return received;
+      }
+   }
+}
@@ -0,0 +1,155 @@
+/*
+ * @File PictureStream.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * A live video stream received from the robot. The frames go through a small pipeline : a receiving thread reads the
+ * jpeg frames from the picture channel, a decoding thread turns them into images, and the user of the stream polls the
+ * last decoded image at its own rate (typically the display rate). Each stage only keeps the most recent frame, so a
+ * slow stage makes the stream drop frames instead of falling behind.
+ *
+ * @param <T> the type of the decoded frames
+ */
+public class PictureStream<T> implements Closeable {
+   private final PictureChannel channel;
+   private final Function<byte[], T> decoder;
+   private final AtomicReference<byte[]> pendingFrame = new AtomicReference<>();
+   private final AtomicReference<T> decodedFrame = new AtomicReference<>();
+   private final Object frameSignal = new Object();
+   private final Thread receiver;
+   private final Thread decoding;
+   private volatile boolean running = true;
+
+   private final AtomicLong receivedFrames = new AtomicLong();
+   private final AtomicLong droppedFrames = new AtomicLong();
+
+   /**
+    * Starts receiving and decoding the frames from a channel on which the stream has already been started.
+    *
+    * @param channel the channel
+    * @param decoder the function turning the bytes of a frame into an image
+    */
+   PictureStream(PictureChannel channel, Function<byte[], T> decoder) {
+      this.channel = channel;
+      this.decoder = decoder;
+      receiver = new Thread(this::receive, "picture-stream-receiver");
+      decoding = new Thread(this::decode, "picture-stream-decoder");
+      receiver.setDaemon(true);
+      decoding.setDaemon(true);
+      receiver.start();
+      decoding.start();
+   }
+
+   /**
+    * Returns the last decoded frame, if a new one was decoded since the last call.
+    *
+    * @return the frame, or null if there is no new frame
+    */
+   public T pollFrame() {
+      return decodedFrame.getAndSet(null);
+   }
+
+   /**
+    * Gets the number of frames received since the start of the stream
+    *
+    * @return the number of received frames
+    */
+   public long getReceivedFrames() {
+      return receivedFrames.get();
+   }
+
+   /**
+    * Gets the number of frames that were replaced by a newer one before being decoded or displayed
+    *
+    * @return the number of dropped frames
+    */
+   public long getDroppedFrames() {
+      return droppedFrames.get();
+   }
+
+   /**
+    * Informs if the stream is still running
+    *
+    * @return true if frames are still being received
+    */
+   public boolean isRunning() {
+      return running;
+   }
+
+   /**
+    * Stops the stream and closes its channel.
+    */
+   @Override
+   public void close() {
+      if (running) {
+         try {
+            channel.stopStream();
+         } catch (IOException e) {
+            // the channel is closed below anyway
+         }
+      }
+      try {
+         receiver.join(1000);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      stop();
+   }
+
+   private void receive() {
+      try {
+         byte[] frame;
+         while ((frame = channel.readStreamFrame()) != null) {
+            receivedFrames.incrementAndGet();
+            if (pendingFrame.getAndSet(frame) != null) {
+               droppedFrames.incrementAndGet();
+            }
+            synchronized (frameSignal) {
+               frameSignal.notify();
+            }
+         }
+      } catch (IOException e) {
+         // the stream ends with the connection
+      }
+      stop();
+   }
+
+   private void decode() {
+      while (running) {
+         byte[] frame = null;
+         synchronized (frameSignal) {
+            while (running && (frame = pendingFrame.getAndSet(null)) == null) {
+               try {
+                  frameSignal.wait();
+               } catch (InterruptedException e) {
+                  return;
+               }
+            }
+         }
+         if (!running) {
+            return;
+         }
+         T image = decoder.apply(frame);
+         if (image != null && decodedFrame.getAndSet(image) != null) {
+            droppedFrames.incrementAndGet();
+         }
+      }
+   }
+
+   private void stop() {
+      running = false;
+      synchronized (frameSignal) {
+         frameSignal.notify();
+      }
+      channel.close();
+   }
+}
@@ -0,0 +1,81 @@
+/*
+ * @File ReconnectPolicy.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import lombok.Getter;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How a client reconnects to the robot after losing the connection. The time before each attempt doubles from the
+ * initial delay up to the maximum delay, and a random part of it is drawn for each attempt so that many clients losing
+ * the same robot do not all come back at the same instant. Once reconnected, the robot either goes back to the last
+ * movement it was doing, or is stopped.
+ */
+public class ReconnectPolicy {
+   /**
+    * Reconnects after 200 ms, then up to every 5 s, for 10 attempts, and stops the robot once reconnected
+    */
+   public static final ReconnectPolicy DEFAULT = new ReconnectPolicy(200, 5000, 10, false);
+   /**
+    * The time before the first attempt, in milliseconds
+    */
+   @Getter private final long initialDelay;
+   /**
+    * The longest time between two attempts, in milliseconds
+    */
+   @Getter private final long maxDelay;
+   /**
+    * The number of attempts before giving up, 0 to never give up
+    */
+   @Getter private final int maxAttempts;
+   /**
+    * True to send the last movement again once reconnected, false to stop the robot
+    */
+   @Getter private final boolean restoringMotion;
+
+   /**
+    * Instantiates a new reconnect policy.
+    *
+    * @param initialDelay    the time before the first attempt, in milliseconds
+    * @param maxDelay        the longest time between two attempts, in milliseconds
+    * @param maxAttempts     the number of attempts before giving up, 0 to never give up
+    * @param restoringMotion true to send the last movement again once reconnected, false to stop the robot
+    */
+   public ReconnectPolicy(long initialDelay, long maxDelay, int maxAttempts, boolean restoringMotion) {
+      if (initialDelay <= 0 || maxDelay < initialDelay || maxAttempts < 0) {
+         throw new IllegalArgumentException("The delays must be positive and the attempts cannot be negative");
+      }
+      this.initialDelay = initialDelay;
+      this.maxDelay = maxDelay;
+      this.maxAttempts = maxAttempts;
+      this.restoringMotion = restoringMotion;
+   }
+
+   /**
+    * Returns the time to wait before an attempt : half of the backoff delay, plus a random part of the other half.
+    *
+    * @param attempt the number of the attempt, from 0
+    *
+    * @return the time to wait, in milliseconds
+    */
+   public long delay(int attempt) {
+      long backoff = initialDelay << Math.min(attempt, 20);
+      backoff = Math.min(maxDelay, backoff);
+      return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+   }
+
+   /**
+    * Tells whether another attempt can be made
+    *
+    * @param attempt the number of the attempt, from 0
+    *
+    * @return true if the attempt can be made
+    */
+   public boolean allows(int attempt) {
+      return maxAttempts == 0 || attempt < maxAttempts;
+   }
+}
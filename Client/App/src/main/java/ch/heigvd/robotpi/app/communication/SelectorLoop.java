@@ -0,0 +1,139 @@
+/*
+ * @File SelectorLoop.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A thread waiting on a selector for the channels of many connections, and running their reads and writes when they
+ * are ready. The connections registered to the loop must never block in their handlers, since every other connection
+ * waits for them.
+ */
+final class SelectorLoop implements Runnable {
+   private static final Logger LOG = Logger.getLogger(SelectorLoop.class.getName());
+   private static SelectorLoop shared = null;
+   private final Selector selector;
+   private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+   private final Thread thread;
+
+   /**
+    * Instantiates a new loop and starts its thread.
+    *
+    * @param name the name of the thread
+    *
+    * @throws IOException the selector could not be opened
+    */
+   SelectorLoop(String name) throws IOException {
+      this.selector = Selector.open();
+      this.thread = new Thread(this, name);
+      thread.setDaemon(true);
+      thread.start();
+   }
+
+   /**
+    * Returns the loop shared by the connections of this process, started on first use.
+    *
+    * @return the shared loop
+    */
+   static synchronized SelectorLoop shared() {
+      if (shared == null) {
+         try {
+            shared = new SelectorLoop("robotpi-selector");
+         } catch (IOException e) {
+            throw new UncheckedIOException(e);
+         }
+      }
+      return shared;
+   }
+
+   /**
+    * Gets the selector of the loop. The channels must be registered to it by a task of the loop.
+    *
+    * @return the selector
+    */
+   Selector getSelector() {
+      return selector;
+   }
+
+   /**
+    * Runs a task on the thread of the loop, after the current selection.
+    *
+    * @param task the task
+    */
+   void execute(Runnable task) {
+      tasks.add(task);
+      selector.wakeup();
+   }
+
+   /**
+    * Wakes the loop up, so that the changes of the interests of the keys are taken into account
+    */
+   void wakeup() {
+      selector.wakeup();
+   }
+
+   /**
+    * Tells whether the caller runs on the thread of the loop.
+    *
+    * @return true on the thread of the loop
+    */
+   boolean inLoop() {
+      return Thread.currentThread() == thread;
+   }
+
+   @Override
+   public void run() {
+      try {
+         while (true) {
+            selector.select();
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+               runSafely(task);
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+               SelectionKey key = keys.next();
+               keys.remove();
+               if (key.isValid()) {
+                  runSafely(() -> ((Session) key.attachment()).ready(key));
+               }
+            }
+         }
+      } catch (IOException | ClosedSelectorException e) {
+         LOG.log(Level.SEVERE, "The selector loop stopped", e);
+      }
+   }
+
+   private static void runSafely(Runnable task) {
+      try {
+         task.run();
+      } catch (RuntimeException e) {
+         LOG.log(Level.WARNING, "Error in the selector loop", e);
+      }
+   }
+
+   /**
+    * What is attached to the keys of the loop
+    */
+   interface Session {
+      /**
+       * Handles the operations the channel is ready for. It is called by the thread of the loop and must catch its own
+       * errors.
+       *
+       * @param key the key of the channel
+       */
+      void ready(SelectionKey key);
+   }
+}
@@ -0,0 +1,286 @@
+/*
+ * @File SelectorTransport.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.BinaryProtocol;
+import ch.heigvd.robotpi.servertest.ProtocolCommands;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The transport of the commands over a connection driven by the shared selector loop, so that no thread is blocked
+ * waiting for the answers of each robot. The answers are decoded by the thread of the loop, as lines or as binary
+ * frames, and given to the listener of the transport.
+ * <p>
+ * Until the listener is set, the lines received are kept for {@link #exchange(String)}, which is used to set up the
+ * connection.
+ */
+class SelectorTransport implements CommandTransport, TlsConnection.Handler {
+   private static final Logger LOG = Logger.getLogger(SelectorTransport.class.getName());
+   // the longest time to wait for the handshake or the answer to a setup line, in milliseconds
+   private static final long SETUP_TIMEOUT = 10000;
+   private static final long POLL_INTERVAL = 100;
+   private volatile TlsConnection connection;
+   private final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+   private volatile boolean binary = false;
+   // guarded by this
+   private AnswerListener listener = null;
+   private boolean ended = false;
+   // written by the sending threads, which send one command at a time
+   private ByteBuffer out = ByteBuffer.allocate(256);
+   private int nextSequence = 0;
+   // used by the thread of the loop only
+   private int expectedSequence = 0;
+
+   private SelectorTransport() {}
+
+   /**
+    * Opens a connection to the robot on the shared selector loop, and waits for its TLS handshake.
+    *
+    * @param host the address of the robot
+    * @param port the port
+    *
+    * @return the transport, in text mode
+    *
+    * @throws IOException the connection or the handshake failed
+    */
+   static SelectorTransport open(String host, int port) throws IOException {
+      SelectorTransport transport = new SelectorTransport();
+      transport.connection = TlsConnection.open(SelectorLoop.shared(), BufferPool.shared(), host, port, transport,
+                                                SETUP_TIMEOUT);
+      return transport;
+   }
+
+   /**
+    * Gets the time taken by the TLS handshake of the connection.
+    *
+    * @return the time of the handshake, in nanoseconds
+    */
+   long getHandshakeTime() {
+      return connection.getHandshakeTime();
+   }
+
+   /**
+    * Sends a line and waits for the line of the answer. Only used to set up the connection, before the listener is set.
+    *
+    * @param line the line, without its end
+    *
+    * @return the answer, without its end
+    *
+    * @throws IOException the connection was closed, or the robot did not answer
+    */
+   String exchange(String line) throws IOException {
+      sendLine(line);
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SETUP_TIMEOUT);
+      try {
+         while (true) {
+            String answer = lines.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            if (answer != null) {
+               return answer;
+            }
+            synchronized (this) {
+               if (ended && lines.isEmpty()) {
+                  throw new EOFException();
+               }
+            }
+            if (System.nanoTime() > deadline) {
+               throw new SocketTimeoutException("The robot did not answer " + line);
+            }
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException();
+      }
+   }
+
+   /**
+    * Switches to the binary framing, once the robot accepted it
+    */
+   void useBinaryFraming() {
+      binary = true;
+   }
+
+   /**
+    * Sets the listener given the answers of the robot, once the connection is set up. If the connection is already
+    * closed, the listener is told at once.
+    *
+    * @param answerListener the listener
+    */
+   void listen(AnswerListener answerListener) {
+      boolean closed;
+      synchronized (this) {
+         listener = answerListener;
+         closed = ended;
+      }
+      if (closed) {
+         answerListener.ended();
+      }
+   }
+
+   @Override
+   public boolean usesBinaryFraming() {
+      return binary;
+   }
+
+   @Override
+   public void send(ProtocolCommands command, int[] arguments) throws IOException {
+      if (binary) {
+         if (arguments.length * 2 > BinaryProtocol.MAX_PAYLOAD) {
+            throw new IllegalArgumentException("Payload too large : " + arguments.length * 2);
+         }
+         ByteBuffer frame = buffer(6 + arguments.length * 2);
+         int flags = BinaryProtocol.FLAG_SEQUENCE | (arguments.length > 0 ? BinaryProtocol.FLAG_PAYLOAD : 0);
+         frame.put((byte) command.getCode()).put((byte) flags).putShort((short) nextSequence);
+         if (arguments.length > 0) {
+            frame.putShort((short) (arguments.length * 2));
+            for (int argument : arguments) {
+               frame.putShort((short) argument);
+            }
+         }
+         nextSequence = (nextSequence + 1) & 0xFFFF;
+         write(frame);
+      } else {
+         sendLine(arguments.length == 0 ? command.getMessage() : command.format(arguments));
+      }
+   }
+
+   @Override
+   public void close() {
+      connection.close();
+   }
+
+   private void sendLine(String line) throws IOException {
+      ByteBuffer buffer = buffer(line.length() + 1);
+      for (int i = 0; i < line.length(); i++) {
+         buffer.put((byte) line.charAt(i));
+      }
+      buffer.put((byte) '\n');
+      write(buffer);
+   }
+
+   private ByteBuffer buffer(int size) {
+      if (out.capacity() < size) {
+         out = ByteBuffer.allocate(size);
+      }
+      out.clear();
+      return out;
+   }
+
+   private void write(ByteBuffer buffer) throws IOException {
+      buffer.flip();
+      connection.write(buffer);
+   }
+
+   @Override
+   public void received(ByteBuffer data) throws IOException {
+      while (binary ? readFrame(data) : readLine(data)) {
+         // reads every whole message received
+      }
+   }
+
+   private boolean readLine(ByteBuffer data) {
+      int start = data.position();
+      for (int i = start; i < data.limit(); i++) {
+         if (data.get(i) == '\n') {
+            int end = i > start && data.get(i - 1) == '\r' ? i - 1 : i;
+            byte[] bytes = new byte[end - start];
+            data.get(bytes);
+            data.position(i + 1);
+            String line = new String(bytes, StandardCharsets.US_ASCII);
+            AnswerListener answerListener = getListener();
+            if (answerListener == null) {
+               lines.add(line);
+            } else {
+               ProtocolCommands command = ProtocolCommands.getCommandFromConfirmation(line);
+               if (command == null) {
+                  LOG.log(Level.WARNING, "Unexpected message from the robot : {0}", line);
+               }
+               answerListener.answered(command);
+            }
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private boolean readFrame(ByteBuffer data) throws IOException {
+      int start = data.position();
+      if (data.remaining() < 2) {
+         return false;
+      }
+      int opcode = data.get(start) & 0xFF;
+      int flags = data.get(start + 1) & 0xFF;
+      boolean hasSequence = (flags & BinaryProtocol.FLAG_SEQUENCE) != 0;
+      boolean hasPayload = (flags & BinaryProtocol.FLAG_PAYLOAD) != 0;
+      int header = 2 + (hasSequence ? 2 : 0) + (hasPayload ? 2 : 0);
+      if (data.remaining() < header) {
+         return false;
+      }
+      int sequence = hasSequence ? data.getShort(start + 2) & 0xFFFF : BinaryProtocol.NO_SEQUENCE;
+      int length = hasPayload ? data.getShort(start + header - 2) & 0xFFFF : 0;
+      if (header + length > data.capacity()) {
+         throw new IOException("Frame too large : " + length);
+      }
+      if (data.remaining() < header + length) {
+         return false;
+      }
+      // the answers carry no payload that the client uses
+      data.position(start + header + length);
+      if (sequence != expectedSequence) {
+         throw new IOException("Answer out of sequence : " + sequence + " instead of " + expectedSequence);
+      }
+      expectedSequence = (expectedSequence + 1) & 0xFFFF;
+      AnswerListener answerListener = getListener();
+      if (answerListener == null) {
+         throw new IOException("Answer received before any command");
+      }
+      answerListener.answered(ProtocolCommands.getCommandFromConfirmationCode(opcode));
+      return true;
+   }
+
+   private synchronized AnswerListener getListener() {
+      return listener;
+   }
+
+   @Override
+   public void closed() {
+      AnswerListener answerListener;
+      synchronized (this) {
+         ended = true;
+         answerListener = listener;
+      }
+      if (answerListener != null) {
+         answerListener.ended();
+      }
+   }
+
+   /**
+    * Receives the answers of the robot, on the thread of the selector loop. It must not block.
+    */
+   interface AnswerListener {
+      /**
+       * Tells that the robot answered the oldest command waiting for its answer
+       *
+       * @param confirmed the command confirmed by the answer, or null if the answer does not confirm any command
+       */
+      void answered(ProtocolCommands confirmed);
+
+      /**
+       * Tells that the connection is closed, called once
+       */
+      void ended();
+   }
+}
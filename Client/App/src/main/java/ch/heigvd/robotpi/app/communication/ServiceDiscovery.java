@@ -0,0 +1,173 @@
+/*
+ * @File ServiceDiscovery.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import javax.jmdns.JmDNS;
+import javax.jmdns.ServiceEvent;
+import javax.jmdns.ServiceListener;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Discovers the robots announced on the local network. A single JmDNS instance is kept running in the background for
+ * the whole life of the application, so the robots already resolved are known immediately and the new ones are
+ * reported as soon as they are resolved, instead of waiting for a fixed time at each scan.
+ */
+public class ServiceDiscovery {
+   /**
+    * The type of the service announced by the robots
+    */
+   public static final String SERVICE_TYPE = "_robopi._tcp.local.";
+   private static final Logger LOG = Logger.getLogger(ServiceDiscovery.class.getName());
+   private static ServiceDiscovery shared = null;
+   // the addresses of the robots currently announced, by name of service
+   private final Map<String, String> robots = new ConcurrentHashMap<>();
+   private final Set<Consumer<String>> subscribers = ConcurrentHashMap.newKeySet();
+   private final RobotListener listener = new RobotListener();
+   private final CompletableFuture<JmDNS> jmdns;
+
+   /**
+    * Instantiates a new service discovery. The JmDNS instance is created in the background, this constructor does
+    * not block. If it cannot be created, the subscriptions tell it, see {@link Subscription#getStarted()}.
+    */
+   public ServiceDiscovery() {
+      jmdns = CompletableFuture.supplyAsync(() -> {
+         try {
+            JmDNS instance = JmDNS.create(InetAddress.getLocalHost());
+            instance.addServiceListener(SERVICE_TYPE, listener);
+            return instance;
+         } catch (IOException e) {
+            LOG.log(Level.WARNING, "Could not start the discovery of the robots", e);
+            throw new UncheckedIOException(e);
+         }
+      });
+   }
+
+   /**
+    * Returns the service discovery shared by the whole application, starting it on first use, or again if it could
+    * not start.
+    *
+    * @return the shared service discovery
+    */
+   public static synchronized ServiceDiscovery getShared() {
+      if (shared == null || shared.jmdns.isCompletedExceptionally()) {
+         shared = new ServiceDiscovery();
+      }
+      return shared;
+   }
+
+   /**
+    * Stops the shared service discovery, if it was started
+    */
+   public static synchronized void closeShared() {
+      if (shared != null) {
+         shared.close();
+         shared = null;
+      }
+   }
+
+   /**
+    * Subscribes to the robots found on the network. The robots already known are reported right away, then every
+    * robot is reported when it is resolved, until the subscription is cancelled. The subscriber is called by the
+    * threads of JmDNS, and can be called more than once for the same address.
+    *
+    * @param subscriber the function called with the ip address of each robot found
+    *
+    * @return the subscription
+    */
+   public Subscription subscribe(Consumer<String> subscriber) {
+      subscribers.add(subscriber);
+      for (String address : robots.values()) {
+         subscriber.accept(address);
+      }
+      return new Subscription(subscriber);
+   }
+
+   /**
+    * Returns the addresses of the robots currently announced on the network
+    *
+    * @return the addresses
+    */
+   public Set<String> getRobots() {
+      return Set.copyOf(robots.values());
+   }
+
+   /**
+    * Stops the discovery and releases the JmDNS instance
+    */
+   public void close() {
+      subscribers.clear();
+      jmdns.thenAccept(instance -> {
+         instance.removeServiceListener(SERVICE_TYPE, listener);
+         try {
+            instance.close();
+         } catch (IOException e) {
+         }
+      });
+   }
+
+   /**
+    * A subscription to the robots found on the network
+    */
+   public class Subscription {
+      private final Consumer<String> subscriber;
+
+      private Subscription(Consumer<String> subscriber) {
+         this.subscriber = subscriber;
+      }
+
+      /**
+       * Tells when the discovery runs. The robots cannot be found if it could not start.
+       *
+       * @return a future completed once the discovery runs, or completed exceptionally with the reason it could not
+       * start
+       */
+      public CompletableFuture<Void> getStarted() {
+         return jmdns.thenApply(instance -> null);
+      }
+
+      /**
+       * Stops reporting the robots found to the subscriber
+       */
+      public void cancel() {
+         subscribers.remove(subscriber);
+      }
+   }
+
+   private class RobotListener implements ServiceListener {
+
+      @Override
+      public void serviceAdded(ServiceEvent event) {
+         LOG.log(Level.FINE, "Service added : {0}", event.getInfo());
+      }
+
+      @Override
+      public void serviceRemoved(ServiceEvent event) {
+         LOG.log(Level.FINE, "Service removed : {0}", event.getInfo());
+         robots.remove(event.getName());
+      }
+
+      @Override
+      public void serviceResolved(ServiceEvent event) {
+         LOG.log(Level.FINE, "Service resolved : {0}", event.getInfo());
+         if (event.getType().equals(SERVICE_TYPE) && event.getInfo().getInet4Addresses().length > 0) {
+            String address = event.getInfo().getInet4Addresses()[0].getHostAddress();
+            robots.put(event.getName(), address);
+            for (Consumer<String> subscriber : subscribers) {
+               subscriber.accept(address);
+            }
+         }
+      }
+   }
+}
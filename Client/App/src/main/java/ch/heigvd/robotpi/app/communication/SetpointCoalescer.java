@@ -0,0 +1,117 @@
+/*
+ * @File SetpointCoalescer.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.ProtocolCommands;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends the speeds of the wheels given by an analog input, such as the mouse or a gamepad, to the robot. The input can
+ * change the setpoint as often as it wants : it is sampled at a fixed rate, and only sent if it changed since the last
+ * one sent. At most one setpoint waits for the answer of the robot, so when the link is slower than the input the
+ * intermediate setpoints are dropped and the robot always receives the latest one.
+ */
+public class SetpointCoalescer implements Closeable {
+   private static final Logger LOG = Logger.getLogger(SetpointCoalescer.class.getName());
+   private static final long NO_SETPOINT = Long.MIN_VALUE;
+   private final Client client;
+   private final ScheduledExecutorService sampler;
+   // the latest setpoint given by the input, the speeds of both wheels packed in a long
+   private final AtomicLong latest = new AtomicLong(NO_SETPOINT);
+   private final AtomicLong received = new AtomicLong();
+   private final AtomicLong sent = new AtomicLong();
+   // only used by the sampling thread
+   private long lastSent = NO_SETPOINT;
+   private CompletableFuture<Void> inFlight = CompletableFuture.completedFuture(null);
+
+   /**
+    * Instantiates a new coalescer and starts sampling the setpoints.
+    *
+    * @param client the client connected to the robot
+    * @param period the time between two samples of the input, in milliseconds
+    */
+   public SetpointCoalescer(Client client, long period) {
+      this.client = client;
+      this.sampler = Executors.newSingleThreadScheduledExecutor(task -> {
+         Thread thread = new Thread(task, "robotpi-setpoints");
+         thread.setDaemon(true);
+         return thread;
+      });
+      sampler.scheduleAtFixedRate(this::sample, period, period, TimeUnit.MILLISECONDS);
+   }
+
+   /**
+    * Sets the speeds wanted for the wheels. They replace the previous ones if those were not sent yet.
+    *
+    * @param left  the speed of the left wheel, from -100 to 100
+    * @param right the speed of the right wheel, from -100 to 100
+    *
+    * @throws IllegalArgumentException if a speed is out of range
+    */
+   public void setSetpoint(int left, int right) {
+      if (Math.abs(left) > ProtocolCommands.MAX_SPEED || Math.abs(right) > ProtocolCommands.MAX_SPEED) {
+         throw new IllegalArgumentException("Speed out of range : " + left + ", " + right);
+      }
+      latest.set(((long) left << 32) | (right & 0xFFFFFFFFL));
+      received.incrementAndGet();
+   }
+
+   /**
+    * Gets the number of setpoints given by the input.
+    *
+    * @return the number of setpoints given
+    */
+   public long getReceivedSetpoints() {
+      return received.get();
+   }
+
+   /**
+    * Gets the number of setpoints sent to the robot.
+    *
+    * @return the number of setpoints sent
+    */
+   public long getSentSetpoints() {
+      return sent.get();
+   }
+
+   /**
+    * Stops sampling the input. The setpoint that was not sent yet is dropped.
+    */
+   @Override
+   public void close() {
+      sampler.shutdownNow();
+   }
+
+   /**
+    * Sends the latest setpoint, if it changed and the robot answered the previous one. It must not throw, or the
+    * sampling would stop.
+    */
+   private void sample() {
+      if (!inFlight.isDone()) {
+         return;
+      }
+      long setpoint = latest.get();
+      if (setpoint == NO_SETPOINT || setpoint == lastSent || !client.isConnected()) {
+         return;
+      }
+      try {
+         inFlight = client.driveAsync((int) (setpoint >> 32), (int) setpoint);
+         lastSent = setpoint;
+         sent.incrementAndGet();
+      } catch (RuntimeException e) {
+         // the setpoint is sent again at the next sample
+         LOG.log(Level.WARNING, "Could not send the setpoint", e);
+      }
+   }
+}
@@ -0,0 +1,25 @@
+/*
+ * @File StreamTransport.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.ProtocolCommands;
+
+import java.io.IOException;
+
+/**
+ * A transport over the streams of a socket, whose answers are pulled one at a time by the reading thread of the client,
+ * blocked on the socket.
+ */
+interface StreamTransport extends CommandTransport {
+   /**
+    * Waits for the next answer of the robot.
+    *
+    * @return the command confirmed by the answer, or null if the answer does not confirm any command
+    *
+    * @throws IOException the connection was lost or closed, EOFException if it ended normally
+    */
+   ProtocolCommands receive() throws IOException;
+}
@@ -0,0 +1,69 @@
+/*
+ * @File TextTransport.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.ProtocolCommands;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The text protocol : every command and every answer is a line. This is the protocol known by every robot.
+ */
+class TextTransport implements StreamTransport {
+   private static final Logger LOG = Logger.getLogger(TextTransport.class.getName());
+   private final PrintWriter out;
+   private final BufferedReader in;
+
+   /**
+    * Instantiates a new text transport over the streams of the connection.
+    *
+    * @param out the writer to the robot
+    * @param in  the reader from the robot
+    */
+   TextTransport(PrintWriter out, BufferedReader in) {
+      this.out = out;
+      this.in = in;
+   }
+
+   @Override
+   public boolean usesBinaryFraming() {
+      return false;
+   }
+
+   @Override
+   public void send(ProtocolCommands command, int[] arguments) throws IOException {
+      out.print(arguments.length == 0 ? command.getMessage() : command.format(arguments));
+      out.print("\n");
+      out.flush();
+      if (out.checkError()) {
+         throw new IOException("Could not send " + command.getMessage());
+      }
+   }
+
+   @Override
+   public ProtocolCommands receive() throws IOException {
+      String line = in.readLine();
+      if (line == null) {
+         throw new EOFException();
+      }
+      ProtocolCommands command = ProtocolCommands.getCommandFromConfirmation(line);
+      if (command == null) {
+         LOG.log(Level.WARNING, "Unexpected message from the robot : {0}", line);
+      }
+      return command;
+   }
+
+   @Override
+   public void close() throws IOException {
+      out.close();
+      in.close();
+   }
+}
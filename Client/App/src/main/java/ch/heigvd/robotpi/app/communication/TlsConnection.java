@@ -0,0 +1,411 @@
+/*
+ * @File TlsConnection.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.app.communication;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A TLS connection on a non blocking channel, driven by a selector loop. The records are encrypted and decrypted by an
+ * SSLEngine, in direct buffers taken from a pool. The data received is given to the handler of the connection by the
+ * thread of the loop, and the data to send is encrypted by the thread that writes it, then sent by the loop once the
+ * channel accepts it.
+ */
+final class TlsConnection implements Closeable, SelectorLoop.Session {
+   private static final Logger LOG = Logger.getLogger(TlsConnection.class.getName());
+   private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+   // how long a writer waits for the channel to accept the data already encrypted, in milliseconds
+   private static final long WRITE_TIMEOUT = 10000;
+   private final SelectorLoop loop;
+   private final BufferPool pool;
+   private final SocketChannel channel;
+   private final SSLEngine engine;
+   private final Handler handler;
+   private final CompletableFuture<Void> handshake = new CompletableFuture<>();
+   // used by the thread of the loop only
+   private final ByteBuffer netIn;
+   private final ByteBuffer appIn;
+   private long handshakeStart;
+   private volatile long handshakeTime;
+   private volatile SelectionKey key = null;
+   // the encrypted data not sent yet, and whether the connection is closed, guarded by outLock
+   private final Object outLock = new Object();
+   private final ByteBuffer netOut;
+   private boolean closed = false;
+
+   private TlsConnection(SelectorLoop loop, BufferPool pool, SocketChannel channel, SSLEngine engine,
+                         Handler handler) {
+      this.loop = loop;
+      this.pool = pool;
+      this.channel = channel;
+      this.engine = engine;
+      this.handler = handler;
+      this.netIn = pool.acquire(engine.getSession().getPacketBufferSize());
+      this.netOut = pool.acquire(engine.getSession().getPacketBufferSize());
+      this.appIn = pool.acquire(engine.getSession().getApplicationBufferSize());
+   }
+
+   /**
+    * Opens a connection and waits for the end of its TLS handshake.
+    *
+    * @param loop    the loop driving the connection
+    * @param pool    the pool of the buffers of the connection
+    * @param host    the address of the robot
+    * @param port    the port
+    * @param handler the handler of the data received, called by the thread of the loop
+    * @param timeout the longest time to wait for the handshake, in milliseconds
+    *
+    * @return the connection
+    *
+    * @throws IOException the connection or the handshake failed
+    */
+   static TlsConnection open(SelectorLoop loop, BufferPool pool, String host, int port, Handler handler, long timeout)
+           throws IOException {
+      SSLEngine engine;
+      try {
+         engine = Client.createEngine(host, port);
+      } catch (Exception e) {
+         throw new IOException("Could not create the TLS engine", e);
+      }
+      SocketChannel channel = SocketChannel.open();
+      TlsConnection connection;
+      try {
+         channel.configureBlocking(false);
+         // commands are small, they must not wait for the delayed acks of the previous ones
+         channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+         channel.connect(new InetSocketAddress(host, port));
+         connection = new TlsConnection(loop, pool, channel, engine, handler);
+      } catch (IOException e) {
+         channel.close();
+         throw e;
+      }
+      loop.execute(connection::register);
+      try {
+         connection.handshake.get(timeout, TimeUnit.MILLISECONDS);
+      } catch (ExecutionException e) {
+         connection.close();
+         if (e.getCause() instanceof IOException) {
+            throw (IOException) e.getCause();
+         }
+         throw new IOException(e.getCause());
+      } catch (TimeoutException e) {
+         connection.close();
+         throw new SocketTimeoutException("TLS handshake with " + host + " timed out");
+      } catch (InterruptedException e) {
+         connection.close();
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException();
+      }
+      return connection;
+   }
+
+   /**
+    * Gets the time taken by the TLS handshake.
+    *
+    * @return the time of the handshake, in nanoseconds
+    */
+   long getHandshakeTime() {
+      return handshakeTime;
+   }
+
+   /**
+    * Encrypts data and sends it as soon as the channel accepts it. The writers must not write at the same time, so
+    * that their data is not mixed.
+    *
+    * @param data the data, entirely consumed
+    *
+    * @throws IOException the connection is closed, or the robot did not read the data sent before for too long
+    */
+   void write(ByteBuffer data) throws IOException {
+      wrap(data);
+   }
+
+   /**
+    * Closes the connection. It is closed by the thread of the loop, which then calls the handler.
+    */
+   @Override
+   public void close() {
+      if (loop.inLoop()) {
+         closeNow();
+      } else {
+         loop.execute(this::closeNow);
+      }
+   }
+
+   private void register() {
+      try {
+         if (channel.isConnected()) {
+            key = channel.register(loop.getSelector(), SelectionKey.OP_READ, this);
+            connected();
+         } else {
+            key = channel.register(loop.getSelector(), SelectionKey.OP_CONNECT, this);
+         }
+      } catch (IOException | RuntimeException e) {
+         fail(e);
+      }
+   }
+
+   @Override
+   public void ready(SelectionKey key) {
+      try {
+         if (key.isConnectable() && channel.finishConnect()) {
+            key.interestOps(SelectionKey.OP_READ);
+            connected();
+         }
+         if (key.isValid() && key.isWritable()) {
+            writable();
+         }
+         if (key.isValid() && key.isReadable()) {
+            readable();
+         }
+      } catch (IOException | RuntimeException e) {
+         fail(e);
+      }
+   }
+
+   private void connected() throws IOException {
+      handshakeStart = System.nanoTime();
+      engine.beginHandshake();
+      handshake(engine.getHandshakeStatus());
+   }
+
+   private void readable() throws IOException {
+      if (channel.read(netIn) < 0) {
+         closeNow();
+         return;
+      }
+      netIn.flip();
+      try {
+         while (netIn.hasRemaining() && !closed) {
+            SSLEngineResult result = engine.unwrap(netIn, appIn);
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+               // the rest of the record is not received yet
+               break;
+            } else if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+               if (!deliver()) {
+                  throw new IOException("Message too long");
+               }
+            } else if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+               // the last answers come with the end of the connection
+               deliver();
+               closeNow();
+            } else {
+               handshake(result.getHandshakeStatus());
+            }
+         }
+      } finally {
+         if (!closed) {
+            netIn.compact();
+         }
+      }
+      if (!closed) {
+         deliver();
+      }
+   }
+
+   /**
+    * Gives the data received to the handler
+    *
+    * @return true if the handler read some of it
+    *
+    * @throws IOException the handler could not read the data
+    */
+   private boolean deliver() throws IOException {
+      appIn.flip();
+      int received = appIn.remaining();
+      try {
+         if (received > 0) {
+            handler.received(appIn);
+         }
+         return appIn.remaining() < received;
+      } finally {
+         if (!closed) {
+            appIn.compact();
+         }
+      }
+   }
+
+   private void handshake(SSLEngineResult.HandshakeStatus status) throws IOException {
+      while (true) {
+         switch (status) {
+            case NEED_TASK:
+               Runnable task;
+               while ((task = engine.getDelegatedTask()) != null) {
+                  task.run();
+               }
+               status = engine.getHandshakeStatus();
+               break;
+            case NEED_WRAP:
+               status = wrap(EMPTY);
+               break;
+            default:
+               // waits for the data of the robot, or done
+               if (!handshake.isDone() &&
+                   engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
+                  handshakeTime = System.nanoTime() - handshakeStart;
+                  handshake.complete(null);
+               }
+               return;
+         }
+      }
+   }
+
+   private SSLEngineResult.HandshakeStatus wrap(ByteBuffer data) throws IOException {
+      synchronized (outLock) {
+         if (closed) {
+            throw new ClosedChannelException();
+         }
+         SSLEngineResult result;
+         do {
+            result = engine.wrap(data, netOut);
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+               awaitRoom();
+            } else if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+               throw new ClosedChannelException();
+            }
+         } while (data.hasRemaining() || result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW);
+         flush();
+         return result.getHandshakeStatus();
+      }
+   }
+
+   /**
+    * Sends the encrypted data the channel accepts, and asks the loop to send the rest when the channel is ready.
+    * Called with outLock held.
+    *
+    * @throws IOException the io exception
+    */
+   private void flush() throws IOException {
+      if (netOut.position() == 0) {
+         return;
+      }
+      netOut.flip();
+      try {
+         channel.write(netOut);
+      } finally {
+         netOut.compact();
+      }
+      if (netOut.position() > 0) {
+         key.interestOpsOr(SelectionKey.OP_WRITE);
+         loop.wakeup();
+      }
+   }
+
+   /**
+    * Waits for the loop to send enough data to make room for a record. Called with outLock held.
+    *
+    * @throws IOException the connection was closed, or the channel did not accept data for too long
+    */
+   private void awaitRoom() throws IOException {
+      flush();
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WRITE_TIMEOUT);
+      while (netOut.remaining() < engine.getSession().getPacketBufferSize()) {
+         if (closed) {
+            throw new ClosedChannelException();
+         }
+         if (loop.inLoop()) {
+            throw new IOException("The output of the connection is full");
+         }
+         long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+         if (left <= 0) {
+            throw new SocketTimeoutException("The robot did not read the commands sent");
+         }
+         try {
+            outLock.wait(left);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+         }
+      }
+   }
+
+   private void writable() throws IOException {
+      synchronized (outLock) {
+         if (closed) {
+            return;
+         }
+         flush();
+         if (netOut.position() == 0) {
+            key.interestOpsAnd(~SelectionKey.OP_WRITE);
+         }
+         outLock.notifyAll();
+      }
+   }
+
+   private void fail(Exception e) {
+      LOG.log(Level.FINE, "TLS connection failed", e);
+      handshake.completeExceptionally(e instanceof IOException ? e : new IOException(e));
+      closeNow();
+   }
+
+   /**
+    * Closes the connection, gives its buffers back to the pool and tells the handler. Called by the thread of the loop.
+    */
+   private void closeNow() {
+      synchronized (outLock) {
+         if (closed) {
+            return;
+         }
+         if (handshake.isDone() && !handshake.isCompletedExceptionally()) {
+            // tells the robot, as much as the channel accepts
+            try {
+               engine.closeOutbound();
+               engine.wrap(EMPTY, netOut);
+               netOut.flip();
+               channel.write(netOut);
+            } catch (IOException e) {
+            }
+         }
+         closed = true;
+         pool.release(netOut);
+         outLock.notifyAll();
+      }
+      try {
+         channel.close();
+      } catch (IOException e) {
+      }
+      pool.release(netIn);
+      pool.release(appIn);
+      handshake.completeExceptionally(new ClosedChannelException());
+      handler.closed();
+   }
+
+   /**
+    * Receives the data of a connection and its end
+    */
+   interface Handler {
+      /**
+       * Reads the data received. The data not read, such as the beginning of a message not received entirely, is given
+       * again with the next data. Called by the thread of the loop, it must not block.
+       *
+       * @param data the data, ready to be read
+       *
+       * @throws IOException the data is not valid, the connection is closed
+       */
+      void received(ByteBuffer data) throws IOException;
+
+      /**
+       * Tells that the connection is closed, by either side. Called once, by the thread of the loop.
+       */
+      void closed();
+   }
+}
@@ -6,7 +6,11 @@
 package ch.heigvd.robotpi.app.userinterface;
 
 import ch.heigvd.robotpi.app.communication.Client;
+import ch.heigvd.robotpi.app.communication.ServiceDiscovery;
 import ch.heigvd.robotpi.app.userinterface.container.IpAdress;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.Scene;
@@ -18,15 +22,21 @@ import javafx.util.Callback;
 import jfxtras.styles.jmetro.JMetro;
 import jfxtras.styles.jmetro.Style;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Set;
 
 /**
- * This class allows to control the discovery ui. It is linked to the discoveryView.fxml.
+ * This class allows to control the discovery ui. It is linked to the discoveryView.fxml. The robots are added to the
+ * table as soon as they are found, while the discovery keeps running in the background.
  */
 public class DiscoveryController {
+   private final ObservableList<IpAdress> discovered = FXCollections.observableList(new ArrayList<>());
+   private final Set<String> discoveredAddresses = new HashSet<>();
    private Scene scene;
    private Client client;
    private TextField futurIpAddress;
+   private ServiceDiscovery.Subscription subscription = null;
 
    @FXML private TableView<IpAdress> TVObjectsDiscovered;
    @FXML private TableColumn<IpAdress, String> TCIpAdress;
@@ -56,11 +66,35 @@ public class DiscoveryController {
       primaryStage.setResizable(false);
       primaryStage.setTitle("Robot PI HEIG - Discovery");
       primaryStage.getIcons().add(new Image("image/logo.png"));
+      primaryStage.setOnHidden(event -> stopDiscovery());
       //Setup skin
       JMetro jMetro = new JMetro(Style.LIGHT);
       jMetro.setScene(scene);
    }
 
+   /**
+    * Stops adding the robots found to the table
+    */
+   private void stopDiscovery() {
+      if (subscription != null) {
+         subscription.cancel();
+         subscription = null;
+      }
+   }
+
+   /**
+    * Adds a robot to the table, unless it is already there. Must be called from the javafx thread.
+    *
+    * @param address the ip address of the robot
+    */
+   private void addRobot(String address) {
+      if (subscription == null || !discoveredAddresses.add(address)) {
+         return;
+      }
+      discovered.add(new IpAdress(address));
+      LDiscovery.setText("Found " + discovered.size() + " devices active near you, still searching...");
+   }
+
    /**
     * Function executed when the dicovery button is pressed on the ui.
     *
@@ -69,44 +103,48 @@ public class DiscoveryController {
    @FXML
    public void buttonDiscoveryPressed(ActionEvent event) {
       LDiscovery.setText("Discovering, please wait...");
+      stopDiscovery();
+      discovered.clear();
+      discoveredAddresses.clear();
 
-      try {
-         Set<String> addr = client.launchServiceDiscovery();
-         TCIpAdress.setCellValueFactory(new PropertyValueFactory<>("ipAdress"));
-         Callback<TableColumn<IpAdress, Void>, TableCell<IpAdress, Void>> cellFactory = new Callback<>() {
-            @Override
-            public TableCell<IpAdress, Void> call(final TableColumn<IpAdress, Void> param) {
-               return new TableCell<>() {
+      TCIpAdress.setCellValueFactory(new PropertyValueFactory<>("ipAdress"));
+      Callback<TableColumn<IpAdress, Void>, TableCell<IpAdress, Void>> cellFactory = new Callback<>() {
+         @Override
+         public TableCell<IpAdress, Void> call(final TableColumn<IpAdress, Void> param) {
+            return new TableCell<>() {
 
-                  private final Button btn = new Button("Select this address");
+               private final Button btn = new Button("Select this address");
 
-                  {
-                     btn.setOnAction((ActionEvent event) -> {
-                        IpAdress adress = getTableRow().getItem();
-                        futurIpAddress.setText(adress.getIpAdress());
-                        ((Stage)getTableView().getScene().getWindow()).close();
-                     });
-                  }
+               {
+                  btn.setOnAction((ActionEvent event) -> {
+                     IpAdress adress = getTableRow().getItem();
+                     futurIpAddress.setText(adress.getIpAdress());
+                     ((Stage)getTableView().getScene().getWindow()).close();
+                  });
+               }
 
-                  @Override
-                  public void updateItem(Void item, boolean empty) {
-                     super.updateItem(item, empty);
-                     if (empty) {
-                        setGraphic(null);
-                     } else {
-                        setGraphic(btn);
-                     }
+               @Override
+               public void updateItem(Void item, boolean empty) {
+                  super.updateItem(item, empty);
+                  if (empty) {
+                     setGraphic(null);
+                  } else {
+                     setGraphic(btn);
                   }
-               };
-            }
-         };
-         TCSelect.setCellFactory(cellFactory);
-
-         TVObjectsDiscovered.setItems(IpAdress.getItems(addr));
-         LDiscovery.setText("Found " + addr.size() + " devices active near you.");
-      } catch (InterruptedException e) {
-         e.printStackTrace();
-      }
+               }
+            };
+         }
+      };
+      TCSelect.setCellFactory(cellFactory);
 
+      TVObjectsDiscovered.setItems(discovered);
+      subscription = client.discoverRobots(address -> Platform.runLater(() -> addRobot(address)));
+      subscription.getStarted().exceptionally(error -> {
+         Platform.runLater(() -> Util.createAlertFrame(Alert.AlertType.ERROR, "Discovery failed",
+                                                       "The robots cannot be discovered",
+                                                       "The discovery of the robots could not start on this " +
+                                                       "network. The address of the robot can still be entered."));
+         return null;
+      });
    }
 }
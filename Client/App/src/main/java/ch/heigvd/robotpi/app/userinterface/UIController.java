@@ -6,9 +6,20 @@
 package ch.heigvd.robotpi.app.userinterface;
 
 import ch.heigvd.robotpi.app.communication.Client;
+import ch.heigvd.robotpi.app.communication.CommandQueue;
+import ch.heigvd.robotpi.app.communication.FleetManager;
+import ch.heigvd.robotpi.app.communication.Heartbeat;
+import ch.heigvd.robotpi.app.communication.LinkQuality;
+import ch.heigvd.robotpi.app.communication.MetricsFileDumper;
+import ch.heigvd.robotpi.app.communication.PictureBurst;
+import ch.heigvd.robotpi.app.communication.PictureStream;
+import ch.heigvd.robotpi.app.communication.ReconnectPolicy;
+import ch.heigvd.robotpi.app.communication.ServiceDiscovery;
+import ch.heigvd.robotpi.app.communication.SetpointCoalescer;
 import ch.heigvd.robotpi.app.userinterface.settings.SettingsParams;
 import ch.heigvd.robotpi.servertest.ProtocolCommands;
 import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -17,27 +28,34 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
+import javafx.scene.control.ToggleButton;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Pane;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import jfxtras.styles.jmetro.JMetro;
 import jfxtras.styles.jmetro.Style;
 
+import javax.management.JMException;
 import java.awt.*;
-import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Properties;
-import java.util.concurrent.Semaphore;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * The controller of the main window of the client's app. It is linked to the mainView.fxml file.
@@ -45,17 +63,41 @@ import java.util.concurrent.Semaphore;
 public class UIController {
    //Image Width
    private final int IMAGE_SIZE = 80;
-   private final Semaphore mutex = new Semaphore(1);
-   private final Semaphore mutexPicture = new Semaphore(1);
+   //Frames per second asked for the live video
+   private final int STREAM_FPS = 15;
+   //Time between two samples of the drive pad, in milliseconds
+   private final int DRIVE_PERIOD = 50;
+   //Time during which the movements following a sent one are merged, in milliseconds
+   private final int COALESCING_WINDOW = 30;
+   //Number of pictures of a burst
+   private final int BURST_SIZE = 5;
+   //Time between two pictures of a burst, in milliseconds
+   private final long BURST_INTERVAL = 200;
+   //Time between two writes of the metrics file, in milliseconds
+   private final int METRICS_PERIOD = 5000;
+   //The system property giving the file the metrics of the client are written to
+   private static final String METRICS_FILE_PROPERTY = "robotpi.metrics.file";
+   //The thread saving and showing the pictures received
+   private final ExecutorService pictureProcessing = Executors.newSingleThreadExecutor(task -> {
+      Thread thread = new Thread(task, "robotpi-pictures");
+      thread.setDaemon(true);
+      return thread;
+   });
    //Settings
    private Properties settings;
    private String currentIpAddress;
    //Scene
    private Scene scene;
    //Threading and client
-   private Thread workerThread;
    private Client client;
+   private FleetManager fleet;
+   private CommandQueue movements;
+   private SetpointCoalescer driveSetpoints;
    private ConnectedWorker worker;
+   private Heartbeat heartbeat;
+   private MetricsFileDumper metricsDumper = null;
+   private PictureStream<Image> stream;
+   private AnimationTimer streamRenderer;
    /**
     * Boolean to know when a key is pressed
     */
@@ -64,10 +106,6 @@ public class UIController {
    private boolean leftPressed = false;
    private boolean downPressed = false;
 
-   private boolean newInstruction = false;
-   private boolean justDisconnected = false;
-   private ProtocolCommands lastCommand = null;
-
    //FXML instances
    @FXML private Button BFrontLeft;
    @FXML private Button BFront;
@@ -78,8 +116,11 @@ public class UIController {
    @FXML private Button BBackwards;
    @FXML private Button BBackwardsRight;
    @FXML private Button BCamera;
+   @FXML private ToggleButton TBStream;
+   @FXML private Pane PDrivePad;
 
    @FXML private Label LConnectionStatus;
+   @FXML private Label LLinkQuality;
    @FXML private TextField TFConnectionAddress;
 
    @FXML private ImageView imageView;
@@ -113,6 +154,7 @@ public class UIController {
       //Setup interaction
       setupKeys();
       setupButtons();
+      setupDrivePad();
 
       //Setup skin
       JMetro jMetro = new JMetro(Style.LIGHT);
@@ -128,9 +170,37 @@ public class UIController {
    public void load(Stage primaryStage) {
       //Create client and threading
       client = new Client();
+      fleet = new FleetManager();
+      fleet.setConnectionLostListener(ip -> Platform.runLater(
+              () -> Util.createAlertFrame(Alert.AlertType.WARNING, "Robot lost", "Robot lost",
+                                          "The connection to the robot " + ip + " was lost. It was removed from " +
+                                          "the fleet.")));
+      try {
+         client.getMetrics().registerMBean("main");
+      } catch (JMException e) {
+         e.printStackTrace();
+      }
+      String metricsFile = System.getProperty(METRICS_FILE_PROPERTY);
+      if (metricsFile != null) {
+         metricsDumper = new MetricsFileDumper(client.getMetrics(), Path.of(metricsFile), METRICS_PERIOD);
+      }
+      movements = new CommandQueue(client);
+      movements.setErrorListener(e -> {
+         if (e instanceof Client.RobotException) {
+            Platform.runLater(() -> Util.createAlertFrame(Alert.AlertType.ERROR, "Error while trying to move",
+                                                          "Error while trying to move",
+                                                          "The robot seems to have had an error while moving. " +
+                                                          "Please check the robot and make sure he is not blocked."));
+         }
+      });
+      driveSetpoints = new SetpointCoalescer(client, DRIVE_PERIOD);
       worker = new ConnectedWorker();
-      workerThread = new Thread(worker);
-      workerThread.start();
+      heartbeat = new Heartbeat(client);
+      heartbeat.setQualityListener(quality -> Platform.runLater(() -> LLinkQuality.setText(quality.toString())));
+      // the heartbeat closes a dead connection, the client then reconnects by itself and stops the robot
+      client.setReconnectPolicy(ReconnectPolicy.DEFAULT);
+      client.setCoalescingWindow(COALESCING_WINDOW);
+      client.setConnectionListener(event -> Platform.runLater(() -> connectionChanged(event)));
 
       //Set scene and add set settings/logo...
       primaryStage.setScene(scene);
@@ -142,93 +212,76 @@ public class UIController {
       }));
       primaryStage.setTitle("Robot PI HEIG");
       primaryStage.getIcons().add(new Image("image/logo.png"));
+   }
 
-      //handles key/button pressing
-      AnimationTimer timer = new AnimationTimer() {
-         @Override
-         public void handle(long l) {
-            if (worker.isConnected()) {
-               justDisconnected = true;
-               try {
-                  mutex.acquire();
-                  if (newInstruction) {
-                     if (upPressed) {
-                        if (leftPressed) {
-                           if (lastCommand != ProtocolCommands.frontleft) {
-                              client.goFrontLeft();
-                              lastCommand = ProtocolCommands.frontleft;
-                           }
-                        } else if (rightPressed) {
-                           if (lastCommand != ProtocolCommands.frontRight) {
-                              client.goFrontRight();
-                              lastCommand = ProtocolCommands.frontRight;
-                           }
-                        } else if (!downPressed) {
-                           if (lastCommand != ProtocolCommands.forward) {
-                              client.goForward();
-                              lastCommand = ProtocolCommands.forward;
-                           }
-                        }
-                     } else if (downPressed) {
-                        if (leftPressed) {
-                           if (lastCommand != ProtocolCommands.backwardsLeft) {
-                              client.goBackwardsLeft();
-                              lastCommand = ProtocolCommands.backwardsLeft;
-                           }
-                        } else if (rightPressed) {
-                           if (lastCommand != ProtocolCommands.backwardsRight) {
-                              client.goBackwardsRight();
-                              lastCommand = ProtocolCommands.backwardsRight;
-                           }
-                        } else {
-                           if (lastCommand != ProtocolCommands.backward) {
-                              client.goBackward();
-                              lastCommand = ProtocolCommands.backward;
-                           }
-                        }
-                     } else if (leftPressed) {
-                        if (!rightPressed) {
-                           if (lastCommand != ProtocolCommands.rotateLeft) {
-                              client.goLeft();
-                              lastCommand = ProtocolCommands.rotateLeft;
-                           }
-                        }
-                     } else if (rightPressed) {
-                        if (lastCommand != ProtocolCommands.rotateRight) {
-                           client.goRight();
-                           lastCommand = ProtocolCommands.rotateRight;
-                        }
-                     } else {//robot ne bouge pas
-                        if (client.isMoving()) { //si le robot n'est pas encore immobilisé
-                           client.stop();
-                           lastCommand = ProtocolCommands.stop;
-                        }
-                     }
-                     newInstruction = false;
-                  }
-               } catch (IOException e) {
-                  e.printStackTrace();
-               } catch (Client.RobotException e) {
-                  Util.createAlertFrame(Alert.AlertType.ERROR, "Error while trying to move",
-                                        "Error while trying to move",
-                                        "The robot seems to have had an error while moving. Please check the robot " +
-                                        "and " + "make sure he is not blocked.");
-               } catch (InterruptedException e) {
-               } catch (Client.CantConnectException e) {
-
-               } finally {
-                  mutex.release();
-               }
-            } else {
-               if (justDisconnected) {
-                  setDisconnected();
-                  justDisconnected = false;
-               }
-            }
-         }
-      };
+   /**
+    * Shows the state of the connection when it is lost and the client reconnects by itself. The ui stays connected
+    * while the client reconnects, and is only disconnected if the client gives up.
+    *
+    * @param event the event of the connection
+    */
+   private void connectionChanged(Client.ConnectionEvent event) {
+      if (!worker.isConnected()) {
+         return;
+      }
+      switch (event) {
+         case LOST:
+            LConnectionStatus.setText("Reconnecting...");
+            LLinkQuality.setText(LinkQuality.UNKNOWN.toString());
+            break;
+         case RESTORED:
+            // the robot was stopped when the connection came back
+            movements.reset();
+            LConnectionStatus.setText("Connected");
+            break;
+         case GAVE_UP:
+            setDisconnected();
+            Util.createAlertFrame(Alert.AlertType.WARNING, "Connection lost", "Connection lost",
+                                  "The connection to the robot was lost and could not be restored. Please check " +
+                                  "the robot and connect again.");
+            break;
+      }
+   }
 
-      timer.start();
+   /**
+    * Computes the movement asked by the keys and buttons currently pressed and pushes it to the queue of movements.
+    * Called by the ui each time a key or a button is pressed or released, the movement is sent by the thread of the
+    * queue, so the ui never waits for the robot.
+    */
+   private void movementChanged() {
+      if (!worker.isConnected()) {
+         return;
+      }
+      ProtocolCommands movement = null;
+      if (upPressed) {
+         if (leftPressed) {
+            movement = ProtocolCommands.frontleft;
+         } else if (rightPressed) {
+            movement = ProtocolCommands.frontRight;
+         } else if (!downPressed) {
+            movement = ProtocolCommands.forward;
+         }
+      } else if (downPressed) {
+         if (leftPressed) {
+            movement = ProtocolCommands.backwardsLeft;
+         } else if (rightPressed) {
+            movement = ProtocolCommands.backwardsRight;
+         } else {
+            movement = ProtocolCommands.backward;
+         }
+      } else if (leftPressed) {
+         if (!rightPressed) {
+            movement = ProtocolCommands.rotateLeft;
+         }
+      } else if (rightPressed) {
+         movement = ProtocolCommands.rotateRight;
+      } else {//robot ne bouge pas
+         movement = ProtocolCommands.stop;
+      }
+      // opposite keys pressed together keep the current movement
+      if (movement != null) {
+         movements.push(movement);
+      }
    }
 
    /**
@@ -236,28 +289,22 @@ public class UIController {
     */
    public void close() {
       settings.setProperty(SettingsParams.IP_ADDRESS.getParamName(), currentIpAddress);
-      if (worker != null) {
-         worker.signalShutdown();
-         try {
-            synchronized (worker) {
-               worker.notify();
-            }
-            workerThread.join();
-         } catch (InterruptedException e) {
-            e.printStackTrace();
-         }
+      stopStream();
+      heartbeat.close();
+      if (metricsDumper != null) {
+         metricsDumper.close();
       }
+      movements.close();
+      driveSetpoints.close();
       try {
-         mutex.acquire();
          if (client != null && client.isConnected()) {
             client.disconnect();
          }
       } catch (IOException e) {
-      } catch (InterruptedException e) {
-      } finally {
-         mutex.release();
       }
-
+      fleet.close();
+      pictureProcessing.shutdown();
+      ServiceDiscovery.closeShared();
    }
 
    /**
@@ -314,13 +361,10 @@ public class UIController {
                            "(?:[01]?\\d\\d?|2[0-4]\\d|25[0-5])\\.(?:[01]?\\d\\d?|2[0-4]\\d|25[0-5])(?!\\d|\\.\\d)") ||
           ipAdress.equals("localhost") || ipAdress.equals("raspberrypi")) {
          try {
-            mutex.acquire();
             client.connect(ipAdress);
+            movements.reset();
             worker.setConnected();
             currentIpAddress = ipAdress;
-            synchronized (worker) {
-               worker.notify();
-            }
          } catch (Client.CantConnectException e) {
             Util.createAlertFrame(Alert.AlertType.ERROR, "Error with the robot", "Error with the robot",
                                   "The robot had an issue while connecting to the client. Please restart the robot " +
@@ -330,9 +374,6 @@ public class UIController {
             Util.createAlertFrame(Alert.AlertType.ERROR, "Wrong ip adress", "Wrong ip adress",
                                   "The ip adress you wrote does not coincide with that of a robot. Please check the " +
                                   "ip adress of the robot and try again.");
-         } catch (InterruptedException e) {
-         } finally {
-            mutex.release();
          }
       } else {
          Util.createAlertFrame(Alert.AlertType.ERROR, "Not an ip adress", "Not an ip adress",
@@ -356,19 +397,51 @@ public class UIController {
          return;
       }
       try {
-         mutex.acquire();
          client.disconnect();
       } catch (IOException e) {
          e.printStackTrace();
-      } catch (InterruptedException e) {
-         e.printStackTrace();
-      } finally {
-         mutex.release();
       }
       setDisconnected();
 
    }
 
+   /**
+    * Action when the user selects the fleet connection option in the menu. Discovers the robots near the user and
+    * connects to all of them in the background.
+    *
+    * @param event the event
+    */
+   @FXML
+   private void connectFleetPressed(ActionEvent event) {
+      Thread fleetThread = new Thread(new FleetWorker());
+      fleetThread.setDaemon(true);
+      fleetThread.start();
+   }
+
+   /**
+    * Action when the user selects the emergency stop option in the menu. Stops the robot this window is connected to
+    * and every robot of the fleet.
+    *
+    * @param event the event
+    */
+   @FXML
+   private void stopFleetPressed(ActionEvent event) {
+      if (worker.isConnected()) {
+         client.moveAsync(ProtocolCommands.stop);
+      }
+      Thread stopThread = new Thread(() -> {
+         Set<String> unconfirmed = fleet.stopAll();
+         if (!unconfirmed.isEmpty()) {
+            Platform.runLater(
+                    () -> Util.createAlertFrame(Alert.AlertType.ERROR, "Robots not stopped", "Robots not stopped",
+                                                "These robots did not confirm the stop : " +
+                                                String.join(", ", unconfirmed)));
+         }
+      });
+      stopThread.setDaemon(true);
+      stopThread.start();
+   }
+
    /**
     * Action when the user presses the connect button on the ui or the option menu. Launches a new window controlled
     * by the DiscoveryController class. The current window will wait for the new window to close before allowing
@@ -403,6 +476,27 @@ public class UIController {
     */
    @FXML
    private void cameraButtonPressed(ActionEvent event) {
+      capture(1);
+   }
+
+   /**
+    * Action when the user selects the burst option in the menu. Takes several pictures at a fixed interval, and
+    * stores them next to the .jar file.
+    *
+    * @param event the event
+    */
+   @FXML
+   private void burstButtonPressed(ActionEvent event) {
+      capture(BURST_SIZE);
+   }
+
+   /**
+    * Takes pictures with the robot, if it is connected. Each picture is saved and shown on the thread processing the
+    * pictures as soon as it is received, while the next ones are still being taken.
+    *
+    * @param count the number of pictures, taken BURST_INTERVAL apart
+    */
+   private void capture(int count) {
       if (worker.isConnected()) {
          try {
             File figuresDir = new File(new File(".").getCanonicalPath() + "/figures");
@@ -411,16 +505,174 @@ public class UIController {
             }
             DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy_MM_dd_HH_mm_ss");
             LocalDateTime now = LocalDateTime.now();
-            PictureWorker pictureWorker =
-                    new PictureWorker(figuresDir.getPath() + "/" + currentIpAddress + "_" + dtf.format(now));
-            Thread pictureThread = new Thread(pictureWorker);
-            pictureThread.start();
+            String photoPath = figuresDir.getPath() + "/" + currentIpAddress + "_" + dtf.format(now);
+            PictureBurst burst = client.takeBurst(count, BURST_INTERVAL);
+            for (int i = 0; i < count; i++) {
+               Path path = Path.of(count == 1 ? photoPath : photoPath + "_" + i);
+               burst.get(i).thenAcceptAsync(picture -> pictureReceived(path, picture), pictureProcessing)
+                    .exceptionally(error -> {
+                       Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                       Platform.runLater(() -> pictureFailed(cause));
+                       return null;
+                    });
+            }
          } catch (IOException e) {
             e.printStackTrace();
          }
       }
    }
 
+   /**
+    * Saves a picture and shows it. The picture is shown from the received bytes, not read back from the file.
+    *
+    * @param path    the file of the picture
+    * @param picture the picture, as sent by the robot
+    */
+   private void pictureReceived(Path path, byte[] picture) {
+      try {
+         Files.write(path, picture);
+      } catch (IOException e) {
+         e.printStackTrace();
+      }
+      Image image = new Image(new ByteArrayInputStream(picture));
+      Platform.runLater(() -> {
+         imageView.setImage(image);
+         imageView.setFitWidth(image.getWidth());
+         imageView.setFitHeight(image.getHeight());
+      });
+   }
+
+   /**
+    * Tells the user that a picture could not be taken. Must be called by the javafx thread.
+    *
+    * @param error the error of the picture
+    */
+   private void pictureFailed(Throwable error) {
+      if (error instanceof Client.CantConnectException) {
+         Util.createAlertFrame(Alert.AlertType.ERROR, "Connection lost", "Connection lost",
+                               "The robot had an issue while connecting to the client. Please restart the robot " +
+                               "then try again");
+         worker.setDisconnected();
+      } else if (error instanceof Client.RobotException) {
+         Util.createAlertFrame(Alert.AlertType.ERROR, "The robot had an error while taking the picture",
+                               "The robot had an error while taking the picture",
+                               "There was an issue with the robot while taking a picture. Please check that the " +
+                               "robot is fine then try again.");
+      } else if (error instanceof Client.PictureTransferError) {
+         Util.createAlertFrame(Alert.AlertType.ERROR, "Error while receiving the picture",
+                               "Error while receiving the picture",
+                               "There was an error while receiving the picture. Please try taking a new one again.");
+      } else {
+         error.printStackTrace();
+      }
+   }
+
+   /**
+    * Action when the user toggles the live video button on the ui. Starts or stops the video stream of the robot's
+    * camera, which is then displayed in place of the last picture.
+    *
+    * @param event the event
+    */
+   @FXML
+   private void streamButtonPressed(ActionEvent event) {
+      if (!TBStream.isSelected()) {
+         stopStream();
+      } else if (worker.isConnected()) {
+         Thread streamThread = new Thread(new StreamWorker());
+         streamThread.setDaemon(true);
+         streamThread.start();
+      } else {
+         TBStream.setSelected(false);
+      }
+   }
+
+   /**
+    * Stops the video stream and its rendering, if it is running
+    */
+   private void stopStream() {
+      if (streamRenderer != null) {
+         streamRenderer.stop();
+         streamRenderer = null;
+      }
+      if (stream != null) {
+         stopClientStream(stream);
+         stream = null;
+      }
+      if (TBStream != null) {
+         TBStream.setSelected(false);
+      }
+   }
+
+   /**
+    * Stops a stream of the client from a thread of its own, since it waits for the thread receiving the frames
+    *
+    * @param stopped the stream to stop
+    */
+   private void stopClientStream(PictureStream<Image> stopped) {
+      Thread stopThread = new Thread(() -> client.stopStream(stopped));
+      stopThread.setDaemon(true);
+      stopThread.start();
+   }
+
+   /**
+    * Displays the frames of the stream. Runs at the display rate, and only shows the last decoded frame.
+    */
+   private void startStreamRenderer() {
+      streamRenderer = new AnimationTimer() {
+         @Override
+         public void handle(long l) {
+            Image frame = stream.pollFrame();
+            if (frame != null) {
+               imageView.setImage(frame);
+            }
+            if (!stream.isRunning()) {
+               stopStream();
+            }
+         }
+      };
+      streamRenderer.start();
+   }
+
+   /**
+    * Sets up the drive pad, that sends the speeds of the wheels while the mouse is dragged on it and stops the robot
+    * when the mouse is released
+    */
+   private void setupDrivePad() {
+      PDrivePad.addEventFilter(MouseEvent.MOUSE_PRESSED, this::drivePadMoved);
+      PDrivePad.addEventFilter(MouseEvent.MOUSE_DRAGGED, this::drivePadMoved);
+      PDrivePad.addEventFilter(MouseEvent.MOUSE_RELEASED, mouseEvent -> {
+         if (mouseEvent.getButton().equals(MouseButton.PRIMARY) && worker.isConnected()) {
+            driveSetpoints.setSetpoint(0, 0);
+         }
+      });
+   }
+
+   /**
+    * Converts the position of the mouse on the drive pad into the speeds of the wheels. The vertical position gives
+    * the throttle and the horizontal one the turn, the center of the pad being the robot stopped.
+    *
+    * @param mouseEvent the mouse event
+    */
+   private void drivePadMoved(MouseEvent mouseEvent) {
+      if (!mouseEvent.getButton().equals(MouseButton.PRIMARY) || !worker.isConnected()) {
+         return;
+      }
+      double throttle = 1 - 2 * mouseEvent.getY() / PDrivePad.getHeight();
+      double turn = 2 * mouseEvent.getX() / PDrivePad.getWidth() - 1;
+      driveSetpoints.setSetpoint(toSpeed(throttle + turn), toSpeed(throttle - turn));
+   }
+
+   /**
+    * Converts a proportion of the full speed into a speed of a wheel
+    *
+    * @param proportion the proportion, clamped between -1 and 1
+    *
+    * @return the speed
+    */
+   private int toSpeed(double proportion) {
+      return (int) Math.round(Math.max(-1, Math.min(1, proportion)) * ProtocolCommands.MAX_SPEED);
+   }
+
    /**
     * Sets up the different buttons to enable the control of the robot through the UI
     */
@@ -428,53 +680,53 @@ public class UIController {
       BBackwards.addEventFilter(MouseEvent.MOUSE_PRESSED, mouseEvent -> {
          if (mouseEvent.getButton().equals(MouseButton.PRIMARY)) {
             downPressed = true;
-            newInstruction = true;
+            movementChanged();
          }
       });
       BBackwardsLeft.addEventFilter(MouseEvent.MOUSE_PRESSED, mouseEvent -> {
          if (mouseEvent.getButton().equals(MouseButton.PRIMARY)) {
             downPressed = true;
             leftPressed = true;
-            newInstruction = true;
+            movementChanged();
          }
       });
       BBackwardsRight.addEventFilter(MouseEvent.MOUSE_PRESSED, mouseEvent -> {
          if (mouseEvent.getButton().equals(MouseButton.PRIMARY)) {
             downPressed = true;
             rightPressed = true;
-            newInstruction = true;
+            movementChanged();
          }
       });
       BFront.addEventFilter(MouseEvent.MOUSE_PRESSED, mouseEvent -> {
          if (mouseEvent.getButton().equals(MouseButton.PRIMARY)) {
             upPressed = true;
-            newInstruction = true;
+            movementChanged();
          }
       });
       BFrontLeft.addEventFilter(MouseEvent.MOUSE_PRESSED, mouseEvent -> {
          if (mouseEvent.getButton().equals(MouseButton.PRIMARY)) {
             upPressed = true;
             leftPressed = true;
-            newInstruction = true;
+            movementChanged();
          }
       });
       BFrontRight.addEventFilter(MouseEvent.MOUSE_PRESSED, mouseEvent -> {
          if (mouseEvent.getButton().equals(MouseButton.PRIMARY)) {
             upPressed = true;
             rightPressed = true;
-            newInstruction = true;
+            movementChanged();
          }
       });
       BLeft.addEventFilter(MouseEvent.MOUSE_PRESSED, mouseEvent -> {
          if (mouseEvent.getButton().equals(MouseButton.PRIMARY)) {
             leftPressed = true;
-            newInstruction = true;
+            movementChanged();
          }
       });
       BRight.addEventFilter(MouseEvent.MOUSE_PRESSED, mouseEvent -> {
          if (mouseEvent.getButton().equals(MouseButton.PRIMARY)) {
             rightPressed = true;
-            newInstruction = true;
+            movementChanged();
          }
       });
 
@@ -482,53 +734,53 @@ public class UIController {
       BBackwards.addEventFilter(MouseEvent.MOUSE_RELEASED, mouseEvent -> {
          if (mouseEvent.getButton().equals(MouseButton.PRIMARY)) {
             downPressed = false;
-            newInstruction = true;
+            movementChanged();
          }
       });
       BBackwardsLeft.addEventFilter(MouseEvent.MOUSE_RELEASED, mouseEvent -> {
          if (mouseEvent.getButton().equals(MouseButton.PRIMARY)) {
             downPressed = false;
             leftPressed = false;
-            newInstruction = true;
+            movementChanged();
          }
       });
       BBackwardsRight.addEventFilter(MouseEvent.MOUSE_RELEASED, mouseEvent -> {
          if (mouseEvent.getButton().equals(MouseButton.PRIMARY)) {
             downPressed = false;
             rightPressed = false;
-            newInstruction = true;
+            movementChanged();
          }
       });
       BFront.addEventFilter(MouseEvent.MOUSE_RELEASED, mouseEvent -> {
          if (mouseEvent.getButton().equals(MouseButton.PRIMARY)) {
             upPressed = false;
-            newInstruction = true;
+            movementChanged();
          }
       });
       BFrontLeft.addEventFilter(MouseEvent.MOUSE_RELEASED, mouseEvent -> {
          if (mouseEvent.getButton().equals(MouseButton.PRIMARY)) {
             upPressed = false;
             leftPressed = false;
-            newInstruction = true;
+            movementChanged();
          }
       });
       BFrontRight.addEventFilter(MouseEvent.MOUSE_RELEASED, mouseEvent -> {
          if (mouseEvent.getButton().equals(MouseButton.PRIMARY)) {
             upPressed = false;
             rightPressed = false;
-            newInstruction = true;
+            movementChanged();
          }
       });
       BLeft.addEventFilter(MouseEvent.MOUSE_RELEASED, mouseEvent -> {
          if (mouseEvent.getButton().equals(MouseButton.PRIMARY)) {
             leftPressed = false;
-            newInstruction = true;
+            movementChanged();
          }
       });
       BRight.addEventFilter(MouseEvent.MOUSE_RELEASED, mouseEvent -> {
          if (mouseEvent.getButton().equals(MouseButton.PRIMARY)) {
             rightPressed = false;
-            newInstruction = true;
+            movementChanged();
          }
       });
 
@@ -565,7 +817,7 @@ public class UIController {
             default:
                return;
          }
-         newInstruction = true;
+         movementChanged();
       });
       scene.addEventFilter(KeyEvent.KEY_RELEASED, keyEvent -> {
          switch (keyEvent.getCode()) {
@@ -584,7 +836,7 @@ public class UIController {
             default:
                return;
          }
-         newInstruction = true;
+         movementChanged();
       });
       scene.getRoot().requestFocus();
    }
@@ -608,24 +860,18 @@ public class UIController {
     * Sets the UI and the worker in disconnected mode
     */
    private void setDisconnected() {
+      stopStream();
       LConnectionStatus.setText("Disconnected");
+      LLinkQuality.setText(LinkQuality.UNKNOWN.toString());
       worker.setDisconnected();
    }
 
    /**
-    * The worker used to keep the connected RadioButton up to date
+    * Keeps the connection status of the ui. The connection itself is watched by the heartbeat, which notifies the ui
+    * when it is lost.
     */
-   class ConnectedWorker implements Runnable {
-      private boolean connected;
-      private boolean running = true;
-
-      /**
-       * Signals to the worker that the UI is being closed, and that it needs to stop running
-       */
-      public void signalShutdown() {
-         this.running = false;
-         connected = false;
-      }
+   class ConnectedWorker {
+      private volatile boolean connected;
 
       /**
        * Informs of the status of the connection to the robot
@@ -646,101 +892,68 @@ public class UIController {
       }
 
       /**
-       * Informs the worker that will he was waiting the connection was lost
+       * Informs the worker that the connection was lost
        */
       public void setDisconnected() {
          this.connected = false;
       }
+   }
 
+   /**
+    * A worker that opens the video stream, so that the ui does not wait for the connection to the camera
+    */
+   class StreamWorker implements Runnable {
       @Override
       public void run() {
-         while (running) {
-            //Wait until a connection is established
-            if (!connected) {
-               synchronized (this) {
-                  try {
-                     wait();
-                  } catch (InterruptedException e) {
-                     e.printStackTrace();
-                  }
-               }
-            }
-            //While connected, send ping every 10 sec to ensure the connection is still alive
-            while (connected) {
-               try {
-                  Thread.sleep(10000);
-               } catch (InterruptedException e) {
-                  e.printStackTrace();
-               }
-               if (!connected) {
-                  break;
-               }
-               try {
-                  mutex.acquire();
-                  client.ping();
-               } catch (InterruptedException e) {
-                  e.printStackTrace();
-               } catch (Client.LostConnectionException | IOException e) {
-                  setDisconnected();
-               } finally {
-                  mutex.release();
+         try {
+            PictureStream<Image> newStream =
+                    client.startStream(STREAM_FPS, bytes -> new Image(new ByteArrayInputStream(bytes)));
+            Platform.runLater(() -> {
+               if (TBStream.isSelected()) {
+                  stream = newStream;
+                  startStreamRenderer();
+               } else {
+                  stopClientStream(newStream);
                }
-            }
+            });
+         } catch (Client.CantConnectException e) {
+            Platform.runLater(() -> {
+               TBStream.setSelected(false);
+               Util.createAlertFrame(Alert.AlertType.ERROR, "Connection lost", "Connection lost",
+                                     "The robot had an issue while connecting to the client. Please restart the " +
+                                     "robot then try again");
+            });
+         } catch (Client.RobotException e) {
+            Platform.runLater(() -> {
+               TBStream.setSelected(false);
+               Util.createAlertFrame(Alert.AlertType.ERROR, "The robot cannot stream its camera",
+                                     "The robot cannot stream its camera",
+                                     "The robot refused to start the live video. Please check that the robot is " +
+                                     "fine then try again.");
+            });
          }
-         System.out.println("Exiting");
       }
    }
 
    /**
-    * A worker that handles the picture process
+    * A worker that discovers the robots near the user and adds them to the fleet
     */
-   class PictureWorker implements Runnable {
-      private final String photoPath;
-
-      /**
-       * Instantiates a new Picture worker.
-       *
-       * @param photoPath the photo path
-       */
-      PictureWorker(String photoPath) {this.photoPath = photoPath;}
-
+   class FleetWorker implements Runnable {
       @Override
       public void run() {
-         BufferedInputStream stream = null;
          try {
-            mutexPicture.acquire();
-            client.takePicture(photoPath);
-            stream = new BufferedInputStream(new FileInputStream(photoPath));
-            Image image = new Image(stream);
-            imageView.setImage(image);
-            imageView.setFitWidth(image.getWidth());
-            imageView.setFitHeight(image.getHeight());
+            Set<String> addresses = client.launchServiceDiscovery();
+            if (addresses == null) {
+               addresses = Set.of();
+            }
+            Set<String> failed = fleet.connectAll(addresses);
+            int connected = fleet.getRobots().size();
+            Platform.runLater(() -> Util.createAlertFrame(
+                    failed.isEmpty() ? Alert.AlertType.INFORMATION : Alert.AlertType.WARNING, "Fleet", "Fleet",
+                    "Connected to " + connected + " robots." +
+                    (failed.isEmpty() ? "" : " Could not connect to : " + String.join(", ", failed))));
          } catch (InterruptedException e) {
             e.printStackTrace();
-         } catch (IOException e) {
-            e.printStackTrace();
-         } catch (Client.CantConnectException e) {
-            Util.createAlertFrame(Alert.AlertType.ERROR, "Connection lost", "Connection lost",
-                                  "The robot had an issue while connecting to the client. Please restart the robot " +
-                                  "then try again");
-            worker.setDisconnected();
-         } catch (Client.RobotException e) {
-            Util.createAlertFrame(Alert.AlertType.ERROR, "The robot had an error while taking the picture",
-                                  "The robot had an error while taking the picture",
-                                  "There was an issue with the robot while taking a picture. Please check that the " +
-                                  "robot is fine then try again.");
-         } catch (Client.PictureTransferError e) {
-            Util.createAlertFrame(Alert.AlertType.ERROR, "Error while receiving the picture",
-                                  "Error while receiving the picture",
-                                  "There was an error while receiving the picture. Please try taking a new one again.");
-         } finally {
-            mutexPicture.release();
-            if (stream != null) {
-               try {
-                  stream.close();
-               } catch (IOException e) {
-               }
-            }
          }
       }
    }
@@ -1,10 +1,21 @@
 package ch.heigvd.robotpi.app.communication;
 
+import ch.heigvd.robotpi.servertest.ProtocolCommands;
 import ch.heigvd.robotpi.servertest.Server;
 import org.junit.jupiter.api.*;
 
+import javax.imageio.ImageIO;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * This class test the client with a server that respond what is expected in protocol
@@ -79,6 +90,54 @@ class ClientGoodServerTest {
       assertEquals(expected, result);
    }
 
+   @Test
+   void pipelinedCommandsAreAllConfirmed() throws Exception {
+      cli.connect("127.0.0.1");
+      CompletableFuture<?>[] futures = new CompletableFuture<?>[]{
+              cli.sendAsync(ProtocolCommands.forward), cli.sendAsync(ProtocolCommands.rotateLeft),
+              cli.sendAsync(ProtocolCommands.ping), cli.sendAsync(ProtocolCommands.backwardsRight)};
+      CompletableFuture.allOf(futures).get(5, TimeUnit.SECONDS);
+      assertTrue(cli.isMoving());
+      cli.disconnect();
+   }
+
+   @Test
+   void binaryFramingIsNegotiated() throws Exception {
+      cli.connect("127.0.0.1");
+      assertTrue(cli.usesBinaryFraming());
+      cli.goForward();
+      assertTrue(cli.isMoving());
+      cli.disconnect();
+   }
+
+   @Test
+   void textProtocolCanBeForced() throws Exception {
+      System.setProperty(Client.PROTOCOL_PROPERTY, "text");
+      try {
+         cli.connect("127.0.0.1");
+         assertFalse(cli.usesBinaryFraming());
+         cli.goForward();
+         assertTrue(cli.isMoving());
+         cli.disconnect();
+      } finally {
+         System.clearProperty(Client.PROTOCOL_PROPERTY);
+      }
+   }
+
+   @Test
+   void pictureIsSavedAsReceived() throws Exception {
+      cli.connect("127.0.0.1");
+      Path file = Files.createTempFile("picture", ".png");
+      try {
+         byte[] picture = cli.takePicture(file.toString());
+         assertArrayEquals(picture, Files.readAllBytes(file));
+         assertNotNull(ImageIO.read(file.toFile()));
+      } finally {
+         Files.delete(file);
+         cli.disconnect();
+      }
+   }
+
    @Test
    void disconnectWorks() {
       assertThrows(Client.CantConnectException.class, () -> {
@@ -0,0 +1,74 @@
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.ProtocolCommands;
+import ch.heigvd.robotpi.servertest.Server;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the measures kept by the client
+ */
+class ClientMetricsTest {
+
+   @Test
+   void histogramBucketsArePowersOfTwo() {
+      ClientMetrics.Histogram histogram = new ClientMetrics.Histogram();
+      assertEquals(0, histogram.getPercentile(50));
+      for (int i = 1; i <= 100; i++) {
+         histogram.record(i);
+      }
+      assertEquals(100, histogram.getCount());
+      assertEquals(5050, histogram.getSum());
+      assertEquals(100, histogram.getMax());
+      assertEquals(50, histogram.getMean());
+      // 50 is in the bucket from 32 to 63
+      assertEquals(63, histogram.getPercentile(50));
+      assertEquals(100, histogram.getPercentile(99));
+   }
+
+   @Test
+   void commandsAndConnectionsAreCounted() throws Exception {
+      Server server = new Server("good", false);
+      Thread srvThread = new Thread(server);
+      srvThread.start();
+      try {
+         // To be sure that the server is running (tests on github)
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      Client client = new Client();
+      try {
+         client.connect("127.0.0.1");
+         client.goForward();
+         client.stop();
+         client.stop();
+         client.disconnect();
+         client.connect("127.0.0.1");
+
+         ClientMetrics metrics = client.getMetrics();
+         assertEquals(1, metrics.getConfirmed(ProtocolCommands.forward));
+         assertEquals(2, metrics.getSent(ProtocolCommands.stop));
+         assertEquals(2, metrics.getLatency(ProtocolCommands.stop).getCount());
+         assertTrue(metrics.getLatency(ProtocolCommands.stop).getMax() > 0);
+         assertEquals(0, metrics.getFailed(ProtocolCommands.stop));
+         assertEquals(2, metrics.getHandshakeTime().getCount());
+         assertEquals(2, metrics.getConnections());
+         assertEquals(1, metrics.getReconnections());
+
+         Map<String, Long> snapshot = metrics.getSnapshot();
+         assertEquals(2, snapshot.get("command.STOP.confirmed"));
+         assertEquals(1, snapshot.get("reconnections"));
+         assertFalse(snapshot.containsKey("command.BKWD.sent"));
+      } finally {
+         client.disconnect();
+         server.stopExecution();
+      }
+   }
+}
@@ -0,0 +1,77 @@
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.ProtocolCommands;
+import ch.heigvd.robotpi.servertest.Server;
+import ch.heigvd.robotpi.servertest.ServerStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the coalescing of the movements by the client, by counting the commands received by the server
+ */
+class CommandCoalescerTest {
+
+   @Test
+   void movementsAreCoalesced() throws Exception {
+      Server server = new Server("good", false);
+      Thread srvThread = new Thread(server);
+      srvThread.start();
+      try {
+         // To be sure that the server is running (tests on github)
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      Client client = new Client();
+      ServerStats stats = server.getStats();
+      try {
+         client.connect("127.0.0.1");
+
+         // the same movement asked again is only sent once
+         for (int i = 0; i < 5; i++) {
+            client.goForward();
+         }
+         client.drive(40, 40);
+         client.drive(40, 40);
+         Thread.sleep(200);
+         assertEquals(1, stats.getCount(ProtocolCommands.forward));
+         assertEquals(1, stats.getCount(ProtocolCommands.drive));
+         assertEquals(5, client.getDroppedMovements());
+
+         // the quick changes of direction are merged, only the last one is sent
+         client.setCoalescingWindow(300);
+         client.goBackward();
+         client.moveAsync(ProtocolCommands.rotateLeft);
+         client.moveAsync(ProtocolCommands.rotateRight);
+         client.moveAsync(ProtocolCommands.frontRight).get(1, TimeUnit.SECONDS);
+         Thread.sleep(200);
+         assertEquals(1, stats.getCount(ProtocolCommands.backward));
+         assertEquals(0, stats.getCount(ProtocolCommands.rotateLeft));
+         assertEquals(0, stats.getCount(ProtocolCommands.rotateRight));
+         assertEquals(1, stats.getCount(ProtocolCommands.frontRight));
+         assertEquals(2, client.getMergedMovements());
+
+         // stop is sent at once, even when it is repeated, and replaces the movement held
+         CompletableFuture<Void> held = client.moveAsync(ProtocolCommands.backwardsLeft);
+         long start = System.nanoTime();
+         client.stop();
+         client.stop();
+         assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(300));
+         held.get(1, TimeUnit.SECONDS);
+         Thread.sleep(500);
+         assertEquals(2, stats.getCount(ProtocolCommands.stop));
+         assertEquals(0, stats.getCount(ProtocolCommands.backwardsLeft));
+         assertFalse(client.isMoving());
+      } finally {
+         client.disconnect();
+         server.stopExecution();
+      }
+   }
+}
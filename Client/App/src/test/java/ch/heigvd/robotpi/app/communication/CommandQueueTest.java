@@ -0,0 +1,56 @@
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.ProtocolCommands;
+import ch.heigvd.robotpi.servertest.Server;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests that the movements pushed by the ui are collapsed before being sent to a slow robot
+ */
+class CommandQueueTest {
+
+   @Test
+   void redundantMovementsAreCollapsed() throws Exception {
+      Server server = new Server("good", false);
+      server.setAnswerDelay(50);
+      Thread srvThread = new Thread(server);
+      srvThread.start();
+      try {
+         // To be sure that the server is running (tests on github)
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      Client client = new Client();
+      try (CommandQueue queue = new CommandQueue(client)) {
+         client.connect("127.0.0.1");
+         queue.reset();
+
+         // the same movement pushed again is only sent once
+         for (int i = 0; i < 10; i++) {
+            queue.push(ProtocolCommands.forward);
+            Thread.sleep(20);
+         }
+         Thread.sleep(300);
+         assertEquals(1, queue.getSentMovements());
+         assertTrue(client.isMoving());
+
+         // the keys change far faster than the robot answers, the robot must end stopped
+         for (int i = 0; i < 200; i++) {
+            queue.push(i % 2 == 0 ? ProtocolCommands.rotateLeft : ProtocolCommands.frontRight);
+         }
+         queue.push(ProtocolCommands.stop);
+         Thread.sleep(500);
+         assertTrue(queue.getSentMovements() < 10);
+         assertFalse(client.isMoving());
+      } finally {
+         client.disconnect();
+         server.stopExecution();
+      }
+   }
+}
@@ -0,0 +1,50 @@
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.Server;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the fleet manager with a server serving several clients at the same time
+ */
+class FleetManagerTest {
+
+   @Test
+   void fleetIsStoppedAndLostRobotsAreReported() throws Exception {
+      Server server = new Server("good", false, 2);
+      Thread srvThread = new Thread(server);
+      srvThread.start();
+      try {
+         // To be sure that the server is running (tests on github)
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      FleetManager fleet = new FleetManager(200, 1000);
+      CountDownLatch lost = new CountDownLatch(2);
+      fleet.setConnectionLostListener(ip -> lost.countDown());
+      try {
+         assertTrue(fleet.connectAll(List.of("127.0.0.1", "localhost")).isEmpty());
+         assertEquals(2, fleet.getRobots().size());
+
+         // the robots answer their pings, so they stay in the fleet
+         Thread.sleep(600);
+         assertEquals(2, fleet.getRobots().size());
+         assertTrue(fleet.stopAll().isEmpty());
+
+         server.stopExecution();
+         assertTrue(lost.await(5, TimeUnit.SECONDS));
+         assertTrue(fleet.getRobots().isEmpty());
+      } finally {
+         fleet.close();
+         server.stopExecution();
+      }
+   }
+}
@@ -0,0 +1,51 @@
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.Server;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests that the heartbeat measures the link and detects a robot that stopped answering
+ */
+class HeartbeatTest {
+
+   @Test
+   void linkIsMeasuredAndLossIsDetected() throws Exception {
+      Server server = new Server("good", false);
+      Thread srvThread = new Thread(server);
+      srvThread.start();
+      try {
+         // To be sure that the server is running (tests on github)
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      Client client = new Client();
+      CountDownLatch lost = new CountDownLatch(1);
+      try (Heartbeat heartbeat = new Heartbeat(client, 50, 200, 300)) {
+         heartbeat.setConnectionLostListener(lost::countDown);
+         assertFalse(heartbeat.getLinkQuality().isMeasured());
+         client.connect("127.0.0.1");
+
+         Thread.sleep(1000);
+         LinkQuality quality = heartbeat.getLinkQuality();
+         assertTrue(quality.isMeasured());
+         assertTrue(quality.getAverageRtt() > 0);
+         assertTrue(quality.getInterval() >= 50 && quality.getInterval() <= 200);
+
+         // the robot still answers, but too late
+         server.setAnswerDelay(1000);
+         assertTrue(lost.await(2, TimeUnit.SECONDS));
+         assertFalse(client.isConnected());
+         assertFalse(heartbeat.getLinkQuality().isMeasured());
+      } finally {
+         server.stopExecution();
+      }
+   }
+}
@@ -0,0 +1,142 @@
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.MissionLogEntry;
+import ch.heigvd.robotpi.servertest.MissionProtocol;
+import ch.heigvd.robotpi.servertest.ProtocolCommands;
+import ch.heigvd.robotpi.servertest.Server;
+import ch.heigvd.robotpi.servertest.ServerStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the missions, run by the server or by the client when the server does not know them
+ */
+class MissionRunnerTest {
+
+   @Test
+   void missionIsParsed() {
+      Mission mission = Mission.parse(List.of("# a short patrol", "FWD", "WAIT 200", "DRIVE 50 -20", "", "CAPTURE",
+                                              "WAIT 40000", "STOP"));
+      List<MissionProtocol.Step> steps = mission.getSteps();
+      assertEquals(4, steps.size());
+      assertEquals(ProtocolCommands.drive, steps.get(1).getCommand());
+      assertArrayEquals(new int[]{50, -20}, steps.get(1).getCommandArguments());
+      assertTrue(steps.get(2).isCapture());
+      assertEquals(40200, steps.get(3).getAt());
+      assertEquals(40200, mission.getDuration());
+      // the long wait does not fit in a single step
+      int[] arguments = mission.encode();
+      assertEquals(5 * MissionProtocol.STEP_SIZE, arguments.length);
+      assertEquals(40200, MissionProtocol.decode(arguments).get(4).getAt());
+
+      assertThrows(IllegalArgumentException.class, () -> Mission.parse(List.of("DRIVE 500 0")));
+      assertThrows(IllegalArgumentException.class, () -> Mission.parse(List.of("PING")));
+      assertThrows(IllegalArgumentException.class, () -> Mission.parse(List.of("FWD 10")));
+   }
+
+   @Test
+   void missionIsRunOnSchedule() throws Exception {
+      Server server = new Server("good", false);
+      Thread srvThread = new Thread(server);
+      srvThread.start();
+      try {
+         // To be sure that the server is running (tests on github)
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      Client client = new Client();
+      ServerStats stats = server.getStats();
+      Mission mission = new Mission().move(ProtocolCommands.forward).waitFor(100).drive(30, 30).waitFor(100)
+                                     .capture().waitFor(100).move(ProtocolCommands.stop);
+      AtomicInteger pictures = new AtomicInteger();
+      try (MissionRunner runner = new MissionRunner(client)) {
+         runner.setPictureListener(picture -> pictures.incrementAndGet());
+         client.connect("127.0.0.1");
+
+         // the server runs the mission uploaded in one command
+         runner.run(mission).get(5, TimeUnit.SECONDS);
+         assertTrue(runner.isRemote());
+         Thread.sleep(200);
+         assertEquals(1, stats.getCount(ProtocolCommands.mission));
+         assertEquals(0, stats.getCount(ProtocolCommands.forward));
+         List<MissionLogEntry> log = server.getMissionLog();
+         assertEquals(4, log.size());
+         for (int i = 0; i < log.size(); i++) {
+            assertEquals(i, log.get(i).getIndex());
+            assertTrue(log.get(i).getLateness() < TimeUnit.MILLISECONDS.toNanos(50), log.get(i).toString());
+         }
+         assertArrayEquals(new int[]{30, 30}, server.getReceivedSetpoints().get(0));
+         assertEquals(1, pictures.get());
+
+         // the steps at the same time run in the order of the mission
+         runner.run(new Mission().drive(10, 10).drive(20, 20).drive(30, 30).move(ProtocolCommands.stop))
+               .get(5, TimeUnit.SECONDS);
+         Thread.sleep(200);
+         log = server.getMissionLog();
+         assertEquals(8, log.size());
+         for (int i = 0; i < 4; i++) {
+            assertEquals(i, log.get(4 + i).getIndex());
+         }
+
+         // a robot that does not know the missions gets the movements one by one
+         server.setMissions(false);
+         runner.run(mission).get(5, TimeUnit.SECONDS);
+         assertFalse(runner.isRemote());
+         Thread.sleep(200);
+         assertEquals(1, stats.getCount(ProtocolCommands.forward));
+         assertEquals(1, stats.getCount(ProtocolCommands.drive));
+         assertEquals(1, stats.getCount(ProtocolCommands.stop));
+         assertEquals(8, server.getMissionLog().size());
+         assertEquals(2, pictures.get());
+      } finally {
+         client.disconnect();
+         server.stopExecution();
+      }
+   }
+
+   @Test
+   void missionIsNotUploadedInTextMode() throws Exception {
+      Server server = new Server("good", false);
+      server.setBinaryFraming(false);
+      Thread srvThread = new Thread(server);
+      srvThread.start();
+      try {
+         // To be sure that the server is running (tests on github)
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      Client client = new Client();
+      ServerStats stats = server.getStats();
+      Mission mission = new Mission().move(ProtocolCommands.forward).waitFor(100).drive(30, 30).waitFor(100)
+                                     .move(ProtocolCommands.stop);
+      try (MissionRunner runner = new MissionRunner(client)) {
+         client.connect("127.0.0.1");
+         assertFalse(client.usesBinaryFraming());
+
+         // the robot only gets commands it can read
+         runner.run(mission).get(5, TimeUnit.SECONDS);
+         assertFalse(runner.isRemote());
+         Thread.sleep(200);
+         assertEquals(0, stats.getCount(ProtocolCommands.mission));
+         assertEquals(1, stats.getCount(ProtocolCommands.forward));
+         assertEquals(1, stats.getCount(ProtocolCommands.drive));
+         assertEquals(1, stats.getCount(ProtocolCommands.stop));
+      } finally {
+         client.disconnect();
+         server.stopExecution();
+      }
+   }
+}
@@ -0,0 +1,102 @@
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.PictureSet;
+import ch.heigvd.robotpi.servertest.Server;
+import ch.heigvd.robotpi.servertest.ServerStats;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the bursts of pictures, taken on the picture session of the client
+ */
+class PictureBurstTest {
+
+   @Test
+   void burstIsTakenOnOneSession() throws Exception {
+      Server server = new Server("good", false);
+      Thread srvThread = new Thread(server);
+      srvThread.start();
+      try {
+         // To be sure that the server is running (tests on github)
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      Client client = new Client();
+      ServerStats stats = server.getStats();
+      try {
+         client.connect("127.0.0.1");
+         byte[] expected = client.takePicture();
+
+         long start = System.nanoTime();
+         PictureBurst burst = client.takeBurst(6, 50);
+         // a single picture waits for the burst instead of mixing with its requests
+         byte[] single = client.takePicture();
+         burst.whenDone().get(5, TimeUnit.SECONDS);
+         assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(5 * 50));
+         List<byte[]> pictures = burst.stream().map(CompletableFuture::join).collect(Collectors.toList());
+         assertEquals(6, pictures.size());
+         for (byte[] picture : pictures) {
+            assertArrayEquals(expected, picture);
+         }
+         assertArrayEquals(expected, single);
+         assertEquals(1, stats.getPictureConnections());
+         assertEquals(8, stats.getPicturesServed());
+
+         // the pictures not requested yet are cancelled
+         PictureBurst cancelled = client.takeBurst(20, 100);
+         cancelled.get(0).get(5, TimeUnit.SECONDS);
+         cancelled.cancel();
+         assertThrows(CancellationException.class, () -> cancelled.get(19).get());
+         assertTrue(stats.getPicturesServed() < 8 + 20);
+      } finally {
+         client.disconnect();
+         server.stopExecution();
+      }
+   }
+
+   @Test
+   void cutBurstDoesNotBlockTheNextPictures() throws Exception {
+      byte[] expected = new byte[200000];
+      new Random(7).nextBytes(expected);
+      Server server = new Server("good", false);
+      server.setPictures(PictureSet.of(expected));
+      server.setPictureCut(50000);
+      Thread srvThread = new Thread(server);
+      srvThread.start();
+      try {
+         // To be sure that the server is running (tests on github)
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      Client client = new Client();
+      try {
+         client.connect("127.0.0.1");
+         PictureBurst burst = client.takeBurst(10, 0);
+         burst.whenDone().handle((done, error) -> null).get(10, TimeUnit.SECONDS);
+         // the burst releases the pictures once its session is cut
+         assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertArrayEquals(expected, client.takePicture()));
+         PictureBurst next = client.takeBurst(2, 0);
+         next.whenDone().handle((done, error) -> null).get(10, TimeUnit.SECONDS);
+      } finally {
+         client.disconnect();
+         server.stopExecution();
+      }
+   }
+}
@@ -0,0 +1,74 @@
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.PictureOptions;
+import ch.heigvd.robotpi.servertest.PictureSet;
+import ch.heigvd.robotpi.servertest.Server;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the pictures taken with options, which the simulator crops, scales and encodes as asked
+ */
+class PictureOptionsTest {
+
+   @Test
+   void optionsAreApplied() throws Exception {
+      takePictures(false);
+   }
+
+   @Test
+   void optionsAreAppliedByTheEventLoop() throws Exception {
+      takePictures(true);
+   }
+
+   private void takePictures(boolean eventLoop) throws Exception {
+      Server server = new Server("good", false);
+      server.setEventLoop(eventLoop);
+      server.setPictures(PictureSet.generate(1, 640, 480, "jpg"));
+      Thread srvThread = new Thread(server);
+      srvThread.start();
+      try {
+         // To be sure that the server is running (tests on github)
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      Client client = new Client();
+      try {
+         client.connect("127.0.0.1");
+         byte[] full = client.takePicture();
+         assertEquals(640, decode(full).getWidth());
+
+         byte[] thumbnail = client.takePicture(PictureOptions.NONE.withSize(80, 80).withQuality(50));
+         BufferedImage image = decode(thumbnail);
+         assertEquals(80, image.getWidth());
+         assertEquals(60, image.getHeight());
+         assertTrue(thumbnail.length < full.length / 4);
+
+         image = decode(client.takePicture(PictureOptions.NONE.withCrop(600, 0, 100, 100)));
+         assertEquals(40, image.getWidth());
+         assertEquals(100, image.getHeight());
+
+         assertThrows(Client.RobotException.class,
+                      () -> client.takePicture(PictureOptions.NONE.withCrop(1000, 1000, 10, 10)));
+         // the session goes on after a picture that could not be taken
+         assertEquals(640, decode(client.takePicture()).getWidth());
+      } finally {
+         client.disconnect();
+         server.stopExecution();
+      }
+   }
+
+   private static BufferedImage decode(byte[] picture) throws IOException {
+      return ImageIO.read(new ByteArrayInputStream(picture));
+   }
+}
@@ -0,0 +1,107 @@
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.PictureSet;
+import ch.heigvd.robotpi.servertest.Server;
+import ch.heigvd.robotpi.servertest.ServerStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * This class tests the pictures whose transfer is cut by the simulator, which are resumed where they were cut
+ */
+class PictureResumeTest {
+
+   @Test
+   void cutPictureIsResumed() throws Exception {
+      takeCutPicture(false);
+   }
+
+   @Test
+   void cutPictureIsResumedFromTheEventLoop() throws Exception {
+      takeCutPicture(true);
+   }
+
+   @Test
+   void cutPicturesOfABurstAreResumed() throws Exception {
+      takeCutBurst(false);
+   }
+
+   @Test
+   void cutPicturesOfABurstAreResumedFromTheEventLoop() throws Exception {
+      takeCutBurst(true);
+   }
+
+   private void takeCutPicture(boolean eventLoop) throws Exception {
+      byte[] expected = new byte[200000];
+      new Random(7).nextBytes(expected);
+      Server server = new Server("good", false);
+      server.setEventLoop(eventLoop);
+      server.setPictures(PictureSet.of(expected));
+      server.setPictureCut(50000);
+      Thread srvThread = new Thread(server);
+      srvThread.start();
+      try {
+         // To be sure that the server is running (tests on github)
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      Client client = new Client();
+      ServerStats stats = server.getStats();
+      try {
+         client.connect("127.0.0.1");
+         // each connection sends 50000 bytes of the picture before it is cut
+         assertArrayEquals(expected, client.takePicture());
+         assertEquals(1, stats.getPicturesServed());
+         assertEquals(3, stats.getPictureResumes());
+         assertEquals(4, stats.getPictureConnections());
+
+         server.setPictureCut(0);
+         assertArrayEquals(expected, client.takePicture());
+         assertEquals(4, stats.getPictureConnections());
+      } finally {
+         client.disconnect();
+         server.stopExecution();
+      }
+   }
+
+   private void takeCutBurst(boolean eventLoop) throws Exception {
+      byte[] expected = new byte[200000];
+      new Random(7).nextBytes(expected);
+      Server server = new Server("good", false);
+      server.setEventLoop(eventLoop);
+      server.setPictures(PictureSet.of(expected));
+      server.setPictureCut(50000);
+      Thread srvThread = new Thread(server);
+      srvThread.start();
+      try {
+         // To be sure that the server is running (tests on github)
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      Client client = new Client();
+      ServerStats stats = server.getStats();
+      try {
+         client.connect("127.0.0.1");
+         PictureBurst burst = client.takeBurst(5, 0);
+         burst.whenDone().get(20, TimeUnit.SECONDS);
+         for (int i = 0; i < 5; i++) {
+            assertArrayEquals(expected, burst.get(i).get());
+         }
+         // each picture is resumed 3 times, on a new connection each time
+         assertEquals(15, stats.getPictureResumes());
+         assertEquals(16, stats.getPictureConnections());
+      } finally {
+         client.disconnect();
+         server.stopExecution();
+      }
+   }
+}
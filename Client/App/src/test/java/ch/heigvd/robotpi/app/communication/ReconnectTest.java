@@ -0,0 +1,72 @@
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.ProtocolCommands;
+import ch.heigvd.robotpi.servertest.Server;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests that the client reconnects by itself when the connection is lost
+ */
+class ReconnectTest {
+
+   @Test
+   void lostConnectionIsRestored() throws Exception {
+      Server server = new Server("good", false);
+      Thread srvThread = new Thread(server);
+      srvThread.start();
+      try {
+         // To be sure that the server is running (tests on github)
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      Client client = new Client();
+      BlockingQueue<Client.ConnectionEvent> events = new LinkedBlockingQueue<>();
+      client.setConnectionListener(events::add);
+      client.setReconnectPolicy(new ReconnectPolicy(50, 200, 20, false));
+      try {
+         client.connect("127.0.0.1");
+         client.goForward();
+         assertTrue(client.isMoving());
+
+         // the link dies, as when the heartbeat gets no answer
+         client.closeConnection();
+         assertEquals(Client.ConnectionEvent.LOST, events.poll(2, TimeUnit.SECONDS));
+         assertEquals(Client.ConnectionEvent.RESTORED, events.poll(5, TimeUnit.SECONDS));
+         assertTrue(client.isConnected());
+         // the robot is stopped once reconnected
+         client.sendAsync(ProtocolCommands.ping).get(1, TimeUnit.SECONDS);
+         assertFalse(client.isMoving());
+         assertEquals(1, client.getMetrics().getReconnectTime().getCount());
+         assertEquals(1, client.getMetrics().getSent(ProtocolCommands.stop));
+
+         // the last movement can be restored instead
+         client.setReconnectPolicy(new ReconnectPolicy(50, 200, 20, true));
+         client.goBackward();
+         client.closeConnection();
+         assertEquals(Client.ConnectionEvent.LOST, events.poll(2, TimeUnit.SECONDS));
+         assertEquals(Client.ConnectionEvent.RESTORED, events.poll(5, TimeUnit.SECONDS));
+         client.sendAsync(ProtocolCommands.ping).get(1, TimeUnit.SECONDS);
+         assertTrue(client.isMoving());
+         assertEquals(2, client.getMetrics().getConfirmed(ProtocolCommands.backward));
+
+         // a disconnection asked by the user is not a lost connection
+         client.disconnect();
+         assertNull(events.poll(500, TimeUnit.MILLISECONDS));
+      } finally {
+         client.setReconnectPolicy(null);
+         client.disconnect();
+         server.stopExecution();
+      }
+   }
+}
@@ -0,0 +1,60 @@
+package ch.heigvd.robotpi.app.communication;
+
+import ch.heigvd.robotpi.servertest.Server;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests that the setpoints of the drive command are coalesced when the link is slower than the input
+ */
+class SetpointCoalescerTest {
+
+   @Test
+   void setpointOutOfRangeIsRefused() {
+      try (SetpointCoalescer coalescer = new SetpointCoalescer(new Client(), 10)) {
+         assertThrows(IllegalArgumentException.class, () -> coalescer.setSetpoint(101, 0));
+         assertThrows(IllegalArgumentException.class, () -> coalescer.setSetpoint(0, -101));
+         assertEquals(0, coalescer.getReceivedSetpoints());
+      }
+   }
+
+   @Test
+   void onlyTheLatestSetpointIsSentOnASlowLink() throws Exception {
+      Server server = new Server("good", false);
+      server.setAnswerDelay(50);
+      Thread srvThread = new Thread(server);
+      srvThread.start();
+      try {
+         // To be sure that the server is running (tests on github)
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      Client client = new Client();
+      try (SetpointCoalescer coalescer = new SetpointCoalescer(client, 10)) {
+         client.connect("127.0.0.1");
+         // the input changes every millisecond, far faster than the robot answers
+         for (int i = 0; i < 500; i++) {
+            coalescer.setSetpoint(i % 100, -(i % 100));
+            Thread.sleep(1);
+         }
+         coalescer.setSetpoint(42, -17);
+         Thread.sleep(500);
+
+         List<int[]> received = server.getReceivedSetpoints();
+         assertTrue(received.size() < 100);
+         assertTrue(coalescer.getSentSetpoints() < coalescer.getReceivedSetpoints());
+         assertArrayEquals(new int[]{42, -17}, received.get(received.size() - 1));
+      } finally {
+         client.disconnect();
+         server.stopExecution();
+      }
+   }
+}
@@ -0,0 +1,63 @@
+/*
+ * @File CommandBenchmark.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.benchmarks;
+
+import ch.heigvd.robotpi.app.communication.Client;
+import ch.heigvd.robotpi.servertest.ProtocolCommands;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the round trip of the commands on an open connection : a movement followed by a stop, a ping, and the
+ * same movement and stop sent without waiting for the first answer. Each of them is measured with the binary framing
+ * and with the text protocol.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Djavax.net.debug="})
+public class CommandBenchmark {
+   @Param({"binary", "text"})
+   public String protocol;
+   private LoopbackServer server;
+   private Client client;
+
+   @Setup(Level.Trial)
+   public void setUp() throws Exception {
+      server = new LoopbackServer();
+      server.start();
+      System.setProperty(Client.PROTOCOL_PROPERTY, protocol);
+      client = new Client();
+      client.connect(LoopbackServer.HOST);
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown() throws Exception {
+      client.disconnect();
+      server.stop();
+   }
+
+   @Benchmark
+   public void forwardStop() throws Exception {
+      client.goForward();
+      client.stop();
+   }
+
+   @Benchmark
+   public void ping() throws Exception {
+      client.ping();
+   }
+
+   @Benchmark
+   public void pipelinedForwardStop() {
+      CompletableFuture.allOf(client.sendAsync(ProtocolCommands.forward), client.sendAsync(ProtocolCommands.stop))
+                       .join();
+   }
+}
@@ -0,0 +1,104 @@
+/*
+ * @File CommandParsingBenchmark.java
+ * @Authors : David González León
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.benchmarks;
+
+import ch.heigvd.robotpi.servertest.CommandContext;
+import ch.heigvd.robotpi.servertest.CommandDispatcher;
+import ch.heigvd.robotpi.servertest.CommandHandler;
+import ch.heigvd.robotpi.servertest.ProtocolCommands;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of resolving the received messages, on the server (message to command and dispatch) and on the
+ * client (confirmation to command). The "ifChain" benchmark is the sequence of comparisons that was used before the
+ * lookup tables, kept as a reference.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandParsingBenchmark {
+   /**
+    * The message received. DISCONN is the last one of the old sequence of comparisons
+    */
+   @Param({"CONN", "FWD", "STOP", "DISCONN", "UNKNOWN"})
+   public String message;
+   private String confirmation;
+   private CommandDispatcher dispatcher;
+   private CommandContext context;
+
+   @Setup
+   public void setUp() {
+      ProtocolCommands command = ProtocolCommands.getCommandFromMessage(message);
+      // copy the strings, so that the comparisons can not stop at the reference equality
+      message = new String(message);
+      confirmation = command == null ? "CMD_ERR" : new String(command.getMessageConfirmation());
+      dispatcher = new CommandDispatcher();
+      for (ProtocolCommands c : ProtocolCommands.values()) {
+         dispatcher.register(c, CommandHandler.confirm());
+      }
+      context = new CommandContext() {
+         @Override
+         public void endSession() {}
+
+         @Override
+         public void stopServer() {}
+      };
+   }
+
+   @Benchmark
+   public ProtocolCommands ifChain() {
+      return ifChain(message);
+   }
+
+   @Benchmark
+   public ProtocolCommands messageLookup() {
+      return ProtocolCommands.getCommandFromMessage(message);
+   }
+
+   @Benchmark
+   public ProtocolCommands confirmationLookup() {
+      return ProtocolCommands.getCommandFromConfirmation(confirmation);
+   }
+
+   @Benchmark
+   public String dispatch() {
+      return dispatcher.dispatch(message, context);
+   }
+
+   private static ProtocolCommands ifChain(String message) {
+      if (message.equals(ProtocolCommands.conn.getMessage())) {
+         return ProtocolCommands.conn;
+      } else if (message.equals(ProtocolCommands.forward.getMessage())) {
+         return ProtocolCommands.forward;
+      } else if (message.equals(ProtocolCommands.backward.getMessage())) {
+         return ProtocolCommands.backward;
+      } else if (message.equals(ProtocolCommands.rotateRight.getMessage())) {
+         return ProtocolCommands.rotateRight;
+      } else if (message.equals(ProtocolCommands.rotateLeft.getMessage())) {
+         return ProtocolCommands.rotateLeft;
+      } else if (message.equals(ProtocolCommands.frontleft.getMessage())) {
+         return ProtocolCommands.frontleft;
+      } else if (message.equals(ProtocolCommands.frontRight.getMessage())) {
+         return ProtocolCommands.frontRight;
+      } else if (message.equals(ProtocolCommands.backwardsRight.getMessage())) {
+         return ProtocolCommands.backwardsRight;
+      } else if (message.equals(ProtocolCommands.backwardsLeft.getMessage())) {
+         return ProtocolCommands.backwardsLeft;
+      } else if (message.equals(ProtocolCommands.ping.getMessage())) {
+         return ProtocolCommands.ping;
+      } else if (message.equals(ProtocolCommands.stop.getMessage())) {
+         return ProtocolCommands.stop;
+      } else if (message.equals(ProtocolCommands.disconnect.getMessage())) {
+         return ProtocolCommands.disconnect;
+      }
+      return null;
+   }
+}
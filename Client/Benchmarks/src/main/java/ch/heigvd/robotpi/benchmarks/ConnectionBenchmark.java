@@ -0,0 +1,85 @@
+/*
+ * @File ConnectionBenchmark.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.benchmarks;
+
+import ch.heigvd.robotpi.app.communication.Client;
+import ch.heigvd.robotpi.servertest.ProtocolCommands;
+import org.openjdk.jmh.annotations.*;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time needed to open a connection to the robot. The "cold" benchmark reproduces what the client used to
+ * do for every socket : load the trust store, build a new SSLContext and perform a full TLS handshake. The "client"
+ * benchmark goes through Client.connect, which reuses the shared context and resumes the TLS session.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Djavax.net.debug="})
+public class ConnectionBenchmark {
+   private LoopbackServer server;
+   private Client client;
+
+   @Setup(Level.Trial)
+   public void setUp() throws Exception {
+      server = new LoopbackServer();
+      server.start();
+      client = new Client();
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown() throws Exception {
+      server.stop();
+   }
+
+   /**
+    * Opens a connection the way the client did before the SSLContext was shared.
+    *
+    * @return the confirmation of the server
+    *
+    * @throws Exception the exception
+    */
+   @Benchmark
+   public String connectColdContext() throws Exception {
+      SSLContext coldContext = LoopbackServer.newTrustingContext();
+      SSLSocket socket = (SSLSocket) coldContext.getSocketFactory().createSocket(LoopbackServer.HOST, client.PORT);
+      socket.setTcpNoDelay(true);
+      socket.setEnabledProtocols(new String[]{"TLSv1.3"});
+      try (socket) {
+         PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+         BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+         socket.startHandshake();
+         out.print(ProtocolCommands.conn.getMessage() + "\n");
+         out.flush();
+         in.readLine();
+         out.print(ProtocolCommands.disconnect.getMessage() + "\n");
+         out.flush();
+         return in.readLine();
+      }
+   }
+
+   /**
+    * Opens a connection through the client, with the shared SSLContext.
+    *
+    * @return whether the client is still connected
+    *
+    * @throws Exception the exception
+    */
+   @Benchmark
+   public boolean connectClient() throws Exception {
+      client.connect(LoopbackServer.HOST);
+      client.disconnect();
+      return client.isConnected();
+   }
+}
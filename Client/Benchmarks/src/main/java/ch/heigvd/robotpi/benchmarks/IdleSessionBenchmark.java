@@ -0,0 +1,109 @@
+/*
+ * @File IdleSessionBenchmark.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.benchmarks;
+
+import ch.heigvd.robotpi.app.communication.Client;
+import ch.heigvd.robotpi.servertest.ProtocolCommands;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds thousands of idle sessions on the simulator, served either by its event loop or by a thread per session, and
+ * measures the number of pings per second it answers meanwhile. Each invocation pings the next batch of sessions, so
+ * that most of them stay idle.
+ * <p>
+ * The simulator runs in a process of its own, so that the memory taken by each session can be measured on the server
+ * alone, once they are all connected : the heap used after a collection, the direct buffers, and the number of
+ * threads, whose stacks are not part of the heap. The "sessionMemory" benchmark reports them as secondary results,
+ * its time being meaningless.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Djavax.net.debug=", "-Drobotpi.transport=nio"})
+public class IdleSessionBenchmark {
+   private static final int BATCH = 64;
+   @Param({"2000"})
+   public int sessions;
+   @Param({"true", "false"})
+   public boolean eventLoop;
+   private ServerProcess server;
+   private Client[] clients;
+   private int next = 0;
+   private ServerProcess.Footprint idle;
+   private ServerProcess.Footprint loaded;
+
+   @Setup(Level.Trial)
+   public void setUp() throws Exception {
+      server = ServerProcess.start(sessions, eventLoop);
+      // opens and closes a first session, so that the classes of both ends are loaded before the measure
+      Client warmup = new Client();
+      warmup.connect(LoopbackServer.HOST);
+      warmup.disconnect();
+      idle = server.measure();
+      clients = new Client[sessions];
+      for (int i = 0; i < sessions; i++) {
+         clients[i] = new Client();
+         clients[i].connect(LoopbackServer.HOST);
+      }
+      loaded = server.measure();
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown() throws Exception {
+      for (Client client : clients) {
+         client.disconnect();
+      }
+      server.stop();
+   }
+
+   /**
+    * Pings a batch of sessions at the same time and waits for all the answers. The results are given per ping.
+    *
+    * @throws Exception the exception
+    */
+   @Benchmark
+   @OperationsPerInvocation(BATCH)
+   public void ping() throws Exception {
+      CompletableFuture<?>[] answers = new CompletableFuture<?>[BATCH];
+      for (int i = 0; i < BATCH; i++) {
+         answers[i] = clients[next].sendAsync(ProtocolCommands.ping);
+         next = (next + 1) % clients.length;
+      }
+      CompletableFuture.allOf(answers).get();
+   }
+
+   /**
+    * Reports the memory taken by each session on the server, measured when the sessions were connected.
+    *
+    * @param memory the counters of the memory, reported as secondary results
+    */
+   @Benchmark
+   @BenchmarkMode(Mode.SingleShotTime)
+   @Warmup(iterations = 0)
+   @Measurement(iterations = 1)
+   public void sessionMemory(SessionMemory memory) {
+      memory.heapBytesPerSession = (loaded.getHeap() - idle.getHeap()) / sessions;
+      memory.directBytesPerSession = (loaded.getDirect() - idle.getDirect()) / sessions;
+      memory.threadsPerSession = (double) (loaded.getThreads() - idle.getThreads()) / sessions;
+   }
+
+   /**
+    * The memory taken by each session on the server. The counters are summed over the iterations, so they are only
+    * set by a benchmark measured once.
+    */
+   @State(Scope.Thread)
+   @AuxCounters(AuxCounters.Type.EVENTS)
+   public static class SessionMemory {
+      public long heapBytesPerSession;
+      public long directBytesPerSession;
+      public double threadsPerSession;
+   }
+}
@@ -0,0 +1,107 @@
+/*
+ * @File LoopbackServer.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.benchmarks;
+
+import ch.heigvd.robotpi.app.communication.Client;
+import ch.heigvd.robotpi.servertest.Server;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.KeyStore;
+
+/**
+ * Runs a simulated robot Server inside the benchmark process, on the loopback interface. The benchmarks use it as the
+ * remote end so that they can be run without a robot.
+ */
+public class LoopbackServer {
+   /**
+    * The address the clients of the benchmarks connect to
+    */
+   public static final String HOST = "127.0.0.1";
+   private final Server server;
+   private Thread serverThread;
+
+   /**
+    * Instantiates a new loopback server that behaves like a correctly working robot.
+    */
+   public LoopbackServer() {
+      this.server = new Server("good", false);
+   }
+
+   /**
+    * Instantiates a new loopback server that behaves like a correctly working robot and serves many clients at the
+    * same time.
+    *
+    * @param maxSessions the maximum number of clients served concurrently
+    * @param eventLoop   true to serve every connection from a single thread, false for a thread per connection
+    */
+   public LoopbackServer(int maxSessions, boolean eventLoop) {
+      this.server = new Server("good", false, maxSessions);
+      server.setEventLoop(eventLoop);
+      // the statistics of thousands of sessions would flood the output of the benchmarks
+      server.setLogSampling(0);
+   }
+
+   /**
+    * Starts the server. The control port is open when this method returns.
+    *
+    * @throws IOException the io exception
+    */
+   public void start() throws IOException {
+      server.start();
+      serverThread = new Thread(() -> {
+         try {
+            server.serveClients();
+         } catch (IOException e) {
+            e.printStackTrace();
+         }
+      });
+      serverThread.setDaemon(true);
+      serverThread.start();
+   }
+
+   /**
+    * Stops the server and waits for it to terminate.
+    *
+    * @throws InterruptedException the interrupted exception
+    */
+   public void stop() throws InterruptedException {
+      server.stopExecution();
+      serverThread.join(5000);
+   }
+
+   /**
+    * Gets the simulated server.
+    *
+    * @return the server
+    */
+   public Server getServer() {
+      return server;
+   }
+
+   /**
+    * Creates a new SSLContext trusting the certificate of the server, the way the client did for every socket before
+    * its context was shared : the trust store is loaded again each time.
+    *
+    * @return the context
+    *
+    * @throws Exception the trust store could not be loaded
+    */
+   public static SSLContext newTrustingContext() throws Exception {
+      KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+      TrustManagerFactory trustManagerFactory =
+              TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+      try (InputStream inputStream = Client.class.getClassLoader().getResourceAsStream("rpTrustStore.jts")) {
+         trustStore.load(inputStream, "robotpi".toCharArray());
+      }
+      trustManagerFactory.init(trustStore);
+      SSLContext sslContext = SSLContext.getInstance("TLS");
+      sslContext.init(null, trustManagerFactory.getTrustManagers(), null);
+      return sslContext;
+   }
+}
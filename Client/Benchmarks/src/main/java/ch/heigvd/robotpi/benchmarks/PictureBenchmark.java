@@ -0,0 +1,162 @@
+/*
+ * @File PictureBenchmark.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.benchmarks;
+
+import ch.heigvd.robotpi.app.communication.Client;
+import ch.heigvd.robotpi.app.communication.PictureBurst;
+import ch.heigvd.robotpi.app.communication.PictureChannel;
+import ch.heigvd.robotpi.servertest.PictureProtocol;
+import ch.heigvd.robotpi.servertest.PictureSet;
+import org.openjdk.jmh.annotations.*;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import java.io.*;
+import java.net.ConnectException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the round trip latency and the number of pictures per second, either with one connection per picture,
+ * with all the pictures requested one by one on the same picture session, or with bursts whose requests are pipelined
+ * on the session. The number of bytes received is reported as a secondary result, which gives the transfer rate in
+ * throughput mode, next to the number of pictures the robot could not take.
+ * <p>
+ * The pictures are encoded once by the server, so that the benchmarks measure their transfer : the logo of the robot,
+ * or sets of generated frames of a larger size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Djavax.net.debug="})
+public class PictureBenchmark {
+   private static final int PORT_PICTURE = new Client().PORTPICTURE;
+   private static final int BURST = 16;
+   private LoopbackServer server;
+   private PictureChannel channel;
+   private Client client;
+   private SSLContext sslContext;
+   @Param({"logo", "640x480.jpg", "1920x1080.png"})
+   public String pictures;
+
+   @Setup(Level.Trial)
+   public void setUp() throws Exception {
+      server = new LoopbackServer();
+      server.getServer().setPictures(PictureSet.parse(pictures));
+      server.start();
+      channel = openChannel();
+      sslContext = LoopbackServer.newTrustingContext();
+      client = new Client();
+      client.connect(LoopbackServer.HOST);
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown() throws Exception {
+      client.disconnect();
+      channel.close();
+      server.stop();
+   }
+
+   /**
+    * Requests a picture on the already opened picture session.
+    *
+    * @return the picture
+    *
+    * @throws IOException the io exception
+    */
+   @Benchmark
+   public byte[] sessionPicture(TransferCounters counters) throws IOException {
+      byte[] picture = channel.fetch();
+      if (picture == null) {
+         counters.failures++;
+      } else {
+         counters.bytes += picture.length;
+      }
+      return picture;
+   }
+
+   /**
+    * Takes a burst of pictures without interval, so that up to {@link PictureBurst#MAX_IN_FLIGHT} requests are waiting
+    * for their answer on the picture session of the client. The results are given per picture.
+    *
+    * @throws Exception the exception
+    */
+   @Benchmark
+   @OperationsPerInvocation(BURST)
+   public void burstPictures(TransferCounters counters) throws Exception {
+      PictureBurst burst = client.takeBurst(BURST, 0);
+      burst.whenDone().get();
+      for (int i = 0; i < BURST; i++) {
+         // null if the robot could not take the picture
+         byte[] picture = burst.get(i).join();
+         if (picture == null) {
+            counters.failures++;
+         } else {
+            counters.bytes += picture.length;
+         }
+      }
+   }
+
+   /**
+    * Requests a picture on a new connection, which is closed by the robot after the transfer. The SSLContext is shared
+    * so that only the cost of the connection itself is measured.
+    *
+    * @return the picture
+    *
+    * @throws IOException the io exception
+    */
+   @Benchmark
+   public byte[] singlePicture(TransferCounters counters) throws IOException {
+      try (SSLSocket socket = (SSLSocket) sslContext.getSocketFactory().createSocket(LoopbackServer.HOST,
+                                                                                       PORT_PICTURE)) {
+         socket.setTcpNoDelay(true);
+         socket.setEnabledProtocols(new String[]{"TLSv1.3"});
+         InputStream in = new BufferedInputStream(socket.getInputStream());
+         OutputStream out = socket.getOutputStream();
+         PictureProtocol.writeLine(out, PictureProtocol.PICTURE);
+         out.flush();
+         PictureProtocol.readLine(in);
+         byte[] picture = in.readAllBytes();
+         counters.bytes += picture.length;
+         return picture;
+      }
+   }
+
+   /**
+    * The counters of the received data, reported next to the results of the benchmarks
+    */
+   @State(Scope.Thread)
+   @AuxCounters(AuxCounters.Type.OPERATIONS)
+   public static class TransferCounters {
+      /**
+       * The number of picture bytes received
+       */
+      public long bytes;
+      /**
+       * The number of pictures the robot could not take
+       */
+      public long failures;
+
+      @Setup(Level.Iteration)
+      public void reset() {
+         bytes = 0;
+         failures = 0;
+      }
+   }
+
+   private static PictureChannel openChannel() throws Exception {
+      // The picture server is started asynchronously by the server
+      for (int i = 0; i < 50; i++) {
+         try {
+            return PictureChannel.open(LoopbackServer.HOST, PORT_PICTURE);
+         } catch (ConnectException e) {
+            Thread.sleep(100);
+         }
+      }
+      throw new IllegalStateException("The picture server did not start");
+   }
+}
@@ -0,0 +1,170 @@
+/*
+ * @File ServerProcess.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a LoopbackServer in a process of its own, so that the memory it takes can be measured apart from the one of
+ * the clients of the benchmark. The benchmark drives the process through its standard input : "MEASURE" asks for the
+ * footprint of the server, and "STOP" stops it. The answers are the lines of the standard output starting with
+ * "SERVER ", the other lines are ignored.
+ */
+public class ServerProcess {
+   private static final String PREFIX = "SERVER ";
+   private static final String READY = "READY";
+   private static final String MEASURE = "MEASURE";
+   private static final String STOP = "STOP";
+   private final Process process;
+   private final PrintWriter commands;
+   private final BufferedReader answers;
+
+   private ServerProcess(Process process) {
+      this.process = process;
+      this.commands = new PrintWriter(process.getOutputStream(), true);
+      this.answers = new BufferedReader(new InputStreamReader(process.getInputStream()));
+   }
+
+   /**
+    * Starts a server in a new process, with the class path of this one. The control port is open when this method
+    * returns.
+    *
+    * @param maxSessions the maximum number of clients served concurrently
+    * @param eventLoop   true to serve every connection from a single thread, false for a thread per connection
+    *
+    * @return the process
+    *
+    * @throws IOException the process could not be started, or ended before the server was ready
+    */
+   public static ServerProcess start(int maxSessions, boolean eventLoop) throws IOException {
+      String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+      Process process = new ProcessBuilder(java, "-Djavax.net.debug=", "-cp", System.getProperty("java.class.path"),
+                                           ServerProcess.class.getName(), String.valueOf(maxSessions),
+                                           String.valueOf(eventLoop)).redirectError(ProcessBuilder.Redirect.INHERIT)
+                                                                     .start();
+      ServerProcess server = new ServerProcess(process);
+      server.answer();
+      return server;
+   }
+
+   /**
+    * Measures the memory taken by the server, after a garbage collection.
+    *
+    * @return the footprint of the server
+    *
+    * @throws IOException the process ended
+    */
+   public Footprint measure() throws IOException {
+      commands.println(MEASURE);
+      String[] values = answer().split(" ");
+      return new Footprint(Long.parseLong(values[0]), Long.parseLong(values[1]), Integer.parseInt(values[2]));
+   }
+
+   /**
+    * Stops the server and waits for its process to end.
+    *
+    * @throws InterruptedException the interrupted exception
+    */
+   public void stop() throws InterruptedException {
+      commands.println(STOP);
+      if (!process.waitFor(5, TimeUnit.SECONDS)) {
+         process.destroyForcibly();
+      }
+   }
+
+   private String answer() throws IOException {
+      String line;
+      while ((line = answers.readLine()) != null) {
+         if (line.startsWith(PREFIX)) {
+            return line.substring(PREFIX.length());
+         }
+      }
+      throw new EOFException("The server process ended");
+   }
+
+   /**
+    * Runs the server of the process
+    *
+    * @param args the maximum number of sessions, and "true" to serve them from the event loop
+    *
+    * @throws Exception the exception
+    */
+   public static void main(String[] args) throws Exception {
+      LoopbackServer server = new LoopbackServer(Integer.parseInt(args[0]), Boolean.parseBoolean(args[1]));
+      server.start();
+      System.out.println(PREFIX + READY);
+      BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+      String command;
+      while ((command = in.readLine()) != null && !command.equals(STOP)) {
+         if (command.equals(MEASURE)) {
+            for (int i = 0; i < 3; i++) {
+               System.gc();
+               Thread.sleep(100);
+            }
+            long direct = 0;
+            for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+               if (pool.getName().equals("direct")) {
+                  direct = pool.getMemoryUsed();
+               }
+            }
+            System.out.println(PREFIX + ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() + " " +
+                               direct + " " + ManagementFactory.getThreadMXBean().getThreadCount());
+         }
+      }
+      server.stop();
+      System.exit(0);
+   }
+
+   /**
+    * The memory taken by the server at some point
+    */
+   public static final class Footprint {
+      private final long heap;
+      private final long direct;
+      private final int threads;
+
+      private Footprint(long heap, long direct, int threads) {
+         this.heap = heap;
+         this.direct = direct;
+         this.threads = threads;
+      }
+
+      /**
+       * Gets the heap used after a garbage collection
+       *
+       * @return the number of bytes
+       */
+      public long getHeap() {
+         return heap;
+      }
+
+      /**
+       * Gets the memory of the direct buffers, which is not part of the heap
+       *
+       * @return the number of bytes
+       */
+      public long getDirect() {
+         return direct;
+      }
+
+      /**
+       * Gets the number of live threads, whose stacks are not part of the heap either
+       *
+       * @return the number of threads
+       */
+      public int getThreads() {
+         return threads;
+      }
+   }
+}
@@ -0,0 +1,189 @@
+/*
+ * @File BinaryProtocol.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.servertest;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The compact binary framing that can replace the text lines on the control port. It is negotiated right after the
+ * connection : the client sends "CAPS BIN" and switches to binary frames only if the robot answers "CAPS_OK BIN". A
+ * robot that does not know the capabilities answers "CMD_ERR" and the connection stays in text mode.
+ * <p>
+ * A frame starts with the opcode of the message on one byte and a byte of flags. If the sequence flag is set, a
+ * sequence number follows on 2 bytes, and the answer to the frame carries the same number. If the payload flag is set,
+ * the length of the payload follows on 2 bytes, then the payload itself. All numbers are big endian. The opcodes are
+ * given by {@link ProtocolCommands}.
+ */
+public final class BinaryProtocol {
+   /**
+    * Announces the capabilities of the client, followed by their names
+    */
+   public static final String CAPS = "CAPS";
+   /**
+    * Answer to the capabilities, followed by the names of those the robot accepted
+    */
+   public static final String CAPS_OK = "CAPS_OK";
+   /**
+    * The name of the binary framing capability
+    */
+   public static final String BINARY = "BIN";
+   /**
+    * The opcode of the answer to an unknown command, as in protocol.h
+    */
+   public static final int CMD_ERR = 55;
+   /**
+    * The flag set when the frame carries a sequence number
+    */
+   public static final int FLAG_SEQUENCE = 0x01;
+   /**
+    * The flag set when the frame carries a payload
+    */
+   public static final int FLAG_PAYLOAD = 0x02;
+   /**
+    * The value of the sequence number of a frame that has none
+    */
+   public static final int NO_SEQUENCE = -1;
+   /**
+    * The largest payload a frame can carry
+    */
+   public static final int MAX_PAYLOAD = 0xFFFF;
+   private static final byte[] NO_PAYLOAD = new byte[0];
+   private static final int[] NO_ARGUMENTS = new int[0];
+
+   private BinaryProtocol() {}
+
+   /**
+    * Writes a frame. The stream is not flushed.
+    *
+    * @param out      the stream
+    * @param opcode   the opcode of the message
+    * @param sequence the sequence number, between 0 and 65535, or NO_SEQUENCE
+    * @param payload  the payload, or null if there is none
+    *
+    * @throws IOException the io exception
+    */
+   public static void writeFrame(DataOutputStream out, int opcode, int sequence, byte[] payload) throws IOException {
+      if (payload != null && payload.length > MAX_PAYLOAD) {
+         throw new IllegalArgumentException("Payload too large : " + payload.length);
+      }
+      int flags = (sequence != NO_SEQUENCE ? FLAG_SEQUENCE : 0) | (payload != null ? FLAG_PAYLOAD : 0);
+      out.writeByte(opcode);
+      out.writeByte(flags);
+      if (sequence != NO_SEQUENCE) {
+         out.writeShort(sequence);
+      }
+      if (payload != null) {
+         out.writeShort(payload.length);
+         out.write(payload);
+      }
+   }
+
+   /**
+    * Reads the next frame into the given one, so that the same frame can be reused for every message.
+    *
+    * @param in    the stream
+    * @param frame the frame to fill
+    *
+    * @return the frame, or null at the end of the stream
+    *
+    * @throws IOException the io exception
+    */
+   public static Frame readFrame(DataInputStream in, Frame frame) throws IOException {
+      int opcode = in.read();
+      if (opcode == -1) {
+         return null;
+      }
+      int flags = in.readUnsignedByte();
+      frame.opcode = opcode;
+      frame.sequence = (flags & FLAG_SEQUENCE) != 0 ? in.readUnsignedShort() : NO_SEQUENCE;
+      if ((flags & FLAG_PAYLOAD) != 0) {
+         byte[] payload = new byte[in.readUnsignedShort()];
+         in.readFully(payload);
+         frame.payload = payload;
+      } else {
+         frame.payload = NO_PAYLOAD;
+      }
+      return frame;
+   }
+
+   /**
+    * Encodes the integer arguments of a command as the payload of a frame, each of them on 2 bytes
+    *
+    * @param arguments the arguments, between -32768 and 32767
+    *
+    * @return the payload, or null if there are no arguments
+    */
+   public static byte[] encodeArguments(int[] arguments) {
+      if (arguments.length == 0) {
+         return null;
+      }
+      byte[] payload = new byte[arguments.length * 2];
+      for (int i = 0; i < arguments.length; i++) {
+         payload[2 * i] = (byte) (arguments[i] >> 8);
+         payload[2 * i + 1] = (byte) arguments[i];
+      }
+      return payload;
+   }
+
+   /**
+    * Decodes the integer arguments carried by the payload of a frame
+    *
+    * @param payload the payload
+    *
+    * @return the arguments, or null if the payload does not contain whole arguments
+    */
+   public static int[] decodeArguments(byte[] payload) {
+      if (payload.length % 2 != 0) {
+         return null;
+      }
+      if (payload.length == 0) {
+         return NO_ARGUMENTS;
+      }
+      int[] arguments = new int[payload.length / 2];
+      for (int i = 0; i < arguments.length; i++) {
+         arguments[i] = (short) ((payload[2 * i] << 8) | (payload[2 * i + 1] & 0xFF));
+      }
+      return arguments;
+   }
+
+   /**
+    * A frame read from a stream
+    */
+   public static final class Frame {
+      private int opcode;
+      private int sequence = NO_SEQUENCE;
+      private byte[] payload = NO_PAYLOAD;
+
+      /**
+       * Gets the opcode of the message.
+       *
+       * @return the opcode
+       */
+      public int getOpcode() {
+         return opcode;
+      }
+
+      /**
+       * Gets the sequence number.
+       *
+       * @return the sequence number, or NO_SEQUENCE if the frame has none
+       */
+      public int getSequence() {
+         return sequence;
+      }
+
+      /**
+       * Gets the payload.
+       *
+       * @return the payload, empty if the frame has none
+       */
+      public byte[] getPayload() {
+         return payload;
+      }
+   }
+}
@@ -0,0 +1,22 @@
+/*
+ * @File CommandContext.java
+ * @Authors : David González León
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.servertest;
+
+/**
+ * The session in which a command is handled. It lets a {@link CommandHandler} act on the session or on the server once
+ * its answer has been sent.
+ */
+public interface CommandContext {
+   /**
+    * Ends the session once the answer has been sent
+    */
+   void endSession();
+
+   /**
+    * Stops the server once the answer has been sent
+    */
+   void stopServer();
+}
@@ -0,0 +1,91 @@
+/*
+ * @File CommandDispatcher.java
+ * @Authors : David González León
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.servertest;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Resolves the messages received by the server to their command, and hands them to the handler registered for this
+ * command. Both steps are table lookups, so the cost does not depend on the number of commands. A command received
+ * with the wrong number of arguments is treated as unknown.
+ */
+public class CommandDispatcher {
+   /**
+    * The answer given to an unknown command
+    */
+   public static final String UNKNOWN_COMMAND = "CMD_ERR";
+   private static final int[] NO_ARGUMENTS = new int[0];
+   private final Map<ProtocolCommands, CommandHandler> handlers = new EnumMap<>(ProtocolCommands.class);
+
+   /**
+    * Sets the handler of a command, replacing the previous one
+    *
+    * @param command the command
+    * @param handler the handler
+    *
+    * @return this dispatcher
+    */
+   public CommandDispatcher register(ProtocolCommands command, CommandHandler handler) {
+      handlers.put(command, handler);
+      return this;
+   }
+
+   /**
+    * Handles a message received from a client
+    *
+    * @param message the message, without its line terminator
+    * @param context the session in which the message was received
+    *
+    * @return the answer to send to the client
+    */
+   public String dispatch(String message, CommandContext context) {
+      int separator = message.indexOf(' ');
+      ProtocolCommands command = commandOf(message);
+      if (separator < 0) {
+         return dispatch(command, NO_ARGUMENTS, context);
+      }
+      String[] words = message.substring(separator + 1).split(" ");
+      int[] arguments = new int[words.length];
+      try {
+         for (int i = 0; i < words.length; i++) {
+            arguments[i] = Integer.parseInt(words[i]);
+         }
+      } catch (NumberFormatException e) {
+         return UNKNOWN_COMMAND;
+      }
+      return dispatch(command, arguments, context);
+   }
+
+   /**
+    * Resolves the command of a message, without its arguments
+    *
+    * @param message the message, without its line terminator
+    *
+    * @return the command, or null if the message does not match any command
+    */
+   public static ProtocolCommands commandOf(String message) {
+      int separator = message.indexOf(' ');
+      return ProtocolCommands.getCommandFromMessage(separator < 0 ? message : message.substring(0, separator));
+   }
+
+   /**
+    * Handles a command already resolved, for example from the opcode of a binary frame
+    *
+    * @param command   the command, or null if the message did not match any command
+    * @param arguments the arguments received with the command, or null if they could not be read
+    * @param context   the session in which the command was received
+    *
+    * @return the answer to send to the client
+    */
+   public String dispatch(ProtocolCommands command, int[] arguments, CommandContext context) {
+      if (command == null || arguments == null || !command.acceptsArguments(arguments.length)) {
+         return UNKNOWN_COMMAND;
+      }
+      CommandHandler handler = handlers.get(command);
+      return handler == null ? UNKNOWN_COMMAND : handler.handle(command, arguments, context);
+   }
+}
@@ -0,0 +1,44 @@
+/*
+ * @File CommandHandler.java
+ * @Authors : David González León
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.servertest;
+
+/**
+ * The behaviour of the server for one command of the protocol. Each command is associated to a handler in the
+ * {@link CommandDispatcher}, which allows a server to change how it answers to a command without touching the others.
+ */
+@FunctionalInterface
+public interface CommandHandler {
+   /**
+    * Handles a command received from a client
+    *
+    * @param command   the command received
+    * @param arguments the arguments of the command, as many as it takes
+    * @param context   the session in which the command was received
+    *
+    * @return the answer to send to the client
+    */
+   String handle(ProtocolCommands command, int[] arguments, CommandContext context);
+
+   /**
+    * A handler that confirms the command it receives
+    *
+    * @return the handler
+    */
+   static CommandHandler confirm() {
+      return (command, arguments, context) -> command.getMessageConfirmation();
+   }
+
+   /**
+    * A handler that always gives the same answer
+    *
+    * @param answer the answer
+    *
+    * @return the handler
+    */
+   static CommandHandler answer(String answer) {
+      return (command, arguments, context) -> answer;
+   }
+}
@@ -0,0 +1,74 @@
+/*
+ * @File FrameGenerator.java
+ * @Authors : David González León
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.servertest;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Generates synthetic camera frames, encoded in jpeg by default, so that the video stream can be tested without a
+ * camera. Each frame shows a bar moving across the image and the number of the frame.
+ */
+public class FrameGenerator {
+   private final BufferedImage image;
+   private final Graphics2D graphics;
+   private final String format;
+   private final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+   private long frameNumber = 0;
+
+   /**
+    * Instantiates a new frame generator.
+    *
+    * @param width  the width of the frames
+    * @param height the height of the frames
+    */
+   public FrameGenerator(int width, int height) {
+      this(width, height, "jpg");
+   }
+
+   /**
+    * Instantiates a new frame generator, encoding the frames in the given format.
+    *
+    * @param width  the width of the frames
+    * @param height the height of the frames
+    * @param format the format of the frames, as known by ImageIO, such as "jpg" or "png"
+    */
+   public FrameGenerator(int width, int height, String format) {
+      this.format = format;
+      image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+      graphics = image.createGraphics();
+      graphics.setFont(new Font(Font.MONOSPACED, Font.BOLD, Math.max(12, height / 10)));
+   }
+
+   /**
+    * Draws and encodes the next frame. The returned array belongs to the caller.
+    *
+    * @return the encoded bytes of the frame
+    *
+    * @throws IOException the io exception, also thrown if ImageIO cannot write the format
+    */
+   public byte[] nextFrame() throws IOException {
+      int width = image.getWidth();
+      int height = image.getHeight();
+      graphics.setColor(Color.DARK_GRAY);
+      graphics.fillRect(0, 0, width, height);
+      graphics.setColor(Color.ORANGE);
+      int barWidth = Math.max(1, width / 8);
+      graphics.fillRect((int) (frameNumber * 4 % (width + barWidth)) - barWidth, 0, barWidth, height);
+      graphics.setColor(Color.WHITE);
+      graphics.drawString("Frame " + frameNumber, 10, height - 10);
+      frameNumber++;
+
+      encoded.reset();
+      if (!ImageIO.write(image, format, encoded)) {
+         throw new IOException("Unknown picture format " + format);
+      }
+      return encoded.toByteArray();
+   }
+}
@@ -0,0 +1,63 @@
+/*
+ * @File MissionLogEntry.java
+ * @Authors : David González León
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.servertest;
+
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A step of a mission executed by the simulated server, with the time it was planned for and the time it actually ran.
+ * Both times are measured on the monotonic clock, from the time the mission was received.
+ */
+public class MissionLogEntry {
+   /**
+    * The number of the mission, from 1 for the first mission received by the server
+    */
+   @Getter private final int mission;
+   /**
+    * The index of the step in its mission
+    */
+   @Getter private final int index;
+   /**
+    * The step executed
+    */
+   @Getter private final MissionProtocol.Step step;
+   /**
+    * The time the step ran, in nanoseconds from the reception of the mission
+    */
+   @Getter private final long executedAt;
+
+   /**
+    * Instantiates a new entry of the mission log.
+    *
+    * @param mission    the number of the mission
+    * @param index      the index of the step in its mission
+    * @param step       the step executed
+    * @param executedAt the time the step ran, in nanoseconds from the reception of the mission
+    */
+   MissionLogEntry(int mission, int index, MissionProtocol.Step step, long executedAt) {
+      this.mission = mission;
+      this.index = index;
+      this.step = step;
+      this.executedAt = executedAt;
+   }
+
+   /**
+    * Gets how late the step ran compared to its schedule.
+    *
+    * @return the lateness, in nanoseconds
+    */
+   public long getLateness() {
+      return executedAt - TimeUnit.MILLISECONDS.toNanos(step.getAt());
+   }
+
+   @Override
+   public String toString() {
+      return String.format("mission %d, step %d : %s, ran %d us late", mission, index, step,
+                           TimeUnit.NANOSECONDS.toMicros(getLateness()));
+   }
+}
@@ -0,0 +1,203 @@
+/*
+ * @File MissionProtocol.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.servertest;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The form of a mission uploaded with the MISSION command. A mission is a timed sequence of steps that the robot runs
+ * on its own clock once it has confirmed the upload, so that the steps do not depend on the round trips of the link.
+ * <p>
+ * The arguments of the command are the steps, each of them on 4 integers : the kind of the step, the time to wait
+ * after the previous step (or the upload for the first one) in milliseconds, and two arguments. The kind is the opcode
+ * of a movement command, CAPTURE to take a picture, or WAIT for a step that does nothing, used for waits longer than a
+ * single step can hold. The arguments are the speeds of the wheels for the drive command, and 0 otherwise.
+ * <p>
+ * The robot schedules every step from the time of the upload, not from the end of the previous step, so the delays of
+ * the steps do not add up. A new mission replaces the one running, and stopping the robot aborts it.
+ */
+public final class MissionProtocol {
+   /**
+    * The kind of a step that does nothing
+    */
+   public static final int WAIT = 0;
+   /**
+    * The kind of a step that takes a picture
+    */
+   public static final int CAPTURE = 100;
+   /**
+    * The number of integers of a step
+    */
+   public static final int STEP_SIZE = 4;
+   /**
+    * The longest time a step can wait after the previous one, in milliseconds
+    */
+   public static final int MAX_DELAY = Short.MAX_VALUE;
+   /**
+    * The largest number of steps of a mission, so that it fits in a single binary frame
+    */
+   public static final int MAX_STEPS = BinaryProtocol.MAX_PAYLOAD / (2 * STEP_SIZE);
+
+   private MissionProtocol() {}
+
+   /**
+    * Encodes the steps of a mission as the arguments of the MISSION command. The waits longer than MAX_DELAY are split
+    * into WAIT steps.
+    *
+    * @param steps the steps, in the order of their time
+    *
+    * @return the arguments
+    */
+   public static int[] encode(List<Step> steps) {
+      List<int[]> encoded = new ArrayList<>();
+      long previous = 0;
+      for (Step step : steps) {
+         long delay = step.at - previous;
+         if (delay < 0) {
+            throw new IllegalArgumentException("The steps are not in the order of their time");
+         }
+         while (delay > MAX_DELAY) {
+            encoded.add(new int[]{WAIT, MAX_DELAY, 0, 0});
+            delay -= MAX_DELAY;
+         }
+         encoded.add(new int[]{step.kind, (int) delay, step.arguments[0], step.arguments[1]});
+         previous = step.at;
+      }
+      if (encoded.size() > MAX_STEPS) {
+         throw new IllegalArgumentException("A mission cannot have more than " + MAX_STEPS + " steps");
+      }
+      int[] arguments = new int[encoded.size() * STEP_SIZE];
+      for (int i = 0; i < encoded.size(); i++) {
+         System.arraycopy(encoded.get(i), 0, arguments, i * STEP_SIZE, STEP_SIZE);
+      }
+      return arguments;
+   }
+
+   /**
+    * Decodes the arguments of the MISSION command. The WAIT steps are kept, so that the robot can report them.
+    *
+    * @param arguments the arguments received
+    *
+    * @return the steps, or null if the arguments are not a valid mission
+    */
+   public static List<Step> decode(int[] arguments) {
+      if (arguments.length == 0 || arguments.length % STEP_SIZE != 0) {
+         return null;
+      }
+      List<Step> steps = new ArrayList<>(arguments.length / STEP_SIZE);
+      long at = 0;
+      for (int i = 0; i < arguments.length; i += STEP_SIZE) {
+         int kind = arguments[i];
+         int delay = arguments[i + 1];
+         int left = arguments[i + 2];
+         int right = arguments[i + 3];
+         if (delay < 0 || !isValid(kind, left, right)) {
+            return null;
+         }
+         at += delay;
+         steps.add(new Step(kind, at, left, right));
+      }
+      return Collections.unmodifiableList(steps);
+   }
+
+   private static boolean isValid(int kind, int left, int right) {
+      if (kind == ProtocolCommands.drive.getCode()) {
+         return Math.abs(left) <= ProtocolCommands.MAX_SPEED && Math.abs(right) <= ProtocolCommands.MAX_SPEED;
+      }
+      if (left != 0 || right != 0) {
+         return false;
+      }
+      if (kind == WAIT || kind == CAPTURE) {
+         return true;
+      }
+      ProtocolCommands command = ProtocolCommands.getCommandFromCode(kind);
+      return command != null && command.getArgumentCount() == 0 && command != ProtocolCommands.conn &&
+             command != ProtocolCommands.disconnect && command != ProtocolCommands.ping;
+   }
+
+   /**
+    * A step of a mission
+    */
+   public static final class Step {
+      /**
+       * The kind of the step : the opcode of a movement, CAPTURE or WAIT
+       */
+      @Getter private final int kind;
+      /**
+       * The time of the step, in milliseconds from the start of the mission
+       */
+      @Getter private final long at;
+      private final int[] arguments;
+
+      /**
+       * Instantiates a new step.
+       *
+       * @param kind  the kind of the step : the opcode of a movement, CAPTURE or WAIT
+       * @param at    the time of the step, in milliseconds from the start of the mission
+       * @param left  the speed of the left wheel for the drive command, 0 otherwise
+       * @param right the speed of the right wheel for the drive command, 0 otherwise
+       */
+      public Step(int kind, long at, int left, int right) {
+         this.kind = kind;
+         this.at = at;
+         this.arguments = new int[]{left, right};
+      }
+
+      /**
+       * Gets the movement command of the step.
+       *
+       * @return the command, or null for a capture or a wait
+       */
+      public ProtocolCommands getCommand() {
+         return kind == WAIT || kind == CAPTURE ? null : ProtocolCommands.getCommandFromCode(kind);
+      }
+
+      /**
+       * Gets the arguments of the movement command, as many as it takes.
+       *
+       * @return the arguments
+       */
+      public int[] getCommandArguments() {
+         ProtocolCommands command = getCommand();
+         return command == ProtocolCommands.drive ? arguments.clone() : new int[0];
+      }
+
+      /**
+       * Tells whether the step takes a picture
+       *
+       * @return true for a capture
+       */
+      public boolean isCapture() {
+         return kind == CAPTURE;
+      }
+
+      @Override
+      public String toString() {
+         ProtocolCommands command = getCommand();
+         String name = kind == WAIT ? "WAIT" : kind == CAPTURE ? "CAPTURE" : command.format(getCommandArguments());
+         return name + " at " + at + " ms";
+      }
+
+      @Override
+      public boolean equals(Object o) {
+         if (!(o instanceof Step)) {
+            return false;
+         }
+         Step step = (Step) o;
+         return kind == step.kind && at == step.at && Arrays.equals(arguments, step.arguments);
+      }
+
+      @Override
+      public int hashCode() {
+         return 31 * (31 * kind + Long.hashCode(at)) + Arrays.hashCode(arguments);
+      }
+   }
+}
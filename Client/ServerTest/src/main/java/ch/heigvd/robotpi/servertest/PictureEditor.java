@@ -0,0 +1,90 @@
+/*
+ * @File PictureEditor.java
+ * @Authors : David González León
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.servertest;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Applies the options of a picture request to a picture of the simulator, the way the camera of the robot would : the
+ * picture is decoded, cropped, scaled down and encoded as a jpeg of the quality asked for.
+ */
+final class PictureEditor {
+
+   private PictureEditor() {}
+
+   /**
+    * Applies options to a picture.
+    *
+    * @param picture the encoded picture, not modified
+    * @param options the options, at least one of them given
+    *
+    * @return the jpeg of the picture
+    *
+    * @throws IOException the picture could not be decoded, or the crop is outside of it
+    */
+   static byte[] edit(ByteBuffer picture, PictureOptions options) throws IOException {
+      byte[] bytes = new byte[picture.remaining()];
+      picture.duplicate().get(bytes);
+      BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+      if (image == null) {
+         throw new IOException("The picture cannot be decoded");
+      }
+      Rectangle region = new Rectangle(image.getWidth(), image.getHeight());
+      if (options.isCropped()) {
+         region = region.intersection(new Rectangle(options.getCropX(), options.getCropY(), options.getCropWidth(),
+                                                     options.getCropHeight()));
+         if (region.isEmpty()) {
+            throw new IOException("The crop is outside of the picture");
+         }
+      }
+      double scale = 1;
+      if (options.isScaled()) {
+         scale = Math.min(1, Math.min((double) options.getWidth() / region.width,
+                                      (double) options.getHeight() / region.height));
+      }
+      int width = Math.max(1, (int) Math.round(region.width * scale));
+      int height = Math.max(1, (int) Math.round(region.height * scale));
+
+      // jpeg has no alpha : the transparent parts become white
+      BufferedImage edited = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+      Graphics2D graphics = edited.createGraphics();
+      try {
+         graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+         graphics.setColor(Color.WHITE);
+         graphics.fillRect(0, 0, width, height);
+         graphics.drawImage(image, 0, 0, width, height, region.x, region.y, region.x + region.width,
+                            region.y + region.height, null);
+      } finally {
+         graphics.dispose();
+      }
+      return encodeJpeg(edited, options.getQuality());
+   }
+
+   private static byte[] encodeJpeg(BufferedImage image, int quality) throws IOException {
+      ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(quality / 100f);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+         writer.setOutput(stream);
+         writer.write(null, new IIOImage(image, null, null), param);
+      } finally {
+         writer.dispose();
+      }
+      return out.toByteArray();
+   }
+}
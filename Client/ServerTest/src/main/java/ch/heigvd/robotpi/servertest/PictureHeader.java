@@ -0,0 +1,144 @@
+/*
+ * @File PictureHeader.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.servertest;
+
+import lombok.Getter;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/**
+ * The header sent before a picture in a checked session, see {@link PictureProtocol#CHECKED}. It tells the size of the
+ * picture, its format, the sequence number given to it by the robot and its CRC32C, so that the client knows when the
+ * picture is complete, can check it, and can ask for the rest of it if its transfer is interrupted.
+ * <p>
+ * It is written as the size, the sequence number and the checksum on 4 bytes each (big endian), followed by the length
+ * of the format on one byte and its ascii characters.
+ */
+@Getter
+public final class PictureHeader {
+   /**
+    * The maximum size of a picture
+    */
+   public static final int MAX_SIZE = 64 * 1024 * 1024;
+   /**
+    * The maximum length of the name of a format
+    */
+   public static final int MAX_FORMAT_LENGTH = 16;
+   private final int size;
+   private final String format;
+   private final int sequence;
+   private final int checksum;
+
+   /**
+    * Creates a header.
+    *
+    * @param size     the size of the picture, in bytes
+    * @param format   the format of the picture, such as "jpg"
+    * @param sequence the sequence number of the picture
+    * @param checksum the CRC32C of the picture
+    */
+   public PictureHeader(int size, String format, int sequence, int checksum) {
+      if (size < 0 || size > MAX_SIZE) {
+         throw new IllegalArgumentException("Invalid picture size " + size);
+      }
+      if (format.length() > MAX_FORMAT_LENGTH) {
+         throw new IllegalArgumentException("Format too long : " + format);
+      }
+      this.size = size;
+      this.format = format;
+      this.sequence = sequence;
+      this.checksum = checksum;
+   }
+
+   /**
+    * Writes the header, without flushing the stream
+    *
+    * @param out the stream to write to
+    *
+    * @throws IOException the io exception
+    */
+   public void write(DataOutputStream out) throws IOException {
+      out.write(encode().array());
+   }
+
+   /**
+    * Encodes the header.
+    *
+    * @return the header, ready to be sent
+    */
+   public ByteBuffer encode() {
+      byte[] name = format.getBytes(StandardCharsets.US_ASCII);
+      ByteBuffer buffer = ByteBuffer.allocate(13 + name.length);
+      buffer.putInt(size).putInt(sequence).putInt(checksum).put((byte) name.length).put(name);
+      return buffer.flip();
+   }
+
+   /**
+    * Reads a header
+    *
+    * @param in the stream to read from
+    *
+    * @return the header
+    *
+    * @throws IOException the io exception, also thrown if the header is not valid
+    */
+   public static PictureHeader read(DataInputStream in) throws IOException {
+      int size = in.readInt();
+      int sequence = in.readInt();
+      int checksum = in.readInt();
+      int length = in.readUnsignedByte();
+      if (size < 0 || size > MAX_SIZE || length > MAX_FORMAT_LENGTH) {
+         throw new IOException("Invalid picture header");
+      }
+      byte[] name = new byte[length];
+      in.readFully(name);
+      return new PictureHeader(size, new String(name, StandardCharsets.US_ASCII), sequence, checksum);
+   }
+
+   /**
+    * Tells whether another header describes the same picture as this one.
+    *
+    * @param other the other header
+    *
+    * @return true if both have the same sequence number, size and checksum
+    */
+   public boolean describesSamePicture(PictureHeader other) {
+      return sequence == other.sequence && size == other.size && checksum == other.checksum;
+   }
+
+   /**
+    * Computes the CRC32C of some data
+    *
+    * @param data the data, entirely consumed
+    *
+    * @return the checksum
+    */
+   public static int checksum(ByteBuffer data) {
+      CRC32C crc = new CRC32C();
+      crc.update(data);
+      return (int) crc.getValue();
+   }
+
+   /**
+    * Computes the CRC32C of some data
+    *
+    * @param data   the data
+    * @param offset the offset of the data in the array
+    * @param length the length of the data
+    *
+    * @return the checksum
+    */
+   public static int checksum(byte[] data, int offset, int length) {
+      CRC32C crc = new CRC32C();
+      crc.update(data, offset, length);
+      return (int) crc.getValue();
+   }
+}
@@ -0,0 +1,200 @@
+/*
+ * @File PictureOptions.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.servertest;
+
+import lombok.Getter;
+
+/**
+ * The options of a picture request : the size the picture must fit in, the quality of its jpeg encoding and the part
+ * of the camera image to keep. A picture taken with options is cropped first, then scaled down to fit in the size
+ * while keeping its proportions, and always sent as a jpeg. A picture taken without options is sent as the camera took
+ * it.
+ * <p>
+ * The options are sent after "PICTURE", as "key=value" words in any order : "size=WIDTHxHEIGHT", "quality=Q" with Q
+ * from 1 to 100, and "crop=X,Y,WIDTH,HEIGHT" in pixels of the camera image, for instance
+ * "PICTURE size=160x120 quality=60".
+ */
+@Getter
+public final class PictureOptions {
+   /**
+    * No option : the picture is sent as the camera took it
+    */
+   public static final PictureOptions NONE = new PictureOptions(0, 0, 0, 0, 0, 0, 0);
+   /**
+    * The quality of the jpeg encoding when it is not given
+    */
+   public static final int DEFAULT_QUALITY = 85;
+   private static final String SIZE = "size=";
+   private static final String QUALITY = "quality=";
+   private static final String CROP = "crop=";
+   // 0 when the picture is not scaled
+   private final int width;
+   private final int height;
+   // 0 when it is not given
+   private final int quality;
+   // cropWidth is 0 when the picture is not cropped
+   private final int cropX;
+   private final int cropY;
+   private final int cropWidth;
+   private final int cropHeight;
+
+   private PictureOptions(int width, int height, int quality, int cropX, int cropY, int cropWidth, int cropHeight) {
+      this.width = width;
+      this.height = height;
+      this.quality = quality;
+      this.cropX = cropX;
+      this.cropY = cropY;
+      this.cropWidth = cropWidth;
+      this.cropHeight = cropHeight;
+   }
+
+   /**
+    * Returns these options with the size the picture must fit in. The picture is never enlarged.
+    *
+    * @param width  the largest width of the picture, in pixels
+    * @param height the largest height of the picture, in pixels
+    *
+    * @return the options
+    */
+   public PictureOptions withSize(int width, int height) {
+      if (width < 1 || height < 1) {
+         throw new IllegalArgumentException("Invalid size " + width + "x" + height);
+      }
+      return new PictureOptions(width, height, quality, cropX, cropY, cropWidth, cropHeight);
+   }
+
+   /**
+    * Returns these options with the quality of the jpeg encoding.
+    *
+    * @param quality the quality, from 1 (smallest) to 100 (best)
+    *
+    * @return the options
+    */
+   public PictureOptions withQuality(int quality) {
+      if (quality < 1 || quality > 100) {
+         throw new IllegalArgumentException("Invalid quality " + quality);
+      }
+      return new PictureOptions(width, height, quality, cropX, cropY, cropWidth, cropHeight);
+   }
+
+   /**
+    * Returns these options with the part of the camera image to keep. The part outside of the image is ignored.
+    *
+    * @param x      the left of the part, in pixels
+    * @param y      the top of the part, in pixels
+    * @param width  the width of the part, in pixels
+    * @param height the height of the part, in pixels
+    *
+    * @return the options
+    */
+   public PictureOptions withCrop(int x, int y, int width, int height) {
+      if (x < 0 || y < 0 || width < 1 || height < 1) {
+         throw new IllegalArgumentException("Invalid crop " + x + "," + y + "," + width + "," + height);
+      }
+      return new PictureOptions(this.width, this.height, quality, x, y, width, height);
+   }
+
+   /**
+    * Tells whether there is no option, the picture being sent as the camera took it.
+    *
+    * @return true if there is no option
+    */
+   public boolean isNone() {
+      return width == 0 && quality == 0 && cropWidth == 0;
+   }
+
+   /**
+    * Tells whether the picture is scaled down to a size.
+    *
+    * @return true if a size is given
+    */
+   public boolean isScaled() {
+      return width > 0;
+   }
+
+   /**
+    * Tells whether only a part of the picture is kept.
+    *
+    * @return true if a crop is given
+    */
+   public boolean isCropped() {
+      return cropWidth > 0;
+   }
+
+   /**
+    * Gets the quality of the jpeg encoding, DEFAULT_QUALITY if it is not given.
+    *
+    * @return the quality, from 1 to 100
+    */
+   public int getQuality() {
+      return quality == 0 ? DEFAULT_QUALITY : quality;
+   }
+
+   /**
+    * Formats the options as the arguments of the picture request.
+    *
+    * @return the arguments, empty if there is no option
+    */
+   public String format() {
+      StringBuilder builder = new StringBuilder();
+      if (isScaled()) {
+         builder.append(SIZE).append(width).append('x').append(height);
+      }
+      if (quality > 0) {
+         builder.append(builder.length() > 0 ? " " : "").append(QUALITY).append(quality);
+      }
+      if (isCropped()) {
+         builder.append(builder.length() > 0 ? " " : "").append(CROP).append(cropX).append(',').append(cropY)
+                .append(',').append(cropWidth).append(',').append(cropHeight);
+      }
+      return builder.toString();
+   }
+
+   /**
+    * Parses the arguments of a picture request.
+    *
+    * @param arguments the arguments, after "PICTURE "
+    *
+    * @return the options
+    *
+    * @throws IllegalArgumentException the arguments are not valid
+    */
+   public static PictureOptions parse(String arguments) {
+      PictureOptions options = NONE;
+      for (String word : arguments.trim().split(" +")) {
+         if (word.startsWith(SIZE)) {
+            int[] size = parseIntegers(word.substring(SIZE.length()), "x", 2);
+            options = options.withSize(size[0], size[1]);
+         } else if (word.startsWith(QUALITY)) {
+            options = options.withQuality(parseIntegers(word.substring(QUALITY.length()), ",", 1)[0]);
+         } else if (word.startsWith(CROP)) {
+            int[] crop = parseIntegers(word.substring(CROP.length()), ",", 4);
+            options = options.withCrop(crop[0], crop[1], crop[2], crop[3]);
+         } else {
+            throw new IllegalArgumentException("Unknown picture option " + word);
+         }
+      }
+      return options;
+   }
+
+   private static int[] parseIntegers(String value, String separator, int count) {
+      String[] parts = value.split(separator, -1);
+      if (parts.length != count) {
+         throw new IllegalArgumentException("Expected " + count + " values : " + value);
+      }
+      int[] integers = new int[count];
+      for (int i = 0; i < count; i++) {
+         // a NumberFormatException is an IllegalArgumentException
+         integers[i] = Integer.parseInt(parts[i]);
+      }
+      return integers;
+   }
+
+   @Override
+   public String toString() {
+      return isNone() ? "no option" : format();
+   }
+}
@@ -0,0 +1,211 @@
+/*
+ * @File PictureProtocol.java
+ * @Authors : Jade Gröli
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.servertest;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The messages and framing used on the picture port. A client can either send "PICTURE" and receive a single picture
+ * that ends with the connection, or open a session with "PICTURE_SESSION". "PICTURE" can be followed by the options of
+ * the picture, see {@link PictureOptions}. In a session, every "PICTURE" request is
+ * answered by a status line followed by a frame : the length of the picture on 4 bytes (big endian) and its bytes.
+ * This way many pictures can be transferred on the same connection, one after the other.
+ * <p>
+ * In a session, "STREAM fps" starts a video stream : after "STREAM_OK", the robot pushes jpeg frames at the given rate
+ * until the client sends "STREAM_STOP". The end of the stream is marked by an empty frame.
+ * <p>
+ * In a session, "PICTURE_CHECKED" makes the robot send the following pictures with a {@link PictureHeader} instead of
+ * their length, then in chunks : the offset of the chunk in the picture and its length on 4 bytes each, followed by its
+ * bytes, until the whole picture is sent. If the transfer is interrupted, the client can open a new session and send
+ * "PICTURE_RESUME sequence offset" to get the rest of the picture, with its header again, as long as the robot still
+ * keeps it.
+ */
+public final class PictureProtocol {
+   /**
+    * Asks for a single picture, the connection is closed after the transfer
+    */
+   public static final String PICTURE = "PICTURE";
+   /**
+    * Answer when the picture is going to be sent
+    */
+   public static final String PICTURE_OK = "PICTURE_OK";
+   /**
+    * Answer when the robot could not take the picture
+    */
+   public static final String PICTURE_KO = "PICTURE_KO";
+   /**
+    * Opens a session in which multiple pictures can be requested
+    */
+   public static final String SESSION = "PICTURE_SESSION";
+   /**
+    * Answer when the session is opened
+    */
+   public static final String SESSION_OK = "PICTURE_SESSION_OK";
+   /**
+    * Closes the session
+    */
+   public static final String END = "PICTURE_END";
+   /**
+    * Starts a video stream, followed by the number of frames per second wanted
+    */
+   public static final String STREAM = "STREAM";
+   /**
+    * Answer when the stream is started
+    */
+   public static final String STREAM_OK = "STREAM_OK";
+   /**
+    * Answer when the robot cannot stream
+    */
+   public static final String STREAM_KO = "STREAM_KO";
+   /**
+    * Stops the video stream
+    */
+   public static final String STREAM_STOP = "STREAM_STOP";
+   /**
+    * Asks for the pictures of the session to be sent with a header and in chunks
+    */
+   public static final String CHECKED = "PICTURE_CHECKED";
+   /**
+    * Answer when the pictures of the session are going to be sent with a header and in chunks
+    */
+   public static final String CHECKED_OK = "PICTURE_CHECKED_OK";
+   /**
+    * Asks for the rest of a picture whose transfer was interrupted, followed by its sequence number and the offset to
+    * resume from. The answer is the same as for "PICTURE", PICTURE_KO if the robot does not keep the picture anymore.
+    */
+   public static final String RESUME = "PICTURE_RESUME";
+   /**
+    * The maximum size of a chunk of a picture
+    */
+   public static final int CHUNK_SIZE = 32 * 1024;
+   /**
+    * The size of the header of a chunk : its offset and its length
+    */
+   public static final int CHUNK_HEADER_SIZE = 8;
+   /**
+    * The maximum number of frames per second of a stream
+    */
+   public static final int MAX_FPS = 30;
+   /**
+    * The maximum size of a line on the picture port
+    */
+   public static final int MAX_LINE_LENGTH = 256;
+
+   private PictureProtocol() {}
+
+   /**
+    * Writes a line, terminated by '\n', without flushing the stream
+    *
+    * @param out  the stream to write to
+    * @param line the line
+    *
+    * @throws IOException the io exception
+    */
+   public static void writeLine(OutputStream out, String line) throws IOException {
+      out.write(line.getBytes(StandardCharsets.US_ASCII));
+      out.write('\n');
+   }
+
+   /**
+    * Reads a line terminated by '\n'. The stream is read byte per byte so that nothing after the line is consumed,
+    * the stream given should therefore be buffered.
+    *
+    * @param in the stream to read from
+    *
+    * @return the line without its terminator, or null if the end of the stream was reached before
+    *
+    * @throws IOException the io exception, also thrown if the line is longer than MAX_LINE_LENGTH
+    */
+   public static String readLine(InputStream in) throws IOException {
+      byte[] buffer = new byte[MAX_LINE_LENGTH];
+      int length = 0;
+      int b;
+      while ((b = in.read()) != '\n') {
+         if (b == -1) {
+            return length == 0 ? null : new String(buffer, 0, length, StandardCharsets.US_ASCII);
+         }
+         if (length == MAX_LINE_LENGTH) {
+            throw new IOException("Line too long");
+         }
+         buffer[length++] = (byte) b;
+      }
+      if (length > 0 && buffer[length - 1] == '\r') {
+         length--;
+      }
+      return new String(buffer, 0, length, StandardCharsets.US_ASCII);
+   }
+
+   /**
+    * Tells whether a line asks for a picture, with or without options
+    *
+    * @param line the line, null at the end of the stream
+    *
+    * @return true if it is a picture request
+    */
+   public static boolean isPictureRequest(String line) {
+      return line != null && (line.equals(PICTURE) || line.startsWith(PICTURE + " "));
+   }
+
+   /**
+    * Formats a picture request
+    *
+    * @param options the options of the picture
+    *
+    * @return the line of the request
+    */
+   public static String pictureRequest(PictureOptions options) {
+      return options.isNone() ? PICTURE : PICTURE + " " + options.format();
+   }
+
+   /**
+    * Reads the options of a picture request
+    *
+    * @param line the picture request
+    *
+    * @return the options, PictureOptions.NONE if there is none
+    *
+    * @throws IllegalArgumentException the options are not valid
+    */
+   public static PictureOptions pictureOptions(String line) {
+      return line.equals(PICTURE) ? PictureOptions.NONE : PictureOptions.parse(line.substring(PICTURE.length() + 1));
+   }
+
+   /**
+    * Writes a frame containing the given bytes, without flushing the stream
+    *
+    * @param out    the stream to write to
+    * @param data   the data
+    * @param offset the offset of the data in the array
+    * @param length the length of the data
+    *
+    * @throws IOException the io exception
+    */
+   public static void writeFrame(DataOutputStream out, byte[] data, int offset, int length) throws IOException {
+      out.writeInt(length);
+      out.write(data, offset, length);
+   }
+
+   /**
+    * Reads a complete frame
+    *
+    * @param in the stream to read from
+    *
+    * @return the content of the frame
+    *
+    * @throws IOException the io exception, an EOFException if the frame is truncated, also thrown if the frame is
+    *                     longer than PictureHeader.MAX_SIZE
+    */
+   public static byte[] readFrame(DataInputStream in) throws IOException {
+      int length = in.readInt();
+      if (length < 0 || length > PictureHeader.MAX_SIZE) {
+         throw new IOException("Invalid frame length " + length);
+      }
+      byte[] data = new byte[length];
+      in.readFully(data);
+      return data;
+   }
+}
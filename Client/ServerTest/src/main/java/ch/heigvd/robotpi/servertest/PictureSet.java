@@ -0,0 +1,267 @@
+/*
+ * @File PictureSet.java
+ * @Authors : David González León
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.servertest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The pictures sent by the simulator, encoded once. They are sent in turn, so that a set of frames can be rotated,
+ * and each of them is written as it is, in a single write, without being decoded or encoded again. They are kept in
+ * memory, or mapped from their files so that large sets do not take any heap.
+ */
+public final class PictureSet {
+   /**
+    * The number of frames of the sets generated by default
+    */
+   public static final int DEFAULT_FRAMES = 30;
+   // the largest part of a mapped picture copied at once to a stream
+   private static final int CHUNK_SIZE = 64 * 1024;
+   private static final Pattern GENERATED = Pattern.compile("(\\d+)x(\\d+)\\.(\\w+)");
+   private final Picture[] pictures;
+   private final AtomicInteger next = new AtomicInteger();
+
+   private PictureSet(List<ByteBuffer> pictures) {
+      if (pictures.isEmpty()) {
+         throw new IllegalArgumentException("A set needs at least one picture");
+      }
+      this.pictures = pictures.stream().map(Picture::new).toArray(Picture[]::new);
+   }
+
+   /**
+    * Creates a set of pictures already encoded.
+    *
+    * @param pictures the encoded pictures, which must not be modified afterwards
+    *
+    * @return the set
+    */
+   public static PictureSet of(byte[]... pictures) {
+      List<ByteBuffer> buffers = new ArrayList<>();
+      for (byte[] picture : pictures) {
+         buffers.add(ByteBuffer.wrap(picture));
+      }
+      return new PictureSet(buffers);
+   }
+
+   /**
+    * Creates the set holding the logo of the robot, the picture sent by default.
+    *
+    * @return the set
+    *
+    * @throws IOException the logo could not be read
+    */
+   public static PictureSet logo() throws IOException {
+      try (InputStream in = PictureSet.class.getClassLoader().getResourceAsStream("logo.png")) {
+         if (in == null) {
+            throw new IOException("The logo is missing");
+         }
+         return of(in.readAllBytes());
+      }
+   }
+
+   /**
+    * Generates a set of synthetic frames, encoded once.
+    *
+    * @param count  the number of frames
+    * @param width  the width of the frames
+    * @param height the height of the frames
+    * @param format the format of the frames, as known by ImageIO, such as "jpg" or "png"
+    *
+    * @return the set
+    *
+    * @throws IOException the frames could not be encoded in this format
+    */
+   public static PictureSet generate(int count, int width, int height, String format) throws IOException {
+      FrameGenerator generator = new FrameGenerator(width, height, format);
+      byte[][] frames = new byte[count][];
+      for (int i = 0; i < count; i++) {
+         frames[i] = generator.nextFrame();
+      }
+      return of(frames);
+   }
+
+   /**
+    * Maps pictures from their files. A directory gives every file it contains, in the order of their names.
+    *
+    * @param path a picture, or a directory of pictures
+    *
+    * @return the set
+    *
+    * @throws IOException the files could not be mapped
+    */
+   public static PictureSet map(Path path) throws IOException {
+      List<Path> files;
+      if (Files.isDirectory(path)) {
+         try (Stream<Path> entries = Files.list(path)) {
+            files = entries.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+         }
+      } else {
+         files = List.of(path);
+      }
+      List<ByteBuffer> buffers = new ArrayList<>();
+      for (Path file : files) {
+         try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping stays valid once the channel is closed
+            buffers.add(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+         }
+      }
+      return new PictureSet(buffers);
+   }
+
+   /**
+    * Creates a set from its description : "logo" for the logo of the robot, "WIDTHxHEIGHT.FORMAT" for a set of
+    * DEFAULT_FRAMES generated frames, such as "640x480.jpg", or else the path of the pictures to map.
+    *
+    * @param description the description of the set
+    *
+    * @return the set
+    *
+    * @throws IOException the pictures could not be read or generated
+    */
+   public static PictureSet parse(String description) throws IOException {
+      if (description.equals("logo")) {
+         return logo();
+      }
+      Matcher matcher = GENERATED.matcher(description);
+      if (matcher.matches()) {
+         return generate(DEFAULT_FRAMES, Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)),
+                         matcher.group(3));
+      }
+      return map(Paths.get(description));
+   }
+
+   /**
+    * Gets the number of pictures of the set.
+    *
+    * @return the number of pictures
+    */
+   public int size() {
+      return pictures.length;
+   }
+
+   /**
+    * Returns the next picture of the set, after the last one comes the first one again.
+    *
+    * @return the picture
+    */
+   public Picture next() {
+      return pictures[Math.floorMod(next.getAndIncrement(), pictures.length)];
+   }
+
+   /**
+    * Writes a picture to a stream. A picture held in memory is written in a single write, a mapped one is copied by
+    * large parts.
+    *
+    * @param out     the stream, not flushed
+    * @param picture the picture, entirely consumed
+    *
+    * @throws IOException the io exception
+    */
+   static void write(OutputStream out, ByteBuffer picture) throws IOException {
+      if (picture.hasArray()) {
+         out.write(picture.array(), picture.arrayOffset() + picture.position(), picture.remaining());
+         picture.position(picture.limit());
+         return;
+      }
+      byte[] chunk = new byte[Math.min(CHUNK_SIZE, picture.remaining())];
+      while (picture.hasRemaining()) {
+         int length = Math.min(chunk.length, picture.remaining());
+         picture.get(chunk, 0, length);
+         out.write(chunk, 0, length);
+      }
+   }
+
+   /**
+    * Guesses the format of an encoded picture from its first bytes.
+    *
+    * @param picture the picture, not consumed
+    *
+    * @return the format, as known by ImageIO, or "bin" if it is not recognized
+    */
+   static String formatOf(ByteBuffer picture) {
+      int start = picture.position();
+      if (picture.remaining() >= 4 && picture.getInt(start) == 0x89504E47) {
+         return "png";
+      } else if (picture.remaining() >= 2 && (picture.getShort(start) & 0xFFFF) == 0xFFD8) {
+         return "jpg";
+      } else if (picture.remaining() >= 4 && picture.getInt(start) == 0x47494638) {
+         return "gif";
+      } else if (picture.remaining() >= 2 && (picture.getShort(start) & 0xFFFF) == 0x424D) {
+         return "bmp";
+      }
+      return "bin";
+   }
+
+   /**
+    * A picture of the set, with what its header tells about it
+    */
+   public static final class Picture {
+      private final ByteBuffer data;
+      private final String format;
+      // computed the first time it is needed, so that mapping a large set does not read it
+      private int checksum;
+      private volatile boolean summed = false;
+
+      Picture(ByteBuffer data) {
+         this.data = data;
+         this.format = formatOf(data);
+      }
+
+      /**
+       * Gets the content of the picture.
+       *
+       * @return the picture, from its start to its end. Its content is shared and must not be modified.
+       */
+      public ByteBuffer getData() {
+         return data.duplicate();
+      }
+
+      /**
+       * Gets the size of the picture.
+       *
+       * @return the size, in bytes
+       */
+      public int getSize() {
+         return data.remaining();
+      }
+
+      /**
+       * Gets the format of the picture, guessed from its content.
+       *
+       * @return the format, such as "jpg" or "png"
+       */
+      public String getFormat() {
+         return format;
+      }
+
+      /**
+       * Gets the CRC32C of the picture.
+       *
+       * @return the checksum
+       */
+      public int getChecksum() {
+         if (!summed) {
+            checksum = PictureHeader.checksum(data.duplicate());
+            summed = true;
+         }
+         return checksum;
+      }
+   }
+}
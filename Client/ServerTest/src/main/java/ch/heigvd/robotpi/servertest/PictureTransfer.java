@@ -0,0 +1,81 @@
+/*
+ * @File PictureTransfer.java
+ * @Authors : David González León
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.servertest;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The transfer of a picture in a checked session, from the start of the picture or from the offset a client resumes
+ * it from. The picture is sent in chunks, see {@link PictureProtocol}, which are slices of the picture so that nothing
+ * is copied.
+ */
+final class PictureTransfer {
+   private final PictureHeader header;
+   private final ByteBuffer rest;
+   private final int offset;
+
+   /**
+    * Creates a transfer
+    *
+    * @param header  the header of the picture
+    * @param picture the picture, from its start to its end
+    * @param offset  the offset the transfer starts from
+    */
+   PictureTransfer(PictureHeader header, ByteBuffer picture, int offset) {
+      if (offset < 0 || offset > picture.remaining()) {
+         throw new IllegalArgumentException("Invalid offset " + offset);
+      }
+      this.header = header;
+      this.rest = picture.position(picture.position() + offset).slice();
+      this.offset = offset;
+   }
+
+   PictureHeader getHeader() {
+      return header;
+   }
+
+   /**
+    * Gets the number of bytes of the picture sent by this transfer.
+    *
+    * @return the number of bytes
+    */
+   int getLength() {
+      return rest.remaining();
+   }
+
+   /**
+    * Tells whether the fault injection cuts this transfer.
+    *
+    * @param cut the number of bytes of the picture sent before the connection is cut, 0 to never cut it
+    *
+    * @return true if the connection must be cut once the chunks are sent
+    */
+   boolean isCut(int cut) {
+      return cut > 0 && cut < rest.remaining();
+   }
+
+   /**
+    * Splits the rest of the picture into chunks, each preceded by its header.
+    *
+    * @param cut the number of bytes of the picture sent before the connection is cut, 0 to never cut it. The chunk
+    *            that is cut keeps the length of a whole chunk in its header.
+    *
+    * @return the chunks, with their headers, ready to be sent in order
+    */
+   ByteBuffer[] chunks(int cut) {
+      int length = isCut(cut) ? cut : rest.remaining();
+      int count = (length + PictureProtocol.CHUNK_SIZE - 1) / PictureProtocol.CHUNK_SIZE;
+      ByteBuffer[] chunks = new ByteBuffer[count * 2];
+      for (int i = 0; i < count; i++) {
+         int start = i * PictureProtocol.CHUNK_SIZE;
+         int chunkLength = Math.min(PictureProtocol.CHUNK_SIZE, rest.remaining() - start);
+         chunks[i * 2] = ByteBuffer.allocate(PictureProtocol.CHUNK_HEADER_SIZE).putInt(offset + start)
+                                   .putInt(chunkLength).flip();
+         chunks[i * 2 + 1] = rest.duplicate().position(start).limit(Math.min(start + chunkLength, length)).slice();
+      }
+      return chunks;
+   }
+}
@@ -7,62 +7,168 @@ package ch.heigvd.robotpi.servertest;
 
 import lombok.Getter;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
- * The enum that contains all commands used in the communication protocol.
+ * The enum that contains all commands used in the communication protocol. Besides their text form, the commands have
+ * the opcodes used by the binary framing : the confirmations use the codes of the robot (see protocol.h), the
+ * requests use codes of their own.
+ * <p>
+ * Some commands take integer arguments. In text they follow the message, separated by spaces ("DRIVE 50 -20"). In a
+ * binary frame they are the payload, each of them on 2 bytes.
  */
 public enum ProtocolCommands {
-   conn("CONN", "CONN_OK"), forward("FWD", "FWD_OK"), backward("BKWD", "BKWD_OK"),
-   rotateLeft("ROTATE_LEFT", "ROTATE_LEFT_OK"), rotateRight("ROTATE_RIGHT", "ROTATE_RIGHT_OK"),
-   frontleft("FRONT_L", "FRONT_L_OK"), frontRight("FRONT_R", "FRONT_R_OK"), backwardsLeft("BCK_L", "BCK_L_OK"),
-   backwardsRight("BCK_R", "BCK_R_OK"), disconnect("DISCONN", "DISCONN_OK"), stop("STOP", "STOP_OK"),
-   ping("PING", "PING");
+   conn("CONN", "CONN_OK", 1, 42), forward("FWD", "FWD_OK", 2, 46), backward("BKWD", "BKWD_OK", 3, 48),
+   rotateLeft("ROTATE_LEFT", "ROTATE_LEFT_OK", 4, 49), rotateRight("ROTATE_RIGHT", "ROTATE_RIGHT_OK", 5, 50),
+   frontleft("FRONT_L", "FRONT_L_OK", 6, 51), frontRight("FRONT_R", "FRONT_R_OK", 7, 52),
+   backwardsLeft("BCK_L", "BCK_L_OK", 8, 53), backwardsRight("BCK_R", "BCK_R_OK", 9, 54),
+   disconnect("DISCONN", "DISCONN_OK", 10, 44), stop("STOP", "STOP_OK", 11, 47), ping("PING", "PING", 12, 56),
+   /**
+    * Sets the speed of the left and right wheels, from -100 (full speed backwards) to 100 (full speed forwards)
+    */
+   drive("DRIVE", "DRIVE_OK", 13, 59, 2),
+   /**
+    * Uploads a mission that the robot runs on its own clock, see {@link MissionProtocol}
+    */
+   mission("MISSION", "MISSION_OK", 14, 60, ProtocolCommands.VARIABLE_ARGUMENTS);
+
+   /**
+    * The highest speed of a wheel given to the drive command
+    */
+   public static final int MAX_SPEED = 100;
+   /**
+    * The argument count of a command that takes any number of arguments
+    */
+   public static final int VARIABLE_ARGUMENTS = -1;
 
    @Getter private final String message, messageConfirmation;
+   @Getter private final int code, confirmationCode;
+   @Getter private final int argumentCount;
 
    /**
     * Instantiates a new Protocol commands.
     *
     * @param message             the message
     * @param messageConfirmation the message confirmation
+    * @param code                the opcode of the message
+    * @param confirmationCode    the opcode of the message confirmation
+    */
+   ProtocolCommands(String message, String messageConfirmation, int code, int confirmationCode) {
+      this(message, messageConfirmation, code, confirmationCode, 0);
+   }
+
+   /**
+    * Instantiates a new Protocol commands that takes arguments.
+    *
+    * @param message             the message
+    * @param messageConfirmation the message confirmation
+    * @param code                the opcode of the message
+    * @param confirmationCode    the opcode of the message confirmation
+    * @param argumentCount       the number of integer arguments of the command, or VARIABLE_ARGUMENTS
     */
-   ProtocolCommands(String message, String messageConfirmation) {
+   ProtocolCommands(String message, String messageConfirmation, int code, int confirmationCode, int argumentCount) {
       this.message = message;
       this.messageConfirmation = messageConfirmation;
+      this.code = code;
+      this.confirmationCode = confirmationCode;
+      this.argumentCount = argumentCount;
+   }
+
+   /**
+    * Formats the text message of the command with its arguments
+    *
+    * @param arguments the arguments, as many as the command takes
+    *
+    * @return the message
+    */
+   public String format(int... arguments) {
+      if (!acceptsArguments(arguments.length)) {
+         throw new IllegalArgumentException(message + " takes " + argumentCount + " arguments");
+      }
+      if (arguments.length == 0) {
+         return message;
+      }
+      StringBuilder builder = new StringBuilder(message);
+      for (int argument : arguments) {
+         builder.append(' ').append(argument);
+      }
+      return builder.toString();
    }
 
    /**
-    * Gets the correct command based on the received message
+    * Tells whether the command can be sent with the given number of arguments
+    *
+    * @param count the number of arguments
+    *
+    * @return true if the command takes this number of arguments
+    */
+   public boolean acceptsArguments(int count) {
+      return argumentCount == VARIABLE_ARGUMENTS || count == argumentCount;
+   }
+
+   /**
+    * Gets the correct command based on the received message, without its arguments
     *
     * @param message the message
     *
-    * @return the command from message
+    * @return the command from message, or null if no command has this message
     */
    public static ProtocolCommands getCommandFromMessage(String message) {
-      if (message.equals(conn.getMessage())) {
-         return conn;
-      } else if (message.equals(forward.getMessage())) {
-         return forward;
-      } else if (message.equals(backward.getMessage())) {
-         return backward;
-      } else if (message.equals(rotateRight.getMessage())) {
-         return rotateRight;
-      } else if (message.equals(rotateLeft.getMessage())) {
-         return rotateLeft;
-      } else if (message.equals(frontleft.getMessage())) {
-         return frontleft;
-      } else if (message.equals(frontRight.getMessage())) {
-         return frontRight;
-      } else if (message.equals(backwardsRight.getMessage())) {
-         return backwardsRight;
-      } else if (message.equals(backwardsLeft.getMessage())) {
-         return backwardsLeft;
-      } else if (message.equals(ping.getMessage())) {
-         return ping;
-      } else if (message.equals(stop.getMessage())) {
-         return stop;
-      } else if (message.equals(disconnect.getMessage())) {
-         return disconnect;
+      return Lookup.BY_MESSAGE.get(message);
+   }
+
+   /**
+    * Gets the command confirmed by the received answer
+    *
+    * @param messageConfirmation the answer
+    *
+    * @return the confirmed command, or null if the answer is not the confirmation of any command
+    */
+   public static ProtocolCommands getCommandFromConfirmation(String messageConfirmation) {
+      return Lookup.BY_CONFIRMATION.get(messageConfirmation);
+   }
+
+   /**
+    * Gets the command of a binary request
+    *
+    * @param code the opcode of the request
+    *
+    * @return the command, or null if no command has this opcode
+    */
+   public static ProtocolCommands getCommandFromCode(int code) {
+      return code >= 0 && code < Lookup.BY_CODE.length ? Lookup.BY_CODE[code] : null;
+   }
+
+   /**
+    * Gets the command confirmed by a binary answer
+    *
+    * @param confirmationCode the opcode of the answer
+    *
+    * @return the confirmed command, or null if the opcode is not the confirmation of any command
+    */
+   public static ProtocolCommands getCommandFromConfirmationCode(int confirmationCode) {
+      return confirmationCode >= 0 && confirmationCode < Lookup.BY_CONFIRMATION_CODE.length ?
+             Lookup.BY_CONFIRMATION_CODE[confirmationCode] : null;
+   }
+
+   /**
+    * The lookup tables of the commands, built once from the values of the enum.
+    */
+   private static final class Lookup {
+      private static final Map<String, ProtocolCommands> BY_MESSAGE = new HashMap<>();
+      private static final Map<String, ProtocolCommands> BY_CONFIRMATION = new HashMap<>();
+      // opcodes are a single byte
+      private static final ProtocolCommands[] BY_CODE = new ProtocolCommands[256];
+      private static final ProtocolCommands[] BY_CONFIRMATION_CODE = new ProtocolCommands[256];
+
+      static {
+         for (ProtocolCommands command : values()) {
+            BY_MESSAGE.put(command.message, command);
+            BY_CONFIRMATION.put(command.messageConfirmation, command);
+            BY_CODE[command.code] = command;
+            BY_CONFIRMATION_CODE[command.confirmationCode] = command;
+         }
       }
-      return null;
    }
 }
@@ -0,0 +1,1014 @@
+/*
+ * @File SelectorServer.java
+ * @Authors : David González León
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.servertest;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves the control port and the picture port of a Server from a single thread, waiting on one selector for every
+ * connection. Each connection has its own SSLEngine, but the buffers in which the records are decrypted and encrypted
+ * are shared by all of them, since only the thread of the loop uses them. An idle session only keeps its engine and
+ * the bytes of a message not received entirely, so that thousands of sessions can be held open.
+ * <p>
+ * The commands are handled by the dispatcher of the server, like in the sessions that have their own thread. The
+ * delayed answers and the frames of the streams are timed by another thread, which hands them back to the loop.
+ */
+final class SelectorServer implements Runnable {
+   private static final Logger LOG = Logger.getLogger(Server.class.getName());
+   private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+   // the largest message a client can send, a mission in text is the longest
+   private static final int MAX_MESSAGE = 1 << 20;
+   private final Server server;
+   private final int maxSessions;
+   private final Selector selector;
+   private final ServerSocketChannel control;
+   private final ServerSocketChannel pictures;
+   private final SelectionKey controlKey;
+   private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+   private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(task -> {
+      Thread thread = new Thread(task, "robotpi-selector-timer");
+      thread.setDaemon(true);
+      return thread;
+   });
+   // edits the pictures taken with options, which would hold the loop for too long
+   private final ExecutorService editor = Executors.newSingleThreadExecutor(task -> {
+      Thread thread = new Thread(task, "robotpi-selector-editor");
+      thread.setDaemon(true);
+      return thread;
+   });
+   private volatile boolean running = true;
+   // used by the thread of the loop only
+   private final Set<Connection> connections = new HashSet<>();
+   private final ByteBuffer netIn;
+   private final ByteBuffer netOut;
+   private ByteBuffer appIn;
+   private int sessions = 0;
+
+   /**
+    * Opens both ports of the server. The connections are accepted once the loop runs.
+    *
+    * @param server      the server whose commands are served
+    * @param controlPort the port of the commands
+    * @param picturePort the port of the pictures
+    * @param maxSessions the maximum number of clients served concurrently on the control port
+    *
+    * @throws IOException a port could not be opened, or TLS could not be set up
+    */
+   SelectorServer(Server server, int controlPort, int picturePort, int maxSessions) throws IOException {
+      this.server = server;
+      this.maxSessions = maxSessions;
+      SSLSession session = server.createEngine().getSession();
+      // a record not received entirely stays at the start of the buffer while the next data is read after it
+      this.netIn = ByteBuffer.allocateDirect(2 * session.getPacketBufferSize());
+      this.netOut = ByteBuffer.allocateDirect(session.getPacketBufferSize());
+      this.appIn = ByteBuffer.allocate(2 * session.getApplicationBufferSize());
+      this.selector = Selector.open();
+      try {
+         this.control = open(controlPort);
+      } catch (IOException e) {
+         selector.close();
+         throw e;
+      }
+      try {
+         this.pictures = open(picturePort);
+      } catch (IOException e) {
+         control.close();
+         selector.close();
+         throw e;
+      }
+      this.controlKey = control.register(selector, SelectionKey.OP_ACCEPT);
+      pictures.register(selector, SelectionKey.OP_ACCEPT);
+   }
+
+   private static ServerSocketChannel open(int port) throws IOException {
+      ServerSocketChannel channel = ServerSocketChannel.open();
+      try {
+         channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+         channel.bind(new InetSocketAddress(port), 1024);
+         channel.configureBlocking(false);
+      } catch (IOException e) {
+         channel.close();
+         throw e;
+      }
+      return channel;
+   }
+
+   /**
+    * Stops the loop. The connections are closed by the thread of the loop, which then returns from run.
+    */
+   void stop() {
+      running = false;
+      selector.wakeup();
+   }
+
+   /**
+    * Serves the connections until the server is stopped
+    */
+   @Override
+   public void run() {
+      LOG.log(Level.INFO, "Serving up to {0} clients at the same time from a single thread, on ports {1} and {2}",
+              new Object[]{maxSessions, control.socket().getLocalPort(), pictures.socket().getLocalPort()});
+      try {
+         while (running) {
+            selector.select();
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+               task.run();
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+               SelectionKey key = keys.next();
+               keys.remove();
+               if (!key.isValid()) {
+                  continue;
+               }
+               if (key.channel() == control) {
+                  accept(control, true);
+               } else if (key.channel() == pictures) {
+                  accept(pictures, false);
+               } else {
+                  ((Connection) key.attachment()).ready(key);
+               }
+            }
+         }
+      } catch (IOException e) {
+         LOG.log(Level.SEVERE, "The event loop stopped", e);
+      } finally {
+         close();
+      }
+   }
+
+   /**
+    * Runs a task on the thread of the loop
+    *
+    * @param task the task
+    */
+   private void execute(Runnable task) {
+      if (running) {
+         tasks.add(task);
+         selector.wakeup();
+      }
+   }
+
+   /**
+    * Accepts the connections waiting on a port, as long as sessions are free for the control port
+    *
+    * @param acceptor  the channel of the port
+    * @param isControl true for the control port
+    */
+   private void accept(ServerSocketChannel acceptor, boolean isControl) {
+      while (!isControl || sessions < maxSessions) {
+         SocketChannel channel = null;
+         try {
+            channel = acceptor.accept();
+            if (channel == null) {
+               return;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SSLEngine engine = server.createEngine();
+            Connection connection = isControl ? new ControlConnection(channel, engine) :
+                                    new PictureConnection(channel, engine);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            engine.beginHandshake();
+            connections.add(connection);
+         } catch (IOException e) {
+            LOG.log(Level.INFO, "Could not accept a connection : {0}", e.getMessage());
+            if (channel == null) {
+               return;
+            }
+            try {
+               channel.close();
+            } catch (IOException ignored) {
+            }
+            continue;
+         }
+         if (isControl) {
+            sessions++;
+            server.getStats().sessionOpened();
+            if (sessions == maxSessions) {
+               // the next clients wait in the backlog until a session ends
+               controlKey.interestOps(0);
+            }
+         } else {
+            server.getStats().pictureConnectionOpened();
+         }
+      }
+   }
+
+   /**
+    * Closes every connection and both ports, once the loop is stopped
+    */
+   private void close() {
+      timer.shutdownNow();
+      editor.shutdownNow();
+      for (Connection connection : new ArrayList<>(connections)) {
+         connection.finish();
+         connection.closeNow();
+      }
+      try {
+         control.close();
+         pictures.close();
+         selector.close();
+      } catch (IOException e) {
+      }
+   }
+
+   private static ByteBuffer copy(ByteBuffer data) {
+      ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+      copy.put(data).flip();
+      return copy;
+   }
+
+   private static ByteBuffer line(String line) {
+      return ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.US_ASCII));
+   }
+
+   private static boolean hasRemaining(ByteBuffer[] data) {
+      for (ByteBuffer buffer : data) {
+         if (buffer.hasRemaining()) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * A TLS connection driven by the loop. The data received is decrypted in the buffers of the loop and given to the
+    * protocol of the port; the bytes left over, such as the beginning of a message, are copied out until the rest is
+    * received. The data sent is encrypted in the buffer of the loop and written at once, only what the channel does
+    * not accept is kept by the connection.
+    */
+   private abstract class Connection {
+      final SocketChannel channel;
+      final SSLEngine engine;
+      SelectionKey key;
+      // only set while there is something left, so that an idle connection holds no buffer
+      private ByteBuffer netLeft = null;
+      private ByteBuffer appLeft = null;
+      private ArrayDeque<ByteBuffer> unsent = null;
+      private boolean paused = false;
+      private boolean finishing = false;
+      private boolean closed = false;
+
+      Connection(SocketChannel channel, SSLEngine engine) {
+         this.channel = channel;
+         this.engine = engine;
+      }
+
+      /**
+       * Reads the messages received, as long as they are whole
+       *
+       * @param data the data received, ready to be read. The data not read is given again with the next data.
+       *
+       * @throws IOException the data is not valid
+       */
+      abstract void received(ByteBuffer data) throws IOException;
+
+      /**
+       * Tells that the connection is closed
+       */
+      abstract void closed();
+
+      void ready(SelectionKey key) {
+         try {
+            if (key.isWritable()) {
+               writable();
+            }
+            if (key.isValid() && key.isReadable()) {
+               receive(true);
+            }
+         } catch (IOException | RuntimeException e) {
+            lost(e);
+         }
+      }
+
+      /**
+       * Decrypts the data received and gives it to the protocol
+       *
+       * @param read true to read the channel, false to only go on with the data received before
+       *
+       * @throws IOException the io exception
+       */
+      private void receive(boolean read) throws IOException {
+         netIn.clear();
+         if (netLeft != null) {
+            netIn.put(netLeft);
+            netLeft = null;
+         }
+         appIn.clear();
+         if (appLeft != null) {
+            appIn.put(appLeft);
+            appLeft = null;
+         }
+         boolean ended = read && channel.read(netIn) < 0;
+         netIn.flip();
+         while (netIn.hasRemaining() && !paused && !finishing && !closed) {
+            SSLEngineResult result = engine.unwrap(netIn, appIn);
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+               // the rest of the record is not received yet
+               break;
+            } else if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+               if (!deliver() && !paused) {
+                  grow();
+               }
+            } else if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+               ended = true;
+               break;
+            } else {
+               handshake(result.getHandshakeStatus());
+            }
+         }
+         if (!closed) {
+            deliver();
+         }
+         if (closed) {
+            return;
+         }
+         if (netIn.hasRemaining() && !finishing) {
+            netLeft = copy(netIn);
+         }
+         if (appIn.position() > 0 && !finishing) {
+            appIn.flip();
+            appLeft = copy(appIn);
+         }
+         if (ended) {
+            finish();
+         }
+      }
+
+      /**
+       * Gives the data decrypted to the protocol
+       *
+       * @return true if the protocol read some of it
+       *
+       * @throws IOException the data is not valid
+       */
+      private boolean deliver() throws IOException {
+         appIn.flip();
+         int available = appIn.remaining();
+         try {
+            if (available > 0 && !paused && !finishing) {
+               received(appIn);
+            }
+            return appIn.remaining() < available;
+         } finally {
+            appIn.compact();
+         }
+      }
+
+      /**
+       * Makes room for a message longer than the buffer of the loop. The buffer stays larger afterwards.
+       *
+       * @throws IOException the message is longer than any message of the protocol
+       */
+      private void grow() throws IOException {
+         if (appIn.capacity() >= MAX_MESSAGE) {
+            throw new IOException("Message too long");
+         }
+         ByteBuffer larger = ByteBuffer.allocate(2 * appIn.capacity());
+         appIn.flip();
+         larger.put(appIn);
+         appIn = larger;
+      }
+
+      private void handshake(SSLEngineResult.HandshakeStatus status) throws IOException {
+         while (true) {
+            switch (status) {
+               case NEED_TASK:
+                  // the simulator runs the tasks on the loop, a handshake delays the other connections a little
+                  Runnable task;
+                  while ((task = engine.getDelegatedTask()) != null) {
+                     task.run();
+                  }
+                  status = engine.getHandshakeStatus();
+                  break;
+               case NEED_WRAP:
+                  status = send(EMPTY);
+                  break;
+               default:
+                  // waits for the data of the client, or done
+                  return;
+            }
+         }
+      }
+
+      /**
+       * Encrypts data and writes it to the client
+       *
+       * @param data the data, entirely consumed
+       *
+       * @return the status of the handshake after the last record
+       *
+       * @throws IOException the connection is closed
+       */
+      SSLEngineResult.HandshakeStatus send(ByteBuffer... data) throws IOException {
+         SSLEngineResult result;
+         do {
+            netOut.clear();
+            result = engine.wrap(data, netOut);
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+               throw new IOException("Record larger than the buffer");
+            }
+            netOut.flip();
+            write(netOut);
+         } while (hasRemaining(data) && result.getStatus() == SSLEngineResult.Status.OK);
+         if (hasRemaining(data)) {
+            throw new ClosedChannelException();
+         }
+         return result.getHandshakeStatus();
+      }
+
+      /**
+       * Writes the records to the channel, and keeps what it does not accept until it is ready
+       *
+       * @param records the records
+       *
+       * @throws IOException the io exception
+       */
+      private void write(ByteBuffer records) throws IOException {
+         if (unsent == null) {
+            channel.write(records);
+            if (!records.hasRemaining()) {
+               return;
+            }
+            unsent = new ArrayDeque<>();
+            key.interestOpsOr(SelectionKey.OP_WRITE);
+         }
+         unsent.add(copy(records));
+      }
+
+      private void writable() throws IOException {
+         while (unsent != null) {
+            ByteBuffer records = unsent.peek();
+            channel.write(records);
+            if (records.hasRemaining()) {
+               return;
+            }
+            unsent.poll();
+            if (unsent.isEmpty()) {
+               unsent = null;
+            }
+         }
+         key.interestOpsAnd(~SelectionKey.OP_WRITE);
+         if (finishing) {
+            closeNow();
+         }
+      }
+
+      /**
+       * Tells whether the client has not read everything sent yet
+       *
+       * @return true while some records are waiting for the channel
+       */
+      boolean isSending() {
+         return unsent != null;
+      }
+
+      /**
+       * Stops handing the messages received to the protocol, until resumed. The data received meanwhile stays in the
+       * buffers, and the channel is not read anymore once they are full.
+       */
+      void pause() {
+         paused = true;
+         key.interestOpsAnd(~SelectionKey.OP_READ);
+      }
+
+      /**
+       * Hands the messages received to the protocol again, starting with the ones received while paused
+       */
+      void resume() {
+         if (closed) {
+            return;
+         }
+         paused = false;
+         key.interestOpsOr(SelectionKey.OP_READ);
+         try {
+            receive(false);
+         } catch (IOException | RuntimeException e) {
+            lost(e);
+         }
+      }
+
+      /**
+       * Ends the connection once everything sent is written : the messages received afterwards are ignored, and the
+       * client is told that the connection is closed.
+       */
+      void finish() {
+         if (finishing || closed) {
+            return;
+         }
+         finishing = true;
+         engine.closeOutbound();
+         try {
+            send(EMPTY);
+         } catch (IOException e) {
+         }
+         if (unsent == null) {
+            closeNow();
+         }
+      }
+
+      private void lost(Exception e) {
+         if (running && !finishing) {
+            LOG.log(Level.INFO, "Connection lost : {0}", e.getMessage());
+         }
+         closeNow();
+      }
+
+      void closeNow() {
+         if (closed) {
+            return;
+         }
+         closed = true;
+         unsent = null;
+         netLeft = null;
+         appLeft = null;
+         key.cancel();
+         try {
+            channel.close();
+         } catch (IOException e) {
+         }
+         connections.remove(this);
+         closed();
+      }
+
+      boolean isPaused() {
+         return paused;
+      }
+
+      boolean isClosed() {
+         return closed;
+      }
+   }
+
+   /**
+    * A session on the control port. The first line is the login, then the commands come as lines, or as binary frames
+    * once the client asked for them. Each command is answered before the next one is read.
+    */
+   private class ControlConnection extends Connection implements CommandContext {
+      private boolean loggedIn = false;
+      private boolean binary = false;
+      private boolean sessionEnded = false;
+      private boolean serverStopped = false;
+
+      ControlConnection(SocketChannel channel, SSLEngine engine) {
+         super(channel, engine);
+      }
+
+      @Override
+      void received(ByteBuffer data) throws IOException {
+         while (!isPaused() && !sessionEnded && (binary ? readFrame(data) : readLine(data))) {
+            // reads every whole message received
+         }
+      }
+
+      private boolean readLine(ByteBuffer data) throws IOException {
+         int start = data.position();
+         for (int i = start; i < data.limit(); i++) {
+            if (data.get(i) == '\n') {
+               int end = i > start && data.get(i - 1) == '\r' ? i - 1 : i;
+               byte[] bytes = new byte[end - start];
+               data.get(bytes);
+               data.position(i + 1);
+               String line = new String(bytes, StandardCharsets.US_ASCII);
+               if (!loggedIn) {
+                  loggedIn = true;
+                  LOG.log(Level.FINE, "Received message from client on login : {0}", line);
+                  send(line(ProtocolCommands.conn.getMessageConfirmation()));
+               } else if (line.startsWith(BinaryProtocol.CAPS + " ")) {
+                  // the client waits for the answer before sending frames
+                  binary = server.acceptsBinaryFraming(line);
+                  send(line(binary ? BinaryProtocol.CAPS_OK + " " + BinaryProtocol.BINARY : BinaryProtocol.CAPS_OK));
+               } else {
+                  handle(() -> answerLine(line));
+               }
+               return true;
+            }
+         }
+         return false;
+      }
+
+      private boolean readFrame(ByteBuffer data) throws IOException {
+         int start = data.position();
+         if (data.remaining() < 2) {
+            return false;
+         }
+         int opcode = data.get(start) & 0xFF;
+         int flags = data.get(start + 1) & 0xFF;
+         boolean hasSequence = (flags & BinaryProtocol.FLAG_SEQUENCE) != 0;
+         boolean hasPayload = (flags & BinaryProtocol.FLAG_PAYLOAD) != 0;
+         int header = 2 + (hasSequence ? 2 : 0) + (hasPayload ? 2 : 0);
+         if (data.remaining() < header) {
+            return false;
+         }
+         int sequence = hasSequence ? data.getShort(start + 2) & 0xFFFF : BinaryProtocol.NO_SEQUENCE;
+         int length = hasPayload ? data.getShort(start + header - 2) & 0xFFFF : 0;
+         if (data.remaining() < header + length) {
+            return false;
+         }
+         byte[] payload = new byte[length];
+         data.position(start + header);
+         data.get(payload);
+         handle(() -> answerFrame(opcode, sequence, payload));
+         return true;
+      }
+
+      /**
+       * Answers a command, after the delay of the server if there is one. The next messages wait for the answer.
+       *
+       * @param answer sends the answer
+       *
+       * @throws IOException the io exception
+       */
+      private void handle(Answer answer) throws IOException {
+         long delay = server.getAnswerDelay();
+         if (delay <= 0) {
+            answer.send();
+            return;
+         }
+         pause();
+         timer.schedule(() -> execute(() -> {
+            if (isClosed()) {
+               return;
+            }
+            try {
+               answer.send();
+            } catch (IOException e) {
+               closeNow();
+               return;
+            }
+            resume();
+         }), delay, TimeUnit.MILLISECONDS);
+      }
+
+      private void answerLine(String line) throws IOException {
+         long start = System.nanoTime();
+         String answer = server.getDispatcher().dispatch(line, this);
+         send(line(answer));
+         answered(CommandDispatcher.commandOf(line), start, answer);
+      }
+
+      private void answerFrame(int opcode, int sequence, byte[] payload) throws IOException {
+         long start = System.nanoTime();
+         ProtocolCommands command = ProtocolCommands.getCommandFromCode(opcode);
+         String answer =
+                 server.getDispatcher().dispatch(command, BinaryProtocol.decodeArguments(payload), this);
+         ProtocolCommands confirmed = ProtocolCommands.getCommandFromConfirmation(answer);
+         ByteBuffer frame = ByteBuffer.allocate(4);
+         frame.put((byte) (confirmed != null ? confirmed.getConfirmationCode() : BinaryProtocol.CMD_ERR));
+         if (sequence != BinaryProtocol.NO_SEQUENCE) {
+            frame.put((byte) BinaryProtocol.FLAG_SEQUENCE).putShort((short) sequence);
+         } else {
+            frame.put((byte) 0);
+         }
+         frame.flip();
+         send(frame);
+         answered(command, start, answer);
+      }
+
+      private void answered(ProtocolCommands command, long start, String answer) {
+         server.commandAnswered(command, start, answer);
+         if (serverStopped) {
+            server.stopExecution();
+         } else if (sessionEnded) {
+            finish();
+         }
+      }
+
+      @Override
+      void closed() {
+         server.getStats().sessionClosed();
+         if (sessions-- == maxSessions && running) {
+            controlKey.interestOps(SelectionKey.OP_ACCEPT);
+         }
+      }
+
+      @Override
+      public void endSession() {
+         sessionEnded = true;
+      }
+
+      @Override
+      public void stopServer() {
+         serverStopped = true;
+      }
+   }
+
+   /**
+    * A connection on the picture port. If the first message is "PICTURE", a single picture is sent and the connection
+    * is closed. If it is "PICTURE_SESSION", pictures are sent as frames for every request until the client ends the
+    * session, and streams are pushed by the timer.
+    */
+   private class PictureConnection extends Connection {
+      private boolean started = false;
+      private boolean checked = false;
+      // the stream running, and what identifies its frames
+      private Future<?> stream = null;
+      private Object streamToken = null;
+
+      PictureConnection(SocketChannel channel, SSLEngine engine) {
+         super(channel, engine);
+      }
+
+      @Override
+      void received(ByteBuffer data) throws IOException {
+         while (!isClosed() && !isPaused()) {
+            String message = readLine(data);
+            if (message == null) {
+               return;
+            }
+            if (!started) {
+               started = true;
+               LOG.log(Level.FINE, "Received first message from client {0}", message);
+               if (PictureProtocol.isPictureRequest(message)) {
+                  takePicture(message, false);
+                  return;
+               } else if (PictureProtocol.SESSION.equals(message)) {
+                  send(line(PictureProtocol.SESSION_OK));
+               } else {
+                  send(line("CMD_ERR"));
+                  finish();
+                  return;
+               }
+            } else if (stream != null) {
+               // the messages sent during a stream are ignored, until it is stopped
+               if (message.equals(PictureProtocol.STREAM_STOP)) {
+                  stopStream();
+               }
+            } else if (message.equals(PictureProtocol.END)) {
+               finish();
+               return;
+            } else if (PictureProtocol.isPictureRequest(message)) {
+               if (takePicture(message, true)) {
+                  return;
+               }
+            } else if (message.equals(PictureProtocol.CHECKED)) {
+               checked = true;
+               send(line(PictureProtocol.CHECKED_OK));
+            } else if (message.startsWith(PictureProtocol.RESUME + " ") && checked) {
+               PictureTransfer transfer;
+               try {
+                  transfer = server.isGood() ? server.resumeTransfer(
+                          message.substring(PictureProtocol.RESUME.length() + 1)) : null;
+               } catch (NumberFormatException e) {
+                  send(line("CMD_ERR"));
+                  continue;
+               }
+               if (sendTransfer(transfer)) {
+                  return;
+               }
+            } else if (message.startsWith(PictureProtocol.STREAM + " ")) {
+               startStream(message.substring(PictureProtocol.STREAM.length() + 1));
+            } else {
+               send(line("CMD_ERR"));
+            }
+         }
+      }
+
+      private String readLine(ByteBuffer data) throws IOException {
+         int start = data.position();
+         for (int i = start; i < data.limit(); i++) {
+            if (data.get(i) == '\n') {
+               int end = i > start && data.get(i - 1) == '\r' ? i - 1 : i;
+               byte[] bytes = new byte[end - start];
+               data.get(bytes);
+               data.position(i + 1);
+               return new String(bytes, StandardCharsets.US_ASCII);
+            }
+         }
+         if (data.remaining() > PictureProtocol.MAX_LINE_LENGTH) {
+            throw new IOException("Line too long");
+         }
+         return null;
+      }
+
+      /**
+       * Answers to a picture request. A picture taken with options is edited by another thread, while the next messages
+       * of the connection wait.
+       *
+       * @param request the request, with the options of the picture
+       * @param framed  true if the picture must be sent in a frame, false if it is followed by the end of the
+       *                connection
+       *
+       * @return true if the connection is ended
+       *
+       * @throws IOException the io exception
+       */
+      private boolean takePicture(String request, boolean framed) throws IOException {
+         PictureOptions options;
+         try {
+            options = PictureProtocol.pictureOptions(request);
+         } catch (IllegalArgumentException e) {
+            send(line("CMD_ERR"));
+            if (!framed) {
+               finish();
+            }
+            return !framed;
+         }
+         if (options.isNone()) {
+            return answerPicture(server.takePicture(options), framed);
+         }
+         pause();
+         editor.execute(() -> {
+            PictureSet.Picture picture;
+            try {
+               picture = server.takePicture(options);
+            } catch (IOException e) {
+               picture = null;
+            }
+            PictureSet.Picture taken = picture;
+            execute(() -> {
+               if (isClosed()) {
+                  return;
+               }
+               try {
+                  if (answerPicture(taken, framed)) {
+                     return;
+                  }
+               } catch (IOException e) {
+                  closeNow();
+                  return;
+               }
+               resume();
+            });
+         });
+         return false;
+      }
+
+      /**
+       * Sends a picture taken, the way the session sends them.
+       *
+       * @param picture the picture, or null if the robot could not take it
+       * @param framed  true if the picture must be sent in a frame, false if it is followed by the end of the
+       *                connection
+       *
+       * @return true if the connection is ended
+       *
+       * @throws IOException the io exception
+       */
+      private boolean answerPicture(PictureSet.Picture picture, boolean framed) throws IOException {
+         if (checked) {
+            return sendTransfer(picture == null ? null : server.startTransfer(picture));
+         }
+         sendPicture(picture, framed);
+         if (!framed) {
+            finish();
+         }
+         return !framed;
+      }
+
+      /**
+       * Answers to a picture request with a picture, written in the same records as its header.
+       *
+       * @param picture the picture, or null if the robot could not take it
+       * @param framed  true if the picture must be sent in a frame, false if it is followed by the end of the
+       *                connection
+       *
+       * @throws IOException the io exception
+       */
+      private void sendPicture(PictureSet.Picture picture, boolean framed) throws IOException {
+         if (picture == null) {
+            send(line(PictureProtocol.PICTURE_KO));
+            return;
+         }
+         ByteBuffer image = picture.getData();
+         int length = image.remaining();
+         if (framed) {
+            send(line(PictureProtocol.PICTURE_OK), ByteBuffer.allocate(4).putInt(length).flip(), image);
+         } else {
+            send(line(PictureProtocol.PICTURE_OK), image);
+         }
+         server.getStats().pictureServed(length);
+      }
+
+      /**
+       * Sends a picture with its header and in chunks, all in the same records, or PICTURE_KO if there is none. If the
+       * fault injection cuts the transfer, only the beginning of the chunks is sent and the connection is ended.
+       *
+       * @param transfer the transfer, or null if the picture could not be taken
+       *
+       * @return true if the connection is ended
+       *
+       * @throws IOException the io exception
+       */
+      private boolean sendTransfer(PictureTransfer transfer) throws IOException {
+         if (transfer == null) {
+            send(line(PictureProtocol.PICTURE_KO));
+            return false;
+         }
+         int cut = server.getPictureCut();
+         ByteBuffer[] chunks = transfer.chunks(cut);
+         ByteBuffer[] data = new ByteBuffer[chunks.length + 2];
+         data[0] = line(PictureProtocol.PICTURE_OK);
+         data[1] = transfer.getHeader().encode();
+         System.arraycopy(chunks, 0, data, 2, chunks.length);
+         send(data);
+         if (transfer.isCut(cut)) {
+            LOG.log(Level.FINE, "Picture transfer cut after {0} bytes", cut);
+            finish();
+            return true;
+         }
+         return false;
+      }
+
+      /**
+       * Starts pushing the frames of the server at a fixed rate. The timer tells the loop when a frame is due, and the
+       * loop skips it while the client has not read the previous one.
+       *
+       * @param fpsParameter the number of frames per second asked by the client
+       *
+       * @throws IOException the io exception
+       */
+      private void startStream(String fpsParameter) throws IOException {
+         int fps;
+         try {
+            fps = Math.max(1, Math.min(PictureProtocol.MAX_FPS, Integer.parseInt(fpsParameter)));
+         } catch (NumberFormatException e) {
+            send(line("CMD_ERR"));
+            return;
+         }
+         if (!server.isGood()) {
+            send(line(PictureProtocol.STREAM_KO));
+            return;
+         }
+         send(line(PictureProtocol.STREAM_OK));
+         LOG.log(Level.FINE, "Streaming at {0} frames per second", fps);
+         Object token = new Object();
+         stream = timer.scheduleAtFixedRate(() -> execute(() -> pushFrame(token)), 0,
+                                            TimeUnit.SECONDS.toNanos(1) / fps, TimeUnit.NANOSECONDS);
+         streamToken = token;
+      }
+
+      private void pushFrame(Object token) {
+         if (isClosed() || stream == null || streamToken != token || isSending()) {
+            // stopped, or the client is too slow : the frame is skipped
+            return;
+         }
+         try {
+            ByteBuffer frame = server.nextStreamFrame();
+            int length = frame.remaining();
+            send(ByteBuffer.allocate(4).putInt(length).flip(), frame);
+            server.getStats().pictureServed(length);
+         } catch (IOException e) {
+            LOG.log(Level.INFO, "Stream interrupted : {0}", e.getMessage());
+            closeNow();
+         }
+      }
+
+      /**
+       * Stops the stream and sends the empty frame that ends it
+       *
+       * @throws IOException the io exception
+       */
+      private void stopStream() throws IOException {
+         stream.cancel(false);
+         stream = null;
+         streamToken = null;
+         send(ByteBuffer.allocate(4));
+      }
+
+      @Override
+      void closed() {
+         if (stream != null) {
+            stream.cancel(false);
+         }
+      }
+   }
+
+   /**
+    * Sends the answer to a command
+    */
+   private interface Answer {
+      void send() throws IOException;
+   }
+}
@@ -5,37 +5,107 @@
  */
 package ch.heigvd.robotpi.servertest;
 
-import javax.imageio.ImageIO;
 import javax.jmdns.JmDNS;
 import javax.jmdns.ServiceInfo;
-import java.awt.image.BufferedImage;
 import java.io.*;
+import java.lang.reflect.Method;
 import java.net.InetAddress;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.security.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.net.ssl.*;
 
 /**
- * This class implements a single-threaded tcp server used to simulate a robopi. It can be used both for testing
- * purpose and as a separate application. If used for testing purposes, it can be used to represent a correctly
- * working server or a malfunctioning server
+ * This class implements a tcp server used to simulate a robopi. It can be used both for testing purpose and as a
+ * separate application. If used for testing purposes, it can be used to represent a correctly working server or a
+ * malfunctioning server. By default it serves one client at a time like the robot, but it can serve several clients
+ * concurrently to load test the client tools, each of them in its own session. The sessions either get a thread each,
+ * or are all served by a single event loop, which can hold thousands of them.
  */
 public class Server implements Runnable {
 
    final static Logger LOG = Logger.getLogger(Server.class.getName());
+   /**
+    * The default number of commands between two logs of the statistics
+    */
+   public static final int DEFAULT_LOG_SAMPLING = 1000;
+   // the number of pictures sent in checked sessions kept so that their transfer can be resumed
+   private static final int PICTURES_KEPT = 16;
+   /**
+    * The number of the last setpoints and mission steps kept for the tests, so that the long runs do not fill the
+    * memory
+    */
+   public static final int RECORDS_KEPT = 1000;
    private final boolean testRun;
    private final String JMDNS_SERVICE_NAME = "_robopi._tcp.local.";
    private final int PORT = 2025;
+   private final int PICTURE_PORT = 2026;
+   /**
+    * The size of the frames of the streams
+    */
+   static final int STREAM_WIDTH = 640;
+   static final int STREAM_HEIGHT = 480;
    private final String serverType;
+   private final CommandDispatcher dispatcher;
+   private SSLContext sslContext;
+   private final int maxSessions;
+   private final Semaphore sessionSlots;
+   private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+   private final ExecutorService sessionExecutor = newSessionExecutor();
    private SSLServerSocket serverSocket;
-   private SSLSocket clientSocket = null;
-   private BufferedReader in = null;
-   private PrintWriter out = null;
    private PictureServer pictureServer;
-   private boolean stopRequested = false;
+   private boolean eventLoop = false;
+   private SelectorServer selectorServer;
+   private volatile boolean stopRequested = false;
+   private volatile boolean binaryFraming = true;
+   private volatile long answerDelay = 0;
+   // the last setpoints received, guarded by itself
+   private final Deque<int[]> setpoints = new ArrayDeque<>();
+   private final ServerStats stats = new ServerStats();
+   private volatile int logSampling = DEFAULT_LOG_SAMPLING;
+   private volatile boolean missions = true;
+   private volatile PictureSet pictures = null;
+   private volatile PictureSet streamFrames = null;
+   private volatile int pictureCut = 0;
+   private final AtomicInteger pictureSequence = new AtomicInteger();
+   // the pictures sent in checked sessions, by sequence number, guarded by itself
+   private final Map<Integer, PictureSet.Picture> sentPictures = new LinkedHashMap<>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, PictureSet.Picture> eldest) {
+         return size() > PICTURES_KEPT;
+      }
+   };
+   private final ScheduledExecutorService missionExecutor = Executors.newSingleThreadScheduledExecutor(task -> {
+      Thread thread = new Thread(task, "robotpi-missions");
+      thread.setDaemon(true);
+      return thread;
+   });
+   private final AtomicInteger missionCount = new AtomicInteger();
+   // the last steps of missions executed, guarded by itself
+   private final Deque<MissionLogEntry> missionLog = new ArrayDeque<>();
+   // the steps of the running mission not executed yet, guarded by itself
+   private final List<ScheduledFuture<?>> missionSteps = new ArrayList<>();
 
    /**
     * Creates a new Server, that will behave according to the given parameters.
@@ -46,11 +116,50 @@ public class Server implements Runnable {
     *                   change the behaviour of some of the answers to specific commands.
     */
    public Server(String serverType, boolean testRun) {
+      this(serverType, testRun, 1);
+   }
+
+   /**
+    * Creates a new Server, that will behave according to the given parameters and serve up to maxSessions clients at
+    * the same time. The clients that connect while all the sessions are taken wait until one of them ends.
+    *
+    * @param serverType  the server type the type of the server : can be either "good" or "bad". If any other input is
+    *                    given an exception will be thrown
+    * @param testRun     the test run indicates if the current instance will be used for testing or not. This will
+    *                    change the behaviour of some of the answers to specific commands.
+    * @param maxSessions the maximum number of clients served concurrently, at least 1
+    */
+   public Server(String serverType, boolean testRun, int maxSessions) {
       if (!serverType.equals("good") && !serverType.equals("bad")) {
          throw new IllegalArgumentException();
       }
+      if (maxSessions < 1) {
+         throw new IllegalArgumentException("At least one session is needed");
+      }
       this.serverType = serverType;
       this.testRun = testRun;
+      this.maxSessions = maxSessions;
+      this.sessionSlots = new Semaphore(maxSessions);
+      this.dispatcher = createDispatcher();
+   }
+
+   /**
+    * Creates the executor running the sessions. Each session gets its own thread : a virtual thread when the runtime
+    * supports them (Java 21 and later), otherwise a platform thread.
+    *
+    * @return the executor
+    */
+   private static ExecutorService newSessionExecutor() {
+      try {
+         Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+         return (ExecutorService) factory.invoke(null);
+      } catch (ReflectiveOperationException e) {
+         return Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task);
+            thread.setDaemon(true);
+            return thread;
+         });
+      }
    }
 
    /**
@@ -59,10 +168,10 @@ public class Server implements Runnable {
     * @throws Exception
     */
    private SSLContext initTLS() throws Exception {
-      System.setProperty("javax.net.debug", "all");
-
       // Get the keystore
-      System.setProperty("javax.net.debug", "all");
+      if (System.getProperty("javax.net.debug") == null) {
+         System.setProperty("javax.net.debug", "all");
+      }
       KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
       String password = "robotpi";
       InputStream inputStream = getClass().getClassLoader().getResourceAsStream("rpKeyStore.jks");
@@ -94,7 +203,10 @@ public class Server implements Runnable {
     * @throws IOException
     */
    private SSLServerSocket createServerSocket(int port) throws Exception{
-      SSLContext sslContext = initTLS();
+      // Both ports share the same context, and so the same session cache
+      if (sslContext == null) {
+         sslContext = initTLS();
+      }
       SSLServerSocketFactory serverSocketFactory = sslContext.getServerSocketFactory();
       SSLServerSocket socket = (SSLServerSocket) serverSocketFactory.createServerSocket(port);
 
@@ -104,6 +216,27 @@ public class Server implements Runnable {
       return socket;
    }
 
+   /**
+    * Create a TLS engine for a connection accepted by the event loop, with the same settings as the server sockets
+    * @return SSLEngine, in server mode
+    * @throws IOException
+    */
+   SSLEngine createEngine() throws IOException {
+      if (sslContext == null) {
+         try {
+            sslContext = initTLS();
+         } catch (Exception e) {
+            throw new IOException("Could not set up TLS", e);
+         }
+      }
+      SSLEngine engine = sslContext.createSSLEngine();
+      engine.setUseClientMode(false);
+      engine.setEnabledProtocols(new String[]{"TLSv1.3"});
+      engine.setEnabledCipherSuites(engine.getSupportedCipherSuites());
+      engine.setNeedClientAuth(false);
+      return engine;
+   }
+
 
    @Override
    public void run() {
@@ -123,11 +256,15 @@ public class Server implements Runnable {
       LOG.log(Level.INFO, "Start {0} server ...", serverType);
 
       try {
-         serverSocket = createServerSocket(PORT);
+         if (eventLoop) {
+            selectorServer = new SelectorServer(this, PORT, PICTURE_PORT, maxSessions);
+         } else {
+            serverSocket = createServerSocket(PORT);
 
-         pictureServer = new PictureServer();
-         Thread pictureThread = new Thread(pictureServer);
-         pictureThread.start();
+            pictureServer = new PictureServer();
+            Thread pictureThread = new Thread(pictureServer);
+            pictureThread.start();
+         }
       } catch (Exception e){
          System.out.println("--CASSE--");
          // TODO throw exception
@@ -149,6 +286,131 @@ public class Server implements Runnable {
       }
    }
 
+   /**
+    * Sets whether the server accepts to switch to the binary framing when a client asks for it. When it does not, it
+    * behaves like a robot that only knows the text protocol. It is accepted by default.
+    *
+    * @param binaryFraming true to accept the binary framing
+    */
+   public void setBinaryFraming(boolean binaryFraming) {
+      this.binaryFraming = binaryFraming;
+   }
+
+   /**
+    * Sets whether the connections of both ports are served by a single thread waiting on a selector, instead of a
+    * thread per connection. The sessions then hold no thread and very little memory while they are idle. It must be
+    * set before the server is started, and is off by default.
+    *
+    * @param eventLoop true to serve the connections from an event loop
+    */
+   public void setEventLoop(boolean eventLoop) {
+      this.eventLoop = eventLoop;
+   }
+
+   /**
+    * Sets the time the server waits before answering each command, to simulate a slow link to the robot. There is no
+    * delay by default.
+    *
+    * @param answerDelay the delay, in milliseconds
+    */
+   public void setAnswerDelay(long answerDelay) {
+      this.answerDelay = answerDelay;
+   }
+
+   /**
+    * Sets the pictures sent to the clients, in turn. They are sent as they are, so that sending them costs no encoding.
+    * The logo of the robot is sent by default.
+    *
+    * @param pictures the pictures
+    */
+   public void setPictures(PictureSet pictures) {
+      this.pictures = pictures;
+   }
+
+   /**
+    * Sets the frames pushed by the streams, in turn. By default, a set of synthetic frames of 640x480 pixels is
+    * generated the first time a client asks for a stream.
+    *
+    * @param streamFrames the frames
+    */
+   public void setStreamFrames(PictureSet streamFrames) {
+      this.streamFrames = streamFrames;
+   }
+
+   /**
+    * Sets the fault injection of the picture transfers : the connection of every picture sent in a checked session is
+    * cut once the given number of bytes of the picture are sent, to exercise the resuming of the transfers. It is off
+    * by default.
+    *
+    * @param pictureCut the number of bytes of each transfer sent before its connection is cut, 0 to never cut it
+    */
+   public void setPictureCut(int pictureCut) {
+      if (pictureCut < 0) {
+         throw new IllegalArgumentException("The cut must not be negative");
+      }
+      this.pictureCut = pictureCut;
+   }
+
+   int getPictureCut() {
+      return pictureCut;
+   }
+
+   /**
+    * Sets whether the server runs the missions uploaded by the clients. When it does not, it behaves like a robot that
+    * does not know the MISSION command. They are run by default.
+    *
+    * @param missions true to run the missions
+    */
+   public void setMissions(boolean missions) {
+      this.missions = missions;
+   }
+
+   /**
+    * Sets how often the statistics are logged : once every logSampling commands. The commands themselves are only
+    * logged at the FINE level, so that the formatting of the logs does not slow down the server under load.
+    *
+    * @param logSampling the number of commands between two logs of the statistics, 0 to never log them
+    */
+   public void setLogSampling(int logSampling) {
+      if (logSampling < 0) {
+         throw new IllegalArgumentException("The sampling of the logs cannot be negative");
+      }
+      this.logSampling = logSampling;
+   }
+
+   /**
+    * Returns the statistics of this server
+    *
+    * @return the statistics
+    */
+   public ServerStats getStats() {
+      return stats;
+   }
+
+   /**
+    * Returns the last RECORDS_KEPT setpoints received with the drive command, in the order they were received, as
+    * arrays holding the speed of the left wheel then the speed of the right wheel.
+    *
+    * @return the setpoints received
+    */
+   public List<int[]> getReceivedSetpoints() {
+      synchronized (setpoints) {
+         return new ArrayList<>(setpoints);
+      }
+   }
+
+   /**
+    * Returns the last RECORDS_KEPT steps of the missions executed so far, in the order they ran, with the time at
+    * which they ran
+    *
+    * @return the log of the missions
+    */
+   public List<MissionLogEntry> getMissionLog() {
+      synchronized (missionLog) {
+         return new ArrayList<>(missionLog);
+      }
+   }
+
    /**
     * Stops the execution of the server. The server will close soon after this function is called
     */
@@ -158,143 +420,370 @@ public class Server implements Runnable {
    }
 
    /**
-    * This method initiates the main process of the server
+    * This method initiates the main process of the server. It accepts the clients and hands each of them to its own
+    * session, as long as a session is free. It returns once the server is stopped.
     *
     * @throws IOException the io exception
     */
    public void serveClients() throws IOException {
+      if (selectorServer != null) {
+         selectorServer.run();
+         return;
+      }
+      LOG.log(Level.INFO, "Serving up to {0} clients at the same time", maxSessions);
       while (!stopRequested) {
+         try {
+            sessionSlots.acquire();
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+         }
          LOG.log(Level.INFO, "Waiting (blocking) for a new client on port {0}", PORT);
+         SSLSocket clientSocket;
          try {
             clientSocket = (SSLSocket) serverSocket.accept();
+            clientSocket.setTcpNoDelay(true);
          } catch (SocketException e) {
+            sessionSlots.release();
             return;
          }
-         in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-         out = new PrintWriter(clientSocket.getOutputStream(), true);
-         LOG.log(Level.INFO, "Received message from client on login : {0}", in.readLine());
-         out.print(ProtocolCommands.conn.getMessageConfirmation() + "\n");
-         out.flush();
-         LOG.log(Level.INFO, "send CONN_OK to client");
+         Session session = new Session(clientSocket);
+         sessions.add(session);
+         try {
+            sessionExecutor.execute(session);
+         } catch (RejectedExecutionException e) {
+            // accepted while the server was stopping
+            sessions.remove(session);
+            sessionSlots.release();
+            clientSocket.close();
+            return;
+         }
+      }
+   }
 
-         String line;
-         boolean shouldRun = true;
+   /**
+    * Gets the dispatcher of the commands of the sessions
+    *
+    * @return the dispatcher
+    */
+   CommandDispatcher getDispatcher() {
+      return dispatcher;
+   }
 
-         LOG.info("Reading until client send DISCONN or closes the connection...");
-         while ((shouldRun) && (line = in.readLine()) != null) {
-            ProtocolCommands command = ProtocolCommands.getCommandFromMessage(line);
-            if (command == null) {
-               out.print("CMD_ERR\n");
-            } else {
-               switch (command) {
-                  case ping:
-                     if (serverType.equals("good")) {
-                        out.print(ProtocolCommands.ping.getMessageConfirmation());
-                        LOG.info(ProtocolCommands.ping.getMessageConfirmation());
-                     } else {
-                        out.print("PINGG");
-                        LOG.info("PINGG");
-                     }
-                     break;
-                  case forward:
-                     if (serverType.equals("good")) {
-                        out.print(ProtocolCommands.forward.getMessageConfirmation());
-                        LOG.info(ProtocolCommands.forward.getMessageConfirmation());
-                     } else {
-                        out.print("FWD_KO");
-                        LOG.info("FWD_KO");
-                     }
-                     break;
-                  case backward:
-                     if (serverType.equals("good")) {
-                        out.print(ProtocolCommands.backward.getMessageConfirmation());
-                        LOG.info(ProtocolCommands.backward.getMessageConfirmation());
-                     } else {
-                        out.print("BKWD_KO");
-                        LOG.info("BKWD_KO");
-                     }
-                     break;
-                  case rotateLeft:
-                     if (serverType.equals("good")) {
-                        out.print(ProtocolCommands.rotateLeft.getMessageConfirmation());
-                        LOG.info(ProtocolCommands.rotateLeft.getMessageConfirmation());
-                     } else {
-                        out.print("ROTATE_LEFT_KO");
-                        LOG.info("ROTATE_LEFT_KO");
-                     }
-                     break;
-                  case rotateRight:
-                     if (serverType.equals("good")) {
-                        out.print(ProtocolCommands.rotateRight.getMessageConfirmation());
-                        LOG.info(ProtocolCommands.rotateRight.getMessageConfirmation());
-                     } else {
-                        out.print("ROTATE_RIGHT_KO");
-                        LOG.info("ROTATE_RIGHT_KO");
-                     }
-                     break;
-                  case frontleft:
-                     if (serverType.equals("good")) {
-                        out.print(ProtocolCommands.frontleft.getMessageConfirmation());
-                        LOG.info(ProtocolCommands.frontleft.getMessageConfirmation());
-                     } else {
-                        out.print("FRONT_L_KO");
-                        LOG.info("FRONT_L_KO");
-                     }
-                     break;
-                  case frontRight:
-                     if (serverType.equals("good")) {
-                        out.print(ProtocolCommands.frontRight.getMessageConfirmation());
-                        LOG.info(ProtocolCommands.frontRight.getMessageConfirmation());
-                     } else {
-                        out.print("FRONT_R_KO");
-                        LOG.info("FRONT_R_KO");
-                     }
-                     break;
-                  case backwardsRight:
-                     if (serverType.equals("good")) {
-                        out.print(ProtocolCommands.backwardsRight.getMessageConfirmation());
-                        LOG.info(ProtocolCommands.backwardsRight.getMessageConfirmation());
-                     } else {
-                        out.print("BCK_R_KO");
-                        LOG.info("BCK_R_KO");
-                     }
-                     break;
-                  case backwardsLeft:
-                     if (serverType.equals("good")) {
-                        out.print(ProtocolCommands.backwardsLeft.getMessageConfirmation());
-                        LOG.info(ProtocolCommands.backwardsLeft.getMessageConfirmation());
-                     } else {
-                        out.print("BCK_L_KO");
-                        LOG.info("BCK_L_KO");
-                     }
-                     break;
-                  case stop:
-                     if (serverType.equals("good")) {
-                        out.print(ProtocolCommands.stop.getMessageConfirmation());
-                        LOG.info(ProtocolCommands.stop.getMessageConfirmation());
-                        // To stop the server used in ClientGoodServerTest
-                        // The cli.stop() func isn't used in these test
-                        if (testRun) {
-                           this.stop();
-                           return;
-                        }
-                     } else {
-                        out.print("STOPP");
-                        LOG.info("STOPP");
-                     }
-                     break;
-                  case disconnect:
-                     out.print(ProtocolCommands.disconnect.getMessageConfirmation());
-                     shouldRun = false;
-                     if (serverType.equals("bad"))
-                     // To stop the server used in ClientBadServerTest.
-                     // cli.dissconnect() is run only once after all tests completed.
-                     { this.stop(); }
-               }
-               out.print("\n");
+   /**
+    * Tells whether the server behaves like a correctly working robot
+    *
+    * @return true for a good server, false for a bad one
+    */
+   boolean isGood() {
+      return serverType.equals("good");
+   }
+
+   /**
+    * Gets the time the server waits before answering each command
+    *
+    * @return the delay, in milliseconds
+    */
+   long getAnswerDelay() {
+      return answerDelay;
+   }
+
+   /**
+    * Reads the capabilities announced by a client. The binary framing is the only capability known.
+    *
+    * @param line the capabilities of the client
+    *
+    * @return true if the session switches to the binary framing
+    */
+   boolean acceptsBinaryFraming(String line) {
+      boolean binary = false;
+      for (String capability : line.substring(BinaryProtocol.CAPS.length() + 1).split(" ")) {
+         binary |= binaryFraming && capability.equals(BinaryProtocol.BINARY);
+      }
+      LOG.log(Level.INFO, "Capabilities of the client : {0}, binary framing {1}",
+              new Object[]{line, binary ? "on" : "off"});
+      return binary;
+   }
+
+   /**
+    * Records a command answered. The answer is only logged at the FINE level, and the statistics are logged once in a
+    * while.
+    *
+    * @param command the command, or null if the message did not match any command
+    * @param start   the time the handling of the command started, from System.nanoTime
+    * @param answer  the answer sent
+    */
+   void commandAnswered(ProtocolCommands command, long start, String answer) {
+      long handled = stats.commandHandled(command, System.nanoTime() - start);
+      if (LOG.isLoggable(Level.FINE)) {
+         LOG.fine(answer);
+      }
+      int sampling = logSampling;
+      if (sampling > 0 && handled % sampling == 0) {
+         LOG.log(Level.INFO, "Statistics : {0}", stats);
+      }
+   }
+
+   /**
+    * Returns the next picture sent to the clients, already encoded. The logo of the robot is read the first time it is
+    * needed, unless other pictures were set.
+    *
+    * @return the picture
+    *
+    * @throws IOException the logo could not be read
+    */
+   PictureSet.Picture nextPicture() throws IOException {
+      PictureSet set = pictures;
+      if (set == null) {
+         synchronized (this) {
+            if (pictures == null) {
+               pictures = PictureSet.logo();
             }
-            out.flush();
+            set = pictures;
+         }
+      }
+      return set.next();
+   }
+
+   /**
+    * Takes a picture with the options of a request. Without options, the next picture is sent as it is, otherwise it is
+    * edited, which takes a while.
+    *
+    * @param options the options of the picture
+    *
+    * @return the picture, or null if the robot cannot take it, or cannot apply the options to it
+    *
+    * @throws IOException the logo could not be read
+    */
+   PictureSet.Picture takePicture(PictureOptions options) throws IOException {
+      if (!isGood()) {
+         return null;
+      }
+      PictureSet.Picture picture = nextPicture();
+      if (options.isNone()) {
+         return picture;
+      }
+      try {
+         return new PictureSet.Picture(ByteBuffer.wrap(PictureEditor.edit(picture.getData(), options)));
+      } catch (IOException e) {
+         LOG.log(Level.INFO, "Could not take a picture with {0} : {1}", new Object[]{options, e.getMessage()});
+         return null;
+      }
+   }
+
+   /**
+    * Returns the next frame of the streams, already encoded. The frames are generated the first time they are
+    * needed, unless other frames were set.
+    *
+    * @return the frame, its content must not be modified
+    *
+    * @throws IOException the frames could not be generated
+    */
+   ByteBuffer nextStreamFrame() throws IOException {
+      PictureSet set = streamFrames;
+      if (set == null) {
+         synchronized (this) {
+            if (streamFrames == null) {
+               streamFrames = PictureSet.generate(PictureSet.DEFAULT_FRAMES, STREAM_WIDTH, STREAM_HEIGHT, "jpg");
+            }
+            set = streamFrames;
+         }
+      }
+      return set.next().getData();
+   }
+
+   /**
+    * Starts the transfer of a picture in a checked session. The picture gets a sequence number and is kept for a
+    * while, so that the client can resume its transfer if it is interrupted.
+    *
+    * @param picture the picture taken
+    *
+    * @return the transfer, from the start of the picture
+    */
+   PictureTransfer startTransfer(PictureSet.Picture picture) {
+      int sequence = pictureSequence.incrementAndGet();
+      synchronized (sentPictures) {
+         sentPictures.put(sequence, picture);
+      }
+      stats.pictureServed(picture.getSize());
+      return new PictureTransfer(headerOf(picture, sequence), picture.getData(), 0);
+   }
+
+   /**
+    * Resumes the transfer of a picture sent before.
+    *
+    * @param arguments the arguments of the request : the sequence number of the picture and the offset to resume from
+    *
+    * @return the transfer, from the offset, or null if the picture is not kept anymore or the offset is past its end
+    *
+    * @throws NumberFormatException the arguments are not valid
+    */
+   PictureTransfer resumeTransfer(String arguments) {
+      String[] parts = arguments.split(" ");
+      if (parts.length != 2) {
+         throw new NumberFormatException("Expected a sequence number and an offset : " + arguments);
+      }
+      int sequence = Integer.parseInt(parts[0]);
+      int offset = Integer.parseInt(parts[1]);
+      PictureSet.Picture picture;
+      synchronized (sentPictures) {
+         picture = sentPictures.get(sequence);
+      }
+      if (picture == null || offset < 0 || offset > picture.getSize()) {
+         return null;
+      }
+      LOG.log(Level.FINE, "Resuming picture {0} from {1}", new Object[]{sequence, offset});
+      stats.pictureResumed(picture.getSize() - offset);
+      return new PictureTransfer(headerOf(picture, sequence), picture.getData(), offset);
+   }
+
+   private static PictureHeader headerOf(PictureSet.Picture picture, int sequence) {
+      return new PictureHeader(picture.getSize(), picture.getFormat(), sequence, picture.getChecksum());
+   }
+
+   /**
+    * Creates the dispatcher of the commands, according to the type of the server. A good server confirms every
+    * command, a bad server answers with wrong confirmations.
+    *
+    * @return the dispatcher
+    */
+   private CommandDispatcher createDispatcher() {
+      CommandDispatcher commandDispatcher = new CommandDispatcher();
+      for (ProtocolCommands command : ProtocolCommands.values()) {
+         commandDispatcher.register(command, CommandHandler.confirm());
+      }
+      if (serverType.equals("good")) {
+         commandDispatcher.register(ProtocolCommands.drive, (command, arguments, context) -> {
+            if (Math.abs(arguments[0]) > ProtocolCommands.MAX_SPEED ||
+                Math.abs(arguments[1]) > ProtocolCommands.MAX_SPEED) {
+               return CommandDispatcher.UNKNOWN_COMMAND;
+            }
+            record(setpoints, arguments);
+            if (LOG.isLoggable(Level.FINE)) {
+               LOG.log(Level.FINE, "Setpoint received : left {0}, right {1}",
+                       new Object[]{arguments[0], arguments[1]});
+            }
+            return command.getMessageConfirmation();
+         });
+         commandDispatcher.register(ProtocolCommands.mission, (command, arguments, context) -> {
+            List<MissionProtocol.Step> steps = missions ? MissionProtocol.decode(arguments) : null;
+            if (steps == null) {
+               return CommandDispatcher.UNKNOWN_COMMAND;
+            }
+            startMission(steps);
+            return command.getMessageConfirmation();
+         });
+         // Stopping the robot aborts its mission
+         commandDispatcher.register(ProtocolCommands.stop, (command, arguments, context) -> {
+            abortMission();
+            // To stop the server used in ClientGoodServerTest
+            // The cli.stop() func isn't used in these test
+            if (testRun) {
+               context.stopServer();
+            }
+            return command.getMessageConfirmation();
+         });
+      } else {
+         commandDispatcher.register(ProtocolCommands.ping, CommandHandler.answer("PINGG"))
+                          .register(ProtocolCommands.forward, CommandHandler.answer("FWD_KO"))
+                          .register(ProtocolCommands.backward, CommandHandler.answer("BKWD_KO"))
+                          .register(ProtocolCommands.rotateLeft, CommandHandler.answer("ROTATE_LEFT_KO"))
+                          .register(ProtocolCommands.rotateRight, CommandHandler.answer("ROTATE_RIGHT_KO"))
+                          .register(ProtocolCommands.frontleft, CommandHandler.answer("FRONT_L_KO"))
+                          .register(ProtocolCommands.frontRight, CommandHandler.answer("FRONT_R_KO"))
+                          .register(ProtocolCommands.backwardsRight, CommandHandler.answer("BCK_R_KO"))
+                          .register(ProtocolCommands.backwardsLeft, CommandHandler.answer("BCK_L_KO"))
+                          .register(ProtocolCommands.stop, CommandHandler.answer("STOPP"))
+                          .register(ProtocolCommands.drive, CommandHandler.answer("DRIVE_KO"))
+                          .register(ProtocolCommands.mission, CommandHandler.answer("MISSION_KO"));
+      }
+      commandDispatcher.register(ProtocolCommands.disconnect, (command, arguments, context) -> {
+         context.endSession();
+         // To stop the server used in ClientBadServerTest.
+         // cli.dissconnect() is run only once after all tests completed.
+         if (serverType.equals("bad")) {
+            context.stopServer();
+         }
+         return command.getMessageConfirmation();
+      });
+      return commandDispatcher;
+   }
+
+   /**
+    * Records an event for the tests, forgetting the oldest one once RECORDS_KEPT are kept
+    *
+    * @param records the events recorded, guarded by itself
+    * @param record  the event
+    * @param <T>     the type of the events
+    */
+   private static <T> void record(Deque<T> records, T record) {
+      synchronized (records) {
+         if (records.size() == RECORDS_KEPT) {
+            records.removeFirst();
+         }
+         records.addLast(record);
+      }
+   }
+
+   /**
+    * Schedules the steps of a mission, replacing the mission running. Every step is scheduled from the reception of
+    * the mission on the monotonic clock, so a step that runs late does not delay the next ones. The steps at the same
+    * time are run by the same task, in the order of the mission.
+    *
+    * @param steps the steps of the mission
+    */
+   private void startMission(List<MissionProtocol.Step> steps) {
+      int mission = missionCount.incrementAndGet();
+      long start = System.nanoTime();
+      synchronized (missionSteps) {
+         abortMission();
+         // the indexes of the steps, by time
+         TreeMap<Long, List<Integer>> groups = new TreeMap<>();
+         for (int i = 0; i < steps.size(); i++) {
+            groups.computeIfAbsent(steps.get(i).getAt(), at -> new ArrayList<>()).add(i);
          }
+         groups.forEach((at, indexes) -> {
+            long delay = start + TimeUnit.MILLISECONDS.toNanos(at) - System.nanoTime();
+            missionSteps.add(missionExecutor.schedule(() -> {
+               for (int index : indexes) {
+                  executeStep(mission, index, steps.get(index), start);
+               }
+            }, delay, TimeUnit.NANOSECONDS));
+         });
+      }
+      stats.missionStarted();
+      LOG.log(Level.INFO, "Mission {0} received, {1} steps", new Object[]{mission, steps.size()});
+   }
+
+   /**
+    * Executes a step of a mission and logs the time at which it ran
+    *
+    * @param mission the number of the mission
+    * @param index   the index of the step in the mission
+    * @param step    the step
+    * @param start   the time the mission was received, from System.nanoTime
+    */
+   private void executeStep(int mission, int index, MissionProtocol.Step step, long start) {
+      MissionLogEntry entry = new MissionLogEntry(mission, index, step, System.nanoTime() - start);
+      if (step.getCommand() == ProtocolCommands.drive) {
+         record(setpoints, step.getCommandArguments());
+      }
+      record(missionLog, entry);
+      stats.missionStepExecuted(entry.getLateness());
+      if (LOG.isLoggable(Level.FINE)) {
+         LOG.fine(entry.toString());
+      }
+   }
+
+   /**
+    * Cancels the steps of the running mission not executed yet
+    */
+   private void abortMission() {
+      synchronized (missionSteps) {
+         for (ScheduledFuture<?> step : missionSteps) {
+            step.cancel(false);
+         }
+         missionSteps.clear();
       }
    }
 
@@ -304,49 +793,221 @@ public class Server implements Runnable {
    private void stop() {
       try {
          LOG.log(Level.INFO, "Stop {0} server ...", serverType);
-         if (clientSocket != null) {
-            clientSocket.close();
-            in.close();
-            out.close();
+         if (selectorServer != null) {
+            selectorServer.stop();
+         } else {
+            for (Session session : sessions) {
+               session.close();
+            }
+            serverSocket.close();
+            pictureServer.stop();
          }
-         serverSocket.close();
-         pictureServer.stop();
+         sessionExecutor.shutdown();
+         missionExecutor.shutdownNow();
       } catch (IOException e) {
       }
    }
 
+   /**
+    * The session with one client. It holds the connection and the state modified by the command handlers, and answers
+    * the commands of the client until it disconnects.
+    */
+   private class Session implements CommandContext, Runnable {
+      private final SSLSocket clientSocket;
+      private boolean sessionEnded = false;
+      private boolean serverStopped = false;
+
+      /**
+       * Instantiates a new session with the client connected through the given socket.
+       *
+       * @param clientSocket the socket of the client
+       */
+      Session(SSLSocket clientSocket) {
+         this.clientSocket = clientSocket;
+      }
+
+      @Override
+      public void run() {
+         try (clientSocket;
+              BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+              PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true)) {
+            stats.sessionOpened();
+            LOG.log(Level.INFO, "Received message from client on login : {0}", in.readLine());
+            out.print(ProtocolCommands.conn.getMessageConfirmation() + "\n");
+            out.flush();
+            LOG.log(Level.INFO, "send CONN_OK to client");
+
+            String line;
+            LOG.info("Reading until client send DISCONN or closes the connection...");
+            while (!sessionEnded && (line = in.readLine()) != null) {
+               if (line.startsWith(BinaryProtocol.CAPS + " ")) {
+                  if (negotiate(line, out)) {
+                     // the client waits for the answer before sending frames, so nothing is left in the reader
+                     serveFrames(new DataInputStream(new BufferedInputStream(clientSocket.getInputStream())),
+                                 new DataOutputStream(new BufferedOutputStream(clientSocket.getOutputStream())));
+                     return;
+                  }
+                  continue;
+               }
+               delayAnswer();
+               long start = System.nanoTime();
+               String answer = dispatcher.dispatch(line, this);
+               out.print(answer);
+               out.print("\n");
+               out.flush();
+               if (answered(CommandDispatcher.commandOf(line), start, answer)) {
+                  return;
+               }
+            }
+         } catch (IOException e) {
+            if (!stopRequested) {
+               LOG.log(Level.INFO, "Connection lost : {0}", e.getMessage());
+            }
+         } finally {
+            stats.sessionClosed();
+            sessions.remove(this);
+            sessionSlots.release();
+         }
+      }
+
+      /**
+       * Answers the capabilities announced by the client. The binary framing is the only capability known.
+       *
+       * @param line the capabilities of the client
+       * @param out  the stream to the client
+       *
+       * @return true if the session switches to the binary framing
+       */
+      private boolean negotiate(String line, PrintWriter out) {
+         boolean binary = acceptsBinaryFraming(line);
+         out.print(binary ? BinaryProtocol.CAPS_OK + " " + BinaryProtocol.BINARY : BinaryProtocol.CAPS_OK);
+         out.print("\n");
+         out.flush();
+         return binary;
+      }
+
+      /**
+       * Answers the binary frames of the client until it disconnects. Each answer carries the sequence number of the
+       * request it answers.
+       *
+       * @param in  the stream from the client
+       * @param out the stream to the client
+       *
+       * @throws IOException the io exception
+       */
+      private void serveFrames(DataInputStream in, DataOutputStream out) throws IOException {
+         BinaryProtocol.Frame frame = new BinaryProtocol.Frame();
+         while (!sessionEnded && BinaryProtocol.readFrame(in, frame) != null) {
+            delayAnswer();
+            long start = System.nanoTime();
+            ProtocolCommands command = ProtocolCommands.getCommandFromCode(frame.getOpcode());
+            String answer =
+                    dispatcher.dispatch(command, BinaryProtocol.decodeArguments(frame.getPayload()), this);
+            ProtocolCommands confirmed = ProtocolCommands.getCommandFromConfirmation(answer);
+            int opcode = confirmed != null ? confirmed.getConfirmationCode() : BinaryProtocol.CMD_ERR;
+            BinaryProtocol.writeFrame(out, opcode, frame.getSequence(), null);
+            out.flush();
+            if (answered(command, start, answer)) {
+               return;
+            }
+         }
+      }
+
+      /**
+       * Waits before a command is handled, if the server simulates a slow link. The wait is not part of the
+       * processing time of the command.
+       *
+       * @throws InterruptedIOException if the session was interrupted while waiting
+       */
+      private void delayAnswer() throws InterruptedIOException {
+         long delay = answerDelay;
+         if (delay > 0) {
+            try {
+               Thread.sleep(delay);
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+               throw new InterruptedIOException();
+            }
+         }
+      }
+
+      /**
+       * Records a command answered, and stops the server if the command asked for it.
+       *
+       * @param command the command, or null if the message did not match any command
+       * @param start   the time the handling of the command started, from System.nanoTime
+       * @param answer  the answer sent
+       *
+       * @return true if the server was stopped
+       */
+      private boolean answered(ProtocolCommands command, long start, String answer) {
+         commandAnswered(command, start, answer);
+         if (serverStopped) {
+            stopExecution();
+            return true;
+         }
+         return false;
+      }
+
+      /**
+       * Closes the connection with the client, which ends the session
+       *
+       * @throws IOException the io exception
+       */
+      void close() throws IOException {
+         clientSocket.close();
+      }
+
+      @Override
+      public void endSession() {
+         sessionEnded = true;
+      }
+
+      @Override
+      public void stopServer() {
+         serverStopped = true;
+      }
+   }
+
    /**
     * A server that handles the picture side of the robot. It also has the same behaviour as the main class Server in
-    * case the attribute serverType equals "bad"
+    * case the attribute serverType equals "bad". Each picture connection is served by its own thread, taken from the
+    * executor of the sessions, since a client can keep a picture session open for as long as it is connected.
     */
    class PictureServer implements Runnable {
       final Logger LOG = Logger.getLogger(Server.class.getName());
-      private final int PORT = 2026;
+      private final int PORT = PICTURE_PORT;
+      private final Set<SSLSocket> picClientSockets = ConcurrentHashMap.newKeySet();
       private SSLServerSocket picServerSocket;
-      private SSLSocket picClientSocket = null;
-      private BufferedReader in = null;
-      private PrintWriter out = null;
-      private BufferedOutputStream imageOut = null;
-      private boolean running = true;
+      private volatile boolean running = true;
+      private volatile Thread listener;
 
       /**
-       * Stops the picture server
+       * Stops the picture server. It waits for the thread accepting the connections to end, so that no connection is
+       * handed to the executor of the sessions once it is shut down.
        *
        * @throws IOException the io exception
        */
       public void stop() throws IOException {
          LOG.log(Level.INFO, "Stop picture server ...");
-         if (picClientSocket != null) {
+         running = false;
+         picServerSocket.close();
+         Thread listenerThread = listener;
+         if (listenerThread != null && listenerThread != Thread.currentThread()) {
+            try {
+               listenerThread.join();
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+            }
+         }
+         for (SSLSocket picClientSocket : picClientSockets) {
             picClientSocket.close();
-            in.close();
-            out.close();
          }
-         picServerSocket.close();
-         running = false;
       }
 
       @Override
       public void run() {
+         listener = Thread.currentThread();
          try {
             this.start();
             this.listen();
@@ -366,51 +1027,273 @@ public class Server implements Runnable {
       }
 
       /**
-       * Sends a picture to the connecting client. The picture is always the same.
+       * Accepts the picture connections and hands each of them to its own thread.
        *
        * @throws IOException the io exception
        */
       private void listen() throws IOException {
-         while (true) {
+         while (running) {
             LOG.log(Level.INFO, "Waiting (blocking) for a new client on port {0}", PORT);
+            SSLSocket picClientSocket;
             try {
                picClientSocket = (SSLSocket) picServerSocket.accept();
+               picClientSocket.setTcpNoDelay(true);
             } catch (SocketException e) {
-
-            }
-            if (!running) {
-               break;
-            }
-            in = new BufferedReader(new InputStreamReader(picClientSocket.getInputStream()));
-            out = new PrintWriter(picClientSocket.getOutputStream());
-            imageOut = new BufferedOutputStream(picClientSocket.getOutputStream());
-            String message = in.readLine();
-            LOG.log(Level.INFO, "Received first message from client {0}", message);
-            if (!message.equals("PICTURE")) {
-               out.print("CMD_ERR\n");
-               out.flush();
-               in.close();
-               out.close();
-               imageOut.close();
-               picClientSocket.close();
                continue;
             }
-            if (serverType.equals("good")) {
-               out.print("PICTURE_OK\n");
+            picClientSockets.add(picClientSocket);
+            sessionExecutor.execute(() -> serve(picClientSocket));
+         }
+      }
+
+      /**
+       * Serves a picture connection. If the first message is "PICTURE", a single picture is sent and the connection
+       * is closed. If it is "PICTURE_SESSION", pictures are sent as frames for every request until the client ends the
+       * session, or with a header and in chunks once the client asked for a checked session.
+       *
+       * @param picClientSocket the socket of the client
+       */
+      private void serve(SSLSocket picClientSocket) {
+         try (picClientSocket) {
+            InputStream in = new BufferedInputStream(picClientSocket.getInputStream());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(picClientSocket.getOutputStream()));
+            stats.pictureConnectionOpened();
+            String message = PictureProtocol.readLine(in);
+            LOG.log(Level.INFO, "Received first message from client {0}", message);
+            if (PictureProtocol.isPictureRequest(message)) {
+               sendPicture(out, message, false);
+            } else if (PictureProtocol.SESSION.equals(message)) {
+               PictureProtocol.writeLine(out, PictureProtocol.SESSION_OK);
                out.flush();
-               LOG.log(Level.INFO, "Sending a picture...");
-               BufferedImage bi = ImageIO.read(getClass().getClassLoader().getResource("logo.png"));
-               ImageIO.write(bi, "png", imageOut);
-               imageOut.flush();
+               boolean checked = false;
+               while ((message = PictureProtocol.readLine(in)) != null && !message.equals(PictureProtocol.END)) {
+                  if (PictureProtocol.isPictureRequest(message) && checked) {
+                     sendCheckedPicture(out, message);
+                  } else if (PictureProtocol.isPictureRequest(message)) {
+                     sendPicture(out, message, true);
+                  } else if (message.equals(PictureProtocol.CHECKED)) {
+                     checked = true;
+                     PictureProtocol.writeLine(out, PictureProtocol.CHECKED_OK);
+                     out.flush();
+                  } else if (message.startsWith(PictureProtocol.RESUME + " ") && checked) {
+                     resume(out, message.substring(PictureProtocol.RESUME.length() + 1));
+                  } else if (message.startsWith(PictureProtocol.STREAM + " ")) {
+                     if (!stream(in, out, message.substring(PictureProtocol.STREAM.length() + 1))) {
+                        break;
+                     }
+                  } else {
+                     PictureProtocol.writeLine(out, "CMD_ERR");
+                     out.flush();
+                  }
+               }
             } else {
-               out.print("PICTURE_KO\n");
+               PictureProtocol.writeLine(out, "CMD_ERR");
                out.flush();
             }
-            in.close();
-            out.close();
-            imageOut.close();
-            picClientSocket.close();
+         } catch (IOException e) {
+            if (running) {
+               LOG.log(Level.INFO, "Picture connection lost : {0}", e.getMessage());
+            }
+         } finally {
+            picClientSockets.remove(picClientSocket);
          }
       }
+
+      /**
+       * Streams synthetic frames to the client until it asks to stop. The frames are pushed by another thread while
+       * this one waits for the STREAM_STOP message.
+       *
+       * @param in           the stream from the client
+       * @param out          the stream to the client
+       * @param fpsParameter the number of frames per second asked by the client
+       *
+       * @return true if the session can go on, false if the client left during the stream
+       *
+       * @throws IOException the io exception
+       */
+      private boolean stream(InputStream in, DataOutputStream out, String fpsParameter) throws IOException {
+         int fps;
+         try {
+            fps = Math.max(1, Math.min(PictureProtocol.MAX_FPS, Integer.parseInt(fpsParameter)));
+         } catch (NumberFormatException e) {
+            PictureProtocol.writeLine(out, "CMD_ERR");
+            out.flush();
+            return true;
+         }
+         if (!serverType.equals("good")) {
+            PictureProtocol.writeLine(out, PictureProtocol.STREAM_KO);
+            out.flush();
+            return true;
+         }
+         PictureProtocol.writeLine(out, PictureProtocol.STREAM_OK);
+         out.flush();
+         LOG.log(Level.INFO, "Streaming at {0} frames per second", fps);
+
+         AtomicBoolean streaming = new AtomicBoolean(true);
+         Thread pusher = new Thread(() -> pushFrames(out, fps, streaming));
+         pusher.setDaemon(true);
+         pusher.start();
+         String message;
+         do {
+            message = PictureProtocol.readLine(in);
+         } while (message != null && !message.equals(PictureProtocol.STREAM_STOP));
+         streaming.set(false);
+         try {
+            pusher.join();
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+         return message != null;
+      }
+
+      /**
+       * Pushes frames at a fixed rate while the stream is running, then sends the empty frame that ends the stream.
+       *
+       * @param out       the stream to the client
+       * @param fps       the number of frames per second
+       * @param streaming true while the stream must go on
+       */
+      private void pushFrames(DataOutputStream out, int fps, AtomicBoolean streaming) {
+         long period = TimeUnit.SECONDS.toNanos(1) / fps;
+         long nextFrame = System.nanoTime();
+         try {
+            while (streaming.get()) {
+               ByteBuffer frame = nextStreamFrame();
+               int length = frame.remaining();
+               out.writeInt(length);
+               PictureSet.write(out, frame);
+               out.flush();
+               stats.pictureServed(length);
+               nextFrame += period;
+               long delay = nextFrame - System.nanoTime();
+               if (delay > 0) {
+                  TimeUnit.NANOSECONDS.sleep(delay);
+               } else {
+                  // the client is too slow, do not try to catch up
+                  nextFrame = System.nanoTime();
+               }
+            }
+            out.writeInt(0);
+            out.flush();
+         } catch (IOException | InterruptedException e) {
+            LOG.log(Level.INFO, "Stream interrupted : {0}", e.getMessage());
+         }
+      }
+
+      /**
+       * Answers to a resume request with the rest of the picture asked for.
+       *
+       * @param out       the stream to the client
+       * @param arguments the sequence number of the picture and the offset to resume from
+       *
+       * @throws IOException the io exception
+       */
+      private void resume(DataOutputStream out, String arguments) throws IOException {
+         PictureTransfer transfer;
+         try {
+            transfer = serverType.equals("good") ? resumeTransfer(arguments) : null;
+         } catch (NumberFormatException e) {
+            PictureProtocol.writeLine(out, "CMD_ERR");
+            out.flush();
+            return;
+         }
+         sendTransfer(out, transfer);
+      }
+
+      /**
+       * Answers to a picture request in a checked session.
+       *
+       * @param out     the stream to the client
+       * @param request the request, with the options of the picture
+       *
+       * @throws IOException the io exception, also thrown to cut the connection
+       */
+      private void sendCheckedPicture(DataOutputStream out, String request) throws IOException {
+         PictureOptions options = readOptions(out, request);
+         if (options != null) {
+            PictureSet.Picture picture = takePicture(options);
+            sendTransfer(out, picture == null ? null : startTransfer(picture));
+         }
+      }
+
+      /**
+       * Reads the options of a picture request, and answers CMD_ERR if they are not valid.
+       *
+       * @param out     the stream to the client
+       * @param request the request
+       *
+       * @return the options, or null if they are not valid
+       *
+       * @throws IOException the io exception
+       */
+      private PictureOptions readOptions(DataOutputStream out, String request) throws IOException {
+         try {
+            return PictureProtocol.pictureOptions(request);
+         } catch (IllegalArgumentException e) {
+            PictureProtocol.writeLine(out, "CMD_ERR");
+            out.flush();
+            return null;
+         }
+      }
+
+      /**
+       * Sends a picture with its header and in chunks, or PICTURE_KO if there is none. If the fault injection cuts the
+       * transfer, only the beginning of the chunks is sent and the connection is cut.
+       *
+       * @param out      the stream to the client
+       * @param transfer the transfer, or null if the picture could not be taken
+       *
+       * @throws IOException the io exception, also thrown to cut the connection
+       */
+      private void sendTransfer(DataOutputStream out, PictureTransfer transfer) throws IOException {
+         if (transfer == null) {
+            PictureProtocol.writeLine(out, PictureProtocol.PICTURE_KO);
+            out.flush();
+            return;
+         }
+         PictureProtocol.writeLine(out, PictureProtocol.PICTURE_OK);
+         transfer.getHeader().write(out);
+         int cut = getPictureCut();
+         for (ByteBuffer chunk : transfer.chunks(cut)) {
+            PictureSet.write(out, chunk);
+         }
+         out.flush();
+         if (transfer.isCut(cut)) {
+            throw new SocketException("Picture transfer cut after " + cut + " bytes");
+         }
+      }
+
+      /**
+       * Answers to a picture request with the next picture of the server, edited with the options of the request.
+       *
+       * @param out     the stream to the client
+       * @param request the request, with the options of the picture
+       * @param framed  true if the picture must be sent in a frame, false if it is followed by the end of the
+       *                connection
+       *
+       * @throws IOException the io exception
+       */
+      private void sendPicture(DataOutputStream out, String request, boolean framed) throws IOException {
+         PictureOptions options = readOptions(out, request);
+         if (options == null) {
+            return;
+         }
+         PictureSet.Picture picture = takePicture(options);
+         if (picture != null) {
+            PictureProtocol.writeLine(out, PictureProtocol.PICTURE_OK);
+            LOG.fine("Sending a picture...");
+            ByteBuffer image = picture.getData();
+            int length = image.remaining();
+            if (framed) {
+               out.writeInt(length);
+            }
+            // the picture goes past the buffer of the stream, in a single write
+            PictureSet.write(out, image);
+            stats.pictureServed(length);
+         } else {
+            PictureProtocol.writeLine(out, PictureProtocol.PICTURE_KO);
+         }
+         out.flush();
+      }
    }
 }
\ No newline at end of file
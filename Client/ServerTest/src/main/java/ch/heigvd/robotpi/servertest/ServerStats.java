@@ -0,0 +1,320 @@
+/*
+ * @File ServerStats.java
+ * @Authors : David González León
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.servertest;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The statistics of a simulated server : the commands handled and their processing time, the connections, the
+ * pictures served and how closely the missions kept to their schedule. Every session updates them without taking a
+ * lock, so they can be kept on every command while the server is used as a load target. The processing times are also
+ * kept in a histogram whose buckets are the powers of two, which gives their distribution within a factor of two.
+ */
+public class ServerStats implements ServerStatsMXBean {
+   private static final ProtocolCommands[] COMMANDS = ProtocolCommands.values();
+   private static final int BUCKETS = 65;
+   private final long createdAt = System.nanoTime();
+   private final LongAdder[] counts = adders(COMMANDS.length);
+   private final LongAdder[] totalNanos = adders(COMMANDS.length);
+   private final LongAccumulator[] maxNanos = new LongAccumulator[COMMANDS.length];
+   private final LongAdder[] buckets = adders(BUCKETS);
+   private final LongAdder commands = new LongAdder();
+   private final LongAdder unknownCommands = new LongAdder();
+   private final LongAdder connections = new LongAdder();
+   private final LongAdder activeSessions = new LongAdder();
+   private final LongAdder pictureConnections = new LongAdder();
+   private final LongAdder pictures = new LongAdder();
+   private final LongAdder pictureBytes = new LongAdder();
+   private final LongAdder pictureResumes = new LongAdder();
+   private final LongAdder missions = new LongAdder();
+   private final LongAdder missionSteps = new LongAdder();
+   private final LongAdder missionLateness = new LongAdder();
+   private final LongAccumulator maxMissionLateness = new LongAccumulator(Math::max, 0);
+
+   /**
+    * Instantiates new statistics, all at zero
+    */
+   public ServerStats() {
+      for (int i = 0; i < maxNanos.length; i++) {
+         maxNanos[i] = new LongAccumulator(Math::max, 0);
+      }
+   }
+
+   private static LongAdder[] adders(int count) {
+      LongAdder[] adders = new LongAdder[count];
+      for (int i = 0; i < count; i++) {
+         adders[i] = new LongAdder();
+      }
+      return adders;
+   }
+
+   /**
+    * Records a command handled by the server
+    *
+    * @param command the command, or null if the message did not match any command
+    * @param nanos   the time between the reception of the command and the sending of its answer, in nanoseconds
+    *
+    * @return the number of commands handled so far, this one included
+    */
+   long commandHandled(ProtocolCommands command, long nanos) {
+      nanos = Math.max(0, nanos);
+      if (command == null) {
+         unknownCommands.increment();
+      } else {
+         counts[command.ordinal()].increment();
+         totalNanos[command.ordinal()].add(nanos);
+         maxNanos[command.ordinal()].accumulate(nanos);
+      }
+      buckets[64 - Long.numberOfLeadingZeros(nanos)].increment();
+      commands.increment();
+      return commands.sum();
+   }
+
+   /**
+    * Records the opening of a session on the control port
+    */
+   void sessionOpened() {
+      connections.increment();
+      activeSessions.increment();
+   }
+
+   /**
+    * Records the end of a session on the control port
+    */
+   void sessionClosed() {
+      activeSessions.decrement();
+   }
+
+   /**
+    * Records a connection on the picture port
+    */
+   void pictureConnectionOpened() {
+      pictureConnections.increment();
+   }
+
+   /**
+    * Records a picture or a stream frame sent
+    *
+    * @param bytes the size of the picture
+    */
+   void pictureServed(long bytes) {
+      pictures.increment();
+      pictureBytes.add(bytes);
+   }
+
+   /**
+    * Records the rest of a picture sent after its transfer was interrupted
+    *
+    * @param bytes the number of bytes of the picture sent again
+    */
+   void pictureResumed(long bytes) {
+      pictureResumes.increment();
+      pictureBytes.add(bytes);
+   }
+
+   /**
+    * Records the reception of a mission
+    */
+   void missionStarted() {
+      missions.increment();
+   }
+
+   /**
+    * Records a step of a mission executed
+    *
+    * @param lateness how late the step ran compared to its schedule, in nanoseconds
+    */
+   void missionStepExecuted(long lateness) {
+      lateness = Math.max(0, lateness);
+      missionSteps.increment();
+      missionLateness.add(lateness);
+      maxMissionLateness.accumulate(lateness);
+   }
+
+   /**
+    * Publishes these statistics through JMX, under the name "ch.heigvd.robotpi:type=Server,name=&lt;name&gt;".
+    *
+    * @param name the name of the server
+    *
+    * @throws JMException the registration failed, for example because the name is already used
+    */
+   public void registerMBean(String name) throws JMException {
+      ManagementFactory.getPlatformMBeanServer()
+                       .registerMBean(this, new ObjectName("ch.heigvd.robotpi:type=Server,name=" + name));
+   }
+
+   @Override
+   public long getUptimeSeconds() {
+      return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - createdAt);
+   }
+
+   @Override
+   public long getCommands() {
+      return commands.sum();
+   }
+
+   @Override
+   public double getCommandRate() {
+      double seconds = (System.nanoTime() - createdAt) / 1e9;
+      return seconds <= 0 ? 0 : getCommands() / seconds;
+   }
+
+   @Override
+   public long getUnknownCommands() {
+      return unknownCommands.sum();
+   }
+
+   /**
+    * Gets the number of times a command was handled.
+    *
+    * @param command the command
+    *
+    * @return the number of times it was handled
+    */
+   public long getCount(ProtocolCommands command) {
+      return counts[command.ordinal()].sum();
+   }
+
+   @Override
+   public Map<String, Long> getCommandCounts() {
+      Map<String, Long> values = new TreeMap<>();
+      for (ProtocolCommands command : COMMANDS) {
+         long count = getCount(command);
+         if (count > 0) {
+            values.put(command.getMessage(), count);
+         }
+      }
+      return values;
+   }
+
+   @Override
+   public Map<String, Long> getCommandMeanMicros() {
+      Map<String, Long> values = new TreeMap<>();
+      for (ProtocolCommands command : COMMANDS) {
+         long count = getCount(command);
+         if (count > 0) {
+            values.put(command.getMessage(),
+                       TimeUnit.NANOSECONDS.toMicros(totalNanos[command.ordinal()].sum() / count));
+         }
+      }
+      return values;
+   }
+
+   @Override
+   public Map<String, Long> getCommandMaxMicros() {
+      Map<String, Long> values = new TreeMap<>();
+      for (ProtocolCommands command : COMMANDS) {
+         if (getCount(command) > 0) {
+            values.put(command.getMessage(), TimeUnit.NANOSECONDS.toMicros(maxNanos[command.ordinal()].get()));
+         }
+      }
+      return values;
+   }
+
+   @Override
+   public long getProcessingP50Micros() {
+      return TimeUnit.NANOSECONDS.toMicros(percentile(50));
+   }
+
+   @Override
+   public long getProcessingP99Micros() {
+      return TimeUnit.NANOSECONDS.toMicros(percentile(99));
+   }
+
+   @Override
+   public long getConnections() {
+      return connections.sum();
+   }
+
+   @Override
+   public long getActiveSessions() {
+      return activeSessions.sum();
+   }
+
+   @Override
+   public long getPictureConnections() {
+      return pictureConnections.sum();
+   }
+
+   @Override
+   public long getPicturesServed() {
+      return pictures.sum();
+   }
+
+   @Override
+   public long getPictureBytesServed() {
+      return pictureBytes.sum();
+   }
+
+   @Override
+   public long getPictureResumes() {
+      return pictureResumes.sum();
+   }
+
+   @Override
+   public long getMissions() {
+      return missions.sum();
+   }
+
+   @Override
+   public long getMissionSteps() {
+      return missionSteps.sum();
+   }
+
+   @Override
+   public long getMissionLatenessMeanMicros() {
+      long steps = getMissionSteps();
+      return steps == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(missionLateness.sum() / steps);
+   }
+
+   @Override
+   public long getMissionLatenessMaxMicros() {
+      return TimeUnit.NANOSECONDS.toMicros(maxMissionLateness.get());
+   }
+
+   /**
+    * Estimates a percentile of the processing times, as the upper bound of the bucket holding it
+    *
+    * @param percentile the percentile, between 0 and 100
+    *
+    * @return the estimate, in nanoseconds
+    */
+   private long percentile(double percentile) {
+      long total = 0;
+      long[] values = new long[BUCKETS];
+      for (int i = 0; i < BUCKETS; i++) {
+         values[i] = buckets[i].sum();
+         total += values[i];
+      }
+      if (total == 0) {
+         return 0;
+      }
+      long rank = (long) Math.ceil(total * percentile / 100);
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+         seen += values[i];
+         if (seen >= rank) {
+            return i == 0 ? 0 : i == 64 ? Long.MAX_VALUE : (1L << i) - 1;
+         }
+      }
+      return Long.MAX_VALUE;
+   }
+
+   @Override
+   public String toString() {
+      return String.format("%d commands (%.1f/s), %d unknown, p50 %d us, p99 %d us, %d sessions open, " +
+                           "%d pictures served (%d bytes)", getCommands(), getCommandRate(), getUnknownCommands(),
+                           getProcessingP50Micros(), getProcessingP99Micros(), getActiveSessions(),
+                           getPicturesServed(), getPictureBytesServed());
+   }
+}
@@ -0,0 +1,146 @@
+/*
+ * @File ServerStatsMXBean.java
+ * @Authors : David González León
+ * @Date 17 oct. 2026
+ */
+package ch.heigvd.robotpi.servertest;
+
+import java.util.Map;
+
+/**
+ * The statistics of a simulated server, as published through JMX. The times are in microseconds.
+ */
+public interface ServerStatsMXBean {
+   /**
+    * Gets the time since the server was created, in seconds.
+    *
+    * @return the uptime
+    */
+   long getUptimeSeconds();
+
+   /**
+    * Gets the number of commands handled, unknown commands included.
+    *
+    * @return the number of commands
+    */
+   long getCommands();
+
+   /**
+    * Gets the number of commands handled per second, on average since the server was created.
+    *
+    * @return the rate of the commands
+    */
+   double getCommandRate();
+
+   /**
+    * Gets the number of messages that did not match a command.
+    *
+    * @return the number of unknown commands
+    */
+   long getUnknownCommands();
+
+   /**
+    * Gets the number of times each command was handled.
+    *
+    * @return the count of each command, by message
+    */
+   Map<String, Long> getCommandCounts();
+
+   /**
+    * Gets the mean processing time of each command, from its reception to the sending of its answer.
+    *
+    * @return the mean time of each command, by message
+    */
+   Map<String, Long> getCommandMeanMicros();
+
+   /**
+    * Gets the longest processing time of each command.
+    *
+    * @return the longest time of each command, by message
+    */
+   Map<String, Long> getCommandMaxMicros();
+
+   /**
+    * Gets the median processing time of all the commands, rounded up to a power of two.
+    *
+    * @return the median time
+    */
+   long getProcessingP50Micros();
+
+   /**
+    * Gets the 99th percentile of the processing time of all the commands, rounded up to a power of two.
+    *
+    * @return the 99th percentile
+    */
+   long getProcessingP99Micros();
+
+   /**
+    * Gets the number of control connections accepted.
+    *
+    * @return the number of connections
+    */
+   long getConnections();
+
+   /**
+    * Gets the number of sessions currently open on the control port.
+    *
+    * @return the number of sessions
+    */
+   long getActiveSessions();
+
+   /**
+    * Gets the number of connections accepted on the picture port.
+    *
+    * @return the number of picture connections
+    */
+   long getPictureConnections();
+
+   /**
+    * Gets the number of pictures and stream frames sent.
+    *
+    * @return the number of pictures
+    */
+   long getPicturesServed();
+
+   /**
+    * Gets the number of bytes of pictures and stream frames sent.
+    *
+    * @return the number of bytes
+    */
+   long getPictureBytesServed();
+
+   /**
+    * Gets the number of pictures whose transfer was resumed after an interruption.
+    *
+    * @return the number of transfers resumed
+    */
+   long getPictureResumes();
+
+   /**
+    * Gets the number of missions received.
+    *
+    * @return the number of missions
+    */
+   long getMissions();
+
+   /**
+    * Gets the number of mission steps executed.
+    *
+    * @return the number of steps
+    */
+   long getMissionSteps();
+
+   /**
+    * Gets the mean lateness of the mission steps compared to their schedule.
+    *
+    * @return the mean lateness
+    */
+   long getMissionLatenessMeanMicros();
+
+   /**
+    * Gets the largest lateness of a mission step compared to its schedule.
+    *
+    * @return the largest lateness
+    */
+   long getMissionLatenessMaxMicros();
+}
@@ -5,20 +5,116 @@
  */
 package ch.heigvd.robotpi.servertest;
 
+import javax.management.JMException;
+import java.io.IOException;
 import java.util.Scanner;
 
 /**
  * This class launches a Server and allows a user to stop it at any time. This allows the testing of the client app
- * while monitoring the response of the server
+ * while monitoring the response of the server. The option "--sessions=N" lets the server serve up to N clients at the
+ * same time, to load test the client tools, and "--text" makes it refuse the binary framing like the robot does.
+ * "--delay=ms" delays every answer, to simulate a slow link. The statistics of the server are published through JMX
+ * and logged every 1000 commands, "--log-every=N" changes this number, 0 turns the log off. "--event-loop" serves
+ * every connection from a single thread, to hold thousands of sessions. "--pictures=" sets the pictures sent, see
+ * {@link PictureSet#parse(String)}, such as "--pictures=1920x1080.png" or the path of a directory of pictures.
+ * "--cut-pictures=BYTES" cuts the connection of every checked picture transfer after this many bytes, to exercise the
+ * resuming of the transfers.
  */
 public class Starter {
+   private static final String SESSIONS_OPTION = "--sessions=";
+   private static final String TEXT_OPTION = "--text";
+   private static final String DELAY_OPTION = "--delay=";
+   private static final String LOG_OPTION = "--log-every=";
+   private static final String EVENT_LOOP_OPTION = "--event-loop";
+   private static final String PICTURES_OPTION = "--pictures=";
+   private static final String CUT_OPTION = "--cut-pictures=";
+
    /**
     * The entry point of application.
     *
     * @param args the input arguments
     */
    public static void main(String[] args) {
-      Server server = new Server("good", false);
+      int sessions = 1;
+      boolean textOnly = false;
+      boolean eventLoop = false;
+      PictureSet pictures = null;
+      long delay = 0;
+      int pictureCut = 0;
+      int logSampling = Server.DEFAULT_LOG_SAMPLING;
+      for (String arg : args) {
+         if (arg.equals(TEXT_OPTION)) {
+            textOnly = true;
+         } else if (arg.equals(EVENT_LOOP_OPTION)) {
+            eventLoop = true;
+         } else if (arg.startsWith(PICTURES_OPTION)) {
+            try {
+               pictures = PictureSet.parse(arg.substring(PICTURES_OPTION.length()));
+            } catch (IOException | IllegalArgumentException e) {
+               System.out.println("The pictures could not be loaded : " + e.getMessage());
+               return;
+            }
+         } else if (arg.startsWith(DELAY_OPTION)) {
+            try {
+               delay = Long.parseLong(arg.substring(DELAY_OPTION.length()));
+            } catch (NumberFormatException e) {
+               delay = -1;
+            }
+            if (delay < 0) {
+               System.out.println("The delay must be a positive number of milliseconds");
+               return;
+            }
+         } else if (arg.startsWith(CUT_OPTION)) {
+            try {
+               pictureCut = Integer.parseInt(arg.substring(CUT_OPTION.length()));
+            } catch (NumberFormatException e) {
+               pictureCut = -1;
+            }
+            if (pictureCut < 0) {
+               System.out.println("The number of bytes before the cut must be a positive integer");
+               return;
+            }
+         } else if (arg.startsWith(LOG_OPTION)) {
+            try {
+               logSampling = Integer.parseInt(arg.substring(LOG_OPTION.length()));
+            } catch (NumberFormatException e) {
+               logSampling = -1;
+            }
+            if (logSampling < 0) {
+               System.out.println("The number of commands between two logs must be a positive integer");
+               return;
+            }
+         } else if (arg.startsWith(SESSIONS_OPTION)) {
+            try {
+               sessions = Integer.parseInt(arg.substring(SESSIONS_OPTION.length()));
+            } catch (NumberFormatException e) {
+               sessions = 0;
+            }
+            if (sessions < 1) {
+               System.out.println("The number of sessions must be a positive integer");
+               return;
+            }
+         } else {
+            System.out.println("Unknown option " + arg + ", usage : Starter [--sessions=N] [--text] [--delay=ms] " +
+                               "[--log-every=N] [--event-loop] [--pictures=logo|WIDTHxHEIGHT.FORMAT|PATH] " +
+                               "[--cut-pictures=BYTES]");
+            return;
+         }
+      }
+      Server server = new Server("good", false, sessions);
+      server.setBinaryFraming(!textOnly);
+      server.setEventLoop(eventLoop);
+      if (pictures != null) {
+         server.setPictures(pictures);
+      }
+      server.setPictureCut(pictureCut);
+      server.setAnswerDelay(delay);
+      server.setLogSampling(logSampling);
+      try {
+         server.getStats().registerMBean("simulator");
+      } catch (JMException e) {
+         System.out.println("The statistics could not be published through JMX : " + e.getMessage());
+      }
       Thread thread = new Thread(server);
       thread.start();
       System.out.println("Enter \"stop\" to stop the server from this terminal");
@@ -6,12 +6,23 @@ package ch.heigvd.robotpi.servertest;/*
 
 import org.junit.jupiter.api.Test;
 
+import javax.imageio.ImageIO;
 import javax.net.ssl.*;
+import java.awt.image.BufferedImage;
 import java.io.*;
 import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32C;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class ServerTest {
 
@@ -199,4 +210,570 @@ class ServerTest {
 
       closeEverything(server, socket, in, out);
    }
-}
\ No newline at end of file
+
+   @Test
+   void testConcurrentSessionsWork() throws Exception {
+      Server server = new Server("good", true, 3);
+      Thread thread = new Thread(server);
+      thread.start();
+      try {
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      SSLSocket[] sockets = new SSLSocket[3];
+      BufferedReader[] ins = new BufferedReader[3];
+      PrintWriter[] outs = new PrintWriter[3];
+      for (int i = 0; i < 3; i++) {
+         sockets[i] = createSocket("localhost", 2025);
+         ins[i] = new BufferedReader(new InputStreamReader(sockets[i].getInputStream()));
+         outs[i] = new PrintWriter(sockets[i].getOutputStream(), true);
+         sockets[i].startHandshake();
+         outs[i].println(ProtocolCommands.conn.getMessage());
+         assertEquals(ProtocolCommands.conn.getMessageConfirmation(), ins[i].readLine());
+      }
+
+      // every client is answered while the others are still connected
+      for (int i = 2; i >= 0; i--) {
+         outs[i].println(ProtocolCommands.ping.getMessage());
+         assertEquals(ProtocolCommands.ping.getMessageConfirmation(), ins[i].readLine());
+      }
+
+      outs[0].println(ProtocolCommands.disconnect.getMessage());
+      assertEquals(ProtocolCommands.disconnect.getMessageConfirmation(), ins[0].readLine());
+      outs[1].println(ProtocolCommands.forward.getMessage());
+      assertEquals("FWD_OK", ins[1].readLine());
+
+      for (int i = 0; i < 2; i++) {
+         sockets[i].close();
+      }
+      closeEverything(server, sockets[2], ins[2], outs[2]);
+   }
+
+   @Test
+   void testBinaryFramingWorks() throws Exception {
+      Server server = new Server("good", true);
+      Thread thread = new Thread(server);
+      thread.start();
+      try {
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      SSLSocket socket = createSocket("localhost", 2025);
+      BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+      PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+
+      socket.startHandshake();
+
+      out.println(ProtocolCommands.conn.getMessage());
+      assertEquals(ProtocolCommands.conn.getMessageConfirmation(), in.readLine());
+      out.println(BinaryProtocol.CAPS + " " + BinaryProtocol.BINARY);
+      assertEquals(BinaryProtocol.CAPS_OK + " " + BinaryProtocol.BINARY, in.readLine());
+
+      DataOutputStream frameOut = new DataOutputStream(socket.getOutputStream());
+      DataInputStream frameIn = new DataInputStream(socket.getInputStream());
+      BinaryProtocol.Frame frame = new BinaryProtocol.Frame();
+
+      BinaryProtocol.writeFrame(frameOut, ProtocolCommands.forward.getCode(), 7, null);
+      BinaryProtocol.writeFrame(frameOut, ProtocolCommands.ping.getCode(), 8, null);
+      BinaryProtocol.writeFrame(frameOut, 200, BinaryProtocol.NO_SEQUENCE, null);
+      frameOut.flush();
+      BinaryProtocol.readFrame(frameIn, frame);
+      assertEquals(46, frame.getOpcode());
+      assertEquals(7, frame.getSequence());
+      BinaryProtocol.readFrame(frameIn, frame);
+      assertEquals(56, frame.getOpcode());
+      assertEquals(8, frame.getSequence());
+      BinaryProtocol.readFrame(frameIn, frame);
+      assertEquals(BinaryProtocol.CMD_ERR, frame.getOpcode());
+      assertEquals(BinaryProtocol.NO_SEQUENCE, frame.getSequence());
+
+      closeEverything(server, socket, in, out);
+   }
+
+   @Test
+   void testBinaryFramingCanBeRefused() throws Exception {
+      Server server = new Server("good", true);
+      server.setBinaryFraming(false);
+      Thread thread = new Thread(server);
+      thread.start();
+      try {
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      SSLSocket socket = createSocket("localhost", 2025);
+      BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+      PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+
+      socket.startHandshake();
+
+      out.println(ProtocolCommands.conn.getMessage());
+      assertEquals(ProtocolCommands.conn.getMessageConfirmation(), in.readLine());
+      out.println(BinaryProtocol.CAPS + " " + BinaryProtocol.BINARY);
+      assertEquals(BinaryProtocol.CAPS_OK, in.readLine());
+      out.println(ProtocolCommands.forward.getMessage());
+      assertEquals("FWD_OK", in.readLine());
+
+      closeEverything(server, socket, in, out);
+   }
+
+   @Test
+   void testDriveSetpointsAreChecked() throws Exception {
+      Server server = new Server("good", true);
+      Thread thread = new Thread(server);
+      thread.start();
+      try {
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      SSLSocket socket = createSocket("localhost", 2025);
+      BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+      PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+
+      socket.startHandshake();
+
+      out.println(ProtocolCommands.conn.getMessage());
+      assertEquals(ProtocolCommands.conn.getMessageConfirmation(), in.readLine());
+      out.println(ProtocolCommands.drive.format(50, -30));
+      assertEquals(ProtocolCommands.drive.getMessageConfirmation(), in.readLine());
+      out.println(ProtocolCommands.drive.getMessage() + " 50");
+      assertEquals(CommandDispatcher.UNKNOWN_COMMAND, in.readLine());
+      out.println(ProtocolCommands.drive.getMessage() + " 500 0");
+      assertEquals(CommandDispatcher.UNKNOWN_COMMAND, in.readLine());
+      assertEquals(1, server.getReceivedSetpoints().size());
+      assertArrayEquals(new int[]{50, -30}, server.getReceivedSetpoints().get(0));
+
+      closeEverything(server, socket, in, out);
+   }
+
+   @Test
+   void testStatisticsAreKept() throws Exception {
+      Server server = new Server("good", true);
+      Thread thread = new Thread(server);
+      thread.start();
+      try {
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      SSLSocket socket = createSocket("localhost", 2025);
+      BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+      PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+
+      socket.startHandshake();
+
+      out.println(ProtocolCommands.conn.getMessage());
+      assertEquals(ProtocolCommands.conn.getMessageConfirmation(), in.readLine());
+      for (int i = 0; i < 3; i++) {
+         out.println(ProtocolCommands.forward.getMessage());
+         assertEquals(ProtocolCommands.forward.getMessageConfirmation(), in.readLine());
+      }
+      out.println("FOO");
+      assertEquals(CommandDispatcher.UNKNOWN_COMMAND, in.readLine());
+      // the command is recorded once its answer is sent
+      Thread.sleep(200);
+
+      ServerStats stats = server.getStats();
+      assertEquals(4, stats.getCommands());
+      assertEquals(3, stats.getCount(ProtocolCommands.forward));
+      assertEquals(1, stats.getUnknownCommands());
+      assertEquals(3, stats.getCommandCounts().get(ProtocolCommands.forward.getMessage()));
+      assertEquals(1, stats.getConnections());
+      assertEquals(1, stats.getActiveSessions());
+
+      closeEverything(server, socket, in, out);
+   }
+
+   @Test
+   void testPictureSessionWorks() throws Exception {
+      Server server = new Server("good", true);
+      Thread thread = new Thread(server);
+      thread.start();
+      try {
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      SSLSocket socket = createSocket("localhost", 2026);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      OutputStream out = socket.getOutputStream();
+
+      socket.startHandshake();
+
+      PictureProtocol.writeLine(out, PictureProtocol.SESSION);
+      out.flush();
+      assertEquals(PictureProtocol.SESSION_OK, PictureProtocol.readLine(in));
+
+      for (int i = 0; i < 3; i++) {
+         PictureProtocol.writeLine(out, PictureProtocol.PICTURE);
+         out.flush();
+         assertEquals(PictureProtocol.PICTURE_OK, PictureProtocol.readLine(in));
+         byte[] picture = PictureProtocol.readFrame(in);
+         assertNotNull(ImageIO.read(new ByteArrayInputStream(picture)));
+      }
+
+      PictureProtocol.writeLine(out, PictureProtocol.END);
+      out.flush();
+      socket.close();
+      server.stopExecution();
+   }
+
+   @Test
+   void testStreamWorks() throws Exception {
+      Server server = new Server("good", true);
+      Thread thread = new Thread(server);
+      thread.start();
+      try {
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      SSLSocket socket = createSocket("localhost", 2026);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      OutputStream out = socket.getOutputStream();
+
+      socket.startHandshake();
+
+      PictureProtocol.writeLine(out, PictureProtocol.SESSION);
+      out.flush();
+      assertEquals(PictureProtocol.SESSION_OK, PictureProtocol.readLine(in));
+
+      PictureProtocol.writeLine(out, PictureProtocol.STREAM + " 30");
+      out.flush();
+      assertEquals(PictureProtocol.STREAM_OK, PictureProtocol.readLine(in));
+      for (int i = 0; i < 5; i++) {
+         assertNotNull(ImageIO.read(new ByteArrayInputStream(PictureProtocol.readFrame(in))));
+      }
+
+      PictureProtocol.writeLine(out, PictureProtocol.STREAM_STOP);
+      out.flush();
+      // the frames pushed before the stop are still received, until the empty frame
+      while (PictureProtocol.readFrame(in).length != 0) {
+      }
+
+      PictureProtocol.writeLine(out, PictureProtocol.PICTURE);
+      out.flush();
+      assertEquals(PictureProtocol.PICTURE_OK, PictureProtocol.readLine(in));
+
+      socket.close();
+      server.stopExecution();
+   }
+
+   @Test
+   void testEventLoopServesManySessions() throws Exception {
+      Server server = new Server("good", true, 50);
+      server.setEventLoop(true);
+      Thread thread = new Thread(server);
+      thread.start();
+      try {
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      SSLSocket[] sockets = new SSLSocket[50];
+      BufferedReader[] ins = new BufferedReader[50];
+      PrintWriter[] outs = new PrintWriter[50];
+      for (int i = 0; i < 50; i++) {
+         sockets[i] = createSocket("localhost", 2025);
+         ins[i] = new BufferedReader(new InputStreamReader(sockets[i].getInputStream()));
+         outs[i] = new PrintWriter(sockets[i].getOutputStream(), true);
+         sockets[i].startHandshake();
+         outs[i].println(ProtocolCommands.conn.getMessage());
+         assertEquals(ProtocolCommands.conn.getMessageConfirmation(), ins[i].readLine());
+      }
+
+      // every session is answered while the others stay idle
+      for (int i = 49; i >= 0; i--) {
+         outs[i].println(ProtocolCommands.ping.getMessage());
+         assertEquals(ProtocolCommands.ping.getMessageConfirmation(), ins[i].readLine());
+      }
+
+      outs[0].println(BinaryProtocol.CAPS + " " + BinaryProtocol.BINARY);
+      assertEquals(BinaryProtocol.CAPS_OK + " " + BinaryProtocol.BINARY, ins[0].readLine());
+      DataOutputStream frameOut = new DataOutputStream(sockets[0].getOutputStream());
+      DataInputStream frameIn = new DataInputStream(sockets[0].getInputStream());
+      BinaryProtocol.Frame frame = new BinaryProtocol.Frame();
+      BinaryProtocol.writeFrame(frameOut, ProtocolCommands.forward.getCode(), 7, null);
+      BinaryProtocol.writeFrame(frameOut, ProtocolCommands.drive.getCode(), 8,
+                                BinaryProtocol.encodeArguments(new int[]{50, -30}));
+      frameOut.flush();
+      BinaryProtocol.readFrame(frameIn, frame);
+      assertEquals(46, frame.getOpcode());
+      assertEquals(7, frame.getSequence());
+      BinaryProtocol.readFrame(frameIn, frame);
+      assertEquals(ProtocolCommands.drive.getConfirmationCode(), frame.getOpcode());
+      assertEquals(8, frame.getSequence());
+      assertArrayEquals(new int[]{50, -30}, server.getReceivedSetpoints().get(0));
+
+      outs[1].println(ProtocolCommands.disconnect.getMessage());
+      assertEquals(ProtocolCommands.disconnect.getMessageConfirmation(), ins[1].readLine());
+      assertNull(ins[1].readLine());
+      Thread.sleep(200);
+      assertEquals(50, server.getStats().getConnections());
+      assertEquals(49, server.getStats().getActiveSessions());
+
+      for (int i = 0; i < 49; i++) {
+         sockets[i].close();
+      }
+      closeEverything(server, sockets[49], ins[49], outs[49]);
+   }
+
+   @Test
+   void testEventLoopServesPictures() throws Exception {
+      Server server = new Server("good", true);
+      server.setEventLoop(true);
+      Thread thread = new Thread(server);
+      thread.start();
+      try {
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      SSLSocket single = createSocket("localhost", 2026);
+      single.startHandshake();
+      PictureProtocol.writeLine(single.getOutputStream(), PictureProtocol.PICTURE);
+      single.getOutputStream().flush();
+      InputStream singleIn = new BufferedInputStream(single.getInputStream());
+      assertEquals(PictureProtocol.PICTURE_OK, PictureProtocol.readLine(singleIn));
+      assertNotNull(ImageIO.read(singleIn));
+      single.close();
+
+      SSLSocket socket = createSocket("localhost", 2026);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      OutputStream out = socket.getOutputStream();
+
+      socket.startHandshake();
+
+      PictureProtocol.writeLine(out, PictureProtocol.SESSION);
+      out.flush();
+      assertEquals(PictureProtocol.SESSION_OK, PictureProtocol.readLine(in));
+      PictureProtocol.writeLine(out, PictureProtocol.PICTURE);
+      out.flush();
+      assertEquals(PictureProtocol.PICTURE_OK, PictureProtocol.readLine(in));
+      assertNotNull(ImageIO.read(new ByteArrayInputStream(PictureProtocol.readFrame(in))));
+
+      PictureProtocol.writeLine(out, PictureProtocol.STREAM + " 30");
+      out.flush();
+      assertEquals(PictureProtocol.STREAM_OK, PictureProtocol.readLine(in));
+      for (int i = 0; i < 5; i++) {
+         assertNotNull(ImageIO.read(new ByteArrayInputStream(PictureProtocol.readFrame(in))));
+      }
+      PictureProtocol.writeLine(out, PictureProtocol.STREAM_STOP);
+      out.flush();
+      while (PictureProtocol.readFrame(in).length != 0) {
+      }
+
+      PictureProtocol.writeLine(out, PictureProtocol.END);
+      out.flush();
+      assertEquals(-1, in.read());
+      socket.close();
+      server.stopExecution();
+   }
+
+   @Test
+   void testPicturesAreSentInTurn() throws Exception {
+      byte[][] pictures = {{1, 2, 3}, new byte[100000]};
+      Server server = new Server("good", true);
+      server.setPictures(PictureSet.of(pictures));
+      Thread thread = new Thread(server);
+      thread.start();
+      try {
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      SSLSocket socket = createSocket("localhost", 2026);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      OutputStream out = socket.getOutputStream();
+
+      socket.startHandshake();
+
+      PictureProtocol.writeLine(out, PictureProtocol.SESSION);
+      out.flush();
+      assertEquals(PictureProtocol.SESSION_OK, PictureProtocol.readLine(in));
+      for (int i = 0; i < 3; i++) {
+         PictureProtocol.writeLine(out, PictureProtocol.PICTURE);
+         out.flush();
+         assertEquals(PictureProtocol.PICTURE_OK, PictureProtocol.readLine(in));
+         assertArrayEquals(pictures[i % 2], PictureProtocol.readFrame(in));
+      }
+      assertEquals(3, server.getStats().getPicturesServed());
+
+      socket.close();
+      server.stopExecution();
+   }
+
+   @Test
+   void testMappedPicturesAreSentByTheEventLoop() throws Exception {
+      Path directory = Files.createTempDirectory("pictures");
+      byte[] first = new byte[50000];
+      byte[] second = new byte[70000];
+      Arrays.fill(first, (byte) 1);
+      Arrays.fill(second, (byte) 2);
+      Files.write(directory.resolve("a.jpg"), first);
+      Files.write(directory.resolve("b.jpg"), second);
+      Server server = new Server("good", true);
+      server.setEventLoop(true);
+      server.setPictures(PictureSet.map(directory));
+      Thread thread = new Thread(server);
+      thread.start();
+      try {
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      SSLSocket socket = createSocket("localhost", 2026);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      OutputStream out = socket.getOutputStream();
+
+      socket.startHandshake();
+
+      PictureProtocol.writeLine(out, PictureProtocol.SESSION);
+      out.flush();
+      assertEquals(PictureProtocol.SESSION_OK, PictureProtocol.readLine(in));
+      PictureProtocol.writeLine(out, PictureProtocol.PICTURE);
+      PictureProtocol.writeLine(out, PictureProtocol.PICTURE);
+      out.flush();
+      assertEquals(PictureProtocol.PICTURE_OK, PictureProtocol.readLine(in));
+      assertArrayEquals(first, PictureProtocol.readFrame(in));
+      assertEquals(PictureProtocol.PICTURE_OK, PictureProtocol.readLine(in));
+      assertArrayEquals(second, PictureProtocol.readFrame(in));
+
+      socket.close();
+      server.stopExecution();
+      Files.delete(directory.resolve("a.jpg"));
+      Files.delete(directory.resolve("b.jpg"));
+      Files.delete(directory);
+   }
+
+   @Test
+   void testCutPictureTransferIsResumed() throws Exception {
+      byte[] picture = new byte[100000];
+      new Random(42).nextBytes(picture);
+      CRC32C crc = new CRC32C();
+      crc.update(picture);
+      Server server = new Server("good", true);
+      server.setEventLoop(true);
+      server.setPictures(PictureSet.of(picture));
+      server.setPictureCut(60000);
+      Thread thread = new Thread(server);
+      thread.start();
+      try {
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      SSLSocket socket = createSocket("localhost", 2026);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      OutputStream out = socket.getOutputStream();
+      socket.startHandshake();
+      PictureProtocol.writeLine(out, PictureProtocol.SESSION);
+      PictureProtocol.writeLine(out, PictureProtocol.CHECKED);
+      PictureProtocol.writeLine(out, PictureProtocol.PICTURE);
+      out.flush();
+      assertEquals(PictureProtocol.SESSION_OK, PictureProtocol.readLine(in));
+      assertEquals(PictureProtocol.CHECKED_OK, PictureProtocol.readLine(in));
+      assertEquals(PictureProtocol.PICTURE_OK, PictureProtocol.readLine(in));
+      PictureHeader header = PictureHeader.read(in);
+      assertEquals(picture.length, header.getSize());
+      assertEquals((int) crc.getValue(), header.getChecksum());
+      assertEquals("bin", header.getFormat());
+      // the first chunk is whole, the second one is cut
+      assertEquals(0, in.readInt());
+      assertEquals(PictureProtocol.CHUNK_SIZE, in.readInt());
+      in.readFully(new byte[PictureProtocol.CHUNK_SIZE]);
+      assertEquals(PictureProtocol.CHUNK_SIZE, in.readInt());
+      assertEquals(PictureProtocol.CHUNK_SIZE, in.readInt());
+      assertEquals(60000 - PictureProtocol.CHUNK_SIZE, in.readAllBytes().length);
+      socket.close();
+
+      socket = createSocket("localhost", 2026);
+      in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      out = socket.getOutputStream();
+      socket.startHandshake();
+      PictureProtocol.writeLine(out, PictureProtocol.SESSION);
+      PictureProtocol.writeLine(out, PictureProtocol.CHECKED);
+      PictureProtocol.writeLine(out, PictureProtocol.RESUME + " " + (header.getSequence() + 1) + " 0");
+      PictureProtocol.writeLine(out, PictureProtocol.RESUME + " " + header.getSequence() + " 60000");
+      out.flush();
+      assertEquals(PictureProtocol.SESSION_OK, PictureProtocol.readLine(in));
+      assertEquals(PictureProtocol.CHECKED_OK, PictureProtocol.readLine(in));
+      assertEquals(PictureProtocol.PICTURE_KO, PictureProtocol.readLine(in));
+      assertEquals(PictureProtocol.PICTURE_OK, PictureProtocol.readLine(in));
+      assertEquals(header.getSequence(), PictureHeader.read(in).getSequence());
+      byte[] rest = new byte[picture.length - 60000];
+      int received = 0;
+      while (received < rest.length) {
+         assertEquals(60000 + received, in.readInt());
+         int length = in.readInt();
+         in.readFully(rest, received, length);
+         received += length;
+      }
+      assertArrayEquals(Arrays.copyOfRange(picture, 60000, picture.length), rest);
+      assertEquals(1, server.getStats().getPictureResumes());
+
+      socket.close();
+      server.stopExecution();
+   }
+
+   @Test
+   void testPictureOptionsAreApplied() throws Exception {
+      Server server = new Server("good", true);
+      server.setPictures(PictureSet.generate(1, 320, 240, "png"));
+      Thread thread = new Thread(server);
+      thread.start();
+      try {
+         Thread.sleep(2000);
+      } catch (InterruptedException e) {
+         e.printStackTrace();
+      }
+
+      SSLSocket socket = createSocket("localhost", 2026);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      OutputStream out = socket.getOutputStream();
+      socket.startHandshake();
+      PictureProtocol.writeLine(out, PictureProtocol.SESSION);
+      PictureProtocol.writeLine(out, "PICTURE size=32x32 crop=0,0,160,240 quality=30");
+      PictureProtocol.writeLine(out, "PICTURE size=32");
+      PictureProtocol.writeLine(out, "PICTURE zoom=2");
+      PictureProtocol.writeLine(out, PictureProtocol.PICTURE);
+      out.flush();
+      assertEquals(PictureProtocol.SESSION_OK, PictureProtocol.readLine(in));
+      assertEquals(PictureProtocol.PICTURE_OK, PictureProtocol.readLine(in));
+      BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(PictureProtocol.readFrame(in)));
+      // the left half of the picture, scaled down to fit in 32x32
+      assertEquals(21, thumbnail.getWidth());
+      assertEquals(32, thumbnail.getHeight());
+      assertEquals("CMD_ERR", PictureProtocol.readLine(in));
+      assertEquals("CMD_ERR", PictureProtocol.readLine(in));
+      assertEquals(PictureProtocol.PICTURE_OK, PictureProtocol.readLine(in));
+      assertEquals(320, ImageIO.read(new ByteArrayInputStream(PictureProtocol.readFrame(in))).getWidth());
+
+      socket.close();
+      server.stopExecution();
+   }
+
+   @Test
+   void testOversizedPictureFrameIsRefused() throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      new DataOutputStream(bytes).writeInt(PictureHeader.MAX_SIZE + 1);
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+      // refused before the picture is allocated
+      assertThrows(IOException.class, () -> PictureProtocol.readFrame(in));
+   }
+}